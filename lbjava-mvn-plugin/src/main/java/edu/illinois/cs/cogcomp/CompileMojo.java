@@ -13,7 +13,6 @@ package edu.illinois.cs.cogcomp;
 import java.io.File;
 import java.util.List;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -57,43 +56,44 @@ public class CompileMojo extends AbstractMojo {
 	@Parameter(property = "project.build.outputDirectory", required = true, readonly = true)
 	private String outputdir;
 
+	/**
+	 * The number of .lbj files processed at once.
+	 */
+	@Parameter(property = "lbjava.threads", defaultValue = "1")
+	private int threads;
+
+	/**
+	 * Whether to run LBJava inside Maven's JVM instead of starting a new JVM
+	 * for each .lbj file.
+	 */
+	@Parameter(property = "lbjava.inProcess", defaultValue = "false")
+	private boolean inProcess;
+
+	/**
+	 * Whether to skip .lbj files that haven't changed since they were last
+	 * processed with the same settings and class path, as long as their
+	 * generated code still exists. Changes to Java sources that haven't been
+	 * compiled onto the class path yet go unnoticed, so this is off by
+	 * default.
+	 */
+	@Parameter(property = "lbjava.checkUpToDate", defaultValue = "false")
+	private boolean checkUpToDate;
+
+	@Parameter(defaultValue = "${project.build.directory}/lbjava-stamps", readonly = true)
+	private File stampDirectory;
+
 	public void execute() throws MojoExecutionException {
 
 		classpath.add(dFlag);
 		classpath.add(gspFlag);
-		String newpath = StringUtils.join(classpath, ":");
 
 		// If these directories don't exist, make them.
 		new File(dFlag).mkdirs();
 		new File(gspFlag).mkdirs();
 
-		for (String lbjInputFile : lbjavaInputFileList) {
-			if (StringUtils.isEmpty(lbjInputFile)) {
-				// making the optional-compile-step parameter happy.
-				continue;
-			}
-
-			getLog().info("Calling Java edu.illinois.cs.cogcomp.lbjava.Main...");
-
-			if (StringUtils.isEmpty(lbjInputFile)) {
-				// making the optional-compile-parameter happy.
-				continue;
-			}
-
-			try {
-				String[] args = new String[] { "java", "-cp", newpath, "edu.illinois.cs.cogcomp.lbjava.Main",
-                        "-d", dFlag, "-gsp", gspFlag, "-sourcepath", sourcepathFlag, lbjInputFile };
-
-				ProcessBuilder pr = new ProcessBuilder(args);
-				pr.inheritIO();
-				Process p = pr.start();
-				p.waitFor();
-
-			} catch (Exception e) {
-				e.printStackTrace();
-				System.out.println("Yeah, an error.");
-			}
-		}
-
+		LBJavaRunner runner = new LBJavaRunner(getLog(), classpath, stampDirectory, threads, inProcess,
+				checkUpToDate);
+		runner.run(lbjavaInputFileList,
+				new String[] { "-d", dFlag, "-gsp", gspFlag, "-sourcepath", sourcepathFlag });
 	}
 }
@@ -0,0 +1,470 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs edu.illinois.cs.cogcomp.lbjava.Main on each of a list of .lbj files,
+ * on up to a given number of files at once. Files that haven't changed since
+ * they were last run with the same arguments and class path are skipped, as
+ * long as nothing on the class path other than LBJava's own output has
+ * changed since either, and the files generated for them still exist. Java
+ * sources that haven't been compiled onto the class path aren't checked. This
+ * is tracked with a stamp file per
+ * .lbj file, listing the files in the -gsp and -d directories that were
+ * written while it ran, along with those listed by its previous stamp that
+ * still exist, since LBJava leaves files alone whose contents wouldn't
+ * change. Files of other .lbj files run at the same time may be listed too,
+ * which only makes the check stricter. If the options name neither
+ * directory, the outputs aren't known and the file is always run.
+ *
+ * By default, each file is run in a separate JVM. In-process, each file gets
+ * its own class loader over the project's class path, so the static state of
+ * concurrent compilations is kept apart, and calls to System.exit() are
+ * trapped. If a security manager can't be installed to trap them, files are
+ * run in separate JVMs after all.
+ */
+public class LBJavaRunner {
+
+	private static final String MAIN = "edu.illinois.cs.cogcomp.lbjava.Main";
+
+	/**
+	 * The exit status requested by the compilation running on the current
+	 * thread and the threads it started, if any.
+	 */
+	private static final InheritableThreadLocal<int[]> exitStatus = new InheritableThreadLocal<int[]>();
+
+	private Log log;
+	private List<String> classpath;
+	private File stampDirectory;
+	private int threads;
+	private boolean inProcess;
+	private boolean checkUpToDate;
+
+	/**
+	 * @param log
+	 *            The mojo's log.
+	 * @param classpath
+	 *            The class path LBJava runs with.
+	 * @param stampDirectory
+	 *            The directory in which stamp files are kept.
+	 * @param threads
+	 *            The number of files run at once.
+	 * @param inProcess
+	 *            Whether to run LBJava inside Maven's JVM.
+	 * @param checkUpToDate
+	 *            Whether to skip files that are up to date.
+	 */
+	public LBJavaRunner(Log log, List<String> classpath, File stampDirectory, int threads, boolean inProcess,
+			boolean checkUpToDate) {
+		this.log = log;
+		this.classpath = classpath;
+		this.stampDirectory = stampDirectory;
+		this.threads = Math.max(1, threads);
+		this.inProcess = inProcess;
+		this.checkUpToDate = checkUpToDate;
+	}
+
+	/**
+	 * Runs LBJava on every file.
+	 *
+	 * @param files
+	 *            The .lbj files. Empty entries are ignored.
+	 * @param options
+	 *            The command line options to give LBJava before each file.
+	 * @throws MojoExecutionException
+	 *             If LBJava failed on any file, after all files have been
+	 *             run.
+	 */
+	public void run(String[] files, String[] options) throws MojoExecutionException {
+		final List<String> optionList = new ArrayList<String>();
+		for (String option : options)
+			optionList.add(option);
+
+		long classpathTime = checkUpToDate ? getClasspathTime() : 0;
+		List<String> toRun = new ArrayList<String>();
+		for (String file : files) {
+			if (StringUtils.isEmpty(file)) {
+				// making the optional-compile-step parameter happy.
+				continue;
+			}
+
+			if (checkUpToDate && isUpToDate(file, optionList, classpathTime)) {
+				log.info("Skipping " + file + ", which is up to date.");
+				continue;
+			}
+
+			toRun.add(file);
+		}
+
+		if (toRun.isEmpty())
+			return;
+
+		SecurityManager previous = System.getSecurityManager();
+		boolean trapping = false;
+		if (inProcess) {
+			try {
+				System.setSecurityManager(new ExitTrap(previous));
+				trapping = true;
+			} catch (Exception e) {
+				log.warn("Can't trap System.exit() (" + e + "), so LBJava will run in separate JVMs.");
+			}
+		}
+
+		final boolean runInProcess = trapping;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, toRun.size()));
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		try {
+			for (final String file : toRun) {
+				futures.add(pool.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						log.info("Calling Java " + MAIN + " on " + file + "...");
+						long start = System.currentTimeMillis();
+						// file systems may keep times of last modification to the second
+						start -= start % 1000;
+
+						if (runInProcess)
+							runInProcess(file, optionList);
+						else
+							runProcess(file, optionList);
+						writeStamp(file, optionList, getOutputs(file, optionList, start));
+						return null;
+					}
+				}));
+			}
+
+			List<String> failures = new ArrayList<String>();
+			Throwable cause = null;
+			for (int i = 0; i < futures.size(); ++i) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException e) {
+					log.error("LBJava failed on " + toRun.get(i) + ": " + e.getCause().getMessage());
+					failures.add(toRun.get(i));
+					if (cause == null)
+						cause = e.getCause();
+				} catch (InterruptedException e) {
+					throw new MojoExecutionException("Interrupted while running LBJava.", e);
+				}
+			}
+
+			if (!failures.isEmpty())
+				throw new MojoExecutionException("LBJava failed on " + StringUtils.join(failures, ", "), cause);
+		} finally {
+			pool.shutdown();
+			if (trapping)
+				System.setSecurityManager(previous);
+		}
+	}
+
+	/**
+	 * Runs LBJava on a file in a separate JVM.
+	 */
+	private void runProcess(String file, List<String> options) throws Exception {
+		List<String> args = new ArrayList<String>();
+		args.add("java");
+		args.add("-cp");
+		args.add(StringUtils.join(classpath, File.pathSeparator));
+		args.add(MAIN);
+		args.addAll(options);
+		args.add(file);
+
+		ProcessBuilder pr = new ProcessBuilder(args);
+		pr.inheritIO();
+		Process p = pr.start();
+		int status = p.waitFor();
+		if (status != 0)
+			throw new Exception("exit status " + status);
+	}
+
+	/**
+	 * Runs LBJava on a file in this JVM with a class loader of its own.
+	 */
+	private void runInProcess(String file, List<String> options) throws Exception {
+		URL[] urls = new URL[classpath.size()];
+		for (int i = 0; i < urls.length; ++i)
+			urls[i] = new File(classpath.get(i)).toURI().toURL();
+
+		URLClassLoader loader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+		Thread thread = Thread.currentThread();
+		ClassLoader contextLoader = thread.getContextClassLoader();
+		int[] status = new int[] { 0 };
+		exitStatus.set(status);
+		thread.setContextClassLoader(loader);
+
+		try {
+			Class<?> main = Class.forName(MAIN, true, loader);
+			main.getField("classPath").set(null, StringUtils.join(classpath, File.pathSeparator));
+
+			List<String> args = new ArrayList<String>(options);
+			args.add(file);
+			Method method = main.getMethod("main", String[].class);
+
+			try {
+				method.invoke(null, (Object) args.toArray(new String[args.size()]));
+			} catch (InvocationTargetException e) {
+				if (!(e.getCause() instanceof ExitException))
+					throw new Exception(String.valueOf(e.getCause()), e.getCause());
+			}
+
+			if (status[0] != 0)
+				throw new Exception("exit status " + status[0]);
+		} finally {
+			exitStatus.remove();
+			thread.setContextClassLoader(contextLoader);
+			loader.close();
+		}
+	}
+
+	/**
+	 * The stamp file recording the last successful run on a file.
+	 */
+	private File getStamp(String file) {
+		File lbj = new File(file).getAbsoluteFile();
+		String name = lbj.getName() + "-" + Integer.toHexString(lbj.getPath().hashCode()) + ".stamp";
+		return new File(stampDirectory, name);
+	}
+
+	/**
+	 * The files a run on a file is known to have generated: those in the
+	 * output directories named by the options that were modified since the
+	 * run started, and those listed in the file's stamp that still exist.
+	 *
+	 * @return The absolute paths of the files, or null if the options name
+	 *         no output directory.
+	 */
+	private Collection<String> getOutputs(String file, List<String> options, long start) {
+		List<File> directories = new ArrayList<File>();
+		for (int i = 0; i + 1 < options.size(); ++i)
+			if (options.get(i).equals("-gsp") || options.get(i).equals("-d"))
+				directories.add(new File(options.get(i + 1)).getAbsoluteFile());
+		if (directories.isEmpty())
+			return null;
+
+		Collection<String> result = new TreeSet<String>();
+		for (File directory : directories)
+			addModified(directory, start, result);
+
+		File stamp = getStamp(file);
+		if (stamp.exists()) {
+			try {
+				BufferedReader in = new BufferedReader(new FileReader(stamp));
+				try {
+					in.readLine();
+					in.readLine();
+					for (String line = in.readLine(); line != null; line = in.readLine())
+						if (new File(line).exists())
+							result.add(line);
+				} finally {
+					in.close();
+				}
+			} catch (Exception e) {
+				log.warn("Can't read " + stamp + ": " + e);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Adds the absolute paths of the files under a directory that were
+	 * modified at or after the given time.
+	 */
+	private static void addModified(File directory, long time, Collection<String> result) {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			if (f.isDirectory())
+				addModified(f, time, result);
+			else if (f.lastModified() >= time)
+				result.add(f.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * The time the newest file on the class path was last modified, leaving
+	 * out the files listed in any stamp, which LBJava generated itself.
+	 */
+	private long getClasspathTime() {
+		Collection<String> generated = new TreeSet<String>();
+		File[] stamps = stampDirectory.listFiles();
+		if (stamps != null) {
+			for (File stamp : stamps) {
+				try {
+					BufferedReader in = new BufferedReader(new FileReader(stamp));
+					try {
+						in.readLine();
+						in.readLine();
+						for (String line = in.readLine(); line != null; line = in.readLine())
+							generated.add(line);
+					} finally {
+						in.close();
+					}
+				} catch (Exception e) {
+					log.warn("Can't read " + stamp + ": " + e);
+				}
+			}
+		}
+
+		long result = 0;
+		for (String entry : classpath)
+			result = Math.max(result, getNewest(new File(entry).getAbsoluteFile(), generated));
+		return result;
+	}
+
+	/**
+	 * The time the newest of a file and the files under it was last
+	 * modified, leaving out the given ones.
+	 */
+	private static long getNewest(File file, Collection<String> excluded) {
+		File[] files = file.listFiles();
+		if (files == null)
+			return excluded.contains(file.getPath()) ? 0 : file.lastModified();
+
+		long result = 0;
+		for (File f : files)
+			result = Math.max(result, getNewest(f, excluded));
+		return result;
+	}
+
+	/**
+	 * A file is up to date if its stamp is newer than it and than the class
+	 * path, was written with the same options and class path, and all the
+	 * files listed in the stamp exist.
+	 */
+	private boolean isUpToDate(String file, List<String> options, long classpathTime) {
+		File stamp = getStamp(file);
+		if (!stamp.exists() || stamp.lastModified() < new File(file).lastModified()
+				|| stamp.lastModified() < classpathTime)
+			return false;
+
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(stamp));
+			try {
+				if (!StringUtils.join(options, " ").equals(in.readLine())
+						|| !StringUtils.join(classpath, File.pathSeparator).equals(in.readLine()))
+					return false;
+				for (String line = in.readLine(); line != null; line = in.readLine())
+					if (!new File(line).exists())
+						return false;
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Records a successful run on a file. If the files it generated aren't
+	 * known, any stamp is deleted instead, so the file is run again next
+	 * time.
+	 *
+	 * @param outputs
+	 *            The files that were generated, or null if they aren't known.
+	 */
+	private void writeStamp(String file, List<String> options, Collection<String> outputs) {
+		if (!checkUpToDate)
+			return;
+		File stamp = getStamp(file);
+		if (outputs == null) {
+			if (stamp.exists() && !stamp.delete())
+				log.warn("Can't delete " + stamp);
+			return;
+		}
+
+		try {
+			stampDirectory.mkdirs();
+			PrintWriter out = new PrintWriter(new FileWriter(stamp));
+			try {
+				out.println(StringUtils.join(options, " "));
+				out.println(StringUtils.join(classpath, File.pathSeparator));
+				for (String output : outputs)
+					out.println(output);
+			} finally {
+				out.close();
+			}
+		} catch (Exception e) {
+			log.warn("Can't write " + stamp + ": " + e);
+		}
+	}
+
+	/**
+	 * Thrown instead of exiting the JVM when an in-process compilation calls
+	 * System.exit().
+	 */
+	private static class ExitException extends SecurityException {
+		private static final long serialVersionUID = 1L;
+
+		public ExitException(int status) {
+			super("System.exit(" + status + ")");
+		}
+	}
+
+	/**
+	 * Turns calls to System.exit() made by in-process compilations into
+	 * ExitExceptions and defers everything else to the previous security
+	 * manager, if any.
+	 */
+	private static class ExitTrap extends SecurityManager {
+		private SecurityManager previous;
+
+		public ExitTrap(SecurityManager previous) {
+			this.previous = previous;
+		}
+
+		public void checkPermission(Permission perm) {
+			if (previous != null)
+				previous.checkPermission(perm);
+		}
+
+		public void checkPermission(Permission perm, Object context) {
+			if (previous != null)
+				previous.checkPermission(perm, context);
+		}
+
+		public void checkExit(int status) {
+			int[] holder = exitStatus.get();
+			if (holder != null) {
+				holder[0] = status;
+				throw new ExitException(status);
+			}
+			super.checkExit(status);
+		}
+	}
+}
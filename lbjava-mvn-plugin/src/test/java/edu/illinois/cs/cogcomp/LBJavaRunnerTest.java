@@ -0,0 +1,270 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for LBJavaRunner, which runs a stand-in for LBJava's Main that
+ * appends the name of the JVM it ran in to a file in its -d directory, and
+ * exits with status 3 on files named fail.lbj.
+ */
+public class LBJavaRunnerTest {
+
+	private static final String MAIN = "package edu.illinois.cs.cogcomp.lbjava;\n"
+			+ "public class Main {\n"
+			+ "  public static String classPath;\n"
+			+ "  public static void main(String[] args) throws Exception {\n"
+			+ "    String file = args[args.length - 1];\n"
+			+ "    java.io.File out = new java.io.File(args[1], new java.io.File(file).getName() + \".out\");\n"
+			+ "    java.io.PrintWriter w = new java.io.PrintWriter(new java.io.FileWriter(out, true));\n"
+			+ "    w.println(java.lang.management.ManagementFactory.getRuntimeMXBean().getName());\n"
+			+ "    w.close();\n"
+			+ "    if (file.endsWith(\"fail.lbj\")) System.exit(3);\n"
+			+ "  }\n"
+			+ "}\n";
+
+	/**
+	 * Denies installing another security manager while set, so that the
+	 * runner can't trap System.exit().
+	 */
+	static class Denying extends SecurityManager {
+		boolean deny = true;
+
+		public void checkPermission(Permission perm) {
+			if (deny && perm.getName().equals("setSecurityManager"))
+				throw new SecurityException("denied");
+		}
+
+		public void checkPermission(Permission perm, Object context) {
+			checkPermission(perm);
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File classes;
+	File output;
+	File stamps;
+	String[] options;
+	SecurityManager previous;
+
+	@Before
+	public void setUp() throws Exception {
+		previous = System.getSecurityManager();
+		classes = folder.newFolder("classes");
+		output = folder.newFolder("output");
+		stamps = new File(folder.getRoot(), "stamps");
+		options = new String[] { "-d", output.getPath() };
+
+		File source = new File(folder.newFolder("src"), "Main.java");
+		FileWriter out = new FileWriter(source);
+		out.write(MAIN);
+		out.close();
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertEquals(0, compiler.run(null, null, null, "-d", classes.getPath(), source.getPath()));
+	}
+
+	@After
+	public void tearDown() {
+		assertSame(previous, System.getSecurityManager());
+	}
+
+	/**
+	 * Whether this JVM still lets a security manager be installed, which
+	 * JDK 18 and later don't by default.
+	 */
+	boolean canTrapExit() {
+		Denying permissive = new Denying();
+		permissive.deny = false;
+		try {
+			System.setSecurityManager(permissive);
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+		System.setSecurityManager(previous);
+		return true;
+	}
+
+	LBJavaRunner newRunner(boolean inProcess, boolean checkUpToDate) {
+		return new LBJavaRunner(new SystemStreamLog(), Arrays.asList(classes.getPath()), stamps, 2, inProcess,
+				checkUpToDate);
+	}
+
+	String newFile(String name) throws Exception {
+		File result = new File(folder.getRoot(), name);
+		result.createNewFile();
+		return result.getPath();
+	}
+
+	/** The names of the JVMs Main ran in on a file, one per run. */
+	List<String> runs(String file) throws Exception {
+		List<String> result = new ArrayList<String>();
+		File out = new File(output, new File(file).getName() + ".out");
+		if (!out.exists())
+			return result;
+		BufferedReader in = new BufferedReader(new FileReader(out));
+		for (String line = in.readLine(); line != null; line = in.readLine())
+			result.add(line);
+		in.close();
+		return result;
+	}
+
+	static String thisJVM() {
+		return ManagementFactory.getRuntimeMXBean().getName();
+	}
+
+	/**
+	 * Test that in-process runs happen in this JVM when System.exit() can be
+	 * trapped, and in separate JVMs otherwise, and that every file is run
+	 */
+	@Test
+	public void testInProcess() throws Exception {
+		String a = newFile("a.lbj");
+		String b = newFile("b.lbj");
+		newRunner(true, false).run(new String[] { a, "", b }, options);
+
+		String expected = canTrapExit() ? thisJVM() : null;
+		for (String file : new String[] { a, b }) {
+			List<String> runs = runs(file);
+			assertEquals(1, runs.size());
+			if (expected != null)
+				assertEquals(expected, runs.get(0));
+			else
+				assertFalse(thisJVM().equals(runs.get(0)));
+		}
+	}
+
+	/**
+	 * Test that a trapped System.exit() fails the build instead of exiting
+	 * the JVM, without keeping the other files from running
+	 */
+	@Test
+	public void testExitIsTrapped() throws Exception {
+		String fail = newFile("fail.lbj");
+		String a = newFile("a.lbj");
+		try {
+			newRunner(true, false).run(new String[] { fail, a }, options);
+			fail();
+		} catch (MojoExecutionException e) {
+			assertTrue(e.getMessage().contains(fail));
+			assertFalse(e.getMessage().contains(a));
+		}
+		assertEquals(1, runs(fail).size());
+		assertEquals(1, runs(a).size());
+	}
+
+	/**
+	 * Test that files run in separate JVMs when a security manager can't be
+	 * installed, and that their exit status still fails the build
+	 */
+	@Test
+	public void testFallsBackToSeparateJVMs() throws Exception {
+		Denying denying = null;
+		if (canTrapExit()) {
+			denying = new Denying();
+			denying.deny = false;
+			System.setSecurityManager(denying);
+			denying.deny = true;
+		}
+
+		String a = newFile("a.lbj");
+		String fail = newFile("fail.lbj");
+		try {
+			newRunner(true, false).run(new String[] { a, fail }, options);
+			fail();
+		} catch (MojoExecutionException e) {
+			assertTrue(e.getMessage().contains(fail));
+		} finally {
+			if (denying != null) {
+				denying.deny = false;
+				System.setSecurityManager(previous);
+			}
+		}
+
+		assertEquals(1, runs(a).size());
+		assertFalse(thisJVM().equals(runs(a).get(0)));
+		assertEquals(1, runs(fail).size());
+	}
+
+	/**
+	 * Test that a file is skipped only while it, the options and the class
+	 * path are unchanged and its outputs exist, and never without
+	 * checkUpToDate
+	 */
+	@Test
+	public void testUpToDate() throws Exception {
+		long past = System.currentTimeMillis() - 60000;
+		String a = newFile("a.lbj");
+		File main = new File(classes, "edu/illinois/cs/cogcomp/lbjava/Main.class");
+		assertTrue(new File(a).setLastModified(past));
+		assertTrue(main.setLastModified(past));
+		newRunner(false, true).run(new String[] { a }, options);
+		newRunner(false, true).run(new String[] { a }, options);
+		assertEquals(1, runs(a).size());
+
+		// a class compiled after the stamp was written
+		File stamp = stamps.listFiles()[0];
+		assertTrue(main.setLastModified(past + 30000));
+		assertTrue(stamp.setLastModified(past + 10000));
+		newRunner(false, true).run(new String[] { a }, options);
+		assertEquals(2, runs(a).size());
+		newRunner(false, true).run(new String[] { a }, options);
+		assertEquals(2, runs(a).size());
+
+		// another class path, on which generated files don't count as changes
+		List<String> classpath = Arrays.asList(classes.getPath(), output.getPath());
+		new LBJavaRunner(new SystemStreamLog(), classpath, stamps, 1, false, true).run(new String[] { a }, options);
+		assertEquals(3, runs(a).size());
+		File generated = new File(output, "a.lbj.out");
+		assertTrue(generated.setLastModified(System.currentTimeMillis() + 60000));
+		new LBJavaRunner(new SystemStreamLog(), classpath, stamps, 1, false, true).run(new String[] { a }, options);
+		assertEquals(3, runs(a).size());
+
+		// other options
+		String[] other = { "-d", output.getPath(), "-x" };
+		newRunner(false, true).run(new String[] { a }, other);
+		assertEquals(4, runs(a).size());
+		newRunner(false, true).run(new String[] { a }, other);
+		assertEquals(4, runs(a).size());
+
+		// a deleted output
+		assertTrue(generated.delete());
+		newRunner(false, true).run(new String[] { a }, other);
+		assertEquals(1, runs(a).size());
+
+		// no checking
+		newRunner(false, false).run(new String[] { a }, other);
+		assertEquals(2, runs(a).size());
+	}
+}
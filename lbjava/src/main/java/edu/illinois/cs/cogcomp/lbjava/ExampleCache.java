@@ -0,0 +1,510 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.illinois.cs.cogcomp.lbjava.IR.AST;
+import edu.illinois.cs.cogcomp.lbjava.IR.ClassifierExpression;
+import edu.illinois.cs.cogcomp.lbjava.IR.LearningClassifierExpression;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+
+
+/**
+ * A cache of pre-extracted training examples shared by all builds that use
+ * the same cache directory, which is set with the <code>-cache</code>
+ * command line option.  {@link RevisionAnalysis} only knows whether a
+ * learner's features changed since the last time the same source file was
+ * compiled in the same place.  This cache instead identifies the examples
+ * by a key computed from everything that determines them, so they can also
+ * be reused in a fresh checkout, by a different source file, or after a
+ * change that {@link RevisionAnalysis} would re-extract for, such as a
+ * change to the parameters of a learner whose examples are pre-extracted
+ * into memory.
+ *
+ * <p> The key is a hash of
+ * <ul>
+ *   <li> the definitions of the learner's feature extractor and labeler
+ *        and of every classifier they depend on, including the model and
+ *        lexicon files of learners among them, </li>
+ *   <li> the class files of classifiers they depend on that aren't defined
+ *        in the source, </li>
+ *   <li> the parser's constructor invocation and class file, and the size
+ *        and contents of every file named by a string literal in the
+ *        invocation, or of every file under a directory so named, together
+ *        with its name relative to that directory, and </li>
+ *   <li> the feature encoding and whether the examples are compressed. </li>
+ * </ul>
+ * Like {@link RevisionAnalysis}, the cache trusts that Java code called by
+ * feature extractors and parsers hasn't changed when their own classes
+ * haven't.
+ *
+ * <p> Each entry is a directory named by its key containing the examples,
+ * the feature lexicon, and the label lexicon.  Entries are written to a
+ * temporary directory that is then renamed, so a directory shared by
+ * several concurrent builds only ever contains complete entries.  Failing
+ * to write an entry only produces a warning.
+ **/
+public class ExampleCache
+{
+	/** The name of the file holding an entry's examples. */
+	private static final String examplesFile = "examples";
+	/** The name of the file holding an entry's feature lexicon. */
+	private static final String lexiconFile = "lexicon";
+	/** The name of the file holding an entry's label lexicon. */
+	private static final String labelsFile = "labels";
+	/** Matches the string literals in a parser's constructor invocation. */
+	private static final Pattern stringLiteral =
+		Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+	/**
+	 * The digests of the parsers' input files hashed during the current
+	 * build, indexed by their absolute paths, since many learners usually
+	 * read the same inputs.  Cleared by {@link #clearInputDigests()}.
+	 **/
+	private static final HashMap inputDigests = new HashMap();
+
+
+	/** <!-- isEnabled() -->
+	 * Returns <code>true</code> iff a cache directory has been specified.
+	 **/
+	public static boolean isEnabled() {
+		return Main.exampleCacheDirectory != null;
+	}
+
+
+	/** <!-- getKey(LearningClassifierExpression,boolean) -->
+	 * Computes the key identifying the training examples pre-extracted for
+	 * the given learner.
+	 *
+	 * @param lce  The learner.
+	 * @param zip  Whether the examples are compressed.
+	 * @return The key, as a string of hexadecimal digits.
+	 **/
+	public static String getKey(LearningClassifierExpression lce, boolean zip) {
+		MessageDigest digest = newDigest();
+		update(digest, "LBJava examples 2");
+		update(digest, "zip " + zip);
+		update(digest, "encoding " + lce.featureEncoding);
+
+		// The extractor, the labeler, and everything they depend on.
+		HashMap dependencies = new HashMap();
+		for (Iterator I = SemanticAnalysis.dependorGraph.entrySet().iterator();
+				I.hasNext(); ) {
+			Map.Entry e = (Map.Entry) I.next();
+			for (Iterator J = ((HashSet) e.getValue()).iterator(); J.hasNext(); ) {
+				Object dependor = J.next();
+				HashSet set = (HashSet) dependencies.get(dependor);
+				if (set == null) {
+					set = new HashSet();
+					dependencies.put(dependor, set);
+				}
+				set.add(e.getKey());
+			}
+		}
+
+		TreeSet names = new TreeSet();
+		LinkedList queue = new LinkedList();
+		queue.add(lce.extractor.name.toString());
+		if (lce.labeler != null) queue.add(lce.labeler.name.toString());
+		while (queue.size() > 0) {
+			Object name = queue.removeFirst();
+			if (!names.add(name)) continue;
+			HashSet set = (HashSet) dependencies.get(name);
+			if (set != null) queue.addAll(set);
+		}
+
+		String classDir = Main.classDirectory == null
+			? "" : Main.classDirectory + File.separator;
+
+		for (Iterator I = names.iterator(); I.hasNext(); ) {
+			String name = (String) I.next();
+			update(digest, "classifier " + name);
+			ClassifierExpression ce =
+				(ClassifierExpression) SemanticAnalysis.representationTable.get(name);
+
+			if (ce == null) updateClass(digest, name);
+			else {
+				update(digest, ce.shallow().toString());
+				if (ce instanceof LearningClassifierExpression) {
+					updateFile(digest, classDir + name + ".lc");
+					updateFile(digest, classDir + name + ".lex");
+				}
+			}
+		}
+
+		// The parser and its input files.
+		String parser = lce.parser.toString();
+		update(digest, "parser " + parser);
+		updateClass(digest, lce.parser.name.toString());
+
+		for (Matcher m = stringLiteral.matcher(parser); m.find(); ) {
+			File file = new File(m.group(1).replaceAll("\\\\(.)", "$1"));
+			if (file.exists()) updateInput(digest, file, "");
+		}
+
+		byte[] hash = digest.digest();
+		StringBuffer result = new StringBuffer();
+		for (int i = 0; i < hash.length; ++i)
+			result.append(Integer.toHexString(0x100 | hash[i] & 0xff).substring(1));
+		return result.toString();
+	}
+
+
+	/** <!-- clearInputDigests() -->
+	 * Forgets the digests of the parsers' input files, which is done at the
+	 * start of each build, since the inputs may have changed since the last
+	 * one.
+	 **/
+	public static void clearInputDigests() {
+		synchronized (inputDigests) { inputDigests.clear(); }
+	}
+
+
+	/** <!-- newDigest() -->
+	 * Creates the digest keys are computed with.
+	 *
+	 * @return A SHA-1 digest.
+	 **/
+	private static MessageDigest newDigest() {
+		MessageDigest result = null;
+		try { result = MessageDigest.getInstance("SHA-1"); }
+		catch (Exception e) {
+			System.err.println("LBJava ERROR: Can't compute SHA-1 hashes: " + e);
+			System.exit(1);
+		}
+
+		return result;
+	}
+
+
+	/** <!-- update(MessageDigest,String) -->
+	 * Adds a string followed by a separator to the given digest.
+	 *
+	 * @param digest The digest.
+	 * @param s      The string.
+	 **/
+	private static void update(MessageDigest digest, String s) {
+		try { digest.update((s + "\0").getBytes("UTF-8")); }
+		catch (Exception e) { digest.update((s + "\0").getBytes()); }
+	}
+
+
+	/** <!-- updateFile(MessageDigest,String) -->
+	 * Adds the contents of a file to the given digest, or a marker if it
+	 * doesn't exist.
+	 *
+	 * @param digest The digest.
+	 * @param path   The path to the file.
+	 **/
+	private static void updateFile(MessageDigest digest, String path) {
+		File file = new File(path);
+		if (!file.exists()) {
+			update(digest, "missing " + path);
+			return;
+		}
+
+		try {
+			InputStream in = new FileInputStream(file);
+			try { updateStream(digest, in); }
+			finally { in.close(); }
+		}
+		catch (Exception e) {
+			System.err.println("LBJava ERROR: Can't read '" + path + "': " + e);
+			System.exit(1);
+		}
+	}
+
+
+	/** <!-- updateClass(MessageDigest,String) -->
+	 * Adds the class file of the named class, as found by the global symbol
+	 * table, to the given digest, or a marker if it can't be found.
+	 *
+	 * @param digest The digest.
+	 * @param name   The name of the class.
+	 **/
+	private static void updateClass(MessageDigest digest, String name) {
+		Class c = AST.globalSymbolTable.classForName(name);
+		URL url = null;
+		if (c != null) {
+			String className = c.getName();
+			url = c.getResource(className.substring(className.lastIndexOf('.') + 1)
+					+ ".class");
+		}
+
+		if (url == null) {
+			update(digest, "no class " + name);
+			return;
+		}
+
+		try {
+			InputStream in = url.openStream();
+			try { updateStream(digest, in); }
+			finally { in.close(); }
+		}
+		catch (Exception e) { update(digest, "unreadable class " + name); }
+	}
+
+
+	/** <!-- updateStream(MessageDigest,InputStream) -->
+	 * Adds everything left in a stream to the given digest.
+	 *
+	 * @param digest The digest.
+	 * @param in     The stream.
+	 **/
+	private static void updateStream(MessageDigest digest, InputStream in)
+			throws Exception {
+		byte[] buffer = new byte[1 << 16];
+		for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+			digest.update(buffer, 0, n);
+		update(digest, "");
+	}
+
+
+	/** <!-- updateInput(MessageDigest,File,String) -->
+	 * Adds the size and contents of an input file to the given digest, or the
+	 * names, sizes, and contents of every file under an input directory.
+	 * Names are relative to the input named in the parser's invocation, so
+	 * the key doesn't depend on where the build was checked out or on when
+	 * its inputs were last touched.
+	 *
+	 * @param digest The digest.
+	 * @param file   The file or directory.
+	 * @param name   Its name relative to the input, or the empty string for
+	 *               the input itself.
+	 **/
+	private static void updateInput(MessageDigest digest, File file,
+			String name) {
+		if (file.isDirectory()) {
+			String[] files = file.list();
+			if (files == null) return;
+			Arrays.sort(files);
+			for (int i = 0; i < files.length; ++i)
+				updateInput(digest, new File(file, files[i]),
+						name.length() == 0 ? files[i] : name + "/" + files[i]);
+		}
+		else {
+			update(digest, "input " + name + " " + file.length());
+			digest.update(inputDigest(file));
+		}
+	}
+
+
+	/** <!-- inputDigest(File) -->
+	 * Returns the digest of an input file's contents, hashing it only the
+	 * first time it's asked for during the current build.
+	 *
+	 * @param file The file.
+	 * @return The digest of its contents.
+	 **/
+	private static byte[] inputDigest(File file) {
+		String path = file.getAbsolutePath();
+		synchronized (inputDigests) {
+			byte[] result = (byte[]) inputDigests.get(path);
+			if (result != null) return result;
+		}
+
+		MessageDigest digest = newDigest();
+		updateFile(digest, file.getPath());
+		byte[] result = digest.digest();
+		synchronized (inputDigests) { inputDigests.put(path, result); }
+		return result;
+	}
+
+
+	/** <!-- retrieve(String,String) -->
+	 * Looks up the entry with the given key.  If it exists, its examples are
+	 * copied to the given file, or returned in memory if there is no file.
+	 *
+	 * @param key          The key.
+	 * @param exampleFile  The file into which the examples are copied, or
+	 *                     <code>null</code>.
+	 * @return <code>null</code> if there is no such entry, or an array
+	 *         containing the feature lexicon, the label lexicon, and, if
+	 *         <code>exampleFile</code> is <code>null</code>, the examples as a
+	 *         <code>byte[]</code>.
+	 **/
+	public static Object[] retrieve(String key, String exampleFile) {
+		File entry = new File(Main.exampleCacheDirectory, key);
+		if (!entry.isDirectory()) return null;
+		Object[] result = new Object[3];
+
+		try {
+			result[0] = readLexicon(new File(entry, lexiconFile));
+			result[1] = readLexicon(new File(entry, labelsFile));
+			File examples = new File(entry, examplesFile);
+			if (exampleFile == null) result[2] = read(examples);
+			else copy(examples, new File(exampleFile));
+		}
+		catch (Exception e) {
+			System.err.println("LBJava WARNING: Can't read the cached examples in '"
+					+ entry + "': " + e);
+			return null;
+		}
+
+		return result;
+	}
+
+
+	/** <!-- store(String,String,byte[],Lexicon,Lexicon) -->
+	 * Adds an entry to the cache, unless there already is one with the same
+	 * key.
+	 *
+	 * @param key          The key.
+	 * @param exampleFile  The file containing the examples, or
+	 *                     <code>null</code> if they're in memory.
+	 * @param examples     The examples, if <code>exampleFile</code> is
+	 *                     <code>null</code>.
+	 * @param lexicon      The feature lexicon.
+	 * @param labels       The label lexicon.
+	 **/
+	public static void store(String key, String exampleFile, byte[] examples,
+			Lexicon lexicon, Lexicon labels) {
+		File directory = new File(Main.exampleCacheDirectory);
+		File entry = new File(directory, key);
+		if (entry.isDirectory()) return;
+		File temporary = null;
+
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new Exception("can't create directory '" + directory + "'");
+			temporary = File.createTempFile("LBJ", null, directory);
+			if (!temporary.delete() || !temporary.mkdir())
+				throw new Exception("can't create directory '" + temporary + "'");
+
+			if (exampleFile == null)
+				write(new File(temporary, examplesFile), examples);
+			else copy(new File(exampleFile), new File(temporary, examplesFile));
+			writeLexicon(new File(temporary, lexiconFile), lexicon);
+			writeLexicon(new File(temporary, labelsFile), labels);
+
+			if (temporary.renameTo(entry)) temporary = null;
+		}
+		catch (Exception e) {
+			System.err.println("LBJava WARNING: Can't cache examples in '"
+					+ directory + "': " + e);
+		}
+		finally {
+			if (temporary != null) delete(temporary);
+		}
+	}
+
+
+	/** <!-- readLexicon(File) -->
+	 * Reads a lexicon written by {@link #writeLexicon(File,Lexicon)}.
+	 *
+	 * @param file The file.
+	 * @return The lexicon.
+	 **/
+	private static Lexicon readLexicon(File file) throws Exception {
+		return Lexicon.readLexicon(
+				new ExceptionlessInputStream(new ByteArrayInputStream(read(file))));
+	}
+
+
+	/** <!-- writeLexicon(File,Lexicon) -->
+	 * Writes a lexicon to a file.
+	 *
+	 * @param file     The file.
+	 * @param lexicon  The lexicon.
+	 **/
+	private static void writeLexicon(File file, Lexicon lexicon)
+			throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+		lexicon.write(out);
+		out.close();
+		write(file, bytes.toByteArray());
+	}
+
+
+	/** <!-- read(File) -->
+	 * Reads the entire contents of a file.
+	 *
+	 * @param file The file.
+	 * @return Its contents.
+	 **/
+	private static byte[] read(File file) throws Exception {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] result = new byte[(int) in.length()];
+			in.readFully(result);
+			return result;
+		}
+		finally { in.close(); }
+	}
+
+
+	/** <!-- write(File,byte[]) -->
+	 * Writes a file.
+	 *
+	 * @param file     The file.
+	 * @param contents Its contents.
+	 **/
+	private static void write(File file, byte[] contents) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		try { out.write(contents); }
+		finally { out.close(); }
+	}
+
+
+	/** <!-- copy(File,File) -->
+	 * Copies a file.
+	 *
+	 * @param from The file to copy.
+	 * @param to   The copy.
+	 **/
+	private static void copy(File from, File to) throws Exception {
+		FileChannel in = new FileInputStream(from).getChannel();
+		try {
+			FileChannel out = new FileOutputStream(to).getChannel();
+			try {
+				long size = in.size();
+				for (long position = 0; position < size; )
+					position += in.transferTo(position, size - position, out);
+			}
+			finally { out.close(); }
+		}
+		finally { in.close(); }
+	}
+
+
+	/** <!-- delete(File) -->
+	 * Deletes a file or a directory and everything in it.
+	 *
+	 * @param file The file or directory.
+	 **/
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null)
+			for (int i = 0; i < files.length; ++i) delete(files[i]);
+		file.delete();
+	}
+}
@@ -41,6 +41,11 @@ public class ClassifierAssignment extends Declaration
     * classifier's result in.
    **/
   public Name cacheIn;
+  /**
+    * (&oslash;) The number of values a <code>cachedinmap</code> cache may
+    * hold, if it was given.
+   **/
+  public Constant cacheCapacity;
   /**
     * Whether the classifier will have a single example feature vector cache.
    **/
@@ -172,7 +177,7 @@ public class ClassifierAssignment extends Declaration
     * @return The clone node.
    **/
   public Object clone() {
-    return
+    ClassifierAssignment result =
       new ClassifierAssignment(
             comment,
             (ClassifierReturnType) returnType.clone(),
@@ -181,6 +186,9 @@ public class ClassifierAssignment extends Declaration
             (ClassifierExpression) expression.clone(),
             (Name) (cacheIn == null ? null : cacheIn.clone()),
             singleExampleCache);
+    if (cacheCapacity != null)
+      result.cacheCapacity = (Constant) cacheCapacity.clone();
+    return result;
   }
 
 
@@ -210,21 +218,44 @@ public class ClassifierAssignment extends Declaration
 
     if (singleExampleCache) buffer.append("cached ");
 
-    if (cacheIn != null) {
-      buffer.append("cachedin");
+    writeCacheIn(buffer, cacheIn, cacheCapacity);
 
-      if (cacheIn.toString().equals(ClassifierAssignment.mapCache))
-        buffer.append("map");
-      else {
-        buffer.append(" ");
-        cacheIn.write(buffer);
-      }
+    buffer.append("<- ");
+    expression.write(buffer);
+  }
 
-      buffer.append(' ');
+
+  /**
+    * Writes the <code>cachedin</code> clause of a classifier, if it has
+    * one, followed by a space.  This method is shared by the
+    * <code>write(StringBuffer)</code> methods of this class and of
+    * {@link ClassifierExpression}.
+    *
+    * @param buffer   The buffer to write to.
+    * @param cacheIn  The field the classifier's result is cached in, or
+    *                 {@link #mapCache}.
+    * @param capacity The capacity of a <code>cachedinmap</code> cache, if
+    *                 it was given.
+   **/
+  static void writeCacheIn(StringBuffer buffer, Name cacheIn,
+                           Constant capacity) {
+    if (cacheIn == null) return;
+    buffer.append("cachedin");
+
+    if (cacheIn.toString().equals(mapCache)) {
+      buffer.append("map");
+      if (capacity != null) {
+        buffer.append("(");
+        capacity.write(buffer);
+        buffer.append(")");
+      }
+    }
+    else {
+      buffer.append(" ");
+      cacheIn.write(buffer);
     }
 
-    buffer.append("<- ");
-    expression.write(buffer);
+    buffer.append(' ');
   }
 }
 
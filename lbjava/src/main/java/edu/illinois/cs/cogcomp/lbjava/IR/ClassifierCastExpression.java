@@ -50,6 +50,14 @@ public class ClassifierCastExpression extends ClassifierExpression
   public void setCacheIn(Name c) { expression.setCacheIn(c); }
 
 
+  /**
+    * Sets the <code>cacheCapacity</code> member variable to the argument.
+    *
+    * @param c  The new capacity of the <code>cachedinmap</code> cache.
+   **/
+  public void setCacheCapacity(Constant c) { expression.setCacheCapacity(c); }
+
+
   /**
     * Returns a hash code value for java hash structures.
     *
@@ -41,6 +41,11 @@ public abstract class ClassifierExpression extends ASTNode
     * classifier's result in.
    **/
   public Name cacheIn;
+  /**
+    * (&oslash;) The number of values a <code>cachedinmap</code> cache may
+    * hold, if it was given.
+   **/
+  public Constant cacheCapacity;
   /**
     * Whether the classifier will have a single example feature vector cache.
    **/
@@ -81,6 +86,25 @@ public abstract class ClassifierExpression extends ASTNode
   public void setCacheIn(Name c) { cacheIn = c; }
 
 
+  /**
+    * Sets the <code>cacheCapacity</code> member variable to the argument.
+    *
+    * @param c  The new capacity of the <code>cachedinmap</code> cache.
+   **/
+  public void setCacheCapacity(Constant c) { cacheCapacity = c; }
+
+
+  /**
+    * Writes this classifier's <code>cachedin</code> clause, if it has one,
+    * followed by a space.
+    *
+    * @param buffer The buffer to write to.
+   **/
+  protected void writeCacheIn(StringBuffer buffer) {
+    ClassifierAssignment.writeCacheIn(buffer, cacheIn, cacheCapacity);
+  }
+
+
   /**
     * Creates a <code>StringBuffer</code> containing a shallow representation
     * of this <code>ClassifierExpression</code>.
@@ -124,18 +124,7 @@ public class CodedClassifier extends ClassifierExpression
 
     if (singleExampleCache) buffer.append("cached ");
 
-    if (cacheIn != null) {
-      buffer.append("cachedin");
-
-      if (cacheIn.toString().equals(ClassifierAssignment.mapCache))
-        buffer.append("map");
-      else {
-        buffer.append(" ");
-        cacheIn.write(buffer);
-      }
-
-      buffer.append(' ');
-    }
+    writeCacheIn(buffer);
 
     buffer.append("<- ");
     body.write(buffer);
@@ -789,18 +789,7 @@ public class LearningClassifierExpression extends ClassifierExpression
 
    if (singleExampleCache) buffer.append("cached ");
 
-   if (cacheIn != null) {
-     buffer.append("cachedin");
-
-     if (cacheIn.toString().equals(ClassifierAssignment.mapCache))
-       buffer.append("map");
-     else {
-       buffer.append(" ");
-       cacheIn.write(buffer);
-     }
-
-     buffer.append(' ');
-   }
+   writeCacheIn(buffer);
 
    buffer.append("<- learn");
 
@@ -206,7 +206,9 @@ public class SymbolTable
 	public Type get(String name) {
 		if (localContainsKey(name)) return (Type) table.get(name);
 		if (parent != null) return parent.get(name);
-		if (external.containsKey(name)) return (Type) external.get(name);
+		synchronized (external) {
+			if (external.containsKey(name)) return (Type) external.get(name);
+		}
 
 		Type result = null;
 		Class<?> c = classForName(name);
@@ -279,7 +281,7 @@ public class SymbolTable
 			}
 		}
 
-		external.put(name, result);
+		synchronized (external) { external.put(name, result); }
 
 		return result;
 	}
@@ -63,6 +63,16 @@ import edu.illinois.cs.cogcomp.lbjava.frontend.sym;
   *             </td>
   *           </tr>
   *           <tr>
+  *             <td valign=top><code>-gt &lt;n&gt;</code></td>
+  *             <td>
+  *               Generates the code for at most <code>&lt;n&gt;</code>
+  *               declarations at once, or for as many as there are
+  *               processors if <code>&lt;n&gt;</code> is 0.  By default, one
+  *               declaration is generated at a time.  The generated files
+  *               and messages are the same either way.
+  *             </td>
+  *           </tr>
+  *           <tr>
   *             <td valign=top><code>-j &lt;a&gt;</code></td>
   *             <td>
   *               Sends the contents of <code>&lt;a&gt;</code> to
@@ -80,6 +90,23 @@ import edu.illinois.cs.cogcomp.lbjava.frontend.sym;
   *               that don't depend on each other are trained concurrently.
   *             </td>
   *           </tr>
+  *           <tr>
+  *             <td valign=top><code>-pt &lt;n&gt;</code></td>
+  *             <td>
+  *               Train in parallel with at most <code>&lt;n&gt;</code>
+  *               learners training at once.  <code>-p</code> alone trains
+  *               as many at once as there are processors.
+  *             </td>
+  *           </tr>
+  *           <tr>
+  *             <td valign=top><code>-pm &lt;m&gt;</code></td>
+  *             <td>
+  *               Train in parallel, but only start a learner while the
+  *               estimated memory needs of the learners training at once
+  *               stay within <code>&lt;m&gt;</code> megabytes.  By default,
+  *               the JVM's maximum heap size is the limit.
+  *             </td>
+  *           </tr>
   *           -->
   *           <tr>
   *             <td valign=top nowrap><code>-s</code></td>
@@ -134,6 +161,15 @@ import edu.illinois.cs.cogcomp.lbjava.frontend.sym;
   *             </td>
   *           </tr>
   *           <tr>
+  *             <td valign=top><code>-cache &lt;directory&gt;</code></td>
+  *             <td>
+  *               Caches pre-extracted training examples in the specified
+  *               directory, which may be shared by many builds, and reuses
+  *               them whenever a learner's features and training data
+  *               haven't changed.  See {@link ExampleCache}.
+  *             </td>
+  *           </tr>
+  *           <tr>
   *             <td valign=top><code>-sourcepath &lt;path&gt;</code></td>
   *             <td>
   *               If the LBJava source depends on classes whose source files
@@ -214,6 +250,21 @@ public class Main
   private static boolean compileOnly = false;
   /** This flag is set if concurrent training has been enabled. */
   public static boolean concurrentTraining = false;
+  /**
+    * The maximum number of learners trained at once during concurrent
+    * training, or 0 for as many as there are processors.
+   **/
+  public static int trainingThreads = 0;
+  /**
+    * The number of bytes the estimated memory needs of the learners trained
+    * at once may add up to, or 0 for the JVM's maximum heap size.
+   **/
+  public static long trainingMemory = 0;
+  /**
+    * The maximum number of declarations whose code is generated at once, or
+    * 0 for as many as there are processors.
+   **/
+  public static int codeGenerationThreads = 1;
   /** This flag is set if warnings have been disabled on the command line. */
   public static boolean warningsDisabled = false;
   /** This flag is set if symbol printing is enabled on the command line. */
@@ -253,6 +304,11 @@ public class Main
     * subdirectories mimicing the package name included).
    **/
   public static String generatedSourceDirectory;
+  /**
+    * The directory in which pre-extracted examples are cached, or
+    * <code>null</code> if they aren't.
+   **/
+  public static String exampleCacheDirectory;
   /** The passes that will be executed. */
   private static LinkedList<Pass> passes;
 
@@ -363,9 +419,40 @@ public class Main
       else if (args[index].equals("-c")) compileOnly = true;
       else if (args[index].equals("-d"))
         classPackageDirectory = args[++index];
+      else if (args[index].equals("-gt")) {
+        int n = -1;
+        try { n = Integer.parseInt(args[++index]); }
+        catch (Exception e) { }
+
+        if (n < 0) {
+          PrintUsage();
+          throw
+            new Exception("The -gt argument must be followed by a "
+                          + "non-negative integer.");
+        }
+
+        codeGenerationThreads = n;
+      }
       else if (args[index].equals("-j"))
         javacArguments += " " + args[++index];
       else if (args[index].equals("-p")) concurrentTraining = true;
+      else if (args[index].equals("-pt") || args[index].equals("-pm")) {
+        String option = args[index];
+        long n = 0;
+        try { n = Long.parseLong(args[++index]); }
+        catch (Exception e) { }
+
+        if (n <= 0 || option.equals("-pt") && n > Integer.MAX_VALUE) {
+          PrintUsage();
+          throw
+            new Exception("The " + option + " argument must be followed by a "
+                          + "positive integer.");
+        }
+
+        concurrentTraining = true;
+        if (option.equals("-pt")) trainingThreads = (int) n;
+        else trainingMemory = n * 1024 * 1024;
+      }
       else if (args[index].equals("-s")) printSymbols = true;
       else if (args[index].equals("-v")) printVersion = true;
       else if (args[index].equals("-w")) warningsDisabled = true;
@@ -374,6 +461,8 @@ public class Main
                || args[index].equals("-gsp"))
         generatedSourceDirectory = args[++index];
       else if (args[index].equals("-sourcepath")) sourcePath = args[++index];
+      else if (args[index].equals("-cache"))
+        exampleCacheDirectory = args[++index];
       else if (args[index].equals("--parserDebug")) parserDebug = true;
       else if (args[index].equals("--lexerOutput")) printTokens = true;
       else if (args[index].equals("--parserOutput")) printAST = true;
@@ -565,8 +654,12 @@ public class Main
 + "  where [options] is one or more of the following:\n"
 + "    -c               Compile to Java only\n"
 + "    -d <dir>         Write generated class files to <dir>\n"
++ "    -gt <n>          Generate code for at most <n> declarations at once,\n"
++ "                     or one per processor if <n> is 0\n"
 + "    -j <a>           Send the specified arguments to javac\n"
 //+ "    -p               Train in parallel\n"
+//+ "    -pt <n>          Train at most <n> learners in parallel\n"
+//+ "    -pm <m>          Train in parallel within <m> megabytes\n"
 + "    -s               Print the names of all declarations and quit\n"
 + "    -t <n>           Enables default progress output during training\n"
 + "    -v               Print the version number and quit\n"
@@ -577,7 +670,9 @@ public class Main
 + "    -gsp <dir>\n"
 + "                     Write generated Java source files to <dir>\n"
 + "    -sourcepath <path>\n"
-+ "                     Search for Java source files in <path>\n\n"
++ "                     Search for Java source files in <path>\n"
++ "    -cache <dir>\n"
++ "                     Cache pre-extracted examples in <dir>\n\n"
 
 + "    --parserDebug    Debug output for parse phase only\n"
 + "    --lexerOutput    Print lexical token stream and quit\n"
@@ -142,7 +142,7 @@ public abstract class Pass
     * @param line     The line on which the error was recognized.
     * @param message  The error message.
    **/
-  public static void reportError(int line, String message) {
+  public static synchronized void reportError(int line, String message) {
     if (!canAddErrorsAndWarnings) return;
     if (message.startsWith("Cannot locate class")) {
       int start = message.indexOf('\'') + 1;
@@ -175,7 +175,7 @@ public abstract class Pass
     * @param line     The line on which the warning was recognized.
     * @param message  The warning message.
    **/
-  public static void reportWarning(int line, String message) {
+  public static synchronized void reportWarning(int line, String message) {
     if (!canAddErrorsAndWarnings || Main.clean || Main.warningsDisabled)
       return;
 
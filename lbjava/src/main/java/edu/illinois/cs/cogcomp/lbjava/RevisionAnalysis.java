@@ -522,6 +522,8 @@ public class RevisionAnalysis extends Pass
 				: !oldLCE.comment.equals(lce.comment))
 				|| (oldLCE.cacheIn == null ? lce.cacheIn != null
 				: !oldLCE.cacheIn.equals(lce.cacheIn))
+				|| (oldLCE.cacheCapacity == null ? lce.cacheCapacity != null
+				: !oldLCE.cacheCapacity.equals(lce.cacheCapacity))
 				|| oldLCE.singleExampleCache != lce.singleExampleCache
 				|| (oldLCE.evaluation == null
 				? lce.evaluation != null
@@ -233,7 +233,9 @@ import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
  *     <td>
  *       The {@link ClassifierExpression#cacheIn} member variable is set when
  *       the containing {@link ClassifierAssignment} had a
- *       <code>cached</code> or <code>cachedin</code> modifier.
+ *       <code>cached</code> or <code>cachedin</code> modifier, and so is
+ *       {@link ClassifierExpression#cacheCapacity} when a capacity was given
+ *       to <code>cachedinmap</code>.
  *     </td>
  *   </tr>
  *   <tr valign=top>
@@ -525,9 +527,10 @@ import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
  *       The <code>cachedin</code> and <code>cached</code> keywords can be
  *       used to cache the value(s) produced by classifiers returning either
  *       a single feature or an array of features in a member variable of a
- *       user's class or a <code>WeakHashMap</code> respectively.  The values
- *       of features produced by generators and conjunctions cannot be cached
- *       in this way.
+ *       user's class or a bounded
+ *       {@link edu.illinois.cs.cogcomp.lbjava.classify.ValueCache}
+ *       respectively.  The values of features produced by generators and
+ *       conjunctions cannot be cached in this way.
  *     </td>
  *   </tr>
  *   <tr valign=top>
@@ -717,6 +720,13 @@ import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
  *       {@link LearningClassifierExpression}.
  *     </td>
  *   </tr>
+ *   <tr valign=top>
+ *     <td align=right>B63</td>
+ *     <td>
+ *       The capacity given to <code>cachedinmap</code> must be a positive
+ *       integer.
+ *     </td>
+ *   </tr>
  * </table>
  *
  * @see    RevisionAnalysis
@@ -1126,6 +1136,18 @@ public class SemanticAnalysis extends Pass
 								+ "member variable or otherwise).");
 
 			ca.expression.setCacheIn(ca.cacheIn); // A18
+
+			if (ca.cacheCapacity != null) {
+				// B63
+				int capacity = 0;
+				try { capacity = Integer.parseInt(ca.cacheCapacity.value); }
+				catch (NumberFormatException e) { }
+				if (capacity <= 0)
+					reportError(ca.line,
+							"The capacity of a cachedinmap cache must be a positive "
+									+ "integer.");
+				ca.expression.setCacheCapacity(ca.cacheCapacity); // A18
+			}
 		}
 
 		currentRT = (ClassifierReturnType) ca.returnType.clone(); // A4
@@ -13,10 +13,13 @@ package edu.illinois.cs.cogcomp.lbjava;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -25,9 +28,15 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
 
 import edu.illinois.cs.cogcomp.lbjava.IR.AST;
-import edu.illinois.cs.cogcomp.lbjava.IR.ClassifierAssignment;
 import edu.illinois.cs.cogcomp.lbjava.IR.CodedClassifier;
 import edu.illinois.cs.cogcomp.lbjava.IR.Constant;
 import edu.illinois.cs.cogcomp.lbjava.IR.ConstraintDeclaration;
@@ -40,7 +49,9 @@ import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
 import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
 import edu.illinois.cs.cogcomp.lbjava.learn.TestingMetric;
 import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.LabelRecordingParser;
 import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+import edu.illinois.cs.cogcomp.lbjava.parse.RelabelingParser;
 import edu.illinois.cs.cogcomp.lbjava.util.ClassUtils;
 
 
@@ -74,26 +85,40 @@ public class Train extends Pass
 	 * Remembers which files have been compiled via {@link #runJavac(String)}.
 	 **/
 	private static final TreeSet compiledFiles = new TreeSet();
+	/**
+	 * The compiler used in-process by {@link #runJavac(String)}, or
+	 * <code>null</code> if there is none.
+	 **/
+	private static JavaCompiler compiler;
+	/**
+	 * The file manager shared by all in-process compilations, so that the
+	 * class path is only opened and indexed once.
+	 **/
+	private static StandardJavaFileManager fileManager;
+	/** Set once {@link #compiler} has been looked up. */
+	private static boolean compilerInitialized;
 
 
 	/** <!-- runJavac(String) -->
 	 * Run the <code>javac</code> compiler with the specified arguments in
-	 * addition to those specified on the command line.
+	 * addition to those specified on the command line.  Files that have
+	 * already been compiled are skipped.  The compiler runs inside this JVM
+	 * whenever the system Java compiler is available, and as an external
+	 * <code>javac</code> process otherwise, or when the command line
+	 * arguments include options for the <code>javac</code> launcher itself.
 	 *
 	 * @param arguments  The arguments to send to <code>javac</code>.
 	 * @return <code>true</code> iff errors were encountered.
 	 **/
-	public static boolean runJavac(String arguments) {
+	public static synchronized boolean runJavac(String arguments) {
 		String[] files = arguments.split("\\s+");
-		arguments = "";
+		LinkedList sources = new LinkedList();
 		for (int i = 0; i < files.length; ++i)
-			if (compiledFiles.add(files[i]))
-				arguments += " " + files[i];
-		if (arguments.length() == 0) return false;
+			if (files[i].length() > 0 && compiledFiles.add(files[i]))
+				sources.add(files[i]);
+		if (sources.size() == 0) return false;
 
-		Process javac = null;
-		String pathArguments = "-classpath " + Main.classPath + " -sourcepath "
-				+ Main.sourcePath;
+		String sourcePath = Main.sourcePath;
 
 		if (Main.generatedSourceDirectory != null) {
 			String gsd = Main.generatedSourceDirectory;
@@ -103,14 +128,121 @@ public class Train extends Pass
 				gsd.lastIndexOf(File.separator + AST.globalSymbolTable.getPackage()
 						.replace('.', File.separatorChar));
 			if (packageIndex != -1) gsd = gsd.substring(0, packageIndex);
-			pathArguments += File.pathSeparator + gsd;
+			sourcePath += File.pathSeparator + gsd;
 		}
 
-		if (Main.classPackageDirectory != null)
-			pathArguments += " -d " + Main.classPackageDirectory;
+		LinkedList options = new LinkedList();
+		String[] userOptions = Main.javacArguments.trim().split("\\s+");
+		boolean launcherOptions = false;
+		for (int i = 0; i < userOptions.length; ++i) {
+			if (userOptions[i].length() == 0) continue;
+			launcherOptions |= userOptions[i].startsWith("-J");
+			options.add(userOptions[i]);
+		}
+
+		options.add("-classpath");
+		options.add(Main.classPath);
+		options.add("-sourcepath");
+		options.add(sourcePath);
+		if (Main.classPackageDirectory != null) {
+			options.add("-d");
+			options.add(Main.classPackageDirectory);
+		}
 
-		String command = "javac " + Main.javacArguments + " "
-				+ pathArguments + arguments;
+		if (!launcherOptions && getCompiler() != null)
+			return runCompiler(options, sources, sourcePath);
+
+		String command = "javac";
+		for (Iterator I = options.iterator(); I.hasNext(); )
+			command += " " + I.next();
+		for (Iterator I = sources.iterator(); I.hasNext(); )
+			command += " " + I.next();
+		return runProcess(command);
+	}
+
+
+	/** <!-- getCompiler() -->
+	 * Looks up the system Java compiler the first time it is called.
+	 *
+	 * @return The compiler, or <code>null</code> if this JVM doesn't have one.
+	 **/
+	private static JavaCompiler getCompiler() {
+		if (!compilerInitialized) {
+			compilerInitialized = true;
+			compiler = ToolProvider.getSystemJavaCompiler();
+			if (compiler != null)
+				fileManager = compiler.getStandardFileManager(null, null, null);
+		}
+
+		return compiler;
+	}
+
+
+	/** <!-- runCompiler(LinkedList, LinkedList, String) -->
+	 * Compiles the specified files with the in-process compiler, printing its
+	 * diagnostics on <code>STDOUT</code>.  The paths are set on the shared
+	 * file manager first, since it would otherwise keep the ones it was
+	 * first given.
+	 *
+	 * @param options     The options for the compiler.
+	 * @param sources     The names of the files to compile.
+	 * @param sourcePath  The source path.
+	 * @return <code>true</code> iff errors were encountered.
+	 **/
+	private static boolean runCompiler(LinkedList options, LinkedList sources,
+			String sourcePath) {
+		Writer out = new OutputStreamWriter(System.out);
+		boolean success = false;
+
+		try {
+			fileManager.setLocation(StandardLocation.CLASS_PATH,
+					files(Main.classPath));
+			fileManager.setLocation(StandardLocation.SOURCE_PATH,
+					files(sourcePath));
+			fileManager.setLocation(StandardLocation.CLASS_OUTPUT,
+					Main.classPackageDirectory == null ? null
+					: Arrays.asList(new File[]{ new File(Main.classPackageDirectory) }));
+			success =
+				compiler.getTask(out, fileManager, null, options, null,
+						fileManager.getJavaFileObjectsFromStrings(sources))
+				.call().booleanValue();
+			out.flush();
+		}
+		catch (Exception e) {
+			System.err.println("Failed to run the Java compiler: " + e);
+			System.exit(1);
+		}
+
+		return !success;
+	}
+
+
+	/** <!-- files(String) -->
+	 * Splits a path into its files.
+	 *
+	 * @param path  The path, whose elements are separated by
+	 *              {@link File#pathSeparator}.
+	 * @return The files, or <code>null</code> if there is no path.
+	 **/
+	private static LinkedList files(String path) {
+		if (path == null) return null;
+		LinkedList result = new LinkedList();
+		String[] elements = path.split(File.pathSeparator);
+		for (int i = 0; i < elements.length; ++i)
+			if (elements[i].length() > 0) result.add(new File(elements[i]));
+		return result;
+	}
+
+
+	/** <!-- runProcess(String) -->
+	 * Runs the specified <code>javac</code> command in a new process, printing
+	 * its error stream on <code>STDOUT</code>.
+	 *
+	 * @param command  The command.
+	 * @return <code>true</code> iff errors were encountered.
+	 **/
+	private static boolean runProcess(String command) {
+		Process javac = null;
 
 		try { javac = Runtime.getRuntime().exec(command); }
 		catch (Exception e) {
@@ -165,6 +297,16 @@ public class Train extends Pass
 	 * named by the key depends on.
 	 **/
 	protected HashMap learnerDependencies;
+	/**
+	 * The threads whose dependencies have all been trained, but which haven't
+	 * been started yet.  This list and the two fields below are guarded by
+	 * {@link #learnerDependencies}'s monitor.
+	 **/
+	protected LinkedList readyThreads;
+	/** The number of threads currently training. */
+	protected int runningThreads;
+	/** The sum of the memory estimates of the threads currently training. */
+	protected long memoryInUse;
 
 
 	// Constructor.
@@ -231,52 +373,264 @@ public class Train extends Pass
 						threads[i].getName()))
 					addDependency(threads[j].getName(), threads[i].getName());
 			}
+
+		shareExamples();
+
+		HashMap dependors = new HashMap();
+		for (int i = 0; i < threads.length; ++i) {
+			HashSet dependencies =
+				(HashSet) learnerDependencies.get(threads[i].getName());
+			for (Iterator I = dependencies.iterator(); I.hasNext(); ) {
+				Object dependency = I.next();
+				TrainingThread leader = threads[i].sharedExamples;
+				if (leader != null && dependency.equals(leader.exFilePath))
+					dependency = leader.getName();
+				LinkedList list = (LinkedList) dependors.get(dependency);
+				if (list == null) {
+					list = new LinkedList();
+					dependors.put(dependency, list);
+				}
+				list.add(threads[i]);
+			}
+		}
+
+		for (int i = 0; i < threads.length; ++i) {
+			criticalPath(threads[i], dependors);
+			threads[i].memoryEstimate = threads[i].estimateMemory();
+		}
+	}
+
+
+	/** <!-- shareExamples() -->
+	 * Finds learners whose training examples needn't be pre-extracted,
+	 * because they use the same feature extractor (as identified by
+	 * {@link ClassifierCSE}), feature encoding, and parser as a learner
+	 * appearing earlier in the source.  Each such learner reuses the example
+	 * file and lexicon pre-extracted by the first of those learners, which
+	 * becomes its {@link TrainingThread#sharedExamples}, and gets its labels
+	 * from that learner too.  In the {@link #learnerDependencies} graph, it depends
+	 * on the path of the shared example file, which is removed once that
+	 * file has been written.
+	 **/
+	protected void shareExamples() {
+		HashMap leaders = new HashMap();
+
+		for (int i = threads.length - 1; i >= 0; --i) {
+			TrainingThread thread = threads[i];
+			String key = thread.getSharingKey();
+			if (key == null) continue;
+			TrainingThread leader = (TrainingThread) leaders.get(key);
+
+			if (leader == null) leaders.put(key, thread);
+			else if (!SemanticAnalysis.isDependentOn(leader.getName(),
+						thread.getName())) {
+				thread.sharedExamples = leader;
+				++leader.sharedBy;
+				leader.followers.add(thread);
+				addDependency(thread.getName(), leader.exFilePath);
+			}
+		}
+	}
+
+
+	/** <!-- criticalPath(TrainingThread,HashMap) -->
+	 * Computes the number of learners on the longest chain of learners that
+	 * depend on the given one, including itself, and stores it in the
+	 * thread's {@link TrainingThread#criticalPath} field.
+	 *
+	 * @param thread    The thread training the learner.
+	 * @param dependors Maps the name of each learner to a
+	 *                  <code>LinkedList</code> of the threads training the
+	 *                  learners that depend on it.
+	 * @return The length of the chain.
+	 **/
+	private int criticalPath(TrainingThread thread, HashMap dependors) {
+		if (thread.criticalPath > 0) return thread.criticalPath;
+		int result = 0;
+		LinkedList list = (LinkedList) dependors.get(thread.getName());
+
+		if (list != null)
+			for (Iterator I = list.iterator(); I.hasNext(); )
+				result =
+					Math.max(result, criticalPath((TrainingThread) I.next(), dependors));
+
+		return thread.criticalPath = result + 1;
 	}
 
 
 	/** <!-- executeReadyThreads(String) -->
 	 * This method updates the {@link #learnerDependencies} graph by removing
-	 * the specified name from every dependencies list, and then starts every
-	 * thread that has no more dependencies.
+	 * the specified name from every dependencies list, and then makes every
+	 * thread that has no more dependencies available to
+	 * {@link #trainAll()}.
 	 *
 	 * @param name The name of a learner whose training has completed.
 	 **/
 	protected void executeReadyThreads(String name) {
-		LinkedList ready = new LinkedList();
-
 		synchronized (learnerDependencies) {
 			for (Iterator I = learnerDependencies.entrySet().iterator();
 					I.hasNext(); ) {
 				Map.Entry e = (Map.Entry) I.next();
 				HashSet dependencies = (HashSet) e.getValue();
 				dependencies.remove(name);
-				if (dependencies.size() == 0) ready.add(e.getKey());
+				if (dependencies.size() > 0) continue;
+
+				TrainingThread thread = null;
+				synchronized (threadMap) {
+					thread = (TrainingThread) threadMap.remove(e.getKey());
+				}
+
+				if (thread != null) {
+					thread.readyTime = System.currentTimeMillis();
+					readyThreads.add(thread);
+				}
 			}
+
+			learnerDependencies.notifyAll();
 		}
+	}
 
-		for (Iterator I = ready.iterator(); I.hasNext(); ) {
-			TrainingThread thread = null;
 
-			synchronized (threadMap) {
-				thread = (TrainingThread) threadMap.remove(I.next());
-			}
+	/** <!-- nextReadyThread(long) -->
+	 * Chooses the ready thread that should start training next: the one with
+	 * the longest {@link TrainingThread#criticalPath critical path} whose
+	 * memory estimate fits in what's left of the budget, preferring larger
+	 * estimates and then learners appearing earlier in the source.  A thread
+	 * always fits when no other thread is training.  The caller must hold
+	 * {@link #learnerDependencies}'s monitor.
+	 *
+	 * @param budget The number of bytes the memory estimates of all training
+	 *               threads may add up to.
+	 * @return The chosen thread, or <code>null</code> if none fits.
+	 **/
+	private TrainingThread nextReadyThread(long budget) {
+		TrainingThread result = null;
+
+		for (Iterator I = readyThreads.iterator(); I.hasNext(); ) {
+			TrainingThread thread = (TrainingThread) I.next();
+			if (runningThreads > 0
+					&& thread.memoryEstimate > budget - memoryInUse)
+				continue;
+			if (result == null
+					|| thread.criticalPath > result.criticalPath
+					|| thread.criticalPath == result.criticalPath
+					&& (thread.memoryEstimate > result.memoryEstimate
+							|| thread.memoryEstimate == result.memoryEstimate
+							&& thread.byteOffset < result.byteOffset))
+				result = thread;
+		}
+
+		return result;
+	}
 
-			if (thread != null) {
-				thread.start();
 
-				if (!Main.concurrentTraining) {
-					try { thread.join(); }
-					catch (InterruptedException e) {
-						System.err.println("LBJava ERROR: Training of " + thread.getName()
-								+ " has been interrupted.");
-						fatalError = true;
+	/** <!-- trainAll() -->
+	 * Trains every learner in the {@link #learnerDependencies} graph on a
+	 * pool of worker threads, starting each one as soon as the learners it
+	 * depends on have been trained.  Without {@link Main#concurrentTraining},
+	 * the pool has a single worker.  Otherwise, it has
+	 * {@link Main#trainingThreads} workers, or one per processor, and a
+	 * learner is only started while the memory estimates of the training
+	 * learners add up to at most {@link Main#trainingMemory} bytes, or the
+	 * JVM's maximum heap size.  When training in parallel, the time each
+	 * learner spent waiting and training is reported at the end.
+	 **/
+	protected void trainAll() {
+		int limit = 1;
+		long budget = Main.trainingMemory;
+		if (budget == 0) budget = Runtime.getRuntime().maxMemory();
+
+		if (Main.concurrentTraining) {
+			limit = Main.trainingThreads;
+			if (limit == 0) limit = Runtime.getRuntime().availableProcessors();
+		}
+
+		readyThreads = new LinkedList();
+		runningThreads = 0;
+		memoryInUse = 0;
+		if (threads.length == 0) return;
+
+		ExecutorService pool =
+			Executors.newFixedThreadPool(Math.min(limit, threads.length));
+		long start = System.currentTimeMillis();
+		executeReadyThreads(null);
+
+		try {
+			synchronized (learnerDependencies) {
+				while (readyThreads.size() > 0 || runningThreads > 0) {
+					TrainingThread next =
+						runningThreads < limit ? nextReadyThread(budget) : null;
+
+					if (next == null) {
+						try { learnerDependencies.wait(); }
+						catch (InterruptedException e) {
+							System.err.println(
+									"LBJava ERROR: Training has been interrupted.");
+							fatalError = true;
+							return;
+						}
+
+						continue;
 					}
+
+					readyThreads.remove(next);
+					++runningThreads;
+					memoryInUse += next.memoryEstimate;
+					final TrainingThread thread = next;
+
+					pool.execute(
+						new Runnable() {
+							public void run() {
+								thread.startTime = System.currentTimeMillis();
+								try { thread.run(); }
+								finally {
+									synchronized (learnerDependencies) {
+										thread.finishTime = System.currentTimeMillis();
+										--runningThreads;
+										memoryInUse -= thread.memoryEstimate;
+										learnerDependencies.notifyAll();
+									}
+								}
+							}
+						});
+				}
+			}
+		}
+		finally { pool.shutdown(); }
+
+		if (Main.concurrentTraining) {
+			System.out.println("Training times (waiting / training):");
+
+			for (int i = threads.length - 1; i >= 0; --i) {
+				TrainingThread thread = threads[i];
+				if (thread.finishTime == 0) {
+					System.out.println("  " + thread.getName() + ": not trained");
+					continue;
 				}
+
+				System.out.println("  " + thread.getName() + ": "
+						+ seconds(thread.startTime - thread.readyTime) + " / "
+						+ seconds(thread.finishTime - thread.startTime));
 			}
+
+			System.out.println("  total: "
+					+ seconds(System.currentTimeMillis() - start));
 		}
 	}
 
 
+	/** <!-- seconds(long) -->
+	 * Formats a duration for the timing report of {@link #trainAll()}.
+	 *
+	 * @param milliseconds The duration in milliseconds.
+	 * @return The duration in seconds, with three decimal places.
+	 **/
+	private static String seconds(long milliseconds) {
+		return (milliseconds / 1000) + "."
+			+ String.valueOf(1000 + milliseconds % 1000).substring(1) + "s";
+	}
+
+
 	/** <!-- run(AST) -->
 	 * Runs this pass on all nodes of the indicated type.
 	 *
@@ -286,6 +640,7 @@ public class Train extends Pass
 		if (RevisionAnalysis.noChanges) return;
 		threadMap = new HashMap();
 		learnerDependencies = new HashMap();
+		ExampleCache.clearInputDigests();
 
 		if (Main.fileNames.size() > 0) {
 			String files = "";
@@ -300,16 +655,7 @@ public class Train extends Pass
 		runOnChildren(ast);
 
 		fillLearnerDependorsDAG();
-		executeReadyThreads(null);
-
-		for (int i = 0; i < threads.length; ++i) {
-			try { threads[i].join(); }
-			catch (InterruptedException e) {
-				System.err.println("LBJava ERROR: Training of " + threads[i].getName()
-						+ " has been interrupted.");
-				fatalError = true;
-			}
-		}
+		trainAll();
 
 		if (!fatalError && newCode) {
 			String files = "";
@@ -396,7 +742,9 @@ public class Train extends Pass
 
 	/**
 	 * This class contains the code that trains a learning classifier.  It is a
-	 * subclass of <code>Thread</code> so that it may be executed concurrently.
+	 * subclass of <code>Thread</code> so that it may be executed concurrently,
+	 * although {@link Train#trainAll()} calls its {@link #run()} method on
+	 * the threads of a bounded pool instead of starting it.
 	 *
 	 * @author Nick Rizzolo
 	 **/
@@ -405,6 +753,42 @@ public class Train extends Pass
 		// Member variables.
 		/** The byte offset at which the learner appeared. */
 		public int byteOffset;
+		/**
+		 * The number of learners on the longest chain of learners depending on
+		 * this one, including this one.
+		 **/
+		public int criticalPath;
+		/** The estimated number of bytes of heap needed to train the learner. */
+		public long memoryEstimate;
+		/** When the learners this one depends on had all been trained. */
+		public long readyTime;
+		/** When training started. */
+		public long startTime;
+		/** When training finished, or 0 if it hasn't. */
+		public long finishTime;
+		/**
+		 * The thread whose pre-extracted examples this learner reuses, or
+		 * <code>null</code> if it pre-extracts its own.
+		 **/
+		protected TrainingThread sharedExamples;
+		/**
+		 * The number of learners reusing this learner's pre-extracted examples
+		 * that haven't taken a copy of {@link #sharedLexicon} yet.
+		 **/
+		protected int sharedBy;
+		/** The threads training the learners reusing this one's examples. */
+		protected LinkedList followers = new LinkedList();
+		/**
+		 * The labels this learner gives the examples in
+		 * {@link #sharedExamples}'s example file, recorded while that file was
+		 * written, or <code>null</code> if they weren't recorded.
+		 **/
+		protected ArrayList sharedLabels;
+		/**
+		 * The feature lexicon of this learner's pre-extracted examples, kept
+		 * for the learners reusing them.
+		 **/
+		protected Lexicon sharedLexicon;
 		/** The expression that specified the learner. */
 		protected LearningClassifierExpression lce;
 		/** The learning classifier being trained. */
@@ -508,6 +892,136 @@ public class Train extends Pass
 		}
 
 
+		/** <!-- estimateMemory() -->
+		 * Estimates the number of bytes of heap needed to train the learner from
+		 * the sizes of the files written the last time it was trained: its
+		 * pre-extracted examples, its lexicon, and its model.  These files are
+		 * compact encodings of what training holds in memory, so the estimate
+		 * is twice their size, counting compressed example files four times
+		 * over.  Learners that have never been trained and learners that are
+		 * only having code generated are estimated to need nothing.
+		 *
+		 * @return The estimated number of bytes.
+		 **/
+		protected long estimateMemory() {
+			if (lce.onlyCodeGeneration) return 0;
+			int examplesFactor = preExtractZip ? 4 : 1;
+			long result = 0;
+			if (exFilePath != null)
+				result += new File(exFilePath).length() * examplesFactor;
+			if (testExFilePath != null)
+				result += new File(testExFilePath).length() * examplesFactor;
+			result += new File(classDir + getName() + ".lex").length();
+			result += new File(classDir + getName() + ".lc").length();
+			return 2 * result;
+		}
+
+
+		/** <!-- getSharingKey() -->
+		 * Returns a string that is the same for any two learners that would
+		 * pre-extract the same training examples into a file, or
+		 * <code>null</code> if this learner's examples shouldn't be shared.
+		 * Examples are not shared when they are pruned, since pruning depends
+		 * on the labels, or when they don't need to be extracted at all.
+		 **/
+		protected String getSharingKey() {
+			if (lce.onlyCodeGeneration || lce.parser == null || exFilePath == null
+					|| lce.featuresStatus == RevisionAnalysis.UNAFFECTED
+					|| lce.pruneCountType != null)
+				return null;
+			return lce.extractor.name + " " + lce.featureEncoding + " "
+				+ lce.parser;
+		}
+
+
+		/** <!-- useCachedExamples(String) -->
+		 * Looks up this learner's pre-extracted examples in the
+		 * {@link ExampleCache}.  If they're there, {@link #trainer} is replaced
+		 * with one that reads them, and this learner gets their label lexicon,
+		 * and their feature lexicon is written to disk as if they had just
+		 * been pre-extracted.
+		 *
+		 * @param key  The examples' key in the cache.
+		 * @return The feature lexicon of the cached examples, or
+		 *         <code>null</code> if they aren't cached.
+		 **/
+		private Lexicon useCachedExamples(String key) {
+			Object[] cached = ExampleCache.retrieve(key, exFilePath);
+			if (cached == null) return null;
+			System.out.println("  " + getName() + ": Using cached examples " + key);
+
+			Lexicon lexicon = (Lexicon) cached[0];
+			learner.setLabelLexicon((Lexicon) cached[1]);
+			learner.setLexicon(lexicon);
+			learner.saveLexicon();
+
+			Parser parser =
+				exFilePath == null
+				? new ArrayFileParser((byte[]) cached[2], preExtractZip)
+				: new ArrayFileParser(exFilePath, preExtractZip);
+			trainer = new BatchTrainer(learner, parser, trainer.getProgressOutput());
+			trainer.fillInSizes();
+			learner.setLexicon(null);
+			return lexicon;
+		}
+
+
+		/** <!-- recordFollowersLabels() -->
+		 * Replaces {@link #trainer} with one that also records the labels
+		 * every learner in {@link #followers} gives the examples as they're
+		 * pre-extracted, so that those learners needn't parse them again.
+		 **/
+		private void recordFollowersLabels() {
+			Learner[] learners = new Learner[followers.size()];
+			ArrayList[] labels = new ArrayList[learners.length];
+			int i = 0;
+
+			for (Iterator I = followers.iterator(); I.hasNext(); ++i) {
+				TrainingThread follower = (TrainingThread) I.next();
+				learners[i] = follower.learner;
+				labels[i] = follower.sharedLabels = new ArrayList();
+			}
+
+			trainer =
+				new BatchTrainer(learner,
+						new LabelRecordingParser(trainer.getParser(), learners, labels),
+						trainer.getProgressOutput());
+		}
+
+
+		/** <!-- useSharedExamples() -->
+		 * Replaces {@link #trainer} with one whose examples are the features
+		 * pre-extracted for {@link #sharedExamples} labeled by this learner,
+		 * and gives this learner a copy of their feature lexicon.  The labels
+		 * are the ones recorded while the examples were pre-extracted, unless
+		 * they were retrieved from the {@link ExampleCache}, in which case the
+		 * examples are parsed again to label them.
+		 **/
+		private void useSharedExamples() {
+			TrainingThread leader = sharedExamples;
+			System.out.println("  " + getName()
+					+ ": Reusing the examples pre-extracted for " + leader.getName());
+
+			synchronized (leader) {
+				learner.setLexicon((Lexicon) leader.sharedLexicon.clone());
+				if (--leader.sharedBy == 0) leader.sharedLexicon = null;
+			}
+
+			Parser features =
+				new ArrayFileParser(leader.exFilePath, leader.preExtractZip);
+			Parser parser = null;
+			if (sharedLabels == null)
+				parser = new RelabelingParser(trainer.getParser(), features, learner);
+			else {
+				trainer.getParser().close();
+				parser = new RelabelingParser(sharedLabels, features);
+			}
+
+			trainer =
+				new BatchTrainer(learner, parser, trainer.getProgressOutput());
+		}
+
+
 		/** <!-- getLearner(String) -->
 		 * Obtain an instance of the learner appropriate for the revision status
 		 * of the source file.  This method also fills in the
@@ -720,8 +1234,30 @@ public class Train extends Pass
 			// to avoid reading it from disk again.
 
 			if (pruningPolicy.isNone()) {
-				if (lce.featuresStatus != RevisionAnalysis.UNAFFECTED)
-					lexicon = trainer.preExtract(exFilePath, preExtractZip);
+				if (lce.featuresStatus != RevisionAnalysis.UNAFFECTED) {
+					String key = ExampleCache.isEnabled()
+						? ExampleCache.getKey(lce, preExtractZip) : null;
+					if (key != null) lexicon = useCachedExamples(key);
+
+					if (lexicon == null) {
+						if (sharedExamples != null) useSharedExamples();
+						else if (sharedBy > 0) recordFollowersLabels();
+						lexicon = trainer.preExtract(exFilePath, preExtractZip);
+
+						if (key != null) {
+							byte[] data = exFilePath != null ? null
+								: ((ArrayFileParser) trainer.getParser()).getExampleData();
+							ExampleCache.store(key, exFilePath, data, lexicon,
+									learner.getLabelLexicon());
+						}
+					}
+
+					sharedLabels = null;
+					if (sharedBy > 0) {
+						synchronized (this) { sharedLexicon = (Lexicon) lexicon.clone(); }
+						executeReadyThreads(exFilePath);
+					}
+				}
 				else if (lce.pruneStatus != RevisionAnalysis.UNAFFECTED)
 					lexicon = learner.getLexiconDiscardCounts();
 				else trainer.fillInSizes();
@@ -995,12 +1531,6 @@ public class Train extends Pass
 
 					ast.symbolTable.generateHeader(out);
 
-					if (lce.cacheIn != null) {
-						String f = lce.cacheIn.toString();
-						boolean cachedInMap = f.equals(ClassifierAssignment.mapCache);
-						if (cachedInMap) out.println("import java.util.WeakHashMap;");
-					}
-
 					out.println("\n");
 					if (lce.comment != null) out.println(lce.comment);
 
@@ -1051,11 +1581,14 @@ public class Train extends Pass
 
 					out.println("  private static void loadInstance()");
 					out.println("  {");
-					out.println("    if (instance == null)");
+					out.println("    if (instance != null) return;");
+					out.println("    synchronized (" + getName() + ".class)");
 					out.println("    {");
-					out.println("      instance = (" + getName()
+					out.println("      if (instance != null) return;");
+					out.println("      " + getName() + " result = (" + getName()
 							+ ") Learner.readLearner(_lcFilePath);");
-					out.println("      instance.readLexiconOnDemand(_lexFilePath);");
+					out.println("      result.readLexiconOnDemand(_lexFilePath);");
+					out.println("      instance = result;");
 					out.println("    }");
 					out.println("  }\n");
 
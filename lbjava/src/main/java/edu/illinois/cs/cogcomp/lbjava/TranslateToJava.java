@@ -11,7 +11,9 @@
 package edu.illinois.cs.cogcomp.lbjava;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.PrintStream;
@@ -21,7 +23,13 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPOutputStream;
 
 import edu.illinois.cs.cogcomp.lbjava.IR.AST;
@@ -108,7 +116,12 @@ import edu.illinois.cs.cogcomp.lbjava.io.HexOutputStream;
 
 /**
  * This pass generates Java code from an AST, but does not perform any
- * training.
+ * training.  When {@link Main#codeGenerationThreads} allows more than one,
+ * the code for the top level declarations is generated concurrently, each
+ * with its own instance of this pass, and the messages they print are
+ * printed in the order of the declarations.  A generated file is only
+ * written and compiled when its contents have changed; see
+ * {@link #open(String)}.
  *
  * @author Nick Rizzolo
  **/
@@ -199,6 +212,12 @@ public class TranslateToJava extends Pass
 	 * {@link QuantifiedConstraintExpression}s they are.
 	 **/
 	private int quantifierNesting;
+	/**
+	 * The messages to print once the code for the declaration this pass is
+	 * working on has been generated, or <code>null</code> if they are printed
+	 * right away.
+	 **/
+	private StringBuffer messages;
 
 	/**
 	 * Associates an AST with this pass.
@@ -271,6 +290,20 @@ public class TranslateToJava extends Pass
 	public String getMethodBody() { return methodBody.toString(); }
 
 
+	/**
+	 * Announces that code is being generated for the named declaration,
+	 * either right away or, when {@link #messages} is set, once this pass is
+	 * done.
+	 *
+	 * @param name The name of the declaration.
+	 **/
+	private void generating(String name) {
+		String message = "Generating code for " + name;
+		if (messages == null) System.out.println(message);
+		else messages.append(message).append("\n");
+	}
+
+
 	/**
 	 * Create a <code>PrintStream</code> that writes to a Java file
 	 * corresponding to the specified {@link CodeGenerator}.
@@ -285,6 +318,11 @@ public class TranslateToJava extends Pass
 
 	/**
 	 * Create a <code>PrintStream</code> that writes to the specified file.
+	 * The code printed to it is kept in memory until it is closed.  Then, if
+	 * the file already holds exactly the same code and its class file is at
+	 * least as new as the file, the file is left alone and not added to
+	 * {@link Main#fileNames}, so that it won't be compiled again.  Otherwise,
+	 * the file is written and added.
 	 *
 	 * @param name The name of the file to open.
 	 * @return The stream, or <code>null</code> if it couldn't be created.
@@ -308,16 +346,142 @@ public class TranslateToJava extends Pass
 		else if (Main.sourceDirectory != null)
 			name = Main.sourceDirectory + File.separator + name;
 
-		Main.fileNames.add(name);
+		return new GeneratedFile(name);
+	}
 
-		PrintStream out = null;
 
-		try { out = new PrintStream(new FileOutputStream(name)); }
-		catch (Exception e) {
-			System.err.println("Can't open '" + name + "' for output: " + e);
+	/**
+	 * Determines whether the given file already holds exactly the given code
+	 * and has been compiled since it was last modified.
+	 *
+	 * @param file The generated Java file.
+	 * @param code Its new contents.
+	 * @return <code>true</code> iff the file needn't be written or compiled.
+	 **/
+	private static boolean isUpToDate(File file, byte[] code) {
+		if (!file.exists() || file.length() != code.length) return false;
+
+		String className = file.getName();
+		className = className.substring(0, className.lastIndexOf('.'))
+				+ ".class";
+		File classFile =
+				Main.classDirectory != null
+				? new File(Main.classDirectory, className)
+						: new File(file.getAbsoluteFile().getParentFile(), className);
+		if (!classFile.exists() || classFile.lastModified() < file.lastModified())
+			return false;
+
+		byte[] old = new byte[code.length];
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try { in.readFully(old); }
+			finally { in.close(); }
+		}
+		catch (Exception e) { return false; }
+
+		return Arrays.equals(old, code);
+	}
+
+
+	/**
+	 * The stream returned by {@link TranslateToJava#open(String)}, which
+	 * writes its file when it is closed.
+	 **/
+	private static class GeneratedFile extends PrintStream
+	{
+		/** The name of the file. */
+		private String name;
+		/** Collects the code written to this stream. */
+		private ByteArrayOutputStream buffer;
+		/** Set once the file has been written. */
+		private boolean closed;
+
+
+		/**
+		 * Initializing constructor.
+		 *
+		 * @param n  The name of the file.
+		 **/
+		public GeneratedFile(String n) { this(n, new ByteArrayOutputStream()); }
+
+		/**
+		 * Initializing constructor.
+		 *
+		 * @param n  The name of the file.
+		 * @param b  The buffer collecting the code.
+		 **/
+		private GeneratedFile(String n, ByteArrayOutputStream b) {
+			super(b);
+			name = n;
+			buffer = b;
 		}
 
-		return out;
+
+		/** Writes the file if its contents have changed. */
+		public void close() {
+			synchronized (this) {
+				if (closed) return;
+				closed = true;
+			}
+
+			// PrintStream.close() discards the underlying stream.
+			super.close();
+			byte[] code = buffer.toByteArray();
+			if (isUpToDate(new File(name), code)) return;
+
+			synchronized (Main.fileNames) { Main.fileNames.add(name); }
+
+			try {
+				FileOutputStream file = new FileOutputStream(name);
+				try { file.write(code); }
+				finally { file.close(); }
+			}
+			catch (Exception e) {
+				System.err.println("Can't write '" + name + "': " + e);
+			}
+		}
+	}
+
+
+	/**
+	 * Generates the declaration of the cache in which a classifier declared
+	 * with <code>cached</code> keeps the example it was last called on and
+	 * its result, along with the <code>clearCache()</code> method.  Each
+	 * thread has its own entry, holding the example and the result together
+	 * so that they are always read and written as a pair, and the entry is
+	 * set only once the result has been computed.  <code>clearCache()</code>
+	 * replaces the <code>volatile</code> thread local, clearing the entries
+	 * of every thread at once.
+	 *
+	 * @param out The stream to write to.
+	 **/
+	private static void generateSingleExampleCache(PrintStream out) {
+		out.println("  private static volatile ThreadLocal __cache = "
+				+ "new ThreadLocal();");
+		out.println("  public static void clearCache() { __cache = "
+				+ "new ThreadLocal(); }");
+	}
+
+
+	/**
+	 * Generates the declaration of the cache in which a classifier declared
+	 * with <code>cachedinmap</code> keeps its values.  The cache is created by
+	 * {@link edu.illinois.cs.cogcomp.lbjava.classify.ValueCaches} under the
+	 * classifier's fully qualified name with the capacity given in the
+	 * source, if any.
+	 *
+	 * @param out The stream to write to.
+	 * @param ce  The classifier.
+	 **/
+	private static void generateValueCache(PrintStream out,
+			ClassifierExpression ce) {
+		String name = ce.name.toString();
+		String pack = AST.globalSymbolTable.getPackage();
+		if (pack.length() != 0) name = pack + "." + name;
+		out.println("  private static final ValueCache __valueCache =");
+		out.println("    ValueCaches.create(\"" + name + "\", "
+				+ (ce.cacheCapacity == null ? "0" : ce.cacheCapacity.value)
+				+ ");");
 	}
 
 
@@ -353,7 +517,7 @@ public class TranslateToJava extends Pass
 		boolean cachedInMap = false;
 
 		out.println("  public static boolean isTraining;");
-		out.println("  public static " + lceName + " instance;\n");
+		out.println("  public static volatile " + lceName + " instance;\n");
 
 		out.println("  public static " + lceName + " getInstance()");
 		out.println("  {");
@@ -364,9 +528,10 @@ public class TranslateToJava extends Pass
 		if (lce.cacheIn != null) {
 			field = lce.cacheIn.toString();
 			cachedInMap = field.equals(ClassifierAssignment.mapCache);
-			if (cachedInMap)
-				out.println("  private static final WeakHashMap __valueCache "
-						+ "= new WeakHashMap();\n");
+			if (cachedInMap) {
+				generateValueCache(out, lce);
+				out.println();
+			}
 		}
 
 		HashSet invoked = (HashSet) SemanticAnalysis.invokedGraph.get(lceName);
@@ -417,14 +582,7 @@ public class TranslateToJava extends Pass
 		out.println("  public static TestingMetric getTestingMetric() { return "
 				+ lce.testingMetric + "; }\n");
 
-		if (lce.singleExampleCache) {
-			out.println(
-					"  private static ThreadLocal __cache = new ThreadLocal(){ };");
-			out.println("  private static ThreadLocal __exampleCache = "
-					+ "new ThreadLocal(){ };");
-			out.println("  public static void clearCache() { __exampleCache = new "
-					+ "ThreadLocal() { }; }");
-		}
+		if (lce.singleExampleCache) generateSingleExampleCache(out);
 
 		if (lce.attributeString.length() != 0
 				&& lce.learnerParameterBlock == null)
@@ -435,6 +593,27 @@ public class TranslateToJava extends Pass
 
 		out.println("  public void unclone() { isClone = false; }\n");
 
+		out.println("  public void freeze()");
+		out.println("  {");
+		out.println("    if (isClone)");
+		out.println("    {");
+		out.println("      loadInstance();");
+		out.println("      instance.freeze();");
+		out.println("      return;");
+		out.println("    }\n");
+		out.println("    super.freeze();");
+		out.println("  }\n");
+
+		out.println("  public boolean isFrozen()");
+		out.println("  {");
+		out.println("    if (isClone)");
+		out.println("    {");
+		out.println("      loadInstance();");
+		out.println("      return instance.isFrozen();");
+		out.println("    }\n");
+		out.println("    return super.isFrozen();");
+		out.println("  }\n");
+
 		out.println("  public " + lceName + "()");
 		out.println("  {");
 		String fqName = AST.globalSymbolTable.getPackage();
@@ -1280,9 +1459,10 @@ public class TranslateToJava extends Pass
 		if (anyCache || !bodyPrimitive) {
 			out.println("  {");
 			if (classifierExp.singleExampleCache) {
-				out.println("    if (__example == __exampleCache.get()) return ("
-						+ cachedMethodReturnType + ") __cache.get();");
-				out.println("    __exampleCache.set(__example);");
+				out.println("    ThreadLocal __local = __cache;");
+				out.println("    Object[] __last = (Object[]) __local.get();");
+				out.println("    if (__last != null && __last[0] == __example) "
+						+ "return (" + cachedMethodReturnType + ") __last[1];");
 			}
 
 			if (field != null) {
@@ -1331,7 +1511,8 @@ public class TranslateToJava extends Pass
 				if (array) out.print(")");
 				out.println(";");
 				if (classifierExp.singleExampleCache)
-					out.println("      __cache.set(result);");
+					out.println(
+						"      __local.set(new Object[]{ __example, result });");
 				out.println("      return result;");
 				out.println("    }\n");
 			}
@@ -1401,7 +1582,8 @@ public class TranslateToJava extends Pass
 			}
 
 			if (classifierExp.singleExampleCache)
-				out.println("    __cache.set(__result);");
+				out.println(
+					"    __local.set(new Object[]{ __example, __result });");
 			out.println("    return __result;");
 			out.println("  }");
 		}
@@ -1530,12 +1712,57 @@ public class TranslateToJava extends Pass
 	 *
 	 * @param ast  The node to process.
 	 **/
-	public void run(AST ast) {
-		if (!RevisionAnalysis.noChanges) {
-			quantificationVariables = new HashMap<String, Integer>();
-			contextVariables = new HashMap<String, Integer>();
+	public void run(final AST ast) {
+		if (RevisionAnalysis.noChanges) return;
+		quantificationVariables = new HashMap<String, Integer>();
+		contextVariables = new HashMap<String, Integer>();
+
+		int limit = Main.codeGenerationThreads;
+		if (limit == 0) limit = Runtime.getRuntime().availableProcessors();
+		limit = Math.min(limit, ast.declarations.size());
+		if (limit <= 1) {
 			runOnChildren(ast);
+			return;
 		}
+
+		if (ast.packageDeclaration != null) ast.packageDeclaration.runPass(this);
+		ast.imports.runPass(this);
+
+		ExecutorService pool = Executors.newFixedThreadPool(limit);
+		LinkedList<Future<String>> results = new LinkedList<Future<String>>();
+
+		try {
+			for (ASTNodeIterator I = ast.declarations.iterator(); I.hasNext(); ) {
+				final ASTNode declaration = I.next();
+				results.add(pool.submit(
+						new Callable<String>() {
+							public String call() {
+								TranslateToJava translator = new TranslateToJava(ast);
+								translator.quantificationVariables =
+										new HashMap<String, Integer>();
+								translator.contextVariables = new HashMap<String, Integer>();
+								translator.messages = new StringBuffer();
+								declaration.runPass(translator);
+								return translator.messages.toString();
+							}
+						}));
+			}
+
+			for (Iterator<Future<String>> I = results.iterator(); I.hasNext(); ) {
+				try { System.out.print(I.next().get()); }
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof Error) throw (Error) cause;
+					throw new RuntimeException(cause);
+				}
+				catch (InterruptedException e) {
+					System.err.println("LBJava ERROR: Interrupted while generating code.");
+					System.exit(1);
+				}
+			}
+		}
+		finally { pool.shutdown(); }
 	}
 
 
@@ -1554,7 +1781,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + cnName);
+		generating(cnName);
 
 		PrintStream out = open(cn);
 		if (out == null) return;
@@ -1569,7 +1796,6 @@ public class TranslateToJava extends Pass
 		if (cn.cacheIn != null) {
 			field = cn.cacheIn.toString();
 			cachedInMap = field.equals(ClassifierAssignment.mapCache);
-			if (cachedInMap) out.println("import java.util.WeakHashMap;");
 		}
 
 		out.println("\n");
@@ -1578,21 +1804,15 @@ public class TranslateToJava extends Pass
 		out.println("public class " + cnName + " extends Classifier");
 		out.println("{");
 
-		if (cachedInMap)
-			out.println("  private static final WeakHashMap __valueCache "
-					+ "= new WeakHashMap();");
+		if (cachedInMap) generateValueCache(out, cn);
 
 		String referentNoDots = cn.referent.toString().replace('.', '$');
 		out.println("  private static final " + cn.referent + " __"
 				+ referentNoDots + " = new " + cn.referent + "();\n");
 
 		if (cn.singleExampleCache) {
-			out.println(
-					"  private static ThreadLocal __cache = new ThreadLocal(){ };");
-			out.println("  private static ThreadLocal __exampleCache = "
-					+ "new ThreadLocal(){ };");
-			out.println("  public static void clearCache() { __exampleCache = new "
-					+ "ThreadLocal(){ }; }\n");
+			generateSingleExampleCache(out);
+			out.println();
 		}
 
 		out.println("  public " + cnName + "()");
@@ -1614,11 +1834,11 @@ public class TranslateToJava extends Pass
 				|| cn.returnType.type == ClassifierReturnType.MIXED_GENERATOR;
 
 		StringBuffer body = new StringBuffer();
-		body.append("    __result = __");
-		body.append(referentNoDots);
-		body.append(".");
+		body.append("    __result = FeatureExtractionContext.");
 		body.append(array || generator ? "classify" : "featureValue");
-		body.append("(__example);\n");
+		body.append("(__");
+		body.append(referentNoDots);
+		body.append(", __example);\n");
 
 		generateClassificationMethods(out, cn, null, body.toString(), false,
 				false, null);
@@ -1646,7 +1866,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + ccName);
+		generating(ccName);
 
 		PrintStream out = open(fileName);
 		if (out == null) return;
@@ -1663,7 +1883,6 @@ public class TranslateToJava extends Pass
 		if (cc.cacheIn != null) {
 			field = cc.cacheIn.toString();
 			cachedInMap = field.equals(ClassifierAssignment.mapCache);
-			if (cachedInMap) out.println("import java.util.WeakHashMap;");
 		}
 
 		out.println("\n");
@@ -1672,9 +1891,7 @@ public class TranslateToJava extends Pass
 		out.println("public class " + ccName + " extends Classifier");
 		out.println("{");
 
-		if (cachedInMap)
-			out.println("  private static final WeakHashMap __valueCache "
-					+ "= new WeakHashMap();");
+		if (cachedInMap) generateValueCache(out, cc);
 
 		HashSet<String> invoked = SemanticAnalysis.invokedGraph.get(ccName);
 		if (invoked != null && invoked.size() > 0) {
@@ -1689,12 +1906,8 @@ public class TranslateToJava extends Pass
 		}
 
 		if (cc.singleExampleCache) {
-			out.println(
-					"  private static ThreadLocal __cache = new ThreadLocal(){ };");
-			out.println("  private static ThreadLocal __exampleCache = "
-					+ "new ThreadLocal(){ };");
-			out.println("  public static void clearCache() { __exampleCache = new "
-					+ "ThreadLocal(){ }; }\n");
+			generateSingleExampleCache(out);
+			out.println();
 		}
 
 		out.println("  public " + ccName + "()");
@@ -1830,7 +2043,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + cgName);
+		generating(cgName);
 
 		PrintStream out = open(fileName);
 		if (out == null) return;
@@ -1869,12 +2082,8 @@ public class TranslateToJava extends Pass
 		}
 
 		if (cg.singleExampleCache) {
-			out.println(
-					"\n  private static ThreadLocal __cache = new ThreadLocal(){ };");
-			out.println("  private static ThreadLocal __exampleCache = "
-					+ "new ThreadLocal(){ };");
-			out.println("  public static void clearCache() { __exampleCache = new "
-					+ "ThreadLocal() { }; }");
+			out.println();
+			generateSingleExampleCache(out);
 		}
 
 		out.println("\n  public " + cgName + "()");
@@ -1899,13 +2108,15 @@ public class TranslateToJava extends Pass
 			if (component.returnType.type == ClassifierReturnType.DISCRETE
 					|| component.returnType.type == ClassifierReturnType.REAL) {
 				body.append("    __result.addFeature(");
+				body.append("FeatureExtractionContext.featureValue(");
 				body.append(nameNoDots);
-				body.append(".featureValue(__example));\n");
+				body.append(", __example));\n");
 			}
 			else {
 				body.append("    __result.addFeatures(");
+				body.append("FeatureExtractionContext.classify(");
 				body.append(nameNoDots);
-				body.append(".classify(__example));\n");
+				body.append(", __example));\n");
 			}
 		}
 
@@ -1947,7 +2158,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + iiName);
+		generating(iiName);
 
 		PrintStream out = open(ii);
 		if (out == null) return;
@@ -1962,7 +2173,6 @@ public class TranslateToJava extends Pass
 		if (ii.cacheIn != null) {
 			field = ii.cacheIn.toString();
 			cachedInMap = field.equals(ClassifierAssignment.mapCache);
-			if (cachedInMap) out.println("import java.util.WeakHashMap;");
 		}
 
 		out.println("\n");
@@ -1971,21 +2181,15 @@ public class TranslateToJava extends Pass
 		out.println("public class " + iiName + " extends Classifier");
 		out.println("{");
 
-		if (cachedInMap)
-			out.println("  private static final WeakHashMap __valueCache "
-					+ "= new WeakHashMap();");
+		if (cachedInMap) generateValueCache(out, ii);
 
 		String iiClassifierName = ii.classifier.toString();
 		out.println("  private static final " + iiClassifierName + " __"
 				+ iiClassifierName + " = new " + iiClassifierName + "();\n");
 
 		if (ii.singleExampleCache) {
-			out.println(
-					"  private static ThreadLocal __cache = new ThreadLocal(){ };");
-			out.println("  private static ThreadLocal __exampleCache = "
-					+ "new ThreadLocal(){ };");
-			out.println("  public static void clearCache() { __exampleCache = new "
-					+ "ThreadLocal(){ }; }\n");
+			generateSingleExampleCache(out);
+			out.println();
 		}
 
 		out.println("  public " + iiName + "()");
@@ -2109,7 +2313,7 @@ public class TranslateToJava extends Pass
 			// there will be no parameter tuning or cross validation.
 			return;
 
-		System.out.println("Generating code for " + lceName);
+		generating(lceName);
 
 		PrintStream out = open(fileName);
 		if (out == null) return;
@@ -2119,12 +2323,6 @@ public class TranslateToJava extends Pass
 
 		ast.symbolTable.generateHeader(out);
 
-		if (lce.cacheIn != null) {
-			String field = lce.cacheIn.toString();
-			boolean cachedInMap = field.equals(ClassifierAssignment.mapCache);
-			if (cachedInMap) out.println("import java.util.WeakHashMap;");
-		}
-
 		out.println("\n");
 		if (lce.comment != null) out.println(lce.comment);
 
@@ -2132,8 +2330,12 @@ public class TranslateToJava extends Pass
 		out.println("{");
 		out.println("  private static void loadInstance()");
 		out.println("  {");
-		out.println("    if (instance == null) instance = new " + lceName
+		out.println("    if (instance != null) return;");
+		out.println("    synchronized (" + lceName + ".class)");
+		out.println("    {");
+		out.println("      if (instance == null) instance = new " + lceName
 				+ "(true);");
+		out.println("    }");
 		out.println("  }\n");
 
 		String formalParameterString = "";
@@ -2269,7 +2471,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + cName);
+		generating(cName);
 
 		PrintStream out = open(fileName);
 		if (out == null) return;
@@ -2294,12 +2496,8 @@ public class TranslateToJava extends Pass
 					+ c.right.name + "();\n");
 
 		if (c.singleExampleCache) {
-			out.println(
-					"  private static ThreadLocal __cache = new ThreadLocal(){ };");
-			out.println("  private static ThreadLocal __exampleCache = "
-					+ "new ThreadLocal(){ };");
-			out.println("  public static void clearCache() { __exampleCache = new "
-					+ "ThreadLocal() { }; }\n");
+			generateSingleExampleCache(out);
+			out.println();
 		}
 
 		out.println("  public " + cName + "()");
@@ -2334,15 +2532,19 @@ public class TranslateToJava extends Pass
 		StringBuffer body = new StringBuffer();
 
 		if (primitive)
-			body.append("    __result = left.featureValue(__example)"
-					+ ".conjunction(right.featureValue(__example), this);\n");
+			body.append("    __result =\n"
+					+ "      FeatureExtractionContext.featureValue(left, __example)\n"
+					+ "      .conjunction(FeatureExtractionContext.featureValue(right, "
+					+ "__example), this);\n");
 		else {
 			body.append("    __result = new FeatureVector();\n");
 			if (leftIsPrimitive)
-				body.append("    Feature lf = left.featureValue(__example);\n");
+				body.append("    Feature lf = "
+						+ "FeatureExtractionContext.featureValue(left, __example);\n");
 			else
 				body.append(
-						"    FeatureVector leftVector = left.classify(__example);\n"
+						"    FeatureVector leftVector =\n"
+								+ "      FeatureExtractionContext.classify(left, __example);\n"
 								+ "    int N = leftVector.featuresSize();\n");
 
 			if (c.left.equals(c.right)) {
@@ -2357,10 +2559,12 @@ public class TranslateToJava extends Pass
 			}
 			else {
 				if (rightIsPrimitive)
-					body.append("    Feature rf = right.featureValue(__example);\n");
+					body.append("    Feature rf = "
+							+ "FeatureExtractionContext.featureValue(right, __example);\n");
 				else
 					body.append(
-							"    FeatureVector rightVector = right.classify(__example);\n"
+							"    FeatureVector rightVector =\n"
+									+ "      FeatureExtractionContext.classify(right, __example);\n"
 									+ "    int M = rightVector.featuresSize();\n");
 
 				String in = "";
@@ -2427,7 +2631,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + cdName);
+		generating(cdName);
 
 		PrintStream out = open(fileName);
 		if (out == null) return;
@@ -2540,7 +2744,7 @@ public class TranslateToJava extends Pass
 				.equals(RevisionAnalysis.REVISED))
 			return;
 
-		System.out.println("Generating code for " + inName);
+		generating(inName);
 
 		PrintStream out = open(fileName);
 		if (out == null) return;
@@ -16,7 +16,6 @@ import java.io.Serializable;
 import edu.illinois.cs.cogcomp.lbjava.learn.ChildLexicon;
 import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
 import edu.illinois.cs.cogcomp.lbjava.util.ByteString;
-import edu.illinois.cs.cogcomp.lbjava.util.ClassUtils;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
 
@@ -557,15 +556,11 @@ public abstract class Feature implements Cloneable, Comparable, Serializable
   public static Feature readFeature(ExceptionlessInputStream in) {
     String name = in.readString();
     if (name == null) return null;
-    Class c = ClassUtils.getClass(name);
     Feature result = null;
 
-    try { result = (Feature) c.newInstance(); }
+    try { result = (Feature) Class.forName(name).newInstance(); }
     catch (Exception e) {
-      System.err.println("Error instantiating feature '" + name + "':");
-      e.printStackTrace();
-      in.close();
-      System.exit(1);
+      in.fail("Error instantiating feature '" + name + "':", e);
     }
 
     result.read(in);
@@ -619,15 +614,14 @@ public abstract class Feature implements Cloneable, Comparable, Serializable
                                        Lexicon lex, Class c, String p,
                                        String g, String si, ByteString bi) {
     String name = in.readString();
-    if (name != null) c = ClassUtils.getClass(name);
     Feature result = null;
 
-    try { result = (Feature) c.newInstance(); }
+    try {
+      if (name != null) c = Class.forName(name);
+      result = (Feature) c.newInstance();
+    }
     catch (Exception e) {
-      System.err.println("Error instantiating feature '" + name + "':");
-      e.printStackTrace();
-      in.close();
-      System.exit(1);
+      in.fail("Error instantiating feature '" + name + "':", e);
     }
 
     result.lexRead(in, lex, p, g, si, bi);
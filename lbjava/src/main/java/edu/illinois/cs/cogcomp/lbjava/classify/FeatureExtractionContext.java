@@ -0,0 +1,353 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.classify;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+
+
+/**
+  * A feature extraction context remembers the features every feature
+  * generator has produced for every example object while it is open, so
+  * that no generator runs more than once on the same example, no matter how
+  * many learners, inference variables, composite generators, or conjunctions
+  * ask for its features.  A pipeline that runs several learners sharing
+  * feature generators over the same objects can open one for each request:
+  *
+  * <blockquote><pre>
+  *   FeatureExtractionContext context = FeatureExtractionContext.begin();
+  *   try { ... }
+  *   finally { context.close(); }
+  * </pre></blockquote>
+  *
+  * While a context is open on a thread, the code LBJava generates for
+  * composite generators, conjunctions, and classifier names, and the
+  * feature extraction of every {@link Learner}, look up the features of
+  * their children with {@link #classify(Classifier,Object)} and
+  * {@link #featureValue(Classifier,Object)}.  Without an open context,
+  * those methods simply call the classifier.
+  *
+  * <p> Example objects are told apart by identity, and classifiers by their
+  * <code>equals(Object)</code> methods.  The classifiers LBJava generates
+  * are equal to every instance of their class, since they have no state of
+  * their own, so all their instances share features.  Other classifiers
+  * are usually told apart by identity, since instances of the same class
+  * may have been constructed with different parameters.  The features of
+  * learners are never remembered, since instances of the same learner class
+  * may hold different models, but the features they extract are.  The returned
+  * features are shared by all callers and must not be modified.
+  *
+  * <p> A context is confined to the thread that opened it.  It counts the
+  * cache hits and misses of each generator, and the counts of all closed
+  * contexts are added up across threads.
+ **/
+public class FeatureExtractionContext
+{
+  /** The hits of all closed contexts. */
+  private static final AtomicLong totalHits = new AtomicLong();
+  /** The misses of all closed contexts. */
+  private static final AtomicLong totalMisses = new AtomicLong();
+  /** The context currently open on each thread, if any. */
+  private static final ThreadLocal contexts = new ThreadLocal();
+
+
+  /** The context to restore when this one is closed. */
+  private FeatureExtractionContext parent;
+  /** The thread that opened this context. */
+  private Thread thread;
+  /**
+    * Maps each example object to a map from classifiers to their
+    * {@link Extraction}s.
+   **/
+  private IdentityHashMap extractions;
+  /**
+    * Maps the names of classifier classes to two element <code>long</code>
+    * arrays holding their hits and misses.
+   **/
+  private HashMap counts;
+  /** The number of times features were found in this context. */
+  private long hits;
+  /** The number of times features had to be extracted in this context. */
+  private long misses;
+  /** Set once this context has been closed. */
+  private boolean closed;
+
+
+  /**
+    * Initializing constructor.
+    *
+    * @param p  The context to restore when this one is closed.
+   **/
+  private FeatureExtractionContext(FeatureExtractionContext p) {
+    parent = p;
+    thread = Thread.currentThread();
+    extractions = new IdentityHashMap();
+    counts = new HashMap();
+  }
+
+
+  /**
+    * Opens a new, empty context on the calling thread, which lasts until it
+    * is closed.  Contexts may be nested.
+    *
+    * @return The new context, which must be closed by the same thread.
+   **/
+  public static FeatureExtractionContext begin() {
+    FeatureExtractionContext result =
+      new FeatureExtractionContext((FeatureExtractionContext) contexts.get());
+    contexts.set(result);
+    return result;
+  }
+
+
+  /**
+    * Returns the context open on the calling thread, or <code>null</code> if
+    * there is none.
+   **/
+  public static FeatureExtractionContext current() {
+    return (FeatureExtractionContext) contexts.get();
+  }
+
+
+  /**
+    * Returns the features of the given example produced by the given
+    * classifier's <code>classify(Object)</code> method, computing them only
+    * if the context open on the calling thread doesn't have them yet.
+    *
+    * @param c        The classifier.
+    * @param example  The example object.
+    * @return The classifier's features of the example.
+   **/
+  public static FeatureVector classify(Classifier c, Object example) {
+    FeatureExtractionContext context =
+      (FeatureExtractionContext) contexts.get();
+    if (context == null || c instanceof Learner) return c.classify(example);
+
+    Extraction extraction = context.getExtraction(c, example);
+    if (extraction.vector != null) context.count(c, true);
+    else {
+      context.count(c, false);
+      extraction.vector = c.classify(example);
+    }
+
+    return extraction.vector;
+  }
+
+
+  /**
+    * Returns the feature of the given example produced by the given
+    * classifier's <code>featureValue(Object)</code> method, computing it
+    * only if the context open on the calling thread doesn't have it yet.
+    *
+    * @param c        The classifier.
+    * @param example  The example object.
+    * @return The classifier's feature of the example.
+   **/
+  public static Feature featureValue(Classifier c, Object example) {
+    FeatureExtractionContext context =
+      (FeatureExtractionContext) contexts.get();
+    if (context == null || c instanceof Learner) return c.featureValue(example);
+
+    Extraction extraction = context.getExtraction(c, example);
+    if (extraction.feature != null) context.count(c, true);
+    else {
+      context.count(c, false);
+      extraction.feature = c.featureValue(example);
+    }
+
+    return extraction.feature;
+  }
+
+
+  /**
+    * Returns the entry of the given classifier and example, creating it if
+    * necessary.
+    *
+    * @param c        The classifier.
+    * @param example  The example object.
+    * @return The entry holding whatever has been extracted so far.
+   **/
+  private Extraction getExtraction(Classifier c, Object example) {
+    HashMap byClassifier = (HashMap) extractions.get(example);
+    if (byClassifier == null) {
+      byClassifier = new HashMap();
+      extractions.put(example, byClassifier);
+    }
+
+    Extraction result = (Extraction) byClassifier.get(c);
+    if (result == null) {
+      result = new Extraction();
+      byClassifier.put(c, result);
+    }
+
+    return result;
+  }
+
+
+  /**
+    * Counts a hit or a miss of the given classifier.
+    *
+    * @param c    The classifier.
+    * @param hit  Whether its features were found.
+   **/
+  private void count(Classifier c, boolean hit) {
+    String name = c.getClass().getName();
+    long[] count = (long[]) counts.get(name);
+    if (count == null) {
+      count = new long[2];
+      counts.put(name, count);
+    }
+
+    if (hit) {
+      ++count[0];
+      ++hits;
+    }
+    else {
+      ++count[1];
+      ++misses;
+    }
+  }
+
+
+  /** Returns the number of example objects this context has seen. */
+  public int size() { return extractions.size(); }
+
+  /** Returns the number of times features were found in this context. */
+  public long getHits() { return hits; }
+
+  /** Returns the number of times features were extracted in this context. */
+  public long getMisses() { return misses; }
+
+  /**
+    * Returns the fraction of requests for features that were found in this
+    * context, or 0 if there were none.
+   **/
+  public double getHitRate() {
+    return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+  }
+
+
+  /**
+    * Returns the number of times the features of the named classifier class
+    * were found in this context.
+    *
+    * @param name The fully qualified name of the classifier's class.
+   **/
+  public long getHits(String name) {
+    long[] count = (long[]) counts.get(name);
+    return count == null ? 0 : count[0];
+  }
+
+
+  /**
+    * Returns the number of times the named classifier class extracted
+    * features in this context.
+    *
+    * @param name The fully qualified name of the classifier's class.
+   **/
+  public long getMisses(String name) {
+    long[] count = (long[]) counts.get(name);
+    return count == null ? 0 : count[1];
+  }
+
+
+  /**
+    * Returns the fully qualified names of the classifier classes whose
+    * features were requested in this context.
+   **/
+  public String[] getClassifierNames() {
+    return (String[]) counts.keySet().toArray(new String[counts.size()]);
+  }
+
+
+  /** Returns the hits of all contexts closed so far. */
+  public static long getTotalHits() { return totalHits.get(); }
+
+  /** Returns the misses of all contexts closed so far. */
+  public static long getTotalMisses() { return totalMisses.get(); }
+
+  /** Sets the hit and miss totals to 0. */
+  public static void resetStatistics() {
+    totalHits.set(0);
+    totalMisses.set(0);
+  }
+
+
+  /**
+    * Discards the features remembered by this context, along with those of
+    * any contexts nested in it that haven't been closed yet, adds its counts
+    * to the totals, and restores the context that was open when this one was
+    * opened.  Closing a context more than once has no effect.
+    *
+    * @throws IllegalStateException If called from a thread other than the
+    *                               one that opened the context.
+   **/
+  public void close() {
+    if (Thread.currentThread() != thread)
+      throw new IllegalStateException(
+          "LBJava ERROR: FeatureExtractionContext must be closed by the "
+          + "thread that opened it.");
+    if (closed) return;
+    closed = true;
+
+    FeatureExtractionContext c = (FeatureExtractionContext) contexts.get();
+    while (c != null && c != this) c = c.parent;
+    if (c != null) contexts.set(parent);
+    extractions.clear();
+    totalHits.addAndGet(hits);
+    totalMisses.addAndGet(misses);
+  }
+
+
+  /**
+    * Returns a report of the hits and misses of each classifier class in
+    * this context.
+   **/
+  public String toString() {
+    String[] names = getClassifierNames();
+    Arrays.sort(names);
+    StringBuffer result = new StringBuffer();
+    result.append("FeatureExtractionContext: ");
+    result.append(hits);
+    result.append(" hits, ");
+    result.append(misses);
+    result.append(" misses\n");
+
+    for (int i = 0; i < names.length; ++i) {
+      result.append("  ");
+      result.append(names[i]);
+      result.append(": ");
+      result.append(getHits(names[i]));
+      result.append(" / ");
+      result.append(getMisses(names[i]));
+      result.append("\n");
+    }
+
+    return result.toString();
+  }
+
+
+  /**
+    * The features a classifier has produced for an example, through either
+    * of its methods.
+   **/
+  private static class Extraction
+  {
+    /** The result of <code>classify(Object)</code>, if computed. */
+    public FeatureVector vector;
+    /** The result of <code>featureValue(Object)</code>, if computed. */
+    public Feature feature;
+  }
+}
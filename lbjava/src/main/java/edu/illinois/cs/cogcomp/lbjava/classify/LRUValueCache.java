@@ -0,0 +1,252 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.classify;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+  * The default {@link ValueCache}, which evicts the least recently used
+  * values once it is full.  Like the <code>WeakHashMap</code> that classifiers
+  * declared with <code>cachedinmap</code> used to cache their values in, it
+  * compares example objects with their <code>equals(Object)</code> methods.
+  *
+  * <p> To keep threads from waiting on each other, the cache is divided into
+  * up to {@link #maxSegments} segments, each locked separately and holding
+  * an equal share of the capacity.  There are never more segments than the
+  * capacity, so that every segment can hold a value; when the capacity
+  * changes, the segments are rebuilt to fit it.  An example's segment is
+  * chosen by its hash code, and the least recently used value of that
+  * segment is the one evicted, so eviction follows the order of use only
+  * approximately.
+ **/
+public class LRUValueCache implements ValueCache
+{
+  /** The largest number of segments a cache is divided into. */
+  public static final int maxSegments = 16;
+
+
+  /**
+    * The segments, whose number is a power of 2 no greater than the
+    * capacity.
+   **/
+  private volatile Segment[] segments;
+  /** The maximum number of values in all segments together. */
+  private volatile int capacity;
+  /** The number of times a requested value was found. */
+  private final AtomicLong hits = new AtomicLong();
+  /** The number of times a requested value was not found. */
+  private final AtomicLong misses = new AtomicLong();
+  /** The number of values evicted to respect the capacity. */
+  private final AtomicLong evictions = new AtomicLong();
+
+
+  /**
+    * Initializing constructor.
+    *
+    * @param c  The capacity, which must be positive.
+   **/
+  public LRUValueCache(int c) {
+    if (c <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: LRUValueCache capacity must be positive.");
+    setCapacity(c);
+  }
+
+
+  /**
+    * Returns the number of segments a cache with the given capacity is
+    * divided into.
+    *
+    * @param c  The capacity.
+    * @return The largest power of 2 no greater than either the capacity or
+    *         {@link #maxSegments}.
+   **/
+  private static int segmentsFor(int c) {
+    int result = 1;
+    while (result * 2 <= Math.min(maxSegments, c)) result *= 2;
+    return result;
+  }
+
+
+  /**
+    * Returns the segment in which the given example's value is kept.
+    *
+    * @param example  The example object.
+    * @return Its segment.
+   **/
+  private Segment segmentFor(Object example) {
+    return segmentFor(segments, example);
+  }
+
+
+  /**
+    * Returns the segment of the given array in which the given example's
+    * value is kept.
+    *
+    * @param s        The segments.
+    * @param example  The example object.
+    * @return Its segment.
+   **/
+  private static Segment segmentFor(Segment[] s, Object example) {
+    int h = example == null ? 0 : example.hashCode();
+    h ^= h >>> 16;
+    return s[h & (s.length - 1)];
+  }
+
+
+  /**
+    * Retrieves the value cached for the given example, making it the most
+    * recently used value of its segment.
+    *
+    * @param example  The example object.
+    * @return The cached value, or <code>null</code> if there is none.
+   **/
+  public Object get(Object example) {
+    Segment segment = segmentFor(example);
+    Object result;
+    synchronized (segment) { result = segment.get(example); }
+    if (result == null) misses.incrementAndGet();
+    else hits.incrementAndGet();
+    return result;
+  }
+
+
+  /**
+    * Caches a value for the given example, evicting the least recently used
+    * value of its segment if the segment is full.
+    *
+    * @param example  The example object.
+    * @param value    Its value.
+   **/
+  public void put(Object example, Object value) {
+    Segment segment = segmentFor(example);
+    synchronized (segment) { segment.put(example, value); }
+  }
+
+
+  /** Removes every cached value. */
+  public synchronized void clear() {
+    Segment[] s = segments;
+    for (int i = 0; i < s.length; ++i)
+      synchronized (s[i]) { s[i].clear(); }
+  }
+
+
+  /** Returns the number of cached values. */
+  public int size() {
+    Segment[] s = segments;
+    int result = 0;
+    for (int i = 0; i < s.length; ++i)
+      synchronized (s[i]) { result += s[i].size(); }
+    return result;
+  }
+
+
+  /** Returns the maximum number of cached values. */
+  public int getCapacity() { return capacity; }
+
+
+  /**
+    * Changes the maximum number of cached values, dividing it among the
+    * segments, and evicts the values that no longer fit.  If the new
+    * capacity calls for a different number of segments, the values are
+    * moved to new segments, from least to most recently used in each old
+    * one; values cached by other threads while they are moved may be lost.
+    *
+    * @param c  The new capacity, which must be positive.
+   **/
+  public synchronized void setCapacity(int c) {
+    if (c <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: LRUValueCache capacity must be positive.");
+    capacity = c;
+    Segment[] old = segments;
+    int n = segmentsFor(c);
+
+    if (old != null && old.length == n) {
+      for (int i = 0; i < n; ++i) {
+        synchronized (old[i]) {
+          old[i].limit = c / n + (i < c % n ? 1 : 0);
+          old[i].trim();
+        }
+      }
+
+      return;
+    }
+
+    Segment[] s = new Segment[n];
+    for (int i = 0; i < n; ++i) {
+      s[i] = new Segment();
+      s[i].limit = c / n + (i < c % n ? 1 : 0);
+    }
+
+    if (old != null) {
+      for (int i = 0; i < old.length; ++i) {
+        synchronized (old[i]) {
+          for (Iterator I = old[i].entrySet().iterator(); I.hasNext(); ) {
+            Map.Entry e = (Map.Entry) I.next();
+            segmentFor(s, e.getKey()).put(e.getKey(), e.getValue());
+          }
+        }
+      }
+    }
+
+    segments = s;
+  }
+
+
+  /** Returns the number of times a requested value was found. */
+  public long getHits() { return hits.get(); }
+
+  /** Returns the number of times a requested value was not found. */
+  public long getMisses() { return misses.get(); }
+
+  /** Returns the number of values evicted to respect the capacity. */
+  public long getEvictions() { return evictions.get(); }
+
+
+  /**
+    * A map from examples to values ordered from least to most recently
+    * used, holding at most {@link #limit} of them.
+   **/
+  private class Segment extends LinkedHashMap
+  {
+    /** The maximum number of values in this segment. */
+    public int limit;
+
+
+    /** Creates an empty segment ordered by access. */
+    public Segment() { super(16, 0.75f, true); }
+
+
+    /** Evicts least recently used values until the segment fits its limit. */
+    public void trim() {
+      if (size() <= limit) return;
+      Iterator I = keySet().iterator();
+      while (size() > limit) {
+        I.next();
+        I.remove();
+        evictions.incrementAndGet();
+      }
+    }
+
+
+    /** Keeps the segment within its limit after each insertion. */
+    protected boolean removeEldestEntry(Map.Entry eldest) {
+      trim();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.classify;
+
+
+/**
+  * The cache in which a classifier declared with <code>cachedinmap</code>
+  * keeps the values it has computed, indexed by example object.  The code
+  * LBJava generates for such a classifier obtains its cache from
+  * {@link ValueCaches}, where other implementations may be plugged in.
+  * Implementations must be safe to use from many threads at once, and must
+  * never hold more values than their capacity.
+ **/
+public interface ValueCache
+{
+  /**
+    * Retrieves the value cached for the given example.
+    *
+    * @param example  The example object.
+    * @return The cached value, or <code>null</code> if there is none.
+   **/
+  public Object get(Object example);
+
+
+  /**
+    * Caches a value for the given example, evicting other values if
+    * necessary to stay within the capacity.
+    *
+    * @param example  The example object.
+    * @param value    Its value, which is not <code>null</code>.
+   **/
+  public void put(Object example, Object value);
+
+
+  /** Removes every cached value. */
+  public void clear();
+
+  /** Returns the number of cached values. */
+  public int size();
+
+  /** Returns the maximum number of cached values. */
+  public int getCapacity();
+
+
+  /**
+    * Changes the maximum number of cached values.  A cache holding more
+    * values than its new capacity evicts the surplus.
+    *
+    * @param c  The new capacity, which must be positive.
+   **/
+  public void setCapacity(int c);
+
+
+  /** Returns the number of times a requested value was found. */
+  public long getHits();
+
+  /** Returns the number of times a requested value was not found. */
+  public long getMisses();
+
+  /** Returns the number of values evicted to respect the capacity. */
+  public long getEvictions();
+}
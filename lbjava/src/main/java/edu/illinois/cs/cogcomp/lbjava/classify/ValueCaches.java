@@ -0,0 +1,166 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.classify;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+  * Creates and keeps track of the {@link ValueCache}s of the classifiers
+  * declared with <code>cachedinmap</code>, indexed by the classifiers' fully
+  * qualified names.  The capacity of a classifier's cache is, in order of
+  * precedence,
+  *
+  * <ol>
+  *   <li> the capacity given to {@link #setCapacity(String,int)} for it,
+  *   <li> the capacity given in the LBJava source, as in
+  *        <code>cachedinmap(50000)</code>, or
+  *   <li> the {@link #getDefaultCapacity() default capacity}, which is
+  *        taken from the <code>lbjava.valueCache.capacity</code> system
+  *        property if it is set, and is {@link #defaultCapacity} otherwise.
+  * </ol>
+  *
+  * Capacities may be changed at any time, and take effect immediately.  The
+  * caches are {@link LRUValueCache}s unless a different {@link Factory} is
+  * {@link #setFactory(ValueCaches.Factory) set} before the classifiers are
+  * loaded.
+ **/
+public class ValueCaches
+{
+  /** The default capacity when no other is given. */
+  public static final int defaultCapacity = 10000;
+
+
+  /** Creates the caches of classifiers. */
+  public static interface Factory
+  {
+    /**
+      * Creates the cache of the named classifier.
+      *
+      * @param name     The classifier's fully qualified name.
+      * @param capacity The cache's capacity.
+      * @return The new cache.
+     **/
+    public ValueCache create(String name, int capacity);
+  }
+
+
+  /** The factory that creates {@link LRUValueCache}s. */
+  public static final Factory lruFactory =
+    new Factory() {
+      public ValueCache create(String name, int capacity) {
+        return new LRUValueCache(capacity);
+      }
+    };
+
+
+  /** The factory used to create new caches. */
+  private static volatile Factory factory = lruFactory;
+  /** The capacity of caches not given one explicitly. */
+  private static volatile int capacity =
+    Math.max(1, Integer.getInteger("lbjava.valueCache.capacity",
+                                   defaultCapacity).intValue());
+  /** The capacities set for individual classifiers at runtime. */
+  private static final ConcurrentHashMap capacities = new ConcurrentHashMap();
+  /** The caches created so far, indexed by classifier name. */
+  private static final ConcurrentHashMap caches = new ConcurrentHashMap();
+
+
+  /**
+    * Creates the cache of the named classifier.  This method is called by
+    * the code generated for the classifier.
+    *
+    * @param name The classifier's fully qualified name.
+    * @param c    The capacity given in the LBJava source, or 0 if none was.
+    * @return The classifier's cache.
+   **/
+  public static ValueCache create(String name, int c) {
+    Integer override = (Integer) capacities.get(name);
+    if (override != null) c = override.intValue();
+    else if (c <= 0) c = capacity;
+
+    ValueCache result = factory.create(name, c);
+    caches.put(name, result);
+    return result;
+  }
+
+
+  /**
+    * Sets the factory with which caches are created from now on.
+    *
+    * @param f  The new factory.
+   **/
+  public static void setFactory(Factory f) {
+    if (f == null)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ValueCaches factory must not be null.");
+    factory = f;
+  }
+
+
+  /**
+    * Sets the capacity of the caches not given one explicitly that are
+    * created from now on.
+    *
+    * @param c  The new default capacity, which must be positive.
+   **/
+  public static void setDefaultCapacity(int c) {
+    if (c <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ValueCaches capacity must be positive.");
+    capacity = c;
+  }
+
+  /** Returns the capacity of caches not given one explicitly. */
+  public static int getDefaultCapacity() { return capacity; }
+
+
+  /**
+    * Sets the capacity of the named classifier's cache, whether it has been
+    * created yet or not, overriding the capacity given in the LBJava source.
+    *
+    * @param name The classifier's fully qualified name.
+    * @param c    The new capacity, which must be positive.
+   **/
+  public static void setCapacity(String name, int c) {
+    if (c <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ValueCaches capacity must be positive.");
+    capacities.put(name, new Integer(c));
+    ValueCache cache = (ValueCache) caches.get(name);
+    if (cache != null) cache.setCapacity(c);
+  }
+
+
+  /**
+    * Returns the cache of the named classifier.
+    *
+    * @param name The classifier's fully qualified name.
+    * @return Its cache, or <code>null</code> if it hasn't been created.
+   **/
+  public static ValueCache get(String name) {
+    return (ValueCache) caches.get(name);
+  }
+
+
+  /** Returns the names of the classifiers whose caches have been created. */
+  public static String[] getNames() {
+    return (String[]) caches.keySet().toArray(new String[0]);
+  }
+
+
+  /** Empties every cache. */
+  public static void clear() {
+    for (Iterator I = caches.values().iterator(); I.hasNext(); )
+      ((ValueCache) I.next()).clear();
+  }
+}
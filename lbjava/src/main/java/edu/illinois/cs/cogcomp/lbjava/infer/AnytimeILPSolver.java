@@ -0,0 +1,37 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+
+/**
+  * An {@link ILPSolver} that can be told to stop searching at a given time.
+  * When it stops early, {@link ILPSolver#solve()} returns <code>true</code>
+  * iff a feasible solution was found by then, and the best such solution is
+  * available as usual, although it is not known to be optimal.
+ **/
+public interface AnytimeILPSolver extends ILPSolver
+{
+  /**
+    * Sets the time at which {@link ILPSolver#solve()} should stop searching.
+    *
+    * @param d  The deadline, in the milliseconds of
+    *           <code>System.currentTimeMillis()</code>, or 0 for none.
+   **/
+  public void setDeadline(long d);
+
+
+  /**
+    * Returns <code>true</code> iff the most recent call to
+    * {@link ILPSolver#solve()} stopped because it reached the deadline before
+    * finishing its search.
+   **/
+  public boolean reachedDeadline();
+}
@@ -109,13 +109,13 @@ public class AtLeastQuantifier extends Quantifier
     for (Iterator I = collection.iterator(); I.hasNext(); ++i) {
       enclosingQuantificationSettings.set(index, I.next());
       constraint.setQuantificationVariables(enclosingQuantificationSettings);
-      pc[i] = constraint.propositionalize();
+      pc[i] = PropositionalInterner.intern(constraint.propositionalize());
     }
 
     enclosingQuantificationSettings.removeElementAt(index);
     if (pc.length == 1) return pc[0];
 
-    return new PropositionalAtLeast(pc, m);
+    return PropositionalInterner.intern(new PropositionalAtLeast(pc, m));
   }
 
 
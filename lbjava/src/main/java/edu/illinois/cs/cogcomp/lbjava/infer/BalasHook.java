@@ -10,6 +10,13 @@
  */
 package edu.illinois.cs.cogcomp.lbjava.infer;
 
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import edu.illinois.cs.cogcomp.lbjava.util.IVector;
 import edu.illinois.cs.cogcomp.lbjava.util.Sort;
 
@@ -25,11 +32,30 @@ import edu.illinois.cs.cogcomp.lbjava.util.Sort;
   * Zero-One Variables. <i>Operations Research</i>, 13(4):517–546.
   * </blockquote>
   *
+  * <p> The search can also be run in {@link #setParallel(boolean) parallel},
+  * in which case the top levels of the search tree are split into subtrees
+  * that are searched concurrently.  A {@link #setDeadline(long) deadline}
+  * stops the search early, keeping the best solution found by then.
+  *
+  * <p> The problem may be changed and solved again, as described in
+  * {@link IncrementalILPSolver}.  A feasible starting solution, or the
+  * previous solution if it is still feasible, becomes the initial incumbent,
+  * so that the search only explores branches that can improve on it.  The
+  * result is the same solution the search would have found without it.
+  *
   * @author Nick Rizzolo
  **/
-public class BalasHook extends ZeroOneILPProblem implements ILPSolver
+public class BalasHook extends ZeroOneILPProblem
+  implements AnytimeILPSolver, IncrementalILPSolver
 {
   private static boolean debug = false;
+  /** Default value for {@link #splitDepth}. */
+  public static final int defaultSplitDepth = 2;
+  /**
+    * The work-stealing pool that searches the subtrees of parallel searches,
+    * with one thread per processor.  It is created when first needed.
+   **/
+  private static ForkJoinPool pool;
 
 
   /**
@@ -75,6 +101,45 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
    **/
   private boolean[] cancelled;
 
+  /**
+    * Whether or not the top levels of the search tree are split into
+    * subtrees that are searched concurrently.
+   **/
+  protected boolean parallel;
+  /**
+    * The number of levels of the search tree that are split into subtrees
+    * when {@link #parallel} is <code>true</code>.
+   **/
+  protected int splitDepth = defaultSplitDepth;
+  /**
+    * Holds the best {@link Incumbent} found so far by any subtree during a
+    * parallel search, and is <code>null</code> otherwise.
+   **/
+  private AtomicReference incumbent;
+  /**
+    * The position of the subtree searched by this object in the order of the
+    * sequential search, as the sequence of branches taken to reach it.  Ties
+    * between solutions with equal objective values are broken in this order.
+   **/
+  private int[] path;
+  /**
+    * The time at which the search stops, in the milliseconds of
+    * <code>System.currentTimeMillis()</code>, or 0 if it runs to completion.
+   **/
+  private long deadline;
+  /**
+    * Set when the search reaches the {@link #deadline}.  It is shared by all
+    * subtrees of a parallel search.
+   **/
+  private AtomicBoolean expired = new AtomicBoolean();
+  /** The solution given to start the next search from, if any. */
+  private int[] startingSolution;
+  /**
+    * The solution found before the problem was last changed, which the next
+    * search starts from if no {@link #startingSolution} was given.
+   **/
+  private int[] previousSolution;
+
 
   /** Default constructor. */
   public BalasHook() { this(ILPInference.VERBOSITY_NONE); }
@@ -108,6 +173,33 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
     verbosity = v;
   }
 
+  /**
+    * Creates a solver for a subtree of a parallel search.  It shares the
+    * given solver's problem and starts from a copy of its search state.
+    *
+    * @param s  The solver whose search tree is being split.
+    * @param p  The position of the new subtree in the search order.
+   **/
+  private BalasHook(BalasHook s, int[] p) {
+    first = s.first;
+    verbosity = ILPInference.VERBOSITY_NONE;
+    maximize = s.maximize;
+    objectiveCoefficients = s.objectiveCoefficients;
+    Av = s.Av;
+    Ac = s.Ac;
+    boundTypes = s.boundTypes;
+    bounds = s.bounds;
+    negated = s.negated;
+    splitDepth = s.splitDepth;
+    incumbent = s.incumbent;
+    deadline = s.deadline;
+    expired = s.expired;
+    path = p;
+    x = (int[]) s.x.clone();
+    slack = (double[]) s.slack.clone();
+    cancelled = (boolean[]) s.cancelled.clone();
+  }
+
   /**
     * Creates a new ILP solver with the problem represented in the named file
     * loaded and ready to solve.  The constraints in the problem are assumed
@@ -169,6 +261,48 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
   public void setFirst(boolean f) { first = f; }
 
 
+  /**
+    * Sets the time at which {@link #solve()} stops searching and keeps the
+    * best solution found so far.
+    *
+    * @param d  The deadline, in the milliseconds of
+    *           <code>System.currentTimeMillis()</code>, or 0 for none.
+   **/
+  public void setDeadline(long d) { deadline = d; }
+
+
+  /**
+    * Returns <code>true</code> iff the most recent call to {@link #solve()}
+    * stopped because it reached the deadline.
+   **/
+  public boolean reachedDeadline() { return expired.get(); }
+
+
+  /**
+    * Sets the value of {@link #parallel}.  A parallel search returns a
+    * solution with the same objective value as the sequential search, and
+    * when several solutions tie, it prefers the one that comes first in the
+    * sequential search order.  Subtrees prune their search with the best
+    * objective value found by any of them so far.  Searches that halt at the
+    * {@link #first} feasible solution are always sequential.
+   **/
+  public void setParallel(boolean p) { parallel = p; }
+
+
+  /**
+    * Sets the value of {@link #splitDepth}.  Deeper splits balance the work
+    * better at the cost of copying the search state more often.
+    *
+    * @param d  The number of levels to split, which must be positive.
+   **/
+  public void setSplitDepth(int d) {
+    if (d <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: BalasHook split depth must be positive.");
+    splitDepth = d;
+  }
+
+
   /**
     * This method clears the all constraints and variables out of the ILP
     * solver's problem representation, bringing the <code>ILPSolver</code>
@@ -180,6 +314,80 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
     negated = null;
     slack = null;
     objectiveValue = Double.POSITIVE_INFINITY;
+    startingSolution = previousSolution = null;
+  }
+
+
+  /**
+    * Keeps the current solution, if any, as the {@link #previousSolution}
+    * and marks the problem unsolved.  Called whenever the problem changes.
+   **/
+  private void changed() {
+    if (solution != null) previousSolution = solution;
+    solution = null;
+  }
+
+
+  /**
+    * Sets the direction of the objective function.
+    *
+    * @param d  <code>true</code> if the objective function is to be
+    *           maximized.
+   **/
+  public void setMaximize(boolean d) {
+    if (d != maximize) changed();
+    super.setMaximize(d);
+  }
+
+
+  /**
+    * Sets the specified coefficient in the objective function.
+    *
+    * @param j  The index of the variable whose coefficient will be set.
+    * @param c  The new value of the coefficient.
+   **/
+  public void setObjectiveCoefficient(int j, double c) {
+    changed();
+    super.setObjectiveCoefficient(j, c);
+  }
+
+
+  /**
+    * Gives the next call to {@link #solve()} a solution to start from.  It
+    * is only used if it satisfies the constraints.
+    *
+    * @param x  The value, 0 or 1, of every variable, or <code>null</code> to
+    *           start from the previous solution, if any.
+   **/
+  public void setStartingSolution(int[] x) {
+    startingSolution = x == null ? null : (int[]) x.clone();
+  }
+
+
+  /**
+    * Adds a new Boolean variable with the specified coefficient in the
+    * objective function to the problem.
+    *
+    * @param c  The objective function coefficient for the new Boolean
+    *           variable.
+    * @return The index of the created variable.
+   **/
+  public int addBooleanVariable(double c) {
+    changed();
+    return super.addBooleanVariable(c);
+  }
+
+
+  /**
+    * Adds a new less-than constraint to the problem, marking it unsolved.
+    *
+    * @param i  The indexes of the variables with non-zero coefficients.
+    * @param a  The coefficients of the variables with the given indexes.
+    * @param b  The upper bound for the new constraint.
+   **/
+  protected void addConstraint(int[] i, double[] a, double b) {
+    changed();
+    super.addConstraint(i, a, b);
   }
 
 
@@ -272,7 +480,9 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
 
 
   /**
-    * Solves the ILP problem, saving the solution internally.
+    * Solves the ILP problem, saving the solution internally.  If the
+    * {@link #deadline} is reached first, the best solution found so far is
+    * saved instead.
     *
     * @return <code>true</code> iff a solution was found successfully.
    **/
@@ -285,6 +495,10 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
       System.out.println("  constraints: " + constraints);
     }
 
+    int[] start = feasibleStart();
+    startingSolution = previousSolution = null;
+    solution = null;
+    objectiveValue = Double.POSITIVE_INFINITY;
     negated = new boolean[variables];
 
     for (int i = 0; i < variables; ++i) {
@@ -321,19 +535,180 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
       maximize = saveMaximize;
     }
 
+    // The starting solution's bound is relaxed by the tolerance so that the
+    // search still finds a solution that ties with it, as it would have
+    // without it.
+    if (start != null) {
+      for (int i = 0; i < variables; ++i)
+        if (negated[i]) start[i] = 1 - start[i];
+      solution = start;
+      objectiveValue = evaluate(start) + 2 * ZeroOneILPProblem.TOLERANCE;
+    }
+
     x = new int[variables];
     slack = slack(x);
     cancelled = new boolean[variables];
-    boolean result = solve(evaluate(x));
+    expired = new AtomicBoolean();
+    boolean result =
+      parallel && !first ? searchInParallel(evaluate(x)) : solve(evaluate(x));
+    if (start != null && solution == start) {
+      objectiveValue = evaluate(start);
+      result = true;
+    }
 
     for (int i = 0; i < variables; ++i)
       if (negated[i]) {
-        x[i] = 1 - x[i];
+        if (solution != null) solution[i] = 1 - solution[i];
         objectiveValue -= objectiveCoefficients.get(i);
       }
 
     if (maximize) objectiveValue = -objectiveValue;
 
+    restore();
+    return result;
+  }
+
+
+  /**
+    * Returns a copy of the {@link #startingSolution}, or else of the
+    * {@link #previousSolution}, extended with zeros for variables added
+    * since, if it satisfies the constraints.
+    *
+    * @return The solution to start from, or <code>null</code> if there is no
+    *         feasible one.
+   **/
+  private int[] feasibleStart() {
+    int[] s = startingSolution != null ? startingSolution : previousSolution;
+    if (s == null) return null;
+
+    int[] result = new int[objectiveCoefficients.size()];
+    System.arraycopy(s, 0, result, 0, Math.min(s.length, result.length));
+    double[] r = slack(result);
+    for (int i = 0; i < r.length; ++i)
+      if (r[i] < 0) return null;
+    return result;
+  }
+
+
+  /**
+    * Undoes the negation of variables and of the objective function done at
+    * the beginning of {@link #solve()}, so that the problem can be changed
+    * and solved again.
+   **/
+  private void restore() {
+    int variables = objectiveCoefficients.size();
+    int constraints = Ac.size();
+
+    for (int i = 0; i < variables; ++i) {
+      double c = objectiveCoefficients.get(i);
+
+      if (negated[i]) {
+        c = -c;
+
+        for (int j = 0; j < constraints; ++j) {
+          int vIndex = Av.binarySearch(j, i);
+          if (vIndex >= 0) {
+            double coefficient = -Ac.get(j, vIndex);
+            Ac.set(j, vIndex, coefficient);
+            bounds.set(j, bounds.get(j) + coefficient);
+          }
+        }
+      }
+
+      objectiveCoefficients.set(i, maximize ? -c : c);
+    }
+  }
+
+
+  /**
+    * Computes a lower bound on how much the objective function must still
+    * increase before all the violated constraints are satisfied.  For each
+    * violated constraint, eligible variables with negative coefficients in
+    * it are turned on in order of their cost per unit of violation removed,
+    * the last one fractionally, which solves the LP relaxation of that
+    * constraint alone.  The costs of constraints that share none of those
+    * variables add up, so the bound is the total cost of such a set of
+    * constraints, chosen greedily from the most expensive.  Subtrees whose
+    * bound can't beat the incumbent contain no solution the search would
+    * accept, so pruning them doesn't change its result; it is what makes a
+    * good starting solution pay off.
+    *
+    * @param violated The indexes of the violated constraints.
+    * @param eligible The variables that may still be turned on, sorted.
+    * @return The lower bound, or 0 if there is no incumbent yet.
+   **/
+  private double lowerBound(final IVector violated, final IVector eligible) {
+    if (objectiveValue == Double.POSITIVE_INFINITY) return 0;
+    final int violatedSize = violated.size();
+    final double[] costs = new double[violatedSize];
+    final int[][] supports = new int[violatedSize][];
+
+    for (int i = 0; i < violatedSize; ++i) {
+      final int cIndex = violated.get(i);
+      final int size = Ac.size(cIndex);
+      final int[] candidates = new int[size];
+      final double[] ratios = new double[size];
+      int n = 0;
+
+      for (int k = 0; k < size; ++k) {
+        final double a = Ac.get(cIndex, k);
+        final int j = Av.get(cIndex, k);
+        if (a < 0 && eligible.binarySearch(j) >= 0) {
+          ratios[n] = objectiveCoefficients.get(j) / -a;
+          candidates[n++] = k;
+        }
+      }
+
+      final int[] order = new int[n];
+      for (int t = 0; t < n; ++t) order[t] = t;
+      Sort.sort(order,
+          new Sort.IntComparator() {
+            public int compare(int t1, int t2) {
+              return Double.compare(ratios[t1], ratios[t2]);
+            }
+          });
+
+      double deficit = -slack[cIndex];
+      for (int t = 0; t < n && deficit > 0; ++t) {
+        final int k = candidates[order[t]];
+        final double a = -Ac.get(cIndex, k);
+        final double c = objectiveCoefficients.get(Av.get(cIndex, k));
+        if (a >= deficit) {
+          costs[i] += c * deficit / a;
+          deficit = 0;
+        }
+        else {
+          costs[i] += c;
+          deficit -= a;
+        }
+      }
+
+      supports[i] = new int[n];
+      for (int t = 0; t < n; ++t)
+        supports[i][t] = Av.get(cIndex, candidates[t]);
+    }
+
+    final int[] rows = new int[violatedSize];
+    for (int i = 0; i < violatedSize; ++i) rows[i] = i;
+    Sort.sort(rows,
+        new Sort.IntComparator() {
+          public int compare(int i1, int i2) {
+            return Double.compare(costs[i2], costs[i1]);
+          }
+        });
+
+    final boolean[] used = new boolean[x.length];
+    double result = 0;
+    for (int r = 0; r < violatedSize; ++r) {
+      final int[] support = supports[rows[r]];
+      boolean disjoint = true;
+      for (int t = 0; t < support.length && disjoint; ++t)
+        disjoint = !used[support[t]];
+      if (!disjoint) continue;
+      for (int t = 0; t < support.length; ++t) used[support[t]] = true;
+      result += costs[rows[r]];
+    }
+
     return result;
   }
 
@@ -370,6 +745,12 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
     * @return <code>true</code> iff a solution was found successfully.
    **/
   public boolean solve(final double z) {
+    if (expired()) return false;
+    if (incumbent != null) {
+      tightenBound();
+      if (z >= objectiveValue - ZeroOneILPProblem.TOLERANCE) return false;
+    }
+
     // The slack variables, which will also be used later, tell us whether any
     // constraints have been violated.  If none have, we know we have found
     // the optimal solution under the additional constraints that all
@@ -382,6 +763,7 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
     if (violatedSize == 0) {
       solution = (int[]) x.clone();
       objectiveValue = z;
+      if (incumbent != null) offer(z);
 
       if (debug) {
         final int[] xx = (int[]) x.clone();
@@ -422,6 +804,7 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
     final double[] lhsNegative =
       constraintSatisfiability(violated, eligible, atEquality);
     if (lhsNegative == null) return false;
+    if (z + lowerBound(violated, eligible) >= objectiveValue) return false;
 
     // Now the search begins, setting eligible variables on and making
     // recursive calls.
@@ -431,7 +814,7 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
     int ineligibles = 0;
     boolean result = false;
 
-    for (boolean satisfiable = true; satisfiable; ) {
+    for (boolean satisfiable = true; satisfiable && !expired.get(); ) {
       if (atEquality.size() > 0) {
         result |= satisfyAll(atEquality, z, eligible);
         satisfiable = false;
@@ -464,7 +847,7 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
 
         if (oldValue != objectiveValue) {
           for (int k = bestIndex; k < eligibles; ++k) {
-            final int j = eligible.get(k);
+            final int j = eligible.get(indexes[k]);
             if (!cancelled[j]
                 && z + objectiveCoefficients.get(j)
                    >= objectiveValue - ZeroOneILPProblem.TOLERANCE) {
@@ -507,6 +890,235 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
   }
 
 
+  /**
+    * Searches the entire tree with the top {@link #splitDepth} levels split
+    * into subtrees that are searched concurrently, and saves the best
+    * solution found by any of them.  A starting solution is the initial
+    * incumbent, placed after every subtree in the search order so that they
+    * win ties with it.
+    *
+    * @param z  The value of the objective function with all variables off.
+    * @return <code>true</code> iff a solution was found successfully.
+   **/
+  private boolean searchInParallel(double z) {
+    incumbent = new AtomicReference();
+    path = new int[0];
+    if (solution != null)
+      incumbent.set(
+          new Incumbent(objectiveValue - 2 * ZeroOneILPProblem.TOLERANCE,
+                        new int[]{ Integer.MAX_VALUE }, solution));
+    Incumbent best = null;
+
+    try {
+      getPool().invoke(new Subtree(this, path, null, null, z, 0));
+      best = (Incumbent) incumbent.get();
+    }
+    finally { incumbent = null; }
+
+    if (best == null) return false;
+    solution = best.solution;
+    objectiveValue = best.value;
+    return true;
+  }
+
+
+  /** Returns the pool that searches subtrees, creating it if necessary. */
+  private static synchronized ForkJoinPool getPool() {
+    if (pool == null) pool = new ForkJoinPool();
+    return pool;
+  }
+
+
+  /**
+    * Does the work of {@link #solve(double)} at a node of the search tree
+    * that is split into subtrees.  Instead of searching each branch in turn,
+    * it creates a {@link Subtree} for each one and searches them all
+    * concurrently.  Since the branches are created before any of them have
+    * been searched, variables aren't made ineligible as the incumbent
+    * improves; each subtree prunes itself against the incumbent instead.
+    *
+    * @param z      The value of the objective function with the current
+    *               variable settings.
+    * @param depth  The depth of this node in the search tree.
+   **/
+  private void split(final double z, final int depth) {
+    if (expired()) return;
+    tightenBound();
+    if (z >= objectiveValue - ZeroOneILPProblem.TOLERANCE) return;
+
+    final IVector violated = new IVector();
+    for (int i = 0; i < slack.length; ++i)
+      if (slack[i] < 0) violated.add(i);
+    final int violatedSize = violated.size();
+
+    if (violatedSize == 0) {
+      solution = (int[]) x.clone();
+      objectiveValue = z;
+      offer(z);
+      return;
+    }
+
+    final IVector eligible = getEligibleVariables(z, violated);
+    final int eligibles = eligible.size();
+    if (eligibles == 0) return;
+
+    final IVector atEquality = new IVector();
+    final double[] lhsNegative =
+      constraintSatisfiability(violated, eligible, atEquality);
+    if (lhsNegative == null) return;
+    if (z + lowerBound(violated, eligible) >= objectiveValue) return;
+
+    // The branches are enumerated as in solve(double).  Variables branched
+    // on are cancelled so that later branches keep them off.
+    final ArrayList children = new ArrayList();
+    final IVector off = new IVector();
+    int[] indexes = null;
+    int bestIndex = 0;
+
+    for (boolean satisfiable = true; satisfiable; ) {
+      if (atEquality.size() > 0) {
+        // As in satisfyAll(IVector,double,IVector).
+        final IVector F = new IVector();
+        double zF = z;
+
+        for (int i = 0; i < atEquality.size(); ++i) {
+          final int cIndex = atEquality.get(i);
+          final int constraintSize = Ac.size(cIndex);
+          for (int k = 0; k < constraintSize; ++k) {
+            final int j = Av.get(cIndex, k);
+            if (cancelled[j]) continue;
+            if (Ac.get(cIndex, k) < 0 && eligible.binarySearch(j) >= 0) {
+              F.add(j);
+              cancelled[j] = true;
+              zF += objectiveCoefficients.get(j);
+            }
+          }
+        }
+
+        for (int i = 0; i < F.size(); ++i) cancelled[F.get(i)] = false;
+        if (zF < objectiveValue - ZeroOneILPProblem.TOLERANCE)
+          children.add(subtree(children.size(), F.toArray(), off, zF,
+                               depth));
+        satisfiable = false;
+      }
+      else {
+        if (indexes == null) indexes = sortVariablesByViolations(eligible);
+
+        final int bestVariable = eligible.get(indexes[bestIndex++]);
+        children.add(
+            subtree(children.size(), new int[]{ bestVariable }, off,
+                    z + objectiveCoefficients.get(bestVariable), depth));
+        off.add(bestVariable);
+        cancelled[bestVariable] = true;
+
+        satisfiable = bestIndex < eligibles;
+
+        for (int i = 0; i < violatedSize && satisfiable; ++i) {
+          final int cIndex = violated.get(i);
+          final int vIndex = Av.binarySearch(cIndex, bestVariable);
+          if (vIndex >= 0) {
+            final double c = Ac.get(cIndex, vIndex);
+            if (c < 0) lhsNegative[i] -= c;
+          }
+
+          satisfiable =
+            lhsNegative[i] - ZeroOneILPProblem.TOLERANCE <= slack[cIndex];
+          if (satisfiable
+              && Math.abs(slack[cIndex] - lhsNegative[i])
+                 < ZeroOneILPProblem.TOLERANCE)
+            atEquality.add(cIndex);
+        }
+      }
+    }
+
+    // The subtrees copy this node's state, so it must be restored first.
+    for (int i = 0; i < off.size(); ++i) cancelled[off.get(i)] = false;
+    ForkJoinTask.invokeAll(
+        (ForkJoinTask[]) children.toArray(new ForkJoinTask[children.size()]));
+  }
+
+
+  /**
+    * Creates a subtree of the node this object is currently at.
+    *
+    * @param branch The index of the subtree among its siblings.
+    * @param on     The variables turned on in the subtree.
+    * @param off    The variables kept off in the subtree.
+    * @param z      The value of the objective function in the subtree.
+    * @param depth  The depth of this node in the search tree.
+    * @return The new subtree.
+   **/
+  private Subtree subtree(int branch, int[] on, IVector off, double z,
+                          int depth) {
+    int[] p = new int[path.length + 1];
+    System.arraycopy(path, 0, p, 0, path.length);
+    p[path.length] = branch;
+    return new Subtree(this, p, on, off.toArray(), z, depth + 1);
+  }
+
+
+  /**
+    * Determines whether the search has reached its {@link #deadline}.
+   **/
+  private boolean expired() {
+    if (deadline == 0) return false;
+    if (expired.get()) return true;
+    if (System.currentTimeMillis() < deadline) return false;
+    expired.set(true);
+    return true;
+  }
+
+
+  /**
+    * Lowers {@link #objectiveValue} to the best objective value found by any
+    * subtree so far.  If that value was found by a subtree that comes later
+    * in the search order, it is relaxed by the tolerance so that this subtree
+    * can still find a solution that ties with it.
+   **/
+  private void tightenBound() {
+    Incumbent best = (Incumbent) incumbent.get();
+    if (best == null) return;
+    double bound = best.value;
+    if (comparePaths(best.path, path) > 0)
+      bound += 2 * ZeroOneILPProblem.TOLERANCE;
+    if (bound < objectiveValue) objectiveValue = bound;
+  }
+
+
+  /**
+    * Replaces the incumbent with the current settings of {@link #x} if they
+    * are better.
+    *
+    * @param z  The value of the objective function at <code>x</code>.
+   **/
+  private void offer(double z) {
+    Incumbent candidate = new Incumbent(z, path, (int[]) x.clone());
+
+    while (true) {
+      Incumbent best = (Incumbent) incumbent.get();
+      if (best != null && !candidate.isBetterThan(best)) return;
+      if (incumbent.compareAndSet(best, candidate)) return;
+    }
+  }
+
+
+  /**
+    * Compares two subtree positions according to the order in which the
+    * sequential search would visit them.
+    *
+    * @param p1 The first position.
+    * @param p2 The second position.
+    * @return A negative integer, zero, or a positive integer as the first
+    *         position comes before, at, or after the second.
+   **/
+  private static int comparePaths(int[] p1, int[] p2) {
+    int n = Math.min(p1.length, p2.length);
+    for (int i = 0; i < n; ++i)
+      if (p1[i] != p2[i]) return p1[i] - p2[i];
+    return p1.length - p2.length;
+  }
+
+
   /**
     * Determines which variables have a chance both to improve on the
     * incumbunt solution and to bring the current x closer to feasibility.
@@ -789,5 +1401,109 @@ public class BalasHook extends ZeroOneILPProblem implements ILPSolver
       buffer.append("\n");
     }
   }
-}
 
+
+  /**
+    * A subtree of a parallel search.  It starts from the state of its parent
+    * node with some variables turned on and others kept off, and is searched
+    * either by splitting it further or by {@link BalasHook#solve(double)}.
+   **/
+  private static class Subtree extends RecursiveAction
+  {
+    /** The solver at the parent node. */
+    private BalasHook parent;
+    /** The position of this subtree in the search order. */
+    private int[] path;
+    /** The variables to turn on, or <code>null</code> at the root. */
+    private int[] on;
+    /** The variables to keep off. */
+    private int[] off;
+    /** The value of the objective function at the root of this subtree. */
+    private double z;
+    /** The depth of this subtree's root in the search tree. */
+    private int depth;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param b  The solver at the parent node.
+      * @param p  The position of this subtree in the search order.
+      * @param n  The variables to turn on, or <code>null</code> at the root.
+      * @param f  The variables to keep off.
+      * @param z  The value of the objective function at the root.
+      * @param d  The depth of the root in the search tree.
+     **/
+    public Subtree(BalasHook b, int[] p, int[] n, int[] f, double z, int d) {
+      parent = b;
+      path = p;
+      on = n;
+      off = f;
+      this.z = z;
+      depth = d;
+    }
+
+
+    /** Searches this subtree. */
+    protected void compute() {
+      BalasHook search = parent;
+
+      if (on != null) {
+        search = new BalasHook(parent, path);
+        for (int i = 0; i < off.length; ++i) search.cancelled[off[i]] = true;
+        for (int i = 0; i < on.length; ++i) {
+          search.setVariableOn(on[i]);
+          search.cancelled[on[i]] = true;
+        }
+      }
+
+      parent = null;
+      if (depth < search.splitDepth) search.split(z, depth);
+      else search.solve(z);
+    }
+  }
+
+
+  /**
+    * A solution found during a parallel search, along with its objective
+    * value and the position in the search order where it was found.
+   **/
+  private static class Incumbent
+  {
+    /** The value of the objective function at the solution. */
+    public double value;
+    /** The position in the search order where the solution was found. */
+    public int[] path;
+    /** The settings of the variables. */
+    public int[] solution;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param v  The value of the objective function at the solution.
+      * @param p  The position in the search order.
+      * @param s  The settings of the variables.
+     **/
+    public Incumbent(double v, int[] p, int[] s) {
+      value = v;
+      path = p;
+      solution = s;
+    }
+
+
+    /**
+      * Determines whether this solution would replace the given one in the
+      * sequential search, either because its objective value is lower or
+      * because the values tie and this solution comes first.
+      *
+      * @param i  The other solution.
+      * @return <code>true</code> iff this solution is the better one.
+     **/
+    public boolean isBetterThan(Incumbent i) {
+      if (value < i.value - ZeroOneILPProblem.TOLERANCE) return true;
+      return value < i.value + ZeroOneILPProblem.TOLERANCE
+             && comparePaths(path, i.path) < 0;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+  * Performs the inference named by a generated <code>Inference</code> class
+  * for many head objects at once on a pool of threads.  For example, the
+  * sentences of a document can be tagged with
+  *
+  * <blockquote><pre>
+  *   BatchInference batch = new BatchInference(SentenceInference.class);
+  *   InferenceManager.Scope scope = InferenceManager.beginScope();
+  *   try {
+  *     batch.infer(document.getSentences());
+  *     for (...) ... constrainedClassifier.discreteValue(word) ...
+  *   }
+  *   finally { scope.close(); }
+  * </pre></blockquote>
+  *
+  * Every head gets its own <code>Inference</code> object, constructed with
+  * the generated class's constructor that takes the head as its only
+  * argument, so every ILP problem is solved by its own {@link ILPSolver}.
+  * The solved objects are returned in the order of the heads, and their
+  * <code>valueOf</code> methods can be used directly.  They are also added
+  * to the calling thread's {@link InferenceManager} cache, where the
+  * constrained classifiers of that thread look for them; the cache is made
+  * to hold the whole batch with {@link InferenceManager#ensureCapacity(int)}
+  * until it is emptied, which the scope above does once the results are no
+  * longer needed.  Heads whose objects are already in the calling thread's
+  * cache are not inferred again.
+  *
+  * <p> The inferences run concurrently and share the learners behind the
+  * constrained classifiers, so those learners must be
+  * {@link edu.illinois.cs.cogcomp.lbjava.learn.Learner#freeze() frozen} or
+  * otherwise safe to use from several threads at once.
+ **/
+public class BatchInference
+{
+  /** The generated inference class. */
+  protected Class inferenceClass;
+  /** The number of threads used when no executor is given. */
+  protected int threads;
+  /** The executor to run inferences on, or <code>null</code>. */
+  protected ExecutorService executor;
+
+
+  /**
+    * Uses as many threads as there are processors.
+    *
+    * @param c  The generated inference class.
+   **/
+  public BatchInference(Class c) {
+    this(c, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+    * Uses the given number of threads, which are started by each call to
+    * {@link #infer(Collection)} and stopped before it returns.
+    *
+    * @param c  The generated inference class.
+    * @param t  The number of threads.
+   **/
+  public BatchInference(Class c, int t) {
+    if (!Inference.class.isAssignableFrom(c))
+      throw new IllegalArgumentException(
+          "LBJava ERROR: BatchInference: " + c.getName()
+          + " is not an Inference.");
+    if (t <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: BatchInference needs at least one thread.");
+    inferenceClass = c;
+    threads = t;
+  }
+
+  /**
+    * Runs inferences on the given executor, which is not shut down.
+    *
+    * @param c  The generated inference class.
+    * @param e  The executor.
+   **/
+  public BatchInference(Class c, ExecutorService e) {
+    this(c, 1);
+    executor = e;
+  }
+
+
+  /**
+    * Creates the <code>Inference</code> object for the given head.
+    *
+    * @param head The head object.
+    * @return A new <code>Inference</code> for that head.
+   **/
+  protected Inference create(Object head) throws Exception {
+    Constructor[] constructors = inferenceClass.getConstructors();
+
+    for (int i = 0; i < constructors.length; ++i) {
+      Class[] parameters = constructors[i].getParameterTypes();
+      if (parameters.length == 1 && parameters[0].isInstance(head)) {
+        try { return (Inference) constructors[i].newInstance(head); }
+        catch (InvocationTargetException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Exception) throw (Exception) cause;
+          throw e;
+        }
+      }
+    }
+
+    throw new IllegalArgumentException(
+        "LBJava ERROR: BatchInference: " + inferenceClass.getName()
+        + " has no public constructor taking a "
+        + head.getClass().getName() + ".");
+  }
+
+
+  /**
+    * Performs inference for every head in the given collection.
+    *
+    * @param heads  The head objects.
+    * @return The solved <code>Inference</code> objects, in the order of
+    *         <code>heads</code>.
+    * @throws Exception The first exception thrown by any inference, after
+    *                   all inferences have finished.
+   **/
+  public Inference[] infer(Collection heads) throws Exception {
+    String name = inferenceClass.getName();
+    Inference[] result = new Inference[heads.size()];
+    int i = 0;
+    for (Iterator I = heads.iterator(); I.hasNext(); ++i) {
+      Object head = I.next();
+      result[i] = InferenceManager.get(name, head);
+      if (result[i] == null) result[i] = create(head);
+    }
+
+    if (result.length == 0) return result;
+    ExecutorService pool = executor;
+    if (pool == null)
+      pool = Executors.newFixedThreadPool(Math.min(threads, result.length));
+
+    try {
+      ArrayList futures = new ArrayList(result.length);
+      for (i = 0; i < result.length; ++i) {
+        final Inference inference = result[i];
+        futures.add(pool.submit(
+              new Callable() {
+                public Object call() throws Exception {
+                  inference.infer();
+                  return null;
+                }
+              }));
+      }
+
+      Exception first = null;
+      for (i = 0; i < futures.size(); ++i) {
+        try { ((Future) futures.get(i)).get(); }
+        catch (ExecutionException e) {
+          if (first == null) {
+            Throwable cause = e.getCause();
+            first = cause instanceof Exception ? (Exception) cause : e;
+          }
+        }
+      }
+
+      if (first != null) throw first;
+    }
+    finally {
+      if (executor == null) pool.shutdown();
+    }
+
+    InferenceManager.ensureCapacity(result.length);
+    for (i = 0; i < result.length; ++i) InferenceManager.put(name, result[i]);
+    return result;
+  }
+}
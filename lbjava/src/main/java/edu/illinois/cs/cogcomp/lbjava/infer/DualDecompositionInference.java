@@ -0,0 +1,419 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.illinois.cs.cogcomp.lbjava.util.IVector;
+
+
+/**
+  * Performs inference by Lagrangian relaxation of the constraints that
+  * couple the classifiers.  The constraints are translated into linear
+  * inequalities exactly as in {@link ILPInference}.  Only the constraints
+  * requiring each discrete variable to take exactly one value are kept;
+  * every other constraint is moved into the objective function with a
+  * multiplier.  What is left is one independent argmax per variable over
+  * its classifier's adjusted scores, and the multipliers are updated by
+  * subgradient descent until the argmax assignment satisfies the
+  * constraints and scores as well as the relaxation's bound.  That is a
+  * certificate that the assignment is optimal.
+  *
+  * <p> If no certificate is found within the maximum number of iterations,
+  * the problem is handed to the given {@link ILPSolver} instead.  This is
+  * effective when a few constraints couple classifiers whose predictions
+  * mostly agree with them, as in entity and relation extraction.  The
+  * number of iterations taken and the number of problems that fell back to
+  * the ILP solver are counted across all instances of this class; see
+  * {@link #statistics()}.
+ **/
+public class DualDecompositionInference extends ILPInference
+{
+  /** The default value of the maximum number of iterations. */
+  public static final int defaultMaxIterations = 100;
+  /** The default value of the initial step size. */
+  public static final double defaultStepSize = 1;
+  /**
+    * The relaxation's bound may exceed the value of a solution by this much
+    * for the solution to be certified optimal.
+   **/
+  public static final double CERTIFICATE_TOLERANCE = 1e-6;
+
+  /** The number of problems attempted by all instances of this class. */
+  private static final AtomicLong solves = new AtomicLong();
+  /** The number of subgradient iterations taken by all instances. */
+  private static final AtomicLong iterations = new AtomicLong();
+  /** The number of problems handed to the ILP solver by all instances. */
+  private static final AtomicLong fallbacks = new AtomicLong();
+
+
+  /** The solver that performs the relaxation; also {@link #solver}. */
+  protected Decomposition decomposition;
+
+
+  /** Falls back to {@link BalasHook}. */
+  public DualDecompositionInference() { this(null, null); }
+
+  /**
+    * Initializes the fallback ILP algorithm, but not the head object.
+    *
+    * @param a  The ILP algorithm.
+   **/
+  public DualDecompositionInference(ILPSolver a) { this(null, a); }
+
+  /**
+    * Initializes the fallback ILP algorithm and the maximum number of
+    * iterations, but not the head object.
+    *
+    * @param a  The ILP algorithm.
+    * @param m  The maximum number of iterations.
+   **/
+  public DualDecompositionInference(ILPSolver a, int m) {
+    this(null, a, m);
+  }
+
+  /**
+    * Sets the head object, falling back to {@link BalasHook}.
+    *
+    * @param h  The head object.
+   **/
+  public DualDecompositionInference(Object h) { this(h, null); }
+
+  /**
+    * Sets the head object and the fallback ILP algorithm.
+    *
+    * @param h  The head object.
+    * @param a  The ILP algorithm.
+   **/
+  public DualDecompositionInference(Object h, ILPSolver a) {
+    this(h, a, defaultMaxIterations);
+  }
+
+  /**
+    * Sets the head object, the fallback ILP algorithm, and the maximum
+    * number of iterations.
+    *
+    * @param h  The head object.
+    * @param a  The ILP algorithm.
+    * @param m  The maximum number of iterations.
+   **/
+  public DualDecompositionInference(Object h, ILPSolver a, int m) {
+    this(h, a, m, defaultStepSize);
+  }
+
+  /**
+    * Sets the head object, the fallback ILP algorithm, the maximum number of
+    * iterations, and the initial step size.
+    *
+    * @param h  The head object.
+    * @param a  The ILP algorithm, or <code>null</code> for
+    *           {@link BalasHook}.
+    * @param m  The maximum number of iterations.
+    * @param s  The initial step size.
+   **/
+  public DualDecompositionInference(Object h, ILPSolver a, int m, double s) {
+    super(h, new Decomposition(a == null ? new BalasHook() : a, m, s));
+    decomposition = (Decomposition) solver;
+  }
+
+
+  /**
+    * Returns the number of iterations taken by the most recent inference.
+   **/
+  public int getIterations() { return decomposition.iterations; }
+
+
+  /**
+    * Returns <code>true</code> iff the most recent inference found a
+    * certificate of optimality without the ILP solver.
+   **/
+  public boolean isCertified() { return decomposition.certified; }
+
+
+  /** Returns the number of problems attempted by this class. */
+  public static long getSolves() { return solves.get(); }
+
+  /** Returns the number of iterations taken over all problems. */
+  public static long getTotalIterations() { return iterations.get(); }
+
+  /** Returns the number of problems handed to the ILP solver. */
+  public static long getFallbacks() { return fallbacks.get(); }
+
+
+  /**
+    * Returns the average number of iterations per problem, or 0 if no
+    * problems have been attempted.
+   **/
+  public static double getAverageIterations() {
+    long n = solves.get();
+    return n == 0 ? 0 : iterations.get() / (double) n;
+  }
+
+
+  /**
+    * Returns the fraction of problems handed to the ILP solver, or 0 if no
+    * problems have been attempted.
+   **/
+  public static double getFallbackRate() {
+    long n = solves.get();
+    return n == 0 ? 0 : fallbacks.get() / (double) n;
+  }
+
+
+  /** Sets all counts to 0. */
+  public static void resetStatistics() {
+    solves.set(0);
+    iterations.set(0);
+    fallbacks.set(0);
+  }
+
+
+  /** Returns a summary of the counts, suitable for logging. */
+  public static String statistics() {
+    return solves.get() + " problems, "
+           + Math.round(10 * getAverageIterations()) / 10.0
+           + " iterations on average, fallback: "
+           + Math.round(1000 * getFallbackRate()) / 10.0 + "%";
+  }
+
+
+  /**
+    * The {@link ILPSolver} that performs the subgradient search, falling
+    * back to another solver when it fails to find a certificate.
+   **/
+  protected static class Decomposition extends ZeroOneILPProblem
+    implements AnytimeILPSolver
+  {
+    /** The solver used when no certificate is found. */
+    protected ILPSolver solver;
+    /** The maximum number of iterations. */
+    protected int maxIterations;
+    /** The initial step size. */
+    protected double stepSize;
+    /** The number of iterations taken by the last call to solve(). */
+    protected int iterations;
+    /** Whether the last solution was certified optimal. */
+    protected boolean certified;
+    /** The solution to the optimization problem. */
+    private int[] solution;
+    /** The value of the objective function at {@link #solution}. */
+    private double objectiveValue;
+    /**
+      * The time at which solving stops, in the milliseconds of
+      * <code>System.currentTimeMillis()</code>, or 0 for none.
+     **/
+    private long deadline;
+    /** Whether or not the last search stopped at the deadline. */
+    private boolean reachedDeadline;
+
+
+    /**
+      * Creates the solver.
+      *
+      * @param a  The solver used when no certificate is found.
+      * @param m  The maximum number of iterations.
+      * @param s  The initial step size.
+     **/
+    public Decomposition(ILPSolver a, int m, double s) {
+      if (m < 0 || !(s > 0))
+        throw new IllegalArgumentException(
+            "LBJava ERROR: DualDecompositionInference needs a non-negative "
+            + "number of iterations and a positive step size.");
+      solver = a;
+      maxIterations = m;
+      stepSize = s;
+    }
+
+
+    /**
+      * This method clears the all constraints and variables out of the ILP
+      * solver's problem representation, bringing the <code>ILPSolver</code>
+      * instance back to the state it was in when first constructed.
+     **/
+    public void reset() {
+      super.reset();
+      if (solver != null) solver.reset();
+      solution = null;
+      objectiveValue = 0;
+      iterations = 0;
+      certified = false;
+      reachedDeadline = false;
+    }
+
+
+    /**
+      * Sets the time at which solving stops.
+      *
+      * @param d  The deadline, in the milliseconds of
+      *           <code>System.currentTimeMillis()</code>, or 0 for none.
+     **/
+    public void setDeadline(long d) { deadline = d; }
+
+
+    /**
+      * Returns <code>true</code> iff the most recent call to
+      * {@link #solve()} stopped because it reached the deadline.
+     **/
+    public boolean reachedDeadline() { return reachedDeadline; }
+
+
+    /**
+      * Searches for a certified solution by subgradient descent on the
+      * multipliers of the relaxed constraints, and hands the problem to
+      * {@link #solver} if none is found.
+      *
+      * @return <code>true</code> iff a solution was found successfully.
+     **/
+    public boolean solve() throws Exception {
+      DualDecompositionInference.solves.incrementAndGet();
+      iterations = 0;
+      certified = false;
+      reachedDeadline = false;
+
+      // The relaxed rows, each written as s * (a x - b) <= 0, or = 0 for
+      // equalities, whose multipliers may be negative.
+      IVector relaxed = new IVector();
+      int d = 0;
+      for (int i = 0; i < rows(); ++i) {
+        if (d < discreteRows.size() && discreteRows.get(d) == i) ++d;
+        else relaxed.add(i);
+      }
+
+      int R = relaxed.size();
+      double[] sign = new double[R];
+      for (int r = 0; r < R; ++r)
+        sign[r] = boundTypes.get(relaxed.get(r)) == GREATER_THAN ? -1 : 1;
+      double[] multipliers = new double[R];
+
+      // The search maximizes; a minimization problem is negated.
+      double direction = maximize ? 1 : -1;
+      double[] c = objectiveCoefficients.toArray();
+      double[] adjusted = new double[c.length];
+      int[] best = null;
+      double bestValue = Double.NEGATIVE_INFINITY;
+      double bound = Double.POSITIVE_INFINITY;
+      double previous = Double.POSITIVE_INFINITY;
+      int increases = 0;
+
+      while (iterations < maxIterations) {
+        if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+          reachedDeadline = true;
+          break;
+        }
+
+        ++iterations;
+        double dual = 0;
+        for (int j = 0; j < c.length; ++j) adjusted[j] = direction * c[j];
+        for (int r = 0; r < R; ++r) {
+          if (multipliers[r] == 0) continue;
+          int i = relaxed.get(r);
+          double m = multipliers[r] * sign[r];
+          for (int k = 0; k < Av.size(i); ++k)
+            adjusted[Av.get(i, k)] -= m * Ac.get(i, k);
+          dual += m * bounds.get(i);
+        }
+
+        if (!maximize)
+          for (int j = 0; j < c.length; ++j) adjusted[j] = -adjusted[j];
+        int[] x = argmax(adjusted);
+        if (!maximize)
+          for (int j = 0; j < c.length; ++j) adjusted[j] = -adjusted[j];
+
+        for (int j = 0; j < x.length; ++j) dual += adjusted[j] * x[j];
+        bound = Math.min(bound, dual);
+
+        if (constraintsSatisfied(x)) {
+          double value = direction * evaluate(x);
+          if (value > bestValue) {
+            best = x;
+            bestValue = value;
+          }
+        }
+
+        if (best != null
+            && bestValue >= bound - CERTIFICATE_TOLERANCE
+                                    * Math.max(1, Math.abs(bound))) {
+          certified = true;
+          break;
+        }
+
+        // The step size shrinks every time the bound gets worse.
+        if (dual > previous) ++increases;
+        previous = dual;
+        double step = stepSize / (1 + increases);
+
+        for (int r = 0; r < R; ++r) {
+          int i = relaxed.get(r);
+          double g = -bounds.get(i);
+          for (int k = 0; k < Av.size(i); ++k)
+            g += Ac.get(i, k) * x[Av.get(i, k)];
+          multipliers[r] += step * sign[r] * g;
+          if (boundTypes.get(i) != EQUALITY && multipliers[r] < 0)
+            multipliers[r] = 0;
+        }
+      }
+
+      DualDecompositionInference.iterations.addAndGet(iterations);
+
+      if (certified || reachedDeadline && best != null) {
+        solution = best;
+        objectiveValue = evaluate(best);
+        return true;
+      }
+
+      DualDecompositionInference.fallbacks.incrementAndGet();
+      solver.reset();
+      copyTo(solver);
+      if (solver instanceof AnytimeILPSolver)
+        ((AnytimeILPSolver) solver).setDeadline(deadline);
+      boolean solved = solver.solve();
+      if (solver instanceof AnytimeILPSolver)
+        reachedDeadline = ((AnytimeILPSolver) solver).reachedDeadline();
+      if (!solved) return false;
+
+      solution = new int[columns()];
+      for (int j = 0; j < solution.length; ++j)
+        if (solver.getBooleanValue(j)) solution[j] = 1;
+      objectiveValue = solver.objectiveValue();
+      return true;
+    }
+
+
+    /**
+      * Tests whether the problem represented by this <code>ILPSolver</code>
+      * instance has been solved already.
+     **/
+    public boolean isSolved() { return solution != null; }
+
+
+    /**
+      * When the problem has been solved, use this method to retrieve the
+      * value of any Boolean inference variable.  The result of this method
+      * is undefined when the problem has not yet been solved.
+      *
+      * @param index  The index of the variable whose value is requested.
+      * @return The value of the variable.
+     **/
+    public boolean getBooleanValue(int index) {
+      return solution[index] == 1;
+    }
+
+
+    /**
+      * When the problem has been solved, use this method to retrieve the
+      * value of the objective function at the solution.  The result of this
+      * method is undefined when the problem has not yet been solved.
+      *
+      * @return The value of the objective function at the solution.
+     **/
+    public double objectiveValue() { return objectiveValue; }
+  }
+}
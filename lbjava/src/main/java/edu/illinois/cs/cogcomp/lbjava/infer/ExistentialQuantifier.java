@@ -95,21 +95,24 @@ public class ExistentialQuantifier extends Quantifier
    **/
   public PropositionalConstraint propositionalize() {
     PropositionalConstraint result = null;
+    PropositionalDisjunction disjunction = null;
 
     int index = initialize();
     for (Iterator I = collection.iterator(); I.hasNext(); ) {
       enclosingQuantificationSettings.set(index, I.next());
       constraint.setQuantificationVariables(enclosingQuantificationSettings);
+      PropositionalConstraint p =
+        PropositionalInterner.intern(constraint.propositionalize());
 
-      if (result == null) result = constraint.propositionalize();
-      else
-        result =
-          new PropositionalDisjunction(result, constraint.propositionalize());
+      if (result == null) result = p;
+      else if (disjunction == null)
+        result = disjunction = new PropositionalDisjunction(result, p);
+      else disjunction.add(p);
     }
 
     enclosingQuantificationSettings.removeElementAt(index);
     if (result == null) result = new PropositionalConstant(false);
-    return result;
+    return PropositionalInterner.intern(result);
   }
 
 
@@ -73,10 +73,9 @@ public class FirstOrderConjunction extends FirstOrderNAryConstraint
     PropositionalConjunction result =
       new PropositionalConjunction(c[0].propositionalize(),
                                    c[1].propositionalize());
-    for (int i = 2; i < c.length; ++i)
-      result = new PropositionalConjunction(result, c[i].propositionalize());
+    for (int i = 2; i < c.length; ++i) result.add(c[i].propositionalize());
 
-    return result;
+    return PropositionalInterner.intern(result);
   }
 
 
@@ -73,10 +73,9 @@ public class FirstOrderDisjunction extends FirstOrderNAryConstraint
     PropositionalDisjunction result =
       new PropositionalDisjunction(c[0].propositionalize(),
                                    c[1].propositionalize());
-    for (int i = 2; i < c.length; ++i)
-      result = new PropositionalDisjunction(result, c[i].propositionalize());
+    for (int i = 2; i < c.length; ++i) result.add(c[i].propositionalize());
 
-    return result;
+    return PropositionalInterner.intern(result);
   }
 
 
@@ -40,8 +40,10 @@ public class FirstOrderDoubleImplication extends FirstOrderBinaryConstraint
     * @return The propositionalized constraint.
    **/
   public PropositionalConstraint propositionalize() {
-    return new PropositionalDoubleImplication(left.propositionalize(),
-                                              right.propositionalize());
+    return
+      PropositionalInterner.intern(
+          new PropositionalDoubleImplication(left.propositionalize(),
+                                             right.propositionalize()));
   }
 
 
@@ -121,10 +121,13 @@ public class FirstOrderEqualityWithValue extends FirstOrderEquality
     PropositionalConstraint result = null;
     if (!found) result = new PropositionalConstant(false);
     else
-      result = new PropositionalVariable(left.getClassifier(),
-                                         left.getExample(), right);
+      result =
+        PropositionalInterner.intern(
+            new PropositionalVariable(left.getClassifier(),
+                                      left.getExample(), right));
 
-    if (!equality) result = new PropositionalNegation(result);
+    if (!equality)
+      result = PropositionalInterner.intern(new PropositionalNegation(result));
     return result;
   }
 
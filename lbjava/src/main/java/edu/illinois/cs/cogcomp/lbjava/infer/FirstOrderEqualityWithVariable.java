@@ -189,7 +189,7 @@ public class FirstOrderEqualityWithVariable extends FirstOrderEquality
                 leftVariables[i]));
     }
 
-    return result;
+    return PropositionalInterner.intern(result);
   }
 
 
@@ -40,8 +40,10 @@ public class FirstOrderImplication extends FirstOrderBinaryConstraint
     * @return The propositionalized constraint.
    **/
   public PropositionalConstraint propositionalize() {
-    return new PropositionalImplication(left.propositionalize(),
-                                        right.propositionalize());
+    return
+      PropositionalInterner.intern(
+          new PropositionalImplication(left.propositionalize(),
+                                       right.propositionalize()));
   }
 
 
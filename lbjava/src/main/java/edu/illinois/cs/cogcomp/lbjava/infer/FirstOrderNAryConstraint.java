@@ -12,6 +12,7 @@ package edu.illinois.cs.cogcomp.lbjava.infer;
 
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Vector;
 
 
@@ -23,12 +24,16 @@ import java.util.Vector;
  **/
 public abstract class FirstOrderNAryConstraint extends FirstOrderConstraint
 {
-  /** The children of the operator. */
+  /**
+    * The children of the operator.  They are kept in the order they were
+    * added, so that the variables of structurally identical constraints are
+    * always consolidated in the same order.
+   **/
   protected HashSet children;
 
 
   /** Default constructor. */
-  public FirstOrderNAryConstraint() { children = new HashSet(); }
+  public FirstOrderNAryConstraint() { children = new LinkedHashSet(); }
 
 
   /**
@@ -75,7 +75,9 @@ public class FirstOrderNegation extends FirstOrderConstraint
     * @return The propositionalized constraint.
    **/
   public PropositionalConstraint propositionalize() {
-    return new PropositionalNegation(constraint.propositionalize());
+    return
+      PropositionalInterner.intern(
+          new PropositionalNegation(constraint.propositionalize()));
   }
 
 
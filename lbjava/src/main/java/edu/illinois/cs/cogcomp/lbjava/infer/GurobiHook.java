@@ -31,9 +31,13 @@ import java.util.Arrays;
   * and that the Gurobi libraries are installed appropriately on your system
   * before attempting to compile and use this class.
   *
+  * <p> The model may be changed and solved again, as described in
+  * {@link IncrementalILPSolver}.  The starting solution is passed to Gurobi
+  * as a MIP start.
+  *
   * @author Nick Rizzolo
  **/
-public class GurobiHook implements ILPSolver
+public class GurobiHook implements AnytimeILPSolver, IncrementalILPSolver
 {
   /** Prints an error message and exits the JVM. */
   protected static void handleException(GRBException e) {
@@ -75,6 +79,20 @@ public class GurobiHook implements ILPSolver
     * can discard of it.
    **/
   protected DVector objectiveCoefficients;
+  /**
+    * The time at which the solver gives up, in the milliseconds of
+    * <code>System.currentTimeMillis()</code>, or 0 for none.
+   **/
+  protected long deadline;
+  /** Whether or not the last optimization stopped at the time limit. */
+  protected boolean reachedDeadline;
+  /** The solution given to start the next optimization from, if any. */
+  protected int[] startingSolution;
+  /**
+    * The solution found before the model was last changed, which the next
+    * optimization starts from if no {@link #startingSolution} was given.
+   **/
+  protected int[] previousSolution;
 
 
   /** Create a new Gurobi hook with the default environment parameters. */
@@ -126,7 +144,50 @@ public class GurobiHook implements ILPSolver
     variables = new OVector();
     SOSes = new OVector();
     objectiveCoefficients = new DVector();
-    needsUpdate = isSolved = false;
+    needsUpdate = isSolved = reachedDeadline = false;
+    startingSolution = previousSolution = null;
+  }
+
+
+  /**
+    * Keeps the current solution, if any, as the {@link #previousSolution}
+    * and marks the model unsolved.  Called whenever the model changes.
+   **/
+  protected void changed() {
+    if (isSolved) {
+      previousSolution = new int[variables.size()];
+      for (int j = 0; j < previousSolution.length; ++j)
+        if (getBooleanValue(j)) previousSolution[j] = 1;
+    }
+
+    isSolved = false;
+  }
+
+
+  /**
+    * Changes the objective function coefficient of a variable that has
+    * already been added.
+    *
+    * @param j  The index of the variable.
+    * @param c  Its new objective function coefficient.
+   **/
+  public void setObjectiveCoefficient(int j, double c) {
+    changed();
+    try { ((GRBVar) variables.get(j)).set(GRB.DoubleAttr.Obj, c); }
+    catch (GRBException e) { handleException(e); }
+    objectiveCoefficients.set(j, c);
+    needsUpdate = true;
+  }
+
+
+  /**
+    * Gives the next call to {@link #solve()} a solution to start from.
+    *
+    * @param x  The value, 0 or 1, of every variable, or <code>null</code> to
+    *           start from the previous solution, if any.
+   **/
+  public void setStartingSolution(int[] x) {
+    startingSolution = x == null ? null : (int[]) x.clone();
   }
 
 
@@ -137,6 +198,7 @@ public class GurobiHook implements ILPSolver
     *           maximized.
    **/
   public void setMaximize(boolean d) {
+    changed();
     try { model.set(GRB.IntAttr.ModelSense, d ? -1 : 1); }
     catch (GRBException e) { handleException(e); }
   }
@@ -152,6 +214,7 @@ public class GurobiHook implements ILPSolver
     * @return The index of the created variable.
    **/
   public int addBooleanVariable(double c) {
+    changed();
     int id = variables.size();
     try { variables.add(model.addVar(0, 1, c, GRB.BINARY, "x_" + id)); }
     catch (GRBException e) { handleException(e); }
@@ -212,6 +275,7 @@ public class GurobiHook implements ILPSolver
     * @param t  The type of linear inequality constraint to add.
    **/
   protected void addConstraint(int[] i, double[] a, double b, char t) {
+    changed();
     if (needsUpdate) {
       try { model.update(); }
       catch (GRBException e) { handleException(e); }
@@ -310,13 +374,53 @@ public class GurobiHook implements ILPSolver
       System.out.print(buffer);
     }
 
+    int[] start =
+      startingSolution != null ? startingSolution : previousSolution;
+    startingSolution = previousSolution = null;
+    if (start != null) {
+      if (needsUpdate) {
+        model.update();
+        needsUpdate = false;
+      }
+
+      for (int j = 0; j < variables.size(); ++j)
+        ((GRBVar) variables.get(j)).set(GRB.DoubleAttr.Start,
+                                        j < start.length ? start[j] : 0);
+    }
+
+    // The limit stays in the environment, so it's lifted again when there
+    // is no deadline.
+    model.getEnv().set(GRB.DoubleParam.TimeLimit,
+        deadline == 0 ? GRB.INFINITY
+                      : Math.max(0, deadline - System.currentTimeMillis())
+                        / 1000.0);
+
     model.optimize();
     int status = model.get(GRB.IntAttr.Status);
-    isSolved = status == GRB.OPTIMAL || status == GRB.SUBOPTIMAL;
+    reachedDeadline = status == GRB.TIME_LIMIT;
+    isSolved = status == GRB.OPTIMAL || status == GRB.SUBOPTIMAL
+               || reachedDeadline && model.get(GRB.IntAttr.SolCount) > 0;
     return isSolved;
   }
 
 
+  /**
+    * Sets the time at which {@link #solve()} gives up and keeps the best
+    * solution found so far.
+    *
+    * @param d  The deadline, in the milliseconds of
+    *           <code>System.currentTimeMillis()</code>, or 0 for none.
+   **/
+  public void setDeadline(long d) { deadline = d; }
+
+
+  /**
+    * Returns <code>true</code> iff the most recent call to {@link #solve()}
+    * stopped at the deadline.
+   **/
+  public boolean reachedDeadline() { return reachedDeadline; }
+
+
   /**
     * Tests whether the problem represented by this <code>ILPSolver</code>
     * instance has been solved already.
@@ -12,12 +12,17 @@ package edu.illinois.cs.cogcomp.lbjava.infer;
 
 import java.util.Arrays;
 import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 
 import edu.illinois.cs.cogcomp.lbjava.classify.Score;
 import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
 import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.util.IVector;
 
 
 /**
@@ -30,6 +35,31 @@ import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
   * Textual output of the ILP problem itself is controlled by the
   * {@link ILPSolver}.
   *
+  * <p> Inference can be given a {@link #setTimeLimit(long) time limit}.  If
+  * it runs out before the solver has proven a solution optimal, the best
+  * feasible solution found so far is used, or the classifiers' highest
+  * scoring predictions if there is none, and {@link #isOptimal()} returns
+  * <code>false</code>.  The time limit is also checked while the variables
+  * are added and the constraints are translated, and running out then falls
+  * back on the highest scoring predictions.  Only an {@link AnytimeILPSolver}
+  * can be stopped in the middle of its search; with other solvers, the time
+  * limit is only checked before solving.
+  *
+  * <p> If {@link #setTemplateBytes(long)} has given them some memory, the
+  * linear inequalities that the constraints are translated into are
+  * remembered in a {@link Template} for each structure of inference
+  * variables, and heads that give rise to the same inequalities reuse them
+  * instead of translating the constraints again.  Finding a template costs
+  * a pass over the propositionalized constraints, so templates are off by
+  * default and only pay off when translation dominates.  See
+  * {@link #getTemplateSignature(String[][])}.
+  *
+  * <p> With an {@link IncrementalILPSolver}, a constraint added after
+  * inference has been performed is translated and added to the solved
+  * problem, which is then solved again starting from the previous solution,
+  * as long as it doesn't involve new inference variables.  Constraints can
+  * also be added to the solver {@link #setLazyConstraints(boolean) lazily}.
+  *
   * @author Nick Rizzolo
  **/
 public class ILPInference extends Inference
@@ -43,6 +73,24 @@ public class ILPInference extends Inference
 
   /** Keeps the next ID number for objects of this class. */
   protected static int nextID = 0;
+  /** The {@link #timeLimit} given to new objects of this class. */
+  protected static volatile long defaultTimeLimit = 0;
+  /** Default value for {@link #templateBytes}; templates aren't used. */
+  public static final long defaultTemplateBytes = 0;
+  /**
+    * The approximate number of bytes {@link #templates} may take, or 0 if
+    * templates should not be used.
+   **/
+  protected static volatile long templateBytes = defaultTemplateBytes;
+  /**
+    * Compiled {@link Template}s indexed by the name of the inference class,
+    * the signature of the inference variables, and the fingerprint of the
+    * constraints, least recently used first.
+   **/
+  protected static final LinkedHashMap templates =
+    new LinkedHashMap(16, 0.75f, true);
+  /** The sum of the {@link Template#bytes} of the {@link #templates}. */
+  protected static long templatesSize;
 
 
   /** The identification number for this object, used in debug file names. */
@@ -90,6 +138,42 @@ public class ILPInference extends Inference
     * <code>STDOUT</code>.
    **/
   protected int verbosity;
+  /**
+    * The number of milliseconds inference may take before it settles for a
+    * solution that isn't known to be optimal, or 0 for no limit.
+   **/
+  protected long timeLimit;
+  /**
+    * The time, in the milliseconds of <code>System.currentTimeMillis()</code>,
+    * at which the current call to {@link #infer()} runs out of time, or 0 if
+    * there is no limit.
+   **/
+  protected long deadline;
+  /**
+    * Cleared when inference ran out of time before finding a solution known
+    * to be optimal.
+   **/
+  protected boolean optimal = true;
+  /**
+    * Whether the terms of the top level conjunction are added to an
+    * {@link IncrementalILPSolver} only once a solution violates them.
+   **/
+  protected boolean lazy;
+  /**
+    * The terms of the top level conjunction that have not been added to the
+    * solver, or <code>null</code> if constraints aren't added lazily.  The
+    * current solution satisfies all of them.
+   **/
+  protected LinkedList pending;
+  /** Set once the variables and constraints have been added to the solver. */
+  protected boolean built;
+  /**
+    * Maps each variable {@link #build()} has added to the solver to its
+    * value with the highest normalized score.  The normalizer changes the
+    * variable's scores in place, so {@link #useArgmax()} looks the values
+    * up here instead of normalizing them again.
+   **/
+  protected HashMap argmaxValues;
 
 
   /** Don't use this constructor, since it doesn't set an ILP algorithm. */
@@ -132,17 +216,79 @@ public class ILPInference extends Inference
     super(h);
     solver = a;
     verbosity = v;
+    timeLimit = defaultTimeLimit;
     ID = nextID++;
   }
 
 
   /**
-    * Adds a constraint to the inference.
+    * Sets the {@link #timeLimit} of objects of this class created from now
+    * on, including those created by generated code.
+    *
+    * @param t  The time limit in milliseconds, or 0 for no limit.
+   **/
+  public static void setDefaultTimeLimit(long t) {
+    defaultTimeLimit = Math.max(0, t);
+  }
+
+
+  /**
+    * Sets the number of milliseconds inference may take before it settles
+    * for a solution that isn't known to be optimal.
+    *
+    * @param t  The time limit in milliseconds, or 0 for no limit.
+   **/
+  public void setTimeLimit(long t) { timeLimit = Math.max(0, t); }
+
+  /** Returns the time limit in milliseconds, or 0 if there is none. */
+  public long getTimeLimit() { return timeLimit; }
+
+
+  /**
+    * Returns <code>false</code> iff inference ran out of time before a
+    * solution was proven optimal.  In that case, the variables were set to
+    * the best feasible solution found, or to the classifiers' highest scoring
+    * predictions if there was none, which may violate the constraints.
+   **/
+  public boolean isOptimal() { return optimal; }
+
+
+  /**
+    * Determines whether the terms of the top level conjunction of the
+    * constraints are added to the solver only once a solution violates them.
+    * The solver first solves the problem with none of them, and each time
+    * its solution violates some, those are added and the problem is solved
+    * again.  The final solution satisfies all the terms and is optimal, but
+    * problems with many terms that the classifiers' predictions mostly
+    * satisfy are solved much faster.  This setting only has an effect if the
+    * ILP algorithm is an {@link IncrementalILPSolver}, and templates are not
+    * used when it is on.
+    *
+    * @param l  Whether or not to add constraints lazily.
+   **/
+  public void setLazyConstraints(boolean l) { lazy = l; }
+
+  /** Returns whether or not constraints are added lazily. */
+  public boolean getLazyConstraints() { return lazy; }
+
+
+  /**
+    * Adds a constraint to the inference.  If inference has already been
+    * performed with an {@link IncrementalILPSolver} and the new constraint
+    * involves no new inference variables, it is added to the existing
+    * problem.  Otherwise, the problem will be built again from scratch.
     *
     * @param c  The constraint to add.
    **/
   public void addConstraint(FirstOrderConstraint c) {
-    solver.reset();
+    if (!built || tautology || !optimal || !solver.isSolved()
+        || !(solver instanceof IncrementalILPSolver) || !addIncrementally(c)) {
+      solver.reset();
+      built = tautology = false;
+      optimal = true;
+      pending = null;
+    }
+
     if (constraint == null) constraint = c;
     else
       constraint =
@@ -155,16 +301,120 @@ public class ILPInference extends Inference
     * already been solved.
    **/
   protected void infer() throws Exception {
-    if (tautology || solver.isSolved()) return;
+    if (tautology || !optimal || solver.isSolved()) return;
+
+    deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : 0;
+    try {
+      if (!built && !build()) return;
+      checkDeadline();
+      solveAndSetValues();
+    }
+    catch (DeadlineReached e) {
+      useArgmax();
+    }
+    finally {
+      deadline = 0;
+    }
+  }
+
+
+  /**
+    * Solves the built problem, adding any {@link #pending} constraints that
+    * the solution violates, and sets the variables to the solution.
+    *
+    * @throws DeadlineReached If the time ran out while translating
+    *                         constraints.
+   **/
+  private void solveAndSetValues() throws Exception {
+    if (verbosity > VERBOSITY_NONE)
+      System.out.println("solution: (" + new Date() + ")");
+    AnytimeILPSolver anytime = null;
+    if (deadline != 0 && solver instanceof AnytimeILPSolver) {
+      anytime = (AnytimeILPSolver) solver;
+      anytime.setDeadline(deadline);
+    }
+
+    boolean solved, expired;
+    try {
+      solved = solver.solve();
+      expired = anytime != null && anytime.reachedDeadline();
+
+      while (solved && !expired && pending != null) {
+        if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+          expired = true;
+          break;
+        }
+
+        if (!addViolated()) break;
+        solved = solver.solve();
+        expired = anytime != null && anytime.reachedDeadline();
+      }
+    }
+    finally {
+      if (anytime != null) anytime.setDeadline(0);
+    }
+
+    optimal = !expired;
+
+    if (!solved) {
+      if (!optimal) {
+        useArgmax();
+        return;
+      }
+
+      throw new InferenceNotOptimalException(solver, head);
+    }
+
+    int variableIndex = 0;
+    if (verbosity > VERBOSITY_NONE)
+      System.out.println("variables set true in solution: (" + new Date()
+                         + ")");
+
+    for (Iterator I = variables.values().iterator(); I.hasNext(); ) {
+      FirstOrderVariable v = (FirstOrderVariable) I.next();
+      Score[] scores = v.getScores().toArray();
+      for (int j = 0; j < scores.length; ++j, ++variableIndex)
+        if (solver.getBooleanValue(variableIndex)) {
+          v.setValue(scores[j].value);
+
+          if (verbosity >= VERBOSITY_HIGH) {
+            StringBuffer toPrint = new StringBuffer();
+            toPrint.append("x_");
+            toPrint.append(variableIndex);
+            while (toPrint.length() < 8) toPrint.insert(0, ' ');
+            toPrint.append(": ");
+            toPrint.append(v);
+            System.out.println(toPrint);
+          }
+        }
+    }
+  }
+
 
+  /**
+    * Adds the variables to the solver and translates the constraints, either
+    * by replaying a {@link Template} or with
+    * {@link #translate(PropositionalConstraint)}.
+    *
+    * @return <code>false</code> iff the constraints turned out to be a
+    *         tautology, in which case {@link #tautology} has been set.
+   **/
+  protected boolean build() throws Exception {
     solver.setMaximize(true);
     constraint.consolidateVariables(variables);
     indexMap = new HashMap();
+    argmaxValues = new HashMap();
+
+    String[][] values = isLazy() ? null : new String[variables.size()][];
+    int variableNumber = 0;
+    IVector argmax = new IVector();
+    int columns = 0;
 
     if (verbosity > VERBOSITY_NONE)
       System.out.println("variables: (" + new Date() + ")");
 
     for (Iterator I = variables.values().iterator(); I.hasNext(); ) {
+      checkDeadline();
       FirstOrderVariable v = (FirstOrderVariable) I.next();
       ScoreSet ss = getNormalizer(v.getClassifier()).normalize(v.getScores());
       Score[] scores = null;
@@ -179,6 +429,17 @@ public class ILPInference extends Inference
       }
 
       int[] indexes = solver.addDiscreteVariable(scores);
+      int best = best(scores);
+      argmax.add(indexes[best]);
+      argmaxValues.put(v, scores[best].value);
+      columns = Math.max(columns, indexes[indexes.length - 1] + 1);
+
+      if (values != null) {
+        String[] variableValues = new String[scores.length];
+        for (int j = 0; j < scores.length; ++j)
+          variableValues[j] = scores[j].value;
+        values[variableNumber++] = variableValues;
+      }
 
       for (int j = 0; j < scores.length; ++j) {
         indexMap.put(
@@ -204,59 +465,499 @@ public class ILPInference extends Inference
       }
     }
 
-    if (verbosity > VERBOSITY_NONE)
-      System.out.println("propositionalization: (" + new Date() + ")");
+    // The classifiers' predictions are a feasible starting solution until
+    // constraints are added.
+    if (solver instanceof IncrementalILPSolver) {
+      int[] start = new int[columns];
+      for (int i = 0; i < argmax.size(); ++i) start[argmax.get(i)] = 1;
+      ((IncrementalILPSolver) solver).setStartingSolution(start);
+    }
+
     PropositionalConstraint propositional =
-      ((FirstOrderConstraint) constraint).propositionalize();
+      propositionalize((FirstOrderConstraint) constraint);
+    checkDeadline();
+    Object signature = null;
+    String fingerprint = null;
+    Template template = null;
+
+    if (values != null && templateBytes > 0
+        && !(propositional instanceof PropositionalConstant)) {
+      signature = getTemplateSignature(values);
+      if (signature != null) {
+        fingerprint = fingerprint(propositional);
+        template = getTemplate(signature, fingerprint);
+      }
+    }
+
+    if (template != null) {
+      if (verbosity > VERBOSITY_NONE)
+        System.out.println("template: (" + new Date() + ")");
+      template.replay(solver);
+    }
+    else {
+      Recorder recorder = null;
+      if (signature != null) {
+        recorder = new Recorder(solver);
+        solver = recorder;
+      }
+
+      try {
+        if (!translate(propositional)) return false;
+      }
+      finally {
+        if (recorder != null) solver = recorder.solver;
+      }
+
+      if (recorder != null)
+        putTemplate(signature, fingerprint, new Template(recorder.getRows()));
+    }
+
+    built = true;
+    return true;
+  }
+
 
+  /**
+    * Throws {@link DeadlineReached} if the {@link #deadline} has passed.
+    * Called between the steps of building the problem, which leave the
+    * solver partially built when it is thrown.
+   **/
+  protected void checkDeadline() {
+    if (deadline != 0 && System.currentTimeMillis() >= deadline)
+      throw new DeadlineReached();
+  }
+
+
+  /**
+    * Sets every variable to its value with the highest normalized score, as
+    * in the argmax of the objective function, and clears
+    * {@link #optimal}.  This is the fallback when inference runs out of time
+    * without finding a feasible solution.
+   **/
+  protected void useArgmax() {
+    optimal = false;
     if (verbosity > VERBOSITY_NONE)
-      System.out.println("simplification: (" + new Date() + ")");
-    if (propositional instanceof PropositionalConjunction)
-      propositional =
-        ((PropositionalConjunction) propositional).simplify(true);
-    else propositional = propositional.simplify();
+      System.out.println("time limit reached: (" + new Date() + ")");
+
+    for (Iterator I = variables.values().iterator(); I.hasNext(); ) {
+      FirstOrderVariable v = (FirstOrderVariable) I.next();
+      String value =
+        argmaxValues == null ? null : (String) argmaxValues.get(v);
+
+      if (value == null) {
+        ScoreSet ss =
+          getNormalizer(v.getClassifier())
+          .normalize((ScoreSet) v.getScores().clone());
+        Score[] scores = ss == null ? null : ss.toArray();
+        if (scores == null || scores.length == 0) continue;
+        value = scores[best(scores)].value;
+      }
 
+      v.setValue(value);
+    }
+  }
+
+
+  /**
+    * Returns the index of the first of the highest scores, which is the
+    * value {@link #build()} gives the objective function's argmax and
+    * {@link #useArgmax()} falls back on.
+    *
+    * @param scores The normalized scores of a variable's values.
+    * @return The index of the highest score.
+   **/
+  protected static int best(Score[] scores) {
+    int result = 0;
+    for (int j = 1; j < scores.length; ++j)
+      if (scores[j].score > scores[result].score) result = j;
+    return result;
+  }
+
+
+  /**
+    * Translates the propositionalized and simplified constraints into linear
+    * inequalities in the solver.  The variables must already have been added
+    * to the solver and {@link #indexMap}.
+    *
+    * @param propositional  The constraints, as returned by
+    *                       {@link #propositionalize(FirstOrderConstraint)}.
+    * @return <code>false</code> iff the constraints turned out to be a
+    *         tautology, in which case {@link #tautology} has been set and
+    *         nothing has been added to the solver.
+   **/
+  protected boolean translate(PropositionalConstraint propositional) {
     if (propositional instanceof PropositionalConstant) {
       if (propositional.evaluate()) {
         tautology = true;
-        return;
+        return false;
       }
       else {
         System.err.println("ILP ERROR: Unsatisfiable constraints!");
         solver.addEqualityConstraint(new int[]{ 0 }, new double[]{ 1 }, 2);
       }
     }
+    else if (isLazy()) {
+      pending = new LinkedList(Arrays.asList(terms(propositional)));
+      return true;
+    }
 
     if (verbosity > VERBOSITY_NONE)
       System.out.println("translation: (" + new Date() + ")");
     topLevel = true;
     propositional.runVisit(this);
+    return true;
+  }
 
+
+  /**
+    * Propositionalizes and simplifies the given constraint.
+    *
+    * @param c  The constraint.
+    * @return The simplified propositional constraint.
+   **/
+  protected PropositionalConstraint propositionalize(FirstOrderConstraint c) {
+    PropositionalConstraint propositional = null;
+    PropositionalInterner interner = PropositionalInterner.open();
+
+    try {
+      if (verbosity > VERBOSITY_NONE)
+        System.out.println("propositionalization: (" + new Date() + ")");
+      propositional = c.propositionalize();
+
+      if (verbosity > VERBOSITY_NONE)
+        System.out.println("simplification: (" + new Date() + ")");
+      if (propositional instanceof PropositionalConjunction)
+        propositional =
+          ((PropositionalConjunction) propositional).simplify(true);
+      else propositional = propositional.simplify();
+
+      if (verbosity > VERBOSITY_NONE)
+        System.out.println("  " + interner.size() + " distinct subformulas, "
+                           + interner.getShared() + " shared, "
+                           + interner.getReused()
+                           + " simplifications reused");
+    }
+    finally {
+      interner.close();
+    }
+
+    return propositional;
+  }
+
+
+  /**
+    * Returns the terms of the given constraint's top level conjunction.
+    *
+    * @param c  A simplified propositional constraint.
+    * @return Its children if it is a conjunction, or else the constraint.
+   **/
+  protected static PropositionalConstraint[] terms(PropositionalConstraint c) {
+    if (c instanceof PropositionalConjunction)
+      return (PropositionalConstraint[]) c.getChildren();
+    return new PropositionalConstraint[]{ c };
+  }
+
+
+  /**
+    * Determines whether the constraints are being added lazily, which is
+    * only possible with an {@link IncrementalILPSolver}.
+   **/
+  protected boolean isLazy() {
+    return lazy && solver instanceof IncrementalILPSolver;
+  }
+
+
+  /**
+    * Adds a constraint to the problem that has already been built and
+    * solved.  If the current solution violates the constraint, the solver
+    * will have to solve the problem again.
+    *
+    * @param c  The constraint.
+    * @return <code>false</code> if the constraint involves new inference
+    *         variables or is unsatisfiable, in which case the problem must be
+    *         built from scratch.
+   **/
+  protected boolean addIncrementally(FirstOrderConstraint c) {
+    int size = variables.size();
+    c.consolidateVariables(variables);
+    if (variables.size() != size) return false;
+
+    PropositionalConstraint propositional = propositionalize(c);
+    if (propositional instanceof PropositionalConstant)
+      return propositional.evaluate();
+
+    PropositionalConstraint[] terms = terms(propositional);
+    LinkedList violated = new LinkedList();
+    for (int i = 0; i < terms.length; ++i) {
+      if (pending != null && isSatisfied(terms[i])) pending.add(terms[i]);
+      else violated.add(terms[i]);
+    }
+
+    if (violated.size() > 0) translateTerms(violated);
+    return true;
+  }
+
+
+  /**
+    * Adds the {@link #pending} terms that the current solution violates to
+    * the solver.
+    *
+    * @return <code>true</code> iff any terms were added.
+   **/
+  protected boolean addViolated() {
+    // The solution must be read before any terms are translated, since
+    // translation changes the problem.
+    LinkedList violated = new LinkedList();
+    for (Iterator I = pending.iterator(); I.hasNext(); ) {
+      PropositionalConstraint term = (PropositionalConstraint) I.next();
+      if (!isSatisfied(term)) {
+        violated.add(term);
+        I.remove();
+      }
+    }
+
+    if (violated.size() == 0) return false;
     if (verbosity > VERBOSITY_NONE)
-      System.out.println("solution: (" + new Date() + ")");
-    if (!solver.solve()) throw new InferenceNotOptimalException(solver, head);
-    int variableIndex = 0;
-    if (verbosity > VERBOSITY_NONE)
-      System.out.println("variables set true in solution: (" + new Date()
-                         + ")");
+      System.out.println("  adding " + violated.size() + " violated terms, "
+                         + pending.size() + " pending");
+    translateTerms(violated);
+    return true;
+  }
 
-    for (Iterator I = variables.values().iterator(); I.hasNext(); ) {
+
+  /**
+    * Determines whether the solver's current solution satisfies the given
+    * term.
+    *
+    * @param c  The term.
+    * @return <code>true</code> iff it is satisfied.
+   **/
+  protected boolean isSatisfied(PropositionalConstraint c) {
+    setLeaves(c);
+    return c.evaluate();
+  }
+
+
+  /**
+    * Sets every propositional variable in the given constraint to its value
+    * in the solver's current solution.
+    *
+    * @param c  The constraint.
+   **/
+  private void setLeaves(PropositionalConstraint c) {
+    if (c instanceof PropositionalVariable) {
+      Integer index = (Integer) indexMap.get(c);
+      ((PropositionalVariable) c).value =
+        index != null && solver.getBooleanValue(index.intValue());
+      return;
+    }
+
+    Constraint[] children = c.getChildren();
+    for (int i = 0; i < children.length; ++i)
+      setLeaves((PropositionalConstraint) children[i]);
+  }
+
+
+  /**
+    * Translates the given terms of the top level conjunction into linear
+    * inequalities in the solver.
+    *
+    * @param terms  The terms.
+   **/
+  protected void translateTerms(LinkedList terms) {
+    topLevel = true;
+    translateTopLevel(
+        (PropositionalConstraint[])
+        terms.toArray(new PropositionalConstraint[terms.size()]));
+  }
+
+
+  /**
+    * Returns an object that, together with the constraints'
+    * {@link #fingerprint(PropositionalConstraint) fingerprint}, identifies
+    * the {@link Template} of this inference.  The fingerprint proves that two
+    * problems have the same constraints over the same solver columns, so the
+    * signature need only make sure that the columns stand for the same
+    * variables and values.
+    *
+    * <p> This implementation returns the classifier and the values of each
+    * inference variable, in the order they were added to the solver.  Since
+    * those determine the solver's columns, problems with equal signatures
+    * that differ only in the classifiers' scores produce the same fingerprint
+    * whenever the constraints relate the variables in the same way.
+    * Derived classes may return <code>null</code> to disable templates, or
+    * something coarser or finer than this.
+    *
+    * @param values The values of each inference variable, in order.
+    * @return The signature of this inference problem, or <code>null</code>
+    *         if templates should not be used.
+   **/
+  protected Object getTemplateSignature(String[][] values) {
+    ArrayList result = new ArrayList(2 * values.length);
+    int i = 0;
+    for (Iterator I = variables.values().iterator(); I.hasNext(); ++i) {
       FirstOrderVariable v = (FirstOrderVariable) I.next();
-      Score[] scores = v.getScores().toArray();
-      for (int j = 0; j < scores.length; ++j, ++variableIndex)
-        if (solver.getBooleanValue(variableIndex)) {
-          v.setValue(scores[j].value);
+      result.add(v.getClassifier().toString());
+      result.add(Arrays.asList(values[i]));
+    }
+    return result;
+  }
 
-          if (verbosity >= VERBOSITY_HIGH) {
-            StringBuffer toPrint = new StringBuffer();
-            toPrint.append("x_");
-            toPrint.append(variableIndex);
-            while (toPrint.length() < 8) toPrint.insert(0, ' ');
-            toPrint.append(": ");
-            toPrint.append(v);
-            System.out.println(toPrint);
-          }
-        }
+
+  /**
+    * Computes a string that is equal for two propositional constraints
+    * exactly when they are the same formula over the same solver columns,
+    * up to the order of the children of conjunctions, disjunctions, and
+    * "at least" constraints.  Two such constraints translate into
+    * equivalent linear inequalities, so a {@link Template} compiled for one
+    * may be replayed for the other.  Computing the fingerprint takes one
+    * pass over the constraint, which is much cheaper than translating it.
+    *
+    * @param c  A simplified propositional constraint whose variables are in
+    *           {@link #indexMap}.
+    * @return The fingerprint.
+   **/
+  protected String fingerprint(PropositionalConstraint c) {
+    return fingerprint(c, new IdentityHashMap());
+  }
+
+
+  /**
+    * Computes the fingerprint of a subformula, remembering the fingerprints
+    * of subformulas shared by several parents.
+    *
+    * @param c      The subformula.
+    * @param memo   The fingerprints computed so far.
+    * @return The fingerprint.
+   **/
+  private String fingerprint(PropositionalConstraint c, IdentityHashMap memo) {
+    String result = (String) memo.get(c);
+    if (result != null) return result;
+
+    StringBuffer buffer = new StringBuffer();
+    if (c instanceof PropositionalVariable) {
+      // Variables that aren't in the solver can only be compared by name.
+      Integer index = (Integer) indexMap.get(c);
+      if (index == null) buffer.append("v(").append(c).append(")");
+      else buffer.append("x").append(index);
+    }
+    else if (c instanceof PropositionalConstant)
+      buffer.append(c.evaluate() ? "T" : "F");
+    else {
+      Constraint[] children = c.getChildren();
+      String[] parts = new String[children.length];
+      for (int i = 0; i < children.length; ++i)
+        parts[i] = fingerprint((PropositionalConstraint) children[i], memo);
+
+      if (c instanceof PropositionalConjunction) buffer.append("&");
+      else if (c instanceof PropositionalDisjunction) buffer.append("|");
+      else if (c instanceof PropositionalAtLeast)
+        buffer.append("#").append(((PropositionalAtLeast) c).getM());
+      else if (c instanceof PropositionalNegation) buffer.append("!");
+      else if (c instanceof PropositionalImplication) buffer.append(">");
+      else if (c instanceof PropositionalDoubleImplication)
+        buffer.append("=");
+      else buffer.append(c.getClass().getName());
+
+      if (c instanceof PropositionalConjunction
+          || c instanceof PropositionalDisjunction
+          || c instanceof PropositionalAtLeast)
+        Arrays.sort(parts);
+
+      buffer.append("(");
+      for (int i = 0; i < parts.length; ++i) {
+        if (i > 0) buffer.append(",");
+        buffer.append(parts[i]);
+      }
+      buffer.append(")");
+    }
+
+    result = buffer.toString();
+    memo.put(c, result);
+    return result;
+  }
+
+
+  /**
+    * Retrieves the template compiled for the given signature and
+    * fingerprint by an inference of this object's run-time type.
+    *
+    * @param signature    The signature of the inference variables.
+    * @param fingerprint  The fingerprint of the constraints.
+    * @return The template, or <code>null</code> if there is none.
+   **/
+  protected Template getTemplate(Object signature, String fingerprint) {
+    Object key =
+      Arrays.asList(
+          new Object[]{ getClass().getName(), signature, fingerprint });
+    synchronized (templates) { return (Template) templates.get(key); }
+  }
+
+
+  /**
+    * Stores a template compiled for the given signature and fingerprint, to
+    * be used by later inferences of this object's run-time type.
+    *
+    * @param signature    The signature of the inference variables.
+    * @param fingerprint  The fingerprint of the constraints.
+    * @param t            The template.
+   **/
+  protected void putTemplate(Object signature, String fingerprint,
+                             Template t) {
+    Object key =
+      Arrays.asList(
+          new Object[]{ getClass().getName(), signature, fingerprint });
+    // The key's strings take about 2 bytes per character.
+    t.bytes += 2 * (fingerprint.length() + signature.toString().length());
+
+    synchronized (templates) {
+      Template old = (Template) templates.put(key, t);
+      if (old != null) templatesSize -= old.bytes;
+      templatesSize += t.bytes;
+      evictTemplates();
+    }
+  }
+
+
+  /**
+    * Evicts least recently used templates until {@link #templates} fits in
+    * {@link #templateBytes}.  Must be called while synchronized on
+    * {@link #templates}.
+   **/
+  private static void evictTemplates() {
+    Iterator I = templates.values().iterator();
+    while (templatesSize > templateBytes && I.hasNext()) {
+      templatesSize -= ((Template) I.next()).bytes;
+      I.remove();
+    }
+  }
+
+
+  /**
+    * Sets the approximate number of bytes that compiled templates may take,
+    * shared by all inferences.  Templates are only looked for and stored
+    * while this is positive, and the least recently used ones are evicted
+    * to stay within it.
+    *
+    * @param b  The number of bytes, or 0 to stop using templates.
+   **/
+  public static void setTemplateBytes(long b) {
+    templateBytes = Math.max(0, b);
+    synchronized (templates) { evictTemplates(); }
+  }
+
+  /**
+    * Returns the approximate number of bytes that compiled templates may
+    * take, or 0 if they aren't used.
+   **/
+  public static long getTemplateBytes() { return templateBytes; }
+
+
+  /** Discards all compiled templates. */
+  public static void clearTemplates() {
+    synchronized (templates) {
+      templates.clear();
+      templatesSize = 0;
     }
   }
 
@@ -364,6 +1065,46 @@ public class ILPInference extends Inference
   }
 
 
+  /**
+    * Translates the terms of the top level conjunction.  Variables and
+    * negated variables are fixed by a single equality constraint.
+    *
+    * @param children The terms.
+   **/
+  protected void translateTopLevel(PropositionalConstraint[] children) {
+    PropositionalConstraint[] variables =
+      new PropositionalConstraint[children.length];
+    int size = 0;
+    for (int i = 0; i < children.length; ++i) {
+      if (children[i] instanceof PropositionalVariable
+          || children[i] instanceof PropositionalNegation)
+        variables[size++] = children[i];
+      else {
+        checkDeadline();
+        children[i].runVisit(this);
+      }
+    }
+
+    if (size > 0) {
+      int[] indexes = new int[size];
+      double[] coefficients = new double[size];
+      double bound = size;
+
+      for (int i = 0; i < size; ++i) {
+        variables[i].runVisit(this);
+        indexes[i] = returnIndex;
+        if (returnNegation) {
+          coefficients[i] = -1;
+          --bound;
+        }
+        else coefficients[i] = 1;
+      }
+
+      solver.addEqualityConstraint(indexes, coefficients, bound);
+    }
+  }
+
+
   /**
     * Derived classes override this method to do some type of processing on
     * constraints of the parameter's type.
@@ -378,35 +1119,7 @@ public class ILPInference extends Inference
     double[] coefficients = null;
     double bound;
 
-    if (topLevel) {
-      PropositionalConstraint[] variables =
-        new PropositionalConstraint[children.length];
-      int size = 0;
-      for (int i = 0; i < children.length; ++i) {
-        if (children[i] instanceof PropositionalVariable
-            || children[i] instanceof PropositionalNegation)
-          variables[size++] = children[i];
-        else children[i].runVisit(this);
-      }
-
-      if (size > 0) {
-        indexes = new int[size];
-        coefficients = new double[size];
-        bound = size;
-
-        for (int i = 0; i < size; ++i) {
-          variables[i].runVisit(this);
-          indexes[i] = returnIndex;
-          if (returnNegation) {
-            coefficients[i] = -1;
-            --bound;
-          }
-          else coefficients[i] = 1;
-        }
-
-        solver.addEqualityConstraint(indexes, coefficients, bound);
-      }
-    }
+    if (topLevel) translateTopLevel(children);
     else {
       indexes = new int[children.length + 1];
       coefficients = new double[children.length + 1];
@@ -681,5 +1394,222 @@ public class ILPInference extends Inference
   public void visit(PropositionalConstant c) {
     assert false : "ILP: Constant encountered. (" + c.evaluate() + ")";
   }
-}
 
+
+  /**
+    * Thrown by {@link #checkDeadline()} to abandon building the problem when
+    * inference runs out of time, and caught in {@link #infer()}.
+   **/
+  protected static class DeadlineReached extends RuntimeException
+  {
+    public DeadlineReached() { super("LBJava: ILP inference time limit reached."); }
+  }
+
+
+  /**
+    * A compiled ILP problem structure that can be reused for any head object
+    * with the same signature and constraint fingerprint.  It records every
+    * call made on the solver after the inference variables were added, i.e.,
+    * the temporary variables and linear inequalities that the constraints
+    * were translated into.  Replaying these calls after adding the variables
+    * with new scores recreates the problem without translating the
+    * constraints again.
+   **/
+  protected static class Template
+  {
+    /** The calls made on the solver after the inference variables were added. */
+    protected Row[] rows;
+    /**
+      * The approximate number of bytes this template and its key in
+      * {@link ILPInference#templates} take.
+     **/
+    protected long bytes;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param r  The recorded solver calls.
+     **/
+    public Template(Row[] r) {
+      rows = r;
+      bytes = 16 + 16 + 8L * r.length;
+      for (int i = 0; i < r.length; ++i) bytes += r[i].bytes();
+    }
+
+
+    /**
+      * Repeats the recorded calls on the given solver, which must already
+      * contain the inference variables.  Each call gets copies of the
+      * recorded arrays, since solvers are free to modify them.
+      *
+      * @param solver The solver.
+     **/
+    public void replay(ILPSolver solver) {
+      for (int i = 0; i < rows.length; ++i) {
+        Row r = rows[i];
+        if (r.type == Row.BOOLEAN) {
+          solver.addBooleanVariable(r.bound);
+          continue;
+        }
+        if (r.type == Row.DISCRETE) {
+          solver.addDiscreteVariable((double[]) r.coefficients.clone());
+          continue;
+        }
+        if (r.type == Row.DISCRETE_SCORES) {
+          solver.addDiscreteVariable((Score[]) r.scores.clone());
+          continue;
+        }
+
+        int[] indexes = (int[]) r.indexes.clone();
+        double[] coefficients = (double[]) r.coefficients.clone();
+        switch (r.type) {
+          case Row.EQUALITY:
+            solver.addEqualityConstraint(indexes, coefficients, r.bound);
+            break;
+          case Row.GREATER_THAN:
+            solver.addGreaterThanConstraint(indexes, coefficients, r.bound);
+            break;
+          case Row.LESS_THAN:
+            solver.addLessThanConstraint(indexes, coefficients, r.bound);
+            break;
+        }
+      }
+    }
+  }
+
+
+  /**
+    * A single call on an {@link ILPSolver} recorded in a {@link Template}.
+    * For a Boolean variable, {@link #bound} holds its objective function
+    * coefficient, and for a discrete variable, {@link #coefficients} or
+    * {@link #scores} hold the objective function coefficients of its
+    * values.
+   **/
+  protected static class Row
+  {
+    /** A possible value of {@link #type}. */
+    public static final int BOOLEAN = 0;
+    /** A possible value of {@link #type}. */
+    public static final int EQUALITY = 1;
+    /** A possible value of {@link #type}. */
+    public static final int GREATER_THAN = 2;
+    /** A possible value of {@link #type}. */
+    public static final int LESS_THAN = 3;
+    /** A possible value of {@link #type}. */
+    public static final int DISCRETE = 4;
+    /** A possible value of {@link #type}. */
+    public static final int DISCRETE_SCORES = 5;
+
+    /** The kind of call. */
+    public int type;
+    /** The indexes of the variables in the constraint. */
+    public int[] indexes;
+    /** The coefficients of the variables in the constraint. */
+    public double[] coefficients;
+    /** The constraint's bound. */
+    public double bound;
+    /** The scores of a discrete variable's values. */
+    public Score[] scores;
+
+
+    /**
+      * Initializing constructor.  The arrays are copied, since the
+      * translation code reuses them.
+      *
+      * @param t  The kind of call.
+      * @param i  The indexes of the variables in the constraint.
+      * @param a  The coefficients of the variables in the constraint.
+      * @param b  The constraint's bound.
+     **/
+    public Row(int t, int[] i, double[] a, double b) {
+      type = t;
+      if (i != null) indexes = (int[]) i.clone();
+      if (a != null) coefficients = (double[]) a.clone();
+      bound = b;
+    }
+
+
+    /** Returns the approximate number of bytes this row takes. */
+    public long bytes() {
+      long result = 48;
+      if (indexes != null) result += 16 + 4L * indexes.length;
+      if (coefficients != null) result += 16 + 8L * coefficients.length;
+      if (scores != null) result += 16 + 40L * scores.length;
+      return result;
+    }
+  }
+
+
+  /**
+    * Passes every call through to another solver while recording the
+    * variables and constraints added, so that they can be stored in a
+    * {@link Template}.
+   **/
+  protected static class Recorder implements ILPSolver
+  {
+    /** The solver that does the actual work. */
+    protected ILPSolver solver;
+    /** The calls recorded so far. */
+    protected LinkedList rows;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param s  The solver that does the actual work.
+     **/
+    public Recorder(ILPSolver s) {
+      solver = s;
+      rows = new LinkedList();
+    }
+
+
+    /** Returns the recorded calls. */
+    public Row[] getRows() {
+      return (Row[]) rows.toArray(new Row[rows.size()]);
+    }
+
+
+    public void setMaximize(boolean d) { solver.setMaximize(d); }
+
+    public int addBooleanVariable(double c) {
+      rows.add(new Row(Row.BOOLEAN, null, null, c));
+      return solver.addBooleanVariable(c);
+    }
+
+    public int[] addDiscreteVariable(double[] c) {
+      rows.add(new Row(Row.DISCRETE, null, c, 0));
+      return solver.addDiscreteVariable(c);
+    }
+
+    public int[] addDiscreteVariable(Score[] c) {
+      Row row = new Row(Row.DISCRETE_SCORES, null, null, 0);
+      row.scores = (Score[]) c.clone();
+      rows.add(row);
+      return solver.addDiscreteVariable(c);
+    }
+
+    public void addEqualityConstraint(int[] i, double[] a, double b) {
+      rows.add(new Row(Row.EQUALITY, i, a, b));
+      solver.addEqualityConstraint(i, a, b);
+    }
+
+    public void addGreaterThanConstraint(int[] i, double[] a, double b) {
+      rows.add(new Row(Row.GREATER_THAN, i, a, b));
+      solver.addGreaterThanConstraint(i, a, b);
+    }
+
+    public void addLessThanConstraint(int[] i, double[] a, double b) {
+      rows.add(new Row(Row.LESS_THAN, i, a, b));
+      solver.addLessThanConstraint(i, a, b);
+    }
+
+    public boolean solve() throws Exception { return solver.solve(); }
+    public boolean isSolved() { return solver.isSolved(); }
+    public boolean getBooleanValue(int i) { return solver.getBooleanValue(i); }
+    public double objectiveValue() { return solver.objectiveValue(); }
+    public void reset() { solver.reset(); }
+    public void write(StringBuffer buffer) { solver.write(buffer); }
+  }
+}
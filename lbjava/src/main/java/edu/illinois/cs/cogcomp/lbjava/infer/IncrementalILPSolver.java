@@ -0,0 +1,53 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+
+/**
+  * An {@link ILPSolver} whose problem may still be changed after it has been
+  * solved.  Variables and constraints may be added and objective function
+  * coefficients changed between calls to {@link ILPSolver#solve()}, and the
+  * next call solves the changed problem without rebuilding it.  Any change
+  * makes {@link ILPSolver#isSolved()} return <code>false</code> until the
+  * problem is solved again.
+  *
+  * <p> A solve may be warm started from a
+  * {@link #setStartingSolution(int[]) starting solution}, such as the
+  * classifiers' highest scoring predictions.  When none is given, the
+  * previous solution is used, so re-solving after changing the objective
+  * function or after adding constraints the previous solution already
+  * satisfied is cheap.  This also makes cutting plane inference, where
+  * violated constraints are added one round at a time, practical; see
+  * {@link ILPInference#setLazyConstraints(boolean)}.
+ **/
+public interface IncrementalILPSolver extends ILPSolver
+{
+  /**
+    * Changes the objective function coefficient of a variable that has
+    * already been added.
+    *
+    * @param j  The index of the variable.
+    * @param c  Its new objective function coefficient.
+   **/
+  public void setObjectiveCoefficient(int j, double c);
+
+
+  /**
+    * Gives the next call to {@link ILPSolver#solve()} a solution to start
+    * from.  A starting solution that violates the constraints does no harm,
+    * but may not help either.  Variables added after the starting solution
+    * was given start at 0.
+    *
+    * @param x  The value, 0 or 1, of every variable, or <code>null</code> to
+    *           start from the previous solution, if any.
+   **/
+  public void setStartingSolution(int[] x);
+}
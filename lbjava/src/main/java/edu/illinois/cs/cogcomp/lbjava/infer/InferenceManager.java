@@ -10,54 +10,206 @@
  */
 package edu.illinois.cs.cogcomp.lbjava.infer;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
   * The inference manager is a cache of <code>Inference</code> objects
-  * accessed via their names and head objects.  However, only one
-  * <code>Inference</code> object is stored per <code>Inference</code> class.
-  * For example, if the LBJava source file contains the following two
-  * <code>inference</code>s:
+  * accessed via their names and head objects.  For example, if the LBJava
+  * source file contains the following two <code>inference</code>s:
   *
   * <blockquote>
   *   <code>inference Foo head MyClass { ... }</code> <br>
   *   <code>inference Bar head MyClass { ... }</code>
   * </blockquote>
   *
-  * then this <code>InferenceManager</code> will store a maximum of one
-  * <code>Foo</code> object and one <code>Bar</code> object.
+  * then this <code>InferenceManager</code> will store <code>Foo</code> and
+  * <code>Bar</code> objects for the most recently used head objects.  A
+  * cached object is only returned for a head object that is exactly the same
+  * object as the one it was created with.
+  *
+  * <p> Since <code>Inference</code> objects are not thread-safe, every
+  * thread has a cache of its own.  Each cache holds at most
+  * {@link #getCapacity()} objects of each inference name and evicts the
+  * least recently used object of that name when it is full, so that
+  * inferences sharing a head object don't push each other out.  The default
+  * capacity is small, since a cached object keeps its head object and
+  * everything the inference computed about it alive;
+  * {@link #ensureCapacity(int)} lets a thread's cache hold more for a
+  * while.  If a {@link #setTimeToLive(long) time to live} has been set,
+  * objects older than that are evicted as well, either when the thread uses
+  * its cache or when {@link #removeExpired()} is called.  {@link #clear()},
+  * {@link #remove(String)}, and {@link #removeExpired()} reach the caches of
+  * all threads.  Counts of cache hits, misses, and evictions are kept across
+  * all threads.
+  *
+  * <p> A server that handles each request on a thread of a pool can confine
+  * the cached objects to a single request with {@link #beginScope()}:
+  *
+  * <blockquote><pre>
+  *   InferenceManager.Scope scope = InferenceManager.beginScope();
+  *   try { ... }
+  *   finally { scope.close(); }
+  * </pre></blockquote>
+  *
+  * While the scope is open, the thread uses a new, empty cache, which is
+  * emptied when the scope is closed, restoring the thread's previous cache.
+  * Nothing cached during the request then outlives it on the pooled thread.
   *
   * @author Nick Rizzolo
  **/
 public class InferenceManager
 {
+  /** Default value for {@link #capacity}. */
+  public static final int defaultCapacity = 4;
+  /** Default value for {@link #timeToLive}; objects never expire. */
+  public static final long defaultTimeToLive = 0;
+
+  /** The maximum number of objects of each name in each thread's cache. */
+  private static volatile int capacity = defaultCapacity;
+  /**
+    * The number of milliseconds an object may stay in the cache, or 0 if
+    * objects should only be evicted to make room for others.
+   **/
+  private static volatile long timeToLive = defaultTimeToLive;
+  /** The number of times a requested object was found in the cache. */
+  private static final AtomicLong hits = new AtomicLong();
+  /** The number of times a requested object was not found in the cache. */
+  private static final AtomicLong misses = new AtomicLong();
+  /** The number of objects removed from a cache to bound its size or age. */
+  private static final AtomicLong evictions = new AtomicLong();
+
+  /**
+    * Weak references to every cache in use by any thread, so that they can
+    * all be emptied without keeping the caches of finished threads alive.
+   **/
+  private static final Set registry =
+    Collections.newSetFromMap(new ConcurrentHashMap());
+  /** Receives the references in {@link #registry} once their caches die. */
+  private static final ReferenceQueue collected = new ReferenceQueue();
+
+  /** The cache of <code>Inference</code> objects used by each thread. */
+  private static final ThreadLocal caches =
+    new ThreadLocal() {
+      protected Object initialValue() { return register(new Cache(null)); }
+    };
+
+
+  /**
+    * Sets the maximum number of <code>Inference</code> objects of each name
+    * that each thread's cache holds.  Caches holding more than this shrink
+    * the next time an object of that name is added to them.
+    *
+    * @param c  The new capacity, which must be positive.
+   **/
+  public static void setCapacity(int c) {
+    if (c <= 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: InferenceManager capacity must be positive.");
+    capacity = c;
+  }
+
   /**
-    * The cache of <code>Inference</code> objects, indexed by
-    * <code>Key</code>s.
+    * Returns the maximum number of objects of each name in each thread's
+    * cache.
    **/
-  private static final LinkedHashMap cache = new LinkedHashMap();
+  public static int getCapacity() { return capacity; }
+
+
+  /**
+    * Makes the calling thread's cache hold at least the given number of
+    * objects of each name, regardless of {@link #getCapacity()}, until it is
+    * emptied by {@link #clear()} or by closing the {@link Scope} it belongs
+    * to.
+    *
+    * @param n  The number of objects of each name the cache must be able to
+    *           hold.
+   **/
+  public static void ensureCapacity(int n) {
+    Cache cache = current();
+    synchronized (cache) { cache.minimum = Math.max(cache.minimum, n); }
+  }
+
+
+  /**
+    * Sets the number of milliseconds an <code>Inference</code> object may
+    * stay in the cache after it was added.
+    *
+    * @param t  The time to live in milliseconds, or 0 to disable expiry.
+   **/
+  public static void setTimeToLive(long t) { timeToLive = Math.max(0, t); }
+
+  /** Returns the time to live in milliseconds, or 0 if it is disabled. */
+  public static long getTimeToLive() { return timeToLive; }
+
+
+  /**
+    * Adds a cache to {@link #registry}, dropping the references to caches
+    * that have been garbage collected since the last call.  Only those
+    * references are visited, and no lock is shared with other threads.
+    *
+    * @param c  The cache.
+    * @return The same cache.
+   **/
+  private static Cache register(Cache c) {
+    for (Reference r = collected.poll(); r != null; r = collected.poll())
+      registry.remove(r);
+    registry.add(new WeakReference(c, collected));
+    return c;
+  }
+
+
+  /** Returns the caches in {@link #registry} that are still in use. */
+  private static Cache[] registered() {
+    ArrayList result = new ArrayList();
+    for (Iterator I = registry.iterator(); I.hasNext(); ) {
+      Cache c = (Cache) ((WeakReference) I.next()).get();
+      if (c != null) result.add(c);
+    }
+    return (Cache[]) result.toArray(new Cache[result.size()]);
+  }
+
+
+  /** Returns the calling thread's current cache. */
+  private static Cache current() { return (Cache) caches.get(); }
 
 
   /**
     * Adds the given <code>Inference</code> object to the cache, indexed its
-    * fully qualified name.
+    * fully qualified name and its head object.
     *
     * @param i  The inference object.
    **/
   public static void put(Inference i) {
-    cache.put(i.getClass().getName(), i);
+    put(i.getClass().getName(), i);
   }
 
   /**
     * Adds the given <code>Inference</code> object to the cache, indexed by an
-    * arbitrary name (NB: Don't use unless you know what you're doing).
+    * arbitrary name and its head object (NB: Don't use unless you know what
+    * you're doing).
     *
     * @param name The (arbitrary) name of the inference object.
     * @param i    The inference object.
    **/
   public static void put(String name, Inference i) {
-    cache.put(name, i);
+    Cache cache = current();
+    long now = System.currentTimeMillis();
+    synchronized (cache) {
+      if (timeToLive > 0) cache.removeExpired(now);
+      cache.put(new Key(name, i.getHead()), new CachedInference(i, now));
+    }
   }
 
   /**
@@ -71,34 +223,341 @@ public class InferenceManager
     *         associated with them.
    **/
   public static Inference get(String n, Object h) {
-    Inference result = (Inference) cache.get(n);
-    if (result != null && result.getHead() == h) return result;
-    return null;
+    Cache cache = current();
+    Key key = new Key(n, h);
+    CachedInference entry;
+
+    synchronized (cache) {
+      entry = cache.get(key);
+      if (entry != null && timeToLive > 0
+          && System.currentTimeMillis() - entry.time > timeToLive) {
+        cache.remove(key);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+    }
+
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return entry.inference;
   }
 
 
   /**
-    * Removes the inference object with the given name.
+    * Removes the inference objects with the given name from the caches of
+    * all threads.
     *
     * @param n  The name of the unwanted inference.
    **/
-  public static void remove(String n) { cache.remove(n); }
+  public static void remove(String n) {
+    Cache[] all = registered();
+    for (int i = 0; i < all.length; ++i)
+      synchronized (all[i]) { all[i].remove(n); }
+  }
+
+
+  /** Empties the caches of all threads. */
+  public static void clear() {
+    Cache[] all = registered();
+    for (int i = 0; i < all.length; ++i)
+      synchronized (all[i]) { all[i].clear(); }
+  }
+
+
+  /**
+    * Removes the objects that have outlived the time to live from the caches
+    * of all threads, including threads that are no longer using their
+    * caches.  A program that sets a time to live can call this
+    * periodically.
+   **/
+  public static void removeExpired() {
+    if (timeToLive <= 0) return;
+    long now = System.currentTimeMillis();
+    Cache[] all = registered();
+    for (int i = 0; i < all.length; ++i)
+      synchronized (all[i]) { all[i].removeExpired(now); }
+  }
+
+
+  /** Returns the number of objects in the calling thread's cache. */
+  public static int size() {
+    Cache cache = current();
+    synchronized (cache) { return cache.size(); }
+  }
+
+  /** Returns the number of cache hits so far. */
+  public static long getHits() { return hits.get(); }
+
+  /** Returns the number of cache misses so far. */
+  public static long getMisses() { return misses.get(); }
+
+  /** Returns the number of objects evicted from caches so far. */
+  public static long getEvictions() { return evictions.get(); }
+
+  /** Sets the hit, miss, and eviction counts to 0. */
+  public static void resetStatistics() {
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+  }
 
 
   /**
-    * Objects of this class are used as the keys of the <code>cache</code>
-    * map.  They are distinguished from each other by comparing the contents
-    * of the <code>String</code>s storing their names and by their head
-    * objects, which must actually be exactly the same object for the two keys
-    * to be equivalent.
+    * Gives the calling thread a new, empty cache that lasts until the
+    * returned scope is closed.  Scopes may be nested.
+    *
+    * @return The new scope, which must be closed by the same thread.
+   **/
+  public static Scope beginScope() {
+    Cache cache = register(new Cache(current()));
+    caches.set(cache);
+    return new Scope(cache);
+  }
+
+
+  /**
+    * Represents the lifetime of a cache created by {@link #beginScope()}.
+    * Closing it discards every <code>Inference</code> object cached since
+    * it was opened.
+   **/
+  public static class Scope
+  {
+    /** The cache used while this scope is open. */
+    private Cache cache;
+    /** The thread that opened this scope. */
+    private Thread thread;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param c  The cache used while this scope is open.
+     **/
+    private Scope(Cache c) {
+      cache = c;
+      thread = Thread.currentThread();
+    }
+
+
+    /**
+      * Empties this scope's cache, along with the caches of any scopes
+      * nested in it that haven't been closed yet, and restores the cache
+      * that was in use when this scope was opened.  Closing a scope more than
+      * once has no effect.
+      *
+      * @throws IllegalStateException If called from a thread other than the
+      *                               one that opened the scope.
+     **/
+    public void close() {
+      if (Thread.currentThread() != thread)
+        throw new IllegalStateException(
+            "LBJava ERROR: InferenceManager.Scope must be closed by the "
+            + "thread that opened it.");
+      if (cache == null) return;
+
+      Cache c = current();
+      while (c != null && c != cache) c = c.parent;
+
+      if (c != null) {
+        for (c = current(); c != cache; c = c.parent)
+          synchronized (c) { c.clear(); }
+        caches.set(cache.parent);
+      }
+
+      synchronized (cache) { cache.clear(); }
+      cache = null;
+    }
+  }
+
+
+  /**
+    * A cache of <code>Inference</code> objects that maps each inference name
+    * to the objects of that name, indexed by <code>Key</code>s and ordered
+    * from least to most recently used.  Its methods must be called while
+    * synchronized on it, since {@link InferenceManager#clear()} and friends
+    * access it from other threads.
+   **/
+  private static class Cache
+  {
+    /** The cache to restore when the scope of this cache is closed. */
+    public Cache parent;
+    /** Maps each inference name to the {@link Named} objects of that name. */
+    private HashMap names = new HashMap();
+    /**
+      * The number of objects of each name this cache holds even if the
+      * capacity is smaller, set by
+      * {@link InferenceManager#ensureCapacity(int)}.
+     **/
+    public int minimum;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param p  The cache to restore when this cache's scope is closed.
+     **/
+    public Cache(Cache p) { parent = p; }
+
+
+    /**
+      * Returns the cached object with the given key and marks it as the most
+      * recently used object of its name.
+      *
+      * @param k  The key.
+      * @return The cached object, or <code>null</code> if there is none.
+     **/
+    public CachedInference get(Key k) {
+      Named named = (Named) names.get(k.name);
+      return named == null ? null : (CachedInference) named.get(k);
+    }
+
+
+    /**
+      * Adds an object, evicting the least recently used objects of the same
+      * name if there are too many.
+      *
+      * @param k  The key.
+      * @param c  The cached object.
+     **/
+    public void put(Key k, CachedInference c) {
+      Named named = (Named) names.get(k.name);
+      if (named == null) {
+        named = new Named();
+        names.put(k.name, named);
+      }
+      named.put(k, c);
+    }
+
+
+    /**
+      * Removes the object with the given key.
+      *
+      * @param k  The key.
+     **/
+    public void remove(Key k) {
+      Named named = (Named) names.get(k.name);
+      if (named != null) {
+        named.remove(k);
+        if (named.isEmpty()) names.remove(k.name);
+      }
+    }
+
+
+    /**
+      * Removes the objects with the given name.
+      *
+      * @param n  The name.
+     **/
+    public void remove(String n) { names.remove(n); }
+
+
+    /** Returns the number of objects in this cache. */
+    public int size() {
+      int result = 0;
+      for (Iterator I = names.values().iterator(); I.hasNext(); )
+        result += ((Named) I.next()).size();
+      return result;
+    }
+
+
+    /**
+      * Removes the entries that were added longer ago than the time to live.
+      *
+      * @param now  The current time.
+     **/
+    public void removeExpired(long now) {
+      for (Iterator I = names.values().iterator(); I.hasNext(); ) {
+        Named named = (Named) I.next();
+        for (Iterator J = named.values().iterator(); J.hasNext(); ) {
+          if (now - ((CachedInference) J.next()).time > timeToLive) {
+            J.remove();
+            evictions.incrementAndGet();
+          }
+        }
+        if (named.isEmpty()) I.remove();
+      }
+    }
+
+
+    /** Removes all entries and forgets the {@link #minimum}. */
+    public void clear() {
+      names.clear();
+      minimum = 0;
+    }
+
+
+    /**
+      * The objects of a single inference name, ordered from least to most
+      * recently used.
+     **/
+    private class Named extends LinkedHashMap
+    {
+      /** Creates an access ordered map. */
+      public Named() { super(16, 0.75f, true); }
+
+
+      /**
+        * Evicts least recently used entries until this map is within its
+        * capacity.
+       **/
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        int limit = Math.max(capacity, minimum);
+        if (size() <= limit) return false;
+        Iterator I = keySet().iterator();
+        while (size() > limit) {
+          I.next();
+          I.remove();
+          evictions.incrementAndGet();
+        }
+        return false;
+      }
+    }
+  }
+
+
+  /**
+    * A cached <code>Inference</code> object together with the time it was
+    * added to the cache.
+   **/
+  private static class CachedInference
+  {
+    /** The inference object. */
+    public Inference inference;
+    /** The time at which it was added. */
+    public long time;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param i  The inference object.
+      * @param t  The time at which it was added.
+     **/
+    public CachedInference(Inference i, long t) {
+      inference = i;
+      time = t;
+    }
+  }
+
+
+  /**
+    * Objects of this class are used as the keys of the caches.  They are
+    * distinguished from each other by comparing the contents of the
+    * <code>String</code>s storing their names and by their head objects,
+    * which must actually be exactly the same object for the two keys to be
+    * equivalent.
     *
     * @author Nick Rizzolo
-   ** /
+   **/
   private static class Key
   {
-    /** The name of the inference. * /
+    /** The name of the inference. */
     public String name;
-    /** The inference's head object. * /
+    /** The inference's head object. */
     public Object head;
 
 
@@ -107,7 +566,7 @@ public class InferenceManager
       *
       * @param n  The name of the inference.
       * @param h  The inference's head object.
-     ** /
+     **/
     public Key(String n, Object h) {
       name = n;
       head = h;
@@ -117,18 +576,16 @@ public class InferenceManager
     /**
       * The hash code of a <code>Key</code> is the hash code of its name plus
       * the system's hash code for the head object.
-     ** /
+     **/
     public int hashCode() {
       return name.hashCode() + System.identityHashCode(head);
     }
 
 
-    /** Two <code>Key</code>s are equivalent as described above. * /
+    /** Two <code>Key</code>s are equivalent as described above. */
     public boolean equals(Object o) {
       Key k = (Key) o;
       return name.equals(k.name) && head == k.head;
     }
   }
-  */
 }
-
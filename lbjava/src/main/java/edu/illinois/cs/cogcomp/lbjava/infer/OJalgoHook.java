@@ -16,13 +16,19 @@ import org.ojalgo.optimisation.ExpressionsBasedModel;
 import org.ojalgo.optimisation.Optimisation;
 import org.ojalgo.optimisation.Variable;
 
+import java.math.BigDecimal;
 import java.util.Arrays;
 
 /**
  * A hook for the oj! Algorithms (ojAlgo), an Open Source Java code to do mathematics, linear algebra and optimisation.
  * For further information, see <a href="http://ojalgo.org/">http://ojalgo.org/</a>
+ *
+ * <p> The model may be changed and solved again, as described in
+ * {@link IncrementalILPSolver}.  The starting solution is given to ojAlgo as
+ * the variables' current values, which its integer solver uses as the
+ * initial incumbent when they are feasible.
  */
-public class OJalgoHook implements ILPSolver {
+public class OJalgoHook implements AnytimeILPSolver, IncrementalILPSolver {
 
     // initially there are no variables in the model.
     private int numvars = 0; 
@@ -43,6 +49,35 @@ public class OJalgoHook implements ILPSolver {
 
     private boolean log = false;
 
+    // if true, Boolean variables may take any value in [0, 1]
+    private boolean relaxed = false;
+
+    // time at which solve() gives up, or 0 for none
+    private long deadline = 0;
+
+    // time limit set with setTimeout(int), which solve() restores when there
+    // is no deadline
+    private long timeout = new Optimisation.Options().time_abort;
+
+    // solution given to start the next solve() from, if any
+    private int[] startingSolution;
+
+    // solution found before the model was last changed, if any
+    private int[] previousSolution;
+
+    public OJalgoHook() { }
+
+    /**
+     * Creates a solver for the LP relaxation of the problem if the argument is
+     * <code>true</code>, in which case Boolean variables may take any value
+     * between 0 and 1.  Use {@link #getValue(int)} to retrieve their values.
+     *
+     * @param relaxed whether to relax the integrality of Boolean variables
+     */
+    public OJalgoHook(boolean relaxed) {
+        this.relaxed = relaxed;
+    }
+
     /**
      * Set bounds of variable in the specified position.
      *
@@ -118,6 +153,7 @@ public class OJalgoHook implements ILPSolver {
     public void setMaximize(boolean d) {
         if(log)
             System.out.println("OJalgoHook: setMaximize("+d + ")");
+        changed();
         if(d) {
             model.setMaximisation();
             minimize = false;
@@ -132,8 +168,13 @@ public class OJalgoHook implements ILPSolver {
         if(log)
             System.out.println("OJalgoHook: addBooleanVariable(c=" + c + ")");
 
+        changed();
         numvars ++;
-        Variable var = Variable.makeBinary(Integer.toString(numvars)).weight(c);
+        Variable var;
+        if(relaxed)
+            var = Variable.make(Integer.toString(numvars)).lower(0).upper(1).weight(c);
+        else
+            var = Variable.makeBinary(Integer.toString(numvars)).weight(c);
         model.addVariable(var);
         return numvars-1;
     }
@@ -192,6 +233,7 @@ public class OJalgoHook implements ILPSolver {
             System.out.println("b= " + b + ")");
         }
 
+        changed();
         numConstraints++;
         Expression constraint = model.addExpression("EqualityConstraint: " + Integer.toString(numConstraints));
         constraint.level(b);
@@ -210,6 +252,7 @@ public class OJalgoHook implements ILPSolver {
             System.out.println("b= " + b + ")");
         }
 
+        changed();
         numConstraints++;
         Expression constraint = model.addExpression("GreaterThanConstraint: " + Integer.toString(numConstraints));
         constraint.lower(b);
@@ -228,6 +271,7 @@ public class OJalgoHook implements ILPSolver {
             System.out.println("b= " + b + ")");
         }
 
+        changed();
         numConstraints++;
         Expression constraint = model.addExpression("LessThanConstraint: " + Integer.toString(numConstraints));
         constraint.upper(b);
@@ -238,11 +282,51 @@ public class OJalgoHook implements ILPSolver {
         }
     }
 
+    /**
+     * Changes the objective function coefficient of a variable that has
+     * already been added.
+     *
+     * @param j position of the variable
+     * @param c its new objective function coefficient
+     */
+    public void setObjectiveCoefficient(int j, double c) {
+        if(log)
+            System.out.println("OJalgoHook: setObjectiveCoefficient(" + j + ", " + c + ")");
+        changed();
+        model.getVariable(j).weight(c);
+    }
+
+    public void setStartingSolution(int[] x) {
+        startingSolution = x == null ? null : (int[]) x.clone();
+    }
+
+    // keeps the current solution to start the next solve() from, since the
+    // model has changed
+    private void changed() {
+        if(result != null && result.getState().isSuccess() && !relaxed) {
+            previousSolution = new int[numvars];
+            for(int j = 0; j < numvars; j++)
+                previousSolution[j] = getBooleanValue(j) ? 1 : 0;
+        }
+        result = null;
+    }
+
     // Note: oJalgo does not support pre-solving!
     public boolean solve() throws Exception {
         if(log)
             System.out.println("OJalgoHook: solve() ");
+
+        int[] start = startingSolution != null ? startingSolution : previousSolution;
+        if(start != null && !relaxed)
+            for(int j = 0; j < numvars; j++)
+                model.getVariable(j).setValue(BigDecimal.valueOf(j < start.length ? start[j] : 0));
+        startingSolution = previousSolution = null;
             
+        if(deadline != 0)
+            model.options.time_abort = Math.max(1, Math.min(timeout, deadline - System.currentTimeMillis()));
+        else
+            model.options.time_abort = timeout;
+
         if(minimize)
             result = model.minimise();
         else
@@ -277,6 +361,16 @@ public class OJalgoHook implements ILPSolver {
         return (result.get(index).intValue() == 1);
     }
 
+    /**
+     * Returns the value of the variable in the specified position, which need
+     * not be integral when the problem is relaxed.
+     *
+     * @param index position of the variable
+     */
+    public double getValue(int index) {
+        return result.get(index).doubleValue();
+    }
+
     public double objectiveValue() {
         if(log)
             System.out.println("OJalgoHook: objectiveValue()");
@@ -286,7 +380,13 @@ public class OJalgoHook implements ILPSolver {
     public void reset() {
         if(log)
             System.out.println("OJalgoHook: reset()");
-        // no implementation
+        model = new ExpressionsBasedModel();
+        objectiveFunction = model.getObjectiveExpression();
+        numvars = 0;
+        numConstraints = 0;
+        minimize = true;
+        result = null;
+        startingSolution = previousSolution = null;
     }
 
     public void write(StringBuffer buffer) {
@@ -297,15 +397,28 @@ public class OJalgoHook implements ILPSolver {
 
     /**
      * Set a time limit for solver optimization. After the limit
-     * is reached the solver stops running.
+     * is reached the solver stops running. The limit applies to every
+     * later solve, shortened to the deadline when there is one.
      *
      * @param limit the time limit
      */
     public void setTimeout(int limit) {
         assert (0 <= limit);
+        timeout = limit;
         model.options.time_abort = limit;
     }
 
+    public void setDeadline(long d) {
+        deadline = d;
+    }
+
+    public boolean reachedDeadline() {
+        return deadline != 0 && result != null
+            && result.getState() != Optimisation.State.OPTIMAL
+            && result.getState() != Optimisation.State.DISTINCT
+            && System.currentTimeMillis() >= deadline;
+    }
+
     public void printModelInfo() {
         System.out.println(model.toString());
         System.out.println("objective: " + result.getValue());
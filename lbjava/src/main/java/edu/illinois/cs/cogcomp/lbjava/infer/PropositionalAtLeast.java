@@ -120,7 +120,7 @@ public class PropositionalAtLeast extends PropositionalNAryConstraint
     result.m = m;
     result.children = new PropositionalConstraint[children.length];
     for (int i = 0; i < children.length; ++i)
-      result.children[i] = children[i].simplify();
+      result.children[i] = PropositionalInterner.simplify(children[i]);
 
     for (int i = result.children.length - 1; i >= 0; --i) {
       if (result.children[i] == PropositionalConstant.True) {
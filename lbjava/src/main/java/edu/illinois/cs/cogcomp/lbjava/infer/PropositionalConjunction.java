@@ -78,16 +78,20 @@ public class PropositionalConjunction extends PropositionalNAryConstraint
         if (c instanceof PropositionalDoubleImplication) {
           PropositionalDoubleImplication di =
             (PropositionalDoubleImplication) c;
-          di.left = di.left.simplify();
-          di.right = di.right.simplify();
-
-          if (di.left.equals(di.right)) c = PropositionalConstant.True;
-          else if (di.left.equals(PropositionalConstant.False))
-            c = di.right.negate().simplify();
-          else if (di.left.equals(PropositionalConstant.True)) c = di.right;
-          else if (di.right.equals(PropositionalConstant.False))
-            c = di.left.negate().simplify();
-          else if (di.right.equals(PropositionalConstant.True)) c = di.left;
+          PropositionalConstraint left =
+            PropositionalInterner.simplify(di.left);
+          PropositionalConstraint right =
+            PropositionalInterner.simplify(di.right);
+
+          if (left.equals(right)) c = PropositionalConstant.True;
+          else if (left.equals(PropositionalConstant.False))
+            c = right.negate().simplify();
+          else if (left.equals(PropositionalConstant.True)) c = right;
+          else if (right.equals(PropositionalConstant.False))
+            c = left.negate().simplify();
+          else if (right.equals(PropositionalConstant.True)) c = left;
+          else if (left != di.left || right != di.right)
+            c = new PropositionalDoubleImplication(left, right);
           /*
           else if (di.right instanceof PropositionalNegation
                       && di.left.equals(di.right.getChildren()[0])
@@ -96,14 +100,16 @@ public class PropositionalConjunction extends PropositionalNAryConstraint
             c = PropositionalConstant.False;
           */
         }
-        else c = c.simplify();
+        else c = PropositionalInterner.simplify(c);
 
         result.add(c);
       }
     }
     else {
       for (Iterator I = children.iterator(); I.hasNext(); )
-        result.add(((PropositionalConstraint) I.next()).simplify());
+        result.add(
+            PropositionalInterner.simplify(
+              (PropositionalConstraint) I.next()));
     }
 
     if (result.children.contains(PropositionalConstant.False))
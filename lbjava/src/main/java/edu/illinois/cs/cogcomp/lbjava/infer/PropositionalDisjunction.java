@@ -59,7 +59,8 @@ public class PropositionalDisjunction extends PropositionalNAryConstraint
   public PropositionalConstraint simplify() {
     PropositionalDisjunction result = new PropositionalDisjunction();
     for (Iterator I = children.iterator(); I.hasNext(); )
-      result.add(((PropositionalConstraint) I.next()).simplify());
+      result.add(
+          PropositionalInterner.simplify((PropositionalConstraint) I.next()));
 
     if (result.children.contains(PropositionalConstant.True))
       return PropositionalConstant.True;
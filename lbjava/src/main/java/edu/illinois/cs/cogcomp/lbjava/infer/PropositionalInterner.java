@@ -0,0 +1,291 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+
+/**
+  * Hash-conses propositional constraints while a first order constraint is
+  * propositionalized and simplified, so that structurally equal subformulas
+  * are represented by a single object and simplified only once.  For
+  * example, propositionalizing
+  *
+  * <blockquote>
+  *   <code>forall (i in words) l(i) == "B" =&gt; exists (j in words)
+  *   l(j) == "O"</code>
+  * </blockquote>
+  *
+  * produces the same disjunction once per word.  While an interner is open
+  * on the current thread, every first order constraint interns the
+  * propositional constraint it builds, which replaces a subformula equal to
+  * one seen before with the earlier object as soon as it is built, before
+  * any larger formula is built around it.  The simplification methods look
+  * up the results of simplifying the children they have seen before by
+  * identity.
+  *
+  * <p> An interner is opened and closed around a single inference problem:
+  *
+  * <blockquote><pre>
+  *   PropositionalInterner interner = PropositionalInterner.open();
+  *   try { ... }
+  *   finally { interner.close(); }
+  * </pre></blockquote>
+  *
+  * Interned constraints must not be modified while the interner is open.
+  * When no interner is open, {@link #intern(PropositionalConstraint)} and
+  * {@link #simplify(PropositionalConstraint)} behave as if the constraint
+  * were being seen for the first time.
+ **/
+public class PropositionalInterner
+{
+  /** The interner open on each thread, if any. */
+  private static final ThreadLocal current = new ThreadLocal();
+
+
+  /** Maps each distinct subformula to the object representing it. */
+  private HashMap table;
+  /**
+    * Maps each object representing a distinct subformula to its number,
+    * which orders the children of the conjunctions and disjunctions that
+    * contain it.
+   **/
+  private IdentityHashMap canonical;
+  /** Maps each subformula simplified so far to its simplification. */
+  private IdentityHashMap simplified;
+  /** The interner that was open when this one was opened. */
+  private PropositionalInterner previous;
+  /** The number of subformulas replaced by an equal one seen before. */
+  private int shared;
+  /** The number of simplifications looked up instead of recomputed. */
+  private int reused;
+
+
+  /** Initializes the tables. */
+  private PropositionalInterner() {
+    table = new HashMap();
+    canonical = new IdentityHashMap();
+    simplified = new IdentityHashMap();
+  }
+
+
+  /**
+    * Opens a new interner on the current thread, which lasts until it is
+    * closed.
+    *
+    * @return The new interner, which must be closed by the same thread.
+   **/
+  public static PropositionalInterner open() {
+    PropositionalInterner result = new PropositionalInterner();
+    result.previous = (PropositionalInterner) current.get();
+    current.set(result);
+    return result;
+  }
+
+
+  /**
+    * Discards this interner's tables and restores the interner that was
+    * open when this one was opened.
+   **/
+  public void close() {
+    if (current.get() == this) current.set(previous);
+    table = null;
+    canonical = null;
+    simplified = null;
+  }
+
+
+  /**
+    * Returns the object representing the given constraint in the interner
+    * open on the current thread, interning its subformulas first.  If no
+    * interner is open, the constraint itself is returned.
+    *
+    * @param c  A constraint that isn't referenced by any other constraint
+    *           yet, other than through its interned subformulas.
+    * @return The object representing the constraint.
+   **/
+  public static PropositionalConstraint intern(PropositionalConstraint c) {
+    PropositionalInterner interner = (PropositionalInterner) current.get();
+    if (interner == null) return c;
+    return interner.canonicalize(c);
+  }
+
+
+  /**
+    * Simplifies the given constraint, reusing its earlier simplification if
+    * the interner open on the current thread has seen it before.
+    *
+    * @param c  The constraint to simplify.
+    * @return The result of <code>c.simplify()</code>.
+   **/
+  public static PropositionalConstraint simplify(PropositionalConstraint c) {
+    PropositionalInterner interner = (PropositionalInterner) current.get();
+    if (interner == null) return c.simplify();
+
+    PropositionalConstraint result =
+      (PropositionalConstraint) interner.simplified.get(c);
+    if (result != null) {
+      ++interner.reused;
+      return result;
+    }
+
+    result = c.simplify();
+    interner.simplified.put(c, result);
+    return result;
+  }
+
+
+  /**
+    * Replaces the children of the given constraint with the objects
+    * representing them, and then the constraint itself.  Since the children
+    * are interned first, a composite constraint is identified by its type
+    * and the identities of its children, which avoids recomputing
+    * structural hash codes at every level.
+    *
+    * @param c  The constraint.
+    * @return The object representing the constraint.
+   **/
+  private PropositionalConstraint canonicalize(PropositionalConstraint c) {
+    if (canonical.containsKey(c)) return c;
+    Object key = c;
+
+    if (c instanceof PropositionalNAryConstraint) {
+      PropositionalNAryConstraint n = (PropositionalNAryConstraint) c;
+      PropositionalConstraint[] children =
+        (PropositionalConstraint[]) n.getChildren();
+      boolean changed = false;
+      for (int i = 0; i < children.length; ++i) {
+        PropositionalConstraint child = canonicalize(children[i]);
+        changed |= child != children[i];
+        children[i] = child;
+      }
+
+      if (changed) n.children = new HashSet(Arrays.asList(children));
+      key = new Key(c, numbers(children), true);
+    }
+    else if (c instanceof PropositionalBinaryConstraint) {
+      PropositionalBinaryConstraint b = (PropositionalBinaryConstraint) c;
+      b.left = canonicalize(b.left);
+      b.right = canonicalize(b.right);
+      key =
+        new Key(c, numbers(new PropositionalConstraint[]{ b.left, b.right }),
+                false);
+    }
+    else if (c instanceof PropositionalNegation) {
+      PropositionalNegation n = (PropositionalNegation) c;
+      n.constraint = canonicalize(n.constraint);
+      key = new Key(c, numbers(new PropositionalConstraint[]{ n.constraint }),
+                    false);
+    }
+    else if (c instanceof PropositionalAtLeast) {
+      PropositionalAtLeast a = (PropositionalAtLeast) c;
+      for (int i = 0; i < a.children.length; ++i)
+        a.children[i] = canonicalize(a.children[i]);
+      int[] numbers = new int[a.children.length + 1];
+      System.arraycopy(numbers(a.children), 0, numbers, 0, a.children.length);
+      numbers[a.children.length] = a.m;
+      key = new Key(c, numbers, false);
+    }
+
+    PropositionalConstraint result = (PropositionalConstraint) table.get(key);
+    if (result != null) {
+      ++shared;
+      return result;
+    }
+
+    table.put(key, c);
+    canonical.put(c, new Integer(canonical.size()));
+    return c;
+  }
+
+
+  /**
+    * Returns the numbers of the given interned constraints.
+    *
+    * @param c  Constraints that have been interned.
+    * @return Their numbers, in the same order.
+   **/
+  private int[] numbers(PropositionalConstraint[] c) {
+    int[] result = new int[c.length];
+    for (int i = 0; i < c.length; ++i)
+      result[i] = ((Integer) canonical.get(c[i])).intValue();
+    return result;
+  }
+
+
+  /** Returns the number of distinct subformulas interned so far. */
+  public int size() { return table.size(); }
+
+  /**
+    * Returns the number of subformulas that were replaced by an equal one
+    * seen before.
+   **/
+  public int getShared() { return shared; }
+
+  /**
+    * Returns the number of simplifications that were looked up instead of
+    * recomputed.
+   **/
+  public int getReused() { return reused; }
+
+
+  /**
+    * Identifies a composite constraint by its type and the numbers of its
+    * already interned children, which identify them just as well as the
+    * children themselves.  The children of conjunctions and disjunctions are
+    * unordered, so their numbers are sorted.  Numbers are given in the order
+    * subformulas are first seen, so the same constraint always gets the same
+    * keys.
+   **/
+  private static class Key
+  {
+    /** The type of the constraint. */
+    private Class type;
+    /** The children's numbers, followed by an at-least's bound. */
+    private int[] children;
+    /** The cached hash code. */
+    private int hash;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param c  The constraint.
+      * @param a  The numbers of its children.
+      * @param u  Whether the order of the children is irrelevant.
+     **/
+    public Key(PropositionalConstraint c, int[] a, boolean u) {
+      type = c.getClass();
+      children = a;
+      if (u) Arrays.sort(children);
+      hash = 31 * type.getName().hashCode() + Arrays.hashCode(children);
+    }
+
+
+    /** Returns the cached hash code. */
+    public int hashCode() { return hash; }
+
+
+    /**
+      * Two keys are equal when their types are the same and their children
+      * have the same numbers in the same order.
+     **/
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return hash == k.hash && type == k.type
+             && Arrays.equals(children, k.children);
+    }
+  }
+}
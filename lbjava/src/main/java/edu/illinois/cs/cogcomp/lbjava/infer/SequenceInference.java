@@ -0,0 +1,488 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.Score;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Normalizer;
+import edu.illinois.cs.cogcomp.lbjava.parse.LinkedChild;
+
+
+/**
+  * Performs inference over a sequence of variables with the Viterbi
+  * algorithm when the constraints only relate neighboring variables, as
+  * they do when enforcing BIO consistency over the words of a
+  * <code>LinkedVector</code>.  The variables are ordered as they appear in
+  * the sequence when their examples are <code>LinkedChild</code>ren, and in
+  * the order they appear in the constraints otherwise.  After
+  * propositionalization and simplification, every conjunct of the
+  * constraints must mention variables at no more than two consecutive
+  * positions.  The assignment maximizing the sum of the classifiers'
+  * normalized scores subject to the constraints is then found in
+  * <i>O(n L<sup>2</sup>)</i> time, where <i>n</i> is the number of variables
+  * and <i>L</i> is the number of values each can take.
+  *
+  * <p> If a beam width is given, only that many of the best partial
+  * assignments ending in each position are kept, which is faster for large
+  * label sets but no longer guaranteed to be optimal.
+  *
+  * <p> When the constraints aren't chain structured, or no assignment
+  * satisfying them survives the beam, inference falls back to
+  * {@link ILPInference} with the given {@link ILPSolver}, so this class can
+  * replace <code>ILPInference</code> in the <code>with</code> clause of any
+  * inference declaration:
+  *
+  * <blockquote><pre>
+  *   with new SequenceInference(new OJalgoHook())
+  * </pre></blockquote>
+ **/
+public class SequenceInference extends Inference
+{
+  /** The number of inferences solved by dynamic programming so far. */
+  private static final AtomicLong chainSolves = new AtomicLong();
+  /** The number of inferences that fell back to ILP so far. */
+  private static final AtomicLong fallbacks = new AtomicLong();
+
+
+  /** The ILP algorithm used when the constraints aren't chain structured. */
+  protected ILPSolver solver;
+  /**
+    * The number of partial assignments kept per position, or 0 to keep them
+    * all.
+   **/
+  protected int beamWidth;
+  /** Set once the variables have been given their values. */
+  protected boolean solved;
+  /** Set when the variables were given their values by ILP inference. */
+  protected boolean usedFallback;
+
+
+  /** Falls back to {@link BalasHook} and keeps all partial assignments. */
+  public SequenceInference() { this(null, null, 0); }
+
+  /**
+    * Initializes the fallback ILP algorithm, but not the head object.
+    *
+    * @param a  The ILP algorithm.
+   **/
+  public SequenceInference(ILPSolver a) { this(null, a, 0); }
+
+  /**
+    * Initializes the fallback ILP algorithm and beam width, but not the head
+    * object.
+    *
+    * @param a  The ILP algorithm.
+    * @param b  The beam width, or 0 for exact inference.
+   **/
+  public SequenceInference(ILPSolver a, int b) { this(null, a, b); }
+
+  /**
+    * Sets the head object, falling back to {@link BalasHook}.
+    *
+    * @param h  The head object.
+   **/
+  public SequenceInference(Object h) { this(h, null, 0); }
+
+  /**
+    * Sets the head object and the fallback ILP algorithm.
+    *
+    * @param h  The head object.
+    * @param a  The ILP algorithm.
+   **/
+  public SequenceInference(Object h, ILPSolver a) { this(h, a, 0); }
+
+  /**
+    * Sets the head object, the fallback ILP algorithm, and the beam width.
+    *
+    * @param h  The head object.
+    * @param a  The ILP algorithm, or <code>null</code> for
+    *           {@link BalasHook}.
+    * @param b  The beam width, or 0 for exact inference.
+   **/
+  public SequenceInference(Object h, ILPSolver a, int b) {
+    super(h);
+    if (b < 0)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: SequenceInference beam width must not be negative.");
+    solver = a == null ? new BalasHook() : a;
+    beamWidth = b;
+  }
+
+
+  /** Returns the number of inferences solved by dynamic programming. */
+  public static long getChainSolves() { return chainSolves.get(); }
+
+  /** Returns the number of inferences that fell back to ILP. */
+  public static long getFallbacks() { return fallbacks.get(); }
+
+  /** Sets both counts to 0. */
+  public static void resetStatistics() {
+    chainSolves.set(0);
+    fallbacks.set(0);
+  }
+
+
+  /** Returns the beam width, or 0 if inference is exact. */
+  public int getBeamWidth() { return beamWidth; }
+
+
+  /**
+    * Returns <code>true</code> iff the most recent inference fell back to
+    * ILP.
+   **/
+  public boolean usedFallback() { return usedFallback; }
+
+
+  /**
+    * Adds a constraint to the inference.
+    *
+    * @param c  The constraint to add.
+   **/
+  public void addConstraint(FirstOrderConstraint c) {
+    solved = false;
+    if (constraint == null) constraint = c;
+    else
+      constraint =
+        new FirstOrderConjunction((FirstOrderConstraint) constraint, c);
+  }
+
+
+  /**
+    * Runs the Viterbi algorithm if the constraints are chain structured, and
+    * ILP inference otherwise, unless the variables already have their
+    * values.
+   **/
+  protected void infer() throws Exception {
+    if (solved) return;
+    constraint.consolidateVariables(variables);
+
+    FirstOrderVariable[] sequence = order();
+    if (!viterbi(sequence)) {
+      fallbacks.incrementAndGet();
+      usedFallback = true;
+      fallback();
+    }
+    else {
+      chainSolves.incrementAndGet();
+      usedFallback = false;
+    }
+
+    solved = true;
+  }
+
+
+  /**
+    * Returns the inference variables in sequence order.  If every variable's
+    * example is a <code>LinkedChild</code>, they are sorted by their
+    * distance from the start of their <code>LinkedVector</code>; variables
+    * at the same distance keep the order in which they appear in the
+    * constraints.
+   **/
+  protected FirstOrderVariable[] order() {
+    FirstOrderVariable[] result =
+      (FirstOrderVariable[])
+      variables.values().toArray(new FirstOrderVariable[variables.size()]);
+
+    final IdentityHashMap ranks = new IdentityHashMap();
+    for (int i = 0; i < result.length; ++i) {
+      Object e = result[i].getExample();
+      if (!(e instanceof LinkedChild)) return result;
+      int rank = 0;
+      for (LinkedChild c = ((LinkedChild) e).previous; c != null;
+           c = c.previous)
+        ++rank;
+      ranks.put(e, new Integer(rank));
+    }
+
+    Arrays.sort(result,
+        new Comparator() {
+          public int compare(Object o1, Object o2) {
+            int r1 =
+              ((Integer) ranks.get(((FirstOrderVariable) o1).getExample()))
+              .intValue();
+            int r2 =
+              ((Integer) ranks.get(((FirstOrderVariable) o2).getExample()))
+              .intValue();
+            return r1 < r2 ? -1 : r1 > r2 ? 1 : 0;
+          }
+        });
+    return result;
+  }
+
+
+  /**
+    * Finds the best assignment to the given variables with the Viterbi
+    * algorithm and sets their values accordingly.
+    *
+    * @param sequence The inference variables in sequence order.
+    * @return <code>false</code> iff the constraints aren't chain structured
+    *         or no assignment satisfying them was found, in which case the
+    *         variables' values are left untouched.
+   **/
+  protected boolean viterbi(FirstOrderVariable[] sequence) {
+    int n = sequence.length;
+    if (n == 0) return true;
+
+    HashMap positions = new HashMap();
+    String[][] labels = new String[n][];
+    double[][] scores = new double[n][];
+
+    for (int i = 0; i < n; ++i) {
+      FirstOrderVariable v = sequence[i];
+      ScoreSet ss = getNormalizer(v.getClassifier()).normalize(v.getScores());
+      Score[] s = null;
+      if (ss != null) s = ss.toArray();
+
+      if (s == null || s.length == 0) {
+        System.err.println(
+            "LBJava ERROR: Classifier " + v.getClassifier()
+            + " did not return any scores.  Sequence inference cannot be "
+            + "performed.");
+        System.exit(1);
+      }
+
+      labels[i] = new String[s.length];
+      scores[i] = new double[s.length];
+      for (int j = 0; j < s.length; ++j) {
+        labels[i][j] = s[j].value;
+        scores[i][j] = s[j].score;
+      }
+
+      positions.put(v, new Integer(i));
+    }
+
+    PropositionalConstraint propositional = null;
+    PropositionalInterner interner = PropositionalInterner.open();
+    try {
+      propositional = ((FirstOrderConstraint) constraint).propositionalize();
+      if (propositional instanceof PropositionalConjunction)
+        propositional =
+          ((PropositionalConjunction) propositional).simplify(true);
+      else propositional = propositional.simplify();
+    }
+    finally {
+      interner.close();
+    }
+
+    PropositionalConstraint[] terms;
+    if (propositional instanceof PropositionalConjunction)
+      terms = (PropositionalConstraint[]) propositional.getChildren();
+    else terms = new PropositionalConstraint[]{ propositional };
+
+    boolean[][] allowed = new boolean[n][];
+    for (int i = 0; i < n; ++i) {
+      allowed[i] = new boolean[labels[i].length];
+      Arrays.fill(allowed[i], true);
+    }
+    boolean[][][] transitions = new boolean[n - 1][][];
+
+    for (int t = 0; t < terms.length; ++t) {
+      ArrayList leaves = new ArrayList();
+      collectLeaves(terms[t], leaves);
+      int[] at = new int[leaves.size()];
+      int first = n, last = -1;
+
+      for (int k = 0; k < at.length; ++k) {
+        PropositionalVariable leaf = (PropositionalVariable) leaves.get(k);
+        Integer p =
+          (Integer) positions.get(
+              new FirstOrderVariable(leaf.getClassifier(), leaf.getExample()));
+        if (p == null) return false;
+        at[k] = p.intValue();
+        first = Math.min(first, at[k]);
+        last = Math.max(last, at[k]);
+      }
+
+      if (last == -1) {
+        if (!terms[t].evaluate()) return false;
+      }
+      else if (first == last) {
+        for (int a = 0; a < labels[first].length; ++a) {
+          setLeaves(leaves, at, first, labels[first][a], -1, null);
+          if (!terms[t].evaluate()) allowed[first][a] = false;
+        }
+      }
+      else if (last == first + 1) {
+        if (transitions[first] == null) {
+          transitions[first] =
+            new boolean[labels[first].length][labels[last].length];
+          for (int a = 0; a < labels[first].length; ++a)
+            Arrays.fill(transitions[first][a], true);
+        }
+
+        for (int a = 0; a < labels[first].length; ++a)
+          for (int b = 0; b < labels[last].length; ++b) {
+            setLeaves(leaves, at, first, labels[first][a], last,
+                      labels[last][b]);
+            if (!terms[t].evaluate()) transitions[first][a][b] = false;
+          }
+      }
+      else return false;
+    }
+
+    // best[i][a] is the score of the best assignment to positions 0 through
+    // i that gives position i its a-th label, or NaN if there is none.
+    double[][] best = new double[n][];
+    int[][] back = new int[n][];
+
+    best[0] = new double[labels[0].length];
+    for (int a = 0; a < labels[0].length; ++a)
+      best[0][a] = allowed[0][a] ? scores[0][a] : Double.NaN;
+    prune(best[0]);
+
+    for (int i = 1; i < n; ++i) {
+      best[i] = new double[labels[i].length];
+      back[i] = new int[labels[i].length];
+
+      for (int b = 0; b < labels[i].length; ++b) {
+        best[i][b] = Double.NaN;
+        back[i][b] = -1;
+        if (!allowed[i][b]) continue;
+
+        for (int a = 0; a < labels[i - 1].length; ++a) {
+          if (Double.isNaN(best[i - 1][a])
+              || transitions[i - 1] != null && !transitions[i - 1][a][b])
+            continue;
+          double s = best[i - 1][a] + scores[i][b];
+          if (back[i][b] == -1 || s > best[i][b]) {
+            best[i][b] = s;
+            back[i][b] = a;
+          }
+        }
+      }
+
+      prune(best[i]);
+    }
+
+    int label = -1;
+    for (int a = 0; a < labels[n - 1].length; ++a)
+      if (!Double.isNaN(best[n - 1][a])
+          && (label == -1 || best[n - 1][a] > best[n - 1][label]))
+        label = a;
+    if (label == -1) return false;
+
+    for (int i = n - 1; i >= 0; --i) {
+      sequence[i].setValue(labels[i][label]);
+      if (i > 0) label = back[i][label];
+    }
+
+    return true;
+  }
+
+
+  /**
+    * Discards all but the {@link #beamWidth} best partial assignments ending
+    * at some position by setting their scores to <code>NaN</code>.
+    *
+    * @param best The scores of the partial assignments ending at each label.
+   **/
+  protected void prune(double[] best) {
+    if (beamWidth == 0 || best.length <= beamWidth) return;
+    double[] sorted = (double[]) best.clone();
+    Arrays.sort(sorted);  // NaNs sort last.
+    int live = 0;
+    while (live < sorted.length && !Double.isNaN(sorted[live])) ++live;
+    if (live <= beamWidth) return;
+
+    double threshold = sorted[live - beamWidth];
+    int keep = beamWidth;
+    for (int i = 0; i < best.length; ++i)
+      if (best[i] > threshold) --keep;
+    for (int i = 0; i < best.length; ++i) {
+      if (Double.isNaN(best[i]) || best[i] > threshold) continue;
+      if (best[i] == threshold && keep > 0) --keep;
+      else best[i] = Double.NaN;
+    }
+  }
+
+
+  /**
+    * Adds every occurrence of a <code>PropositionalVariable</code> in the
+    * given constraint to the given list.
+    *
+    * @param c      The constraint.
+    * @param leaves The list.
+   **/
+  private static void collectLeaves(PropositionalConstraint c,
+                                    ArrayList leaves) {
+    if (c instanceof PropositionalVariable) {
+      leaves.add(c);
+      return;
+    }
+
+    Constraint[] children = c.getChildren();
+    for (int i = 0; i < children.length; ++i)
+      collectLeaves((PropositionalConstraint) children[i], leaves);
+  }
+
+
+  /**
+    * Sets each propositional variable to <code>true</code> iff its
+    * prediction is the label assigned to its position.
+    *
+    * @param leaves The propositional variables.
+    * @param at     The position of each variable.
+    * @param p1     A position.
+    * @param l1     The label assigned to <code>p1</code>.
+    * @param p2     Another position, or -1.
+    * @param l2     The label assigned to <code>p2</code>.
+   **/
+  private static void setLeaves(ArrayList leaves, int[] at, int p1,
+                                String l1, int p2, String l2) {
+    for (int k = 0; k < at.length; ++k) {
+      PropositionalVariable leaf = (PropositionalVariable) leaves.get(k);
+      String label = at[k] == p1 ? l1 : l2;
+      leaf.value = label.equals(leaf.getPrediction());
+    }
+  }
+
+
+  /**
+    * Solves the inference problem with {@link ILPInference}, using this
+    * object's normalizers.
+   **/
+  protected void fallback() throws Exception {
+    ILPInference ilp =
+      new ILPInference(head, solver) {
+        public Normalizer getNormalizer(Learner c) {
+          return SequenceInference.this.getNormalizer(c);
+        }
+      };
+    solver.reset();
+    ilp.constraint = constraint;
+    ilp.infer();
+  }
+
+
+  /**
+    * Retrieves the value of the specified variable as identified by the
+    * classifier and the object that produce that variable.
+    *
+    * @param c  The classifier producing the variable.
+    * @param o  The object from which the variable is produced.
+    * @return The current value of the requested variable.  If the variable
+    *         does not exist in this inference, the result of the
+    *         <code>Learner</code>'s <code>discreteValue(Object)</code> method
+    *         applied to the <code>Object</code> is returned.
+   **/
+  public String valueOf(Learner c, Object o) throws Exception {
+    infer();
+    return getVariable(new FirstOrderVariable(c, o)).getValue();
+  }
+}
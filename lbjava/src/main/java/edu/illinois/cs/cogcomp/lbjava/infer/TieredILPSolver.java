@@ -0,0 +1,515 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+/**
+  * This {@link ILPSolver} tries cheaper ways of solving a problem before
+  * handing it to another solver.  The problem is only stored as it is built.
+  * When {@link #solve()} is called, the following tiers are tried in order:
+  *
+  * <ol>
+  *   <li> <b>Argmax:</b> every discrete variable takes its highest scoring
+  *        value and every other Boolean variable whose objective coefficient
+  *        isn't 0 is turned on iff that improves the objective function.
+  *        The Boolean variables with zero coefficients, which include the
+  *        auxiliary variables that constraint translation introduces, are
+  *        then given the values the constraints force on them, and 0 or 1
+  *        as needed where they aren't forced.  If this assignment satisfies
+  *        all the constraints, it is optimal.
+  *   <li> <b>Relaxation:</b> the LP relaxation of the problem is solved with
+  *        {@link OJalgoHook}.  If its solution happens to be integral, it is
+  *        optimal.
+  *   <li> <b>Search:</b> the problem is given to the wrapped solver, which
+  *        is usually a branch and bound solver such as {@link BalasHook}.
+  * </ol>
+  *
+  * Each solver counts the number of problems solved by each of its tiers,
+  * across calls to {@link #reset()}; see {@link #getHitRate(int)}.  A
+  * {@link #setDeadline(long) deadline} is passed on to the solvers of the
+  * last two tiers, and the relaxation tier is skipped once it has passed.
+ **/
+public class TieredILPSolver extends ZeroOneILPProblem
+  implements AnytimeILPSolver
+{
+  /** Indicates that the problem has not been solved. */
+  public static final int TIER_NONE = -1;
+  /** Indicates that the problem was solved by the argmax assignment. */
+  public static final int TIER_ARGMAX = 0;
+  /** Indicates that the problem was solved by its LP relaxation. */
+  public static final int TIER_RELAXATION = 1;
+  /** Indicates that the problem was solved by the wrapped solver. */
+  public static final int TIER_SEARCH = 2;
+  /** The names of the tiers, indexed by tier. */
+  public static final String[] tierNames = { "argmax", "relaxation", "search" };
+
+  /**
+    * Values in a solution of the LP relaxation must be this close to 0 or 1
+    * to be considered integral.
+   **/
+  public static final double INTEGRALITY_TOLERANCE = 1e-6;
+
+  /** The number of times {@link #solve()} has been called. */
+  private long solves;
+  /** The number of problems solved by each tier. */
+  private long[] hits = new long[tierNames.length];
+
+
+  /** The solver used when neither of the cheaper tiers succeeds. */
+  protected ILPSolver solver;
+  /** Whether or not the LP relaxation tier is tried. */
+  protected boolean relaxation;
+  /** The solution to the optimization problem. */
+  private int[] solution;
+  /** The value of the objective function at {@link #solution}. */
+  private double objectiveValue;
+  /** The tier that produced {@link #solution}. */
+  private int tier;
+  /**
+    * The time at which solving stops, in the milliseconds of
+    * <code>System.currentTimeMillis()</code>, or 0 for none.
+   **/
+  private long deadline;
+  /** Whether or not the last search stopped at the deadline. */
+  private boolean reachedDeadline;
+
+
+  /**
+    * Creates a tiered solver that tries all tiers.
+    *
+    * @param s  The solver used when neither of the cheaper tiers succeeds.
+   **/
+  public TieredILPSolver(ILPSolver s) { this(s, true); }
+
+  /**
+    * Creates a tiered solver.
+    *
+    * @param s  The solver used when neither of the cheaper tiers succeeds.
+    * @param r  Whether or not the LP relaxation tier is tried.
+   **/
+  public TieredILPSolver(ILPSolver s, boolean r) {
+    solver = s;
+    relaxation = r;
+  }
+
+
+  /**
+    * This method clears the all constraints and variables out of the ILP
+    * solver's problem representation, bringing the <code>ILPSolver</code>
+    * instance back to the state it was in when first constructed.
+   **/
+  public void reset() {
+    super.reset();
+    if (solver != null) solver.reset();
+    solution = null;
+    objectiveValue = 0;
+    tier = TIER_NONE;
+    reachedDeadline = false;
+  }
+
+
+  /**
+    * Sets the time at which solving stops.  The deadline only affects the
+    * solver of the search tier if it is an {@link AnytimeILPSolver}.
+    *
+    * @param d  The deadline, in the milliseconds of
+    *           <code>System.currentTimeMillis()</code>, or 0 for none.
+   **/
+  public void setDeadline(long d) { deadline = d; }
+
+
+  /**
+    * Returns <code>true</code> iff the most recent call to {@link #solve()}
+    * stopped because it reached the deadline.
+   **/
+  public boolean reachedDeadline() { return reachedDeadline; }
+
+
+  /**
+    * Solves the ILP problem with the first tier that succeeds, saving the
+    * solution internally.
+    *
+    * @return <code>true</code> iff a solution was found successfully.
+   **/
+  public boolean solve() throws Exception {
+    ++solves;
+    reachedDeadline = false;
+
+    int[] x = argmax();
+    if (completeAuxiliary(x) && constraintsSatisfied(x))
+      return accept(x, TIER_ARGMAX);
+
+    if (relaxation
+        && (deadline == 0 || System.currentTimeMillis() < deadline)) {
+      x = relax();
+      if (x != null) return accept(x, TIER_RELAXATION);
+    }
+
+    solver.reset();
+    copyTo(solver);
+    if (solver instanceof AnytimeILPSolver)
+      ((AnytimeILPSolver) solver).setDeadline(deadline);
+    boolean solved = solver.solve();
+    if (solver instanceof AnytimeILPSolver)
+      reachedDeadline = ((AnytimeILPSolver) solver).reachedDeadline();
+    if (!solved) return false;
+
+    x = new int[columns()];
+    for (int j = 0; j < x.length; ++j)
+      if (solver.getBooleanValue(j)) x[j] = 1;
+    accept(x, TIER_SEARCH);
+    objectiveValue = solver.objectiveValue();
+    return true;
+  }
+
+
+  /**
+    * Saves the given solution and counts it as a hit for the given tier.
+    *
+    * @param x  The solution.
+    * @param t  The tier that found it.
+    * @return <code>true</code>.
+   **/
+  private boolean accept(int[] x, int t) {
+    solution = x;
+    objectiveValue = evaluate(x);
+    tier = t;
+    ++hits[t];
+    return true;
+  }
+
+
+  /**
+    * Returns the assignment that optimizes the objective function without
+    * regard to any constraints other than those of the discrete variables.
+   **/
+  protected int[] argmax() { return argmax(objectiveCoefficients.toArray()); }
+
+
+  /**
+    * Gives the Boolean variables with zero objective coefficients that
+    * aren't part of a discrete variable values that satisfy the constraints,
+    * leaving all other variables as they are.  Since those variables don't
+    * change the objective function, the result is optimal whenever the
+    * other variables were set to their best values.  Values forced by the
+    * constraints are propagated from the fixed variables; a variable that
+    * isn't forced is set to 0, or to 1 if 0 leads to a contradiction, and
+    * propagation continues.  There is no further backtracking, so this can
+    * fail on a problem that has a solution.
+    *
+    * @param x  An assignment to every variable, whose free variables are
+    *           overwritten.
+    * @return <code>true</code> iff values were found for the free variables
+    *         without contradicting any constraint.
+   **/
+  protected boolean completeAuxiliary(int[] x) {
+    Completion c = new Completion(x);
+    if (c.free == 0) return true;
+
+    for (int i = 0; i < c.rows; ++i) c.enqueue(i);
+    if (!c.propagate()) return false;
+
+    for (int j = 0; j < x.length; ++j) {
+      if (c.value[j] != -1) continue;
+      int before = c.assigned;
+      if (c.assign(j, 0) && c.propagate()) continue;
+      c.undo(before);
+      if (!(c.assign(j, 1) && c.propagate())) return false;
+    }
+
+    System.arraycopy(c.value, 0, x, 0, x.length);
+    return true;
+  }
+
+
+  /**
+    * The state of {@link TieredILPSolver#completeAuxiliary(int[])}: a
+    * partial assignment in which the free variables that don't have values
+    * yet are -1, and the constraints whose bounds must be checked again.
+   **/
+  private class Completion
+  {
+    /** The number of constraints. */
+    public int rows;
+    /** The partial assignment. */
+    public int[] value;
+    /** The number of free variables. */
+    public int free;
+    /** The constraints each free variable appears in. */
+    public int[][] rowsOf;
+    /** The free variables in the order they were given values. */
+    public int[] trail;
+    /** The number of variables on the {@link #trail}. */
+    public int assigned;
+    /** The constraints to check, as a circular queue. */
+    private int[] queue;
+    /** The position of the first constraint in the {@link #queue}. */
+    private int first;
+    /** The number of constraints in the {@link #queue}. */
+    private int queued;
+    /** Whether each constraint is in the {@link #queue}. */
+    private boolean[] inQueue;
+
+
+    /**
+      * Starts from the given assignment with every free variable unset.
+      *
+      * @param x  An assignment to every variable.
+     **/
+    public Completion(int[] x) {
+      int n = x.length;
+      rows = Av.size();
+      value = (int[]) x.clone();
+      boolean[] isFree = new boolean[n];
+      int d = 0;
+
+      for (int j = 0; j < n; ) {
+        if (d < discreteStarts.size() && discreteStarts.get(d) == j)
+          j += discreteSizes.get(d++);
+        else {
+          if (objectiveCoefficients.get(j) == 0) {
+            isFree[j] = true;
+            value[j] = -1;
+            ++free;
+          }
+          ++j;
+        }
+      }
+
+      int[] counts = new int[n];
+      for (int i = 0; i < rows; ++i)
+        for (int k = 0; k < Av.size(i); ++k)
+          if (isFree[Av.get(i, k)]) ++counts[Av.get(i, k)];
+      rowsOf = new int[n][];
+      for (int j = 0; j < n; ++j)
+        if (isFree[j]) rowsOf[j] = new int[counts[j]];
+      for (int i = 0; i < rows; ++i)
+        for (int k = 0; k < Av.size(i); ++k) {
+          int j = Av.get(i, k);
+          if (isFree[j]) rowsOf[j][--counts[j]] = i;
+        }
+
+      trail = new int[free];
+      queue = new int[rows];
+      inQueue = new boolean[rows];
+    }
+
+
+    /**
+      * Adds a constraint to the queue unless it is already there.
+      *
+      * @param i  The constraint.
+     **/
+    public void enqueue(int i) {
+      if (inQueue[i]) return;
+      inQueue[i] = true;
+      queue[(first + queued++) % rows] = i;
+    }
+
+
+    /**
+      * Gives a free variable a value and queues its constraints.
+      *
+      * @param j  The variable.
+      * @param v  Its value.
+      * @return <code>true</code>.
+     **/
+    public boolean assign(int j, int v) {
+      value[j] = v;
+      trail[assigned++] = j;
+      for (int k = 0; k < rowsOf[j].length; ++k) enqueue(rowsOf[j][k]);
+      return true;
+    }
+
+
+    /**
+      * Unsets the variables given values since the trail had the given
+      * length, and empties the queue.
+      *
+      * @param length The length to shorten the trail to.
+     **/
+    public void undo(int length) {
+      while (assigned > length) value[trail[--assigned]] = -1;
+      for (; queued > 0; --queued) {
+        inQueue[queue[first]] = false;
+        first = (first + 1) % rows;
+      }
+    }
+
+
+    /**
+      * Checks the queued constraints, giving values to the free variables
+      * they force until no constraint forces any more.
+      *
+      * @return <code>false</code> iff some constraint can't be satisfied.
+     **/
+    public boolean propagate() {
+      while (queued > 0) {
+        int i = queue[first];
+        first = (first + 1) % rows;
+        --queued;
+        inQueue[i] = false;
+
+        // The smallest and largest values the left hand side can take.
+        double low = 0, high = 0;
+        int size = Av.size(i);
+        for (int k = 0; k < size; ++k) {
+          double a = Ac.get(i, k);
+          int v = value[Av.get(i, k)];
+          if (v >= 0) {
+            low += a * v;
+            high += a * v;
+          }
+          else if (a < 0) low += a;
+          else high += a;
+        }
+
+        int type = boundTypes.get(i);
+        double b = bounds.get(i);
+        boolean upper = type != GREATER_THAN, lower = type != LESS_THAN;
+        if (upper && low > b + TOLERANCE || lower && high < b - TOLERANCE)
+          return false;
+
+        for (int k = 0; k < size; ++k) {
+          int j = Av.get(i, k);
+          if (value[j] != -1) continue;
+          double a = Ac.get(i, k);
+          // The value that would break the constraint if j took it.
+          int breaks = -1;
+          if (upper && low + Math.abs(a) > b + TOLERANCE) breaks = a > 0 ? 1 : 0;
+          if (lower && high - Math.abs(a) < b - TOLERANCE) {
+            int other = a > 0 ? 0 : 1;
+            if (breaks != -1 && breaks != other) return false;
+            breaks = other;
+          }
+          if (breaks != -1) assign(j, 1 - breaks);
+        }
+      }
+
+      return true;
+    }
+  }
+
+
+  /**
+    * Solves the LP relaxation of the problem and returns its solution if it
+    * is integral.
+    *
+    * @return The solution, or <code>null</code> if the relaxation has no
+    *         integral optimal solution or couldn't be solved.
+   **/
+  protected int[] relax() {
+    OJalgoHook lp = new OJalgoHook(true);
+    lp.setDeadline(deadline);
+    int[] x = new int[columns()];
+
+    try {
+      copyTo(lp);
+      if (!lp.solve()) return null;
+
+      for (int j = 0; j < x.length; ++j) {
+        double v = lp.getValue(j);
+        long rounded = Math.round(v);
+        if (Math.abs(v - rounded) > INTEGRALITY_TOLERANCE) return null;
+        x[j] = (int) rounded;
+      }
+    }
+    catch (Exception e) {
+      return null;
+    }
+
+    return constraintsSatisfied(x) ? x : null;
+  }
+
+
+  /**
+    * Tests whether the problem represented by this <code>ILPSolver</code>
+    * instance has been solved already.
+   **/
+  public boolean isSolved() { return solution != null; }
+
+
+  /**
+    * When the problem has been solved, use this method to retrieve the value
+    * of any Boolean inference variable.  The result of this method is
+    * undefined when the problem has not yet been solved.
+    *
+    * @param index  The index of the variable whose value is requested.
+    * @return The value of the variable.
+   **/
+  public boolean getBooleanValue(int index) { return solution[index] == 1; }
+
+
+  /**
+    * When the problem has been solved, use this method to retrieve the value
+    * of the objective function at the solution.  The result of this method is
+    * undefined when the problem has not yet been solved.
+    *
+    * @return The value of the objective function at the solution.
+   **/
+  public double objectiveValue() { return objectiveValue; }
+
+
+  /**
+    * Returns the tier that solved the problem, or {@link #TIER_NONE} if it
+    * hasn't been solved.
+   **/
+  public int getTier() { return tier; }
+
+
+  /** Returns the number of problems this solver has attempted to solve. */
+  public long getSolves() { return solves; }
+
+
+  /**
+    * Returns the number of problems solved by the given tier.
+    *
+    * @param t  The tier.
+    * @return The number of problems it solved.
+   **/
+  public long getHits(int t) { return hits[t]; }
+
+
+  /**
+    * Returns the fraction of all problems attempted that were solved by the
+    * given tier.
+    *
+    * @param t  The tier.
+    * @return The tier's hit rate, or 0 if no problems have been attempted.
+   **/
+  public double getHitRate(int t) {
+    return solves == 0 ? 0 : hits[t] / (double) solves;
+  }
+
+
+  /** Sets all counts to 0. */
+  public void resetStatistics() {
+    solves = 0;
+    for (int t = 0; t < hits.length; ++t) hits[t] = 0;
+  }
+
+
+  /**
+    * Returns a summary of the hit rates of all tiers, suitable for logging.
+   **/
+  public String statistics() {
+    StringBuffer result = new StringBuffer();
+    result.append(solves);
+    result.append(" problems");
+    for (int t = 0; t < hits.length; ++t) {
+      result.append(", ");
+      result.append(tierNames[t]);
+      result.append(": ");
+      result.append(Math.round(1000 * getHitRate(t)) / 10.0);
+      result.append("%");
+    }
+    return result.toString();
+  }
+}
@@ -95,21 +95,24 @@ public class UniversalQuantifier extends Quantifier
    **/
   public PropositionalConstraint propositionalize() {
     PropositionalConstraint result = null;
+    PropositionalConjunction conjunction = null;
 
     int index = initialize();
     for (Iterator I = collection.iterator(); I.hasNext(); ) {
       enclosingQuantificationSettings.set(index, I.next());
       constraint.setQuantificationVariables(enclosingQuantificationSettings);
+      PropositionalConstraint p =
+        PropositionalInterner.intern(constraint.propositionalize());
 
-      if (result == null) result = constraint.propositionalize();
-      else
-        result =
-          new PropositionalConjunction(result, constraint.propositionalize());
+      if (result == null) result = p;
+      else if (conjunction == null)
+        result = conjunction = new PropositionalConjunction(result, p);
+      else conjunction.add(p);
     }
 
     enclosingQuantificationSettings.removeElementAt(index);
     if (result == null) result = new PropositionalConstant(true);
-    return result;
+    return PropositionalInterner.intern(result);
   }
 
 
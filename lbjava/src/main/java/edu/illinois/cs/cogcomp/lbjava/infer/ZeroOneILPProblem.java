@@ -67,6 +67,16 @@ public class ZeroOneILPProblem
   protected IVector boundTypes;
   /** The vector of constraint bounds. */
   protected DVector bounds;
+  /** The index of the first Boolean variable of each discrete variable. */
+  protected IVector discreteStarts;
+  /** The number of Boolean variables in each discrete variable. */
+  protected IVector discreteSizes;
+  /**
+    * The indexes of the constraints added on behalf of discrete variables,
+    * which are not given to other solvers by {@link #copyTo(ILPSolver)}
+    * since they add their own.
+   **/
+  protected IVector discreteRows;
 
 
   /** Default constructor. */
@@ -135,6 +145,9 @@ public class ZeroOneILPProblem
     Ac = new DVector2D();
     boundTypes = new IVector();
     bounds = new DVector();
+    discreteStarts = new IVector();
+    discreteSizes = new IVector();
+    discreteRows = new IVector();
   }
 
 
@@ -286,6 +299,9 @@ public class ZeroOneILPProblem
     double[] a = new double[c.length];
     Arrays.fill(a, 1);
     addEqualityConstraint(result, a, 1);
+    discreteStarts.add(s);
+    discreteSizes.add(c.length);
+    discreteRows.add(rows() - 1);
     return result;
   }
 
@@ -450,6 +466,87 @@ public class ZeroOneILPProblem
   }
 
 
+  /**
+    * Returns the assignment that optimizes the given objective function
+    * without regard to any constraints other than those of the discrete
+    * variables.  Ties are broken in favor of the variable added first.
+    *
+    * @param c  The objective function coefficients of all the variables.
+    * @return The optimizing assignment.
+   **/
+  protected int[] argmax(double[] c) {
+    int[] x = new int[columns()];
+    int d = 0;
+
+    for (int j = 0; j < x.length; ) {
+      if (d < discreteStarts.size() && discreteStarts.get(d) == j) {
+        int size = discreteSizes.get(d++);
+        int best = j;
+        for (int k = j + 1; k < j + size; ++k)
+          if (maximize ? c[k] > c[best] : c[k] < c[best]) best = k;
+        x[best] = 1;
+        j += size;
+      }
+      else {
+        if (maximize ? c[j] > 0 : c[j] < 0) x[j] = 1;
+        ++j;
+      }
+    }
+
+    return x;
+  }
+
+
+  /**
+    * Adds this problem to the given solver, using its own implementation of
+    * discrete variables.
+    *
+    * @param s  The solver.
+   **/
+  protected void copyTo(ILPSolver s) {
+    s.setMaximize(maximize);
+
+    int d = 0;
+    for (int j = 0; j < columns(); ) {
+      if (d < discreteStarts.size() && discreteStarts.get(d) == j) {
+        double[] c = new double[discreteSizes.get(d++)];
+        for (int k = 0; k < c.length; ++k)
+          c[k] = objectiveCoefficients.get(j + k);
+        s.addDiscreteVariable(c);
+        j += c.length;
+      }
+      else s.addBooleanVariable(objectiveCoefficients.get(j++));
+    }
+
+    d = 0;
+    for (int i = 0; i < rows(); ++i) {
+      if (d < discreteRows.size() && discreteRows.get(d) == i) {
+        ++d;
+        continue;
+      }
+
+      int size = Av.size(i);
+      int[] I = new int[size];
+      double[] a = new double[size];
+      for (int k = 0; k < size; ++k) {
+        I[k] = Av.get(i, k);
+        a[k] = Ac.get(i, k);
+      }
+
+      switch (boundTypes.get(i)) {
+        case EQUALITY:
+          s.addEqualityConstraint(I, a, bounds.get(i));
+          break;
+        case LESS_THAN:
+          s.addLessThanConstraint(I, a, bounds.get(i));
+          break;
+        default:
+          s.addGreaterThanConstraint(I, a, bounds.get(i));
+      }
+    }
+  }
+
+
   /**
     * Creates a textual representation of the ILP problem in an algebraic
     * notation.
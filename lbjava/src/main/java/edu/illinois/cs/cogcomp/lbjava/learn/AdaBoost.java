@@ -160,6 +160,7 @@ public class AdaBoost extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     weakLearner = p.weakLearner;
     rounds = p.rounds;
   }
@@ -227,6 +228,7 @@ public class AdaBoost extends Learner
     * of features.
    **/
   public void initialize(int numExamples, int numFeatures) {
+    checkNotFrozen("initialize");
     allExamples = new OVector(numExamples);
   }
 
@@ -259,6 +261,7 @@ public class AdaBoost extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     allExamples.add(new Object[]{ exampleFeatures, exampleValues,
                                   exampleLabels, labelValues });
   }
@@ -269,6 +272,7 @@ public class AdaBoost extends Learner
     * they exist; otherwise do nothing.
    **/
   public void doneLearning() {
+    checkNotFrozen("doneLearning");
     int m = allExamples.size();
     if (m == 0) return;
 
@@ -33,6 +33,12 @@ import java.io.PrintStream;
  *      The Journal of Machine Learning Research 12 (2011): 2121-2159.
  *      http://www.magicbroom.info/Papers/DuchiHaSi10.pdf
  *
+ *  L2 weight decay and truncated-gradient L1 regularization can be enabled with
+ *      l2PenaltyP and l1PenaltyP. Each coordinate is regularized with its own
+ *      adaptive learning rate. The weight vector here is dense over the example's
+ *      positions and every coordinate is already visited once per example, so the
+ *      penalties are applied in that same pass rather than lazily.
+ *
  *  @author Yiming Jiang (yjiang16@illinois.edu)
  */
 public class AdaGrad extends Learner{
@@ -43,6 +49,12 @@ public class AdaGrad extends Learner{
     /* eventual loss function <code>AdaGrad</code> uses */
     protected String lossFunctionA;
 
+    /* eventual L1 regularization penalty <code>AdaGrad</code> uses */
+    protected double l1PenaltyA;
+
+    /* eventual L2 regularization penalty <code>AdaGrad</code> uses */
+    protected double l2PenaltyA;
+
     private double[] diagonalVector;    // sum of squares of gradients
     private double[] weightVector;      // hypothesis vector
     private double[] gradientVector;    // gradient vector
@@ -53,6 +65,10 @@ public class AdaGrad extends Learner{
     /* default loss function is hinge loss */
     public static final String defaultLossFunction = "hinge";
 
+    /* by default, no regularization is applied */
+    public static final double defaultL1Penalty = 0;
+    public static final double defaultL2Penalty = 0;
+
     /* boolean flag to initialize internal data structures */
     private boolean areVectorsInitialized = false;
 
@@ -136,8 +152,11 @@ public class AdaGrad extends Learner{
      * @param p  The parameters.
      **/
     public void setParameters(Parameters p) {
+        checkNotFrozen("setParameters");
         learningRateA = p.learningRateP;
         lossFunctionA = p.lossFunctionP;
+        l1PenaltyA = p.l1PenaltyP;
+        l2PenaltyA = p.l2PenaltyP;
     }
 
     /**
@@ -170,7 +189,7 @@ public class AdaGrad extends Learner{
      *      Update internal parameters;
      *
      *      Note:
-     *      1. No bias; No Regularization; are implemented
+     *      1. No bias is implemented; L1/L2 regularization is optional
      *
      *      2. Loss Function used:
      *          - Hinge Loss
@@ -197,6 +216,7 @@ public class AdaGrad extends Learner{
     @Override
     public void learn(int[] exampleFeatures, double[] exampleValues,
                       int[] exampleLabels, double[] labelValues) {
+        checkNotFrozen("learn");
 
         /* add an additional dimension to feature dimension on W to reduce computation complexities */
         int featureDimension = exampleFeatures.length + 1;
@@ -263,6 +283,27 @@ public class AdaGrad extends Learner{
                 weightVector[i] = weightVector[i] -
                         (gradientVector[i] * learningRateA / denominator);
             }
+
+            /* regularize every coordinate but theta that has seen a gradient */
+            if (i < featureDimension-1 && diagonalVector[i] > 0
+                    && (l1PenaltyA > 0 || l2PenaltyA > 0)) {
+                double rate = learningRateA / denominator;
+
+                /* w_(t+1) = w_t * (1 - r/(G_t)^(1/2) * l2) */
+                weightVector[i] *= Math.max(0, 1 - rate * l2PenaltyA);
+
+                /* truncate towards 0 by r/(G_t)^(1/2) * l1 */
+                double truncation = rate * l1PenaltyA;
+                if (weightVector[i] > truncation) {
+                    weightVector[i] -= truncation;
+                }
+                else if (weightVector[i] < -truncation) {
+                    weightVector[i] += truncation;
+                }
+                else {
+                    weightVector[i] = 0;
+                }
+            }
         }
     }
 
@@ -375,6 +416,9 @@ public class AdaGrad extends Learner{
         /* the rate at which weights are updated */
         public double learningRateP;
         public String lossFunctionP; // "hinge" or "lms"
+        /* the L1 and L2 regularization penalties */
+        public double l1PenaltyP;
+        public double l2PenaltyP;
 
         /**
          * Constructor for <code>Parameters</code> class
@@ -384,6 +428,8 @@ public class AdaGrad extends Learner{
         public Parameters() {
             learningRateP = defaultLearningRate;
             lossFunctionP = defaultLossFunction;
+            l1PenaltyP = defaultL1Penalty;
+            l2PenaltyP = defaultL2Penalty;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.Serializable;
+
+import edu.illinois.cs.cogcomp.lbjava.util.DVector;
+
+
+/**
+  * Applies L2 weight decay and truncated-gradient L1 regularization
+  * (Langford, Li, and Zhang, 2009) to a {@link SparseWeightVector} lazily, so
+  * that an on-line learner pays only for the features of the current example
+  * instead of for the whole vector on every update.
+  *
+  * <p> After each example, the learner calls {@link #step(double)} with its
+  * learning rate for that example.  This only accumulates two running totals:
+  * the sum of the logarithms of the L2 shrinking factors
+  * <i>(1 - rate * l2)</i>, and the sum of the L1 truncation amounts
+  * <i>rate * l1</i>.  For every feature, the values of those totals at the
+  * time the feature's weight was last brought up to date serve as its
+  * timestamp.  Before an example's weights are read, {@link #catchUp(
+  * SparseWeightVector,int[])} applies all the shrinking and truncation the
+  * example's features have missed since then in constant time per feature.
+  * Once training is over, {@link #finish(SparseWeightVector,double)}
+  * catches up every feature, after which the vector needs no further help
+  * from this object.
+  *
+  * <p> The L2 shrinking is applied before the L1 truncation when catching up
+  * several steps at once, which is exact for either penalty alone and a
+  * close approximation when both are used.  Truncation never changes the sign
+  * of a weight, so the L1 penalty drives many weights to exactly 0.
+ **/
+public class LazyRegularizer implements Cloneable, Serializable
+{
+  /** The L1 penalty. */
+  protected double l1;
+  /** The L2 penalty. */
+  protected double l2;
+  /** The sum of the logarithms of all L2 shrinking factors so far. */
+  protected double l2Total;
+  /** The sum of all L1 truncation amounts so far. */
+  protected double l1Total;
+  /** The value of {@link #l2Total} when each feature was last caught up. */
+  protected DVector l2Applied;
+  /** The value of {@link #l1Total} when each feature was last caught up. */
+  protected DVector l1Applied;
+
+
+  /**
+    * Initializing constructor.
+    *
+    * @param l1 The L1 penalty.
+    * @param l2 The L2 penalty.
+   **/
+  public LazyRegularizer(double l1, double l2) {
+    this.l1 = l1;
+    this.l2 = l2;
+    reset();
+  }
+
+
+  /**
+    * Returns <code>true</code> iff either penalty is non-zero, in which case
+    * the learner needs to call this object's methods at all.
+   **/
+  public boolean isActive() { return l1 > 0 || l2 > 0; }
+
+
+  /** Forgets all accumulated regularization. */
+  public void reset() {
+    l1Total = l2Total = 0;
+    l1Applied = new DVector();
+    l2Applied = new DVector();
+  }
+
+
+  /**
+    * Records that one more example has been processed with the given
+    * learning rate.
+    *
+    * @param rate The learning rate used for the example.
+   **/
+  public void step(double rate) {
+    if (l2 > 0)
+      l2Total += Math.log(Math.max(1 - rate * l2, Double.MIN_NORMAL));
+    if (l1 > 0) l1Total += rate * l1;
+  }
+
+
+  /**
+    * Brings the weights of the given features up to date with all the
+    * regularization steps taken since each was last caught up.
+    *
+    * @param w        The weight vector.
+    * @param features The indices of the features to catch up.
+   **/
+  public void catchUp(SparseWeightVector w, int[] features) {
+    for (int i = 0; i < features.length; ++i) catchUp(w, features[i]);
+  }
+
+
+  /**
+    * Brings the weight of a single feature up to date with all the
+    * regularization steps taken since it was last caught up.  Features that
+    * the weight vector has never stored a weight for are simply marked as up
+    * to date.
+    *
+    * @param w  The weight vector.
+    * @param f  The index of the feature.
+   **/
+  protected void catchUp(SparseWeightVector w, int f) {
+    if (f < w.weights.size()) {
+      double weight = w.weights.get(f);
+
+      if (weight != 0) {
+        if (l2 > 0) weight *= Math.exp(l2Total - l2Applied.get(f));
+
+        if (l1 > 0) {
+          double truncation = l1Total - l1Applied.get(f);
+          if (weight > truncation) weight -= truncation;
+          else if (weight < -truncation) weight += truncation;
+          else weight = 0;
+        }
+
+        w.weights.set(f, weight);
+      }
+    }
+
+    if (l2 > 0) l2Applied.set(f, l2Total);
+    if (l1 > 0) l1Applied.set(f, l1Total);
+  }
+
+
+  /**
+    * Catches up every feature of the given weight vector.  This should be
+    * called when training is over.  If the weight vector's default weight is
+    * 0, trailing weights that have become 0 are removed from the vector
+    * entirely.  If there is an L1 penalty, the vector is also told to leave
+    * the zeros that remain out of its binary representation whenever it has
+    * enough of them.
+    *
+    * @param w        The weight vector.
+    * @param defaultW The weight the learner assumes for features that are
+    *                 not present in the vector.
+    * @return The number of non-zero weights left in the vector.
+   **/
+  public int finish(SparseWeightVector w, double defaultW) {
+    int N = w.weights.size();
+    int nonZero = 0;
+
+    for (int f = 0; f < N; ++f) {
+      catchUp(w, f);
+      if (w.weights.get(f) != 0) ++nonZero;
+    }
+
+    if (defaultW == 0)
+      while (N > 0 && w.weights.get(N - 1) == 0) w.weights.remove(--N);
+    if (l1 > 0) w.setSparseOutput(true);
+
+    return nonZero;
+  }
+
+
+  /** Returns a deep clone of this regularizer. */
+  public Object clone() {
+    LazyRegularizer clone = null;
+
+    try { clone = (LazyRegularizer) super.clone(); }
+    catch (Exception e) {
+      System.err.println("Error cloning LazyRegularizer: " + e);
+      System.exit(1);
+    }
+
+    clone.l1Applied = (DVector) l1Applied.clone();
+    clone.l2Applied = (DVector) l2Applied.clone();
+    return clone;
+  }
+}
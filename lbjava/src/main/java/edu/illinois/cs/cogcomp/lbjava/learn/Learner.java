@@ -23,12 +23,12 @@ import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
 import edu.illinois.cs.cogcomp.lbjava.classify.DiscreteFeature;
 import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
 import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureExtractionContext;
 import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
 import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVectorReturner;
 import edu.illinois.cs.cogcomp.lbjava.classify.LabelVectorReturner;
 import edu.illinois.cs.cogcomp.lbjava.classify.RealFeature;
 import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
-import edu.illinois.cs.cogcomp.lbjava.util.ClassUtils;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.FVector;
@@ -66,7 +66,12 @@ public abstract class Learner extends Classifier
     * Informs this learner that it can and should read its feature lexicon on
     * demand.
    **/
-  protected boolean readLexiconOnDemand;
+  protected volatile boolean readLexiconOnDemand;
+  /**
+    * Set once this learner has been {@link #freeze() frozen}, after which it
+    * may only make predictions.
+   **/
+  protected volatile boolean frozen;
 
 
   /**
@@ -118,7 +123,10 @@ public abstract class Learner extends Classifier
     *
     * @param p  The parameters.
    **/
-  public void setParameters(Parameters p) { p.setParameters(this); }
+  public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
+    p.setParameters(this);
+  }
   /** Retrieves the parameters that are set in this learner. */
   public Parameters getParameters() { return new Parameters(); }
 
@@ -173,6 +181,7 @@ public abstract class Learner extends Classifier
     * @param l  A feature lexicon.
    **/
   public void setLabelLexicon(Lexicon l) {
+    checkNotFrozen("setLabelLexicon");
     labelLexicon = l;
     if (labelLexicon == null) {
       predictions = null;
@@ -316,6 +325,7 @@ public abstract class Learner extends Classifier
     * @param vector An example of the desired learned classifier's behavior.
    **/
   public void learn(FeatureVector vector) {
+    checkNotFrozen("learn");
     Classifier saveExtractor = getExtractor();
     Classifier saveLabeler = getLabeler();
     setExtractor(new FeatureVectorReturner());
@@ -394,16 +404,7 @@ public abstract class Learner extends Classifier
     * @return A vector of {@link Feature}s about the input vector.
    **/
   public FeatureVector classify(FeatureVector vector) {
-    Classifier saveExtractor = getExtractor();
-    Classifier saveLabeler = getLabeler();
-    setExtractor(new FeatureVectorReturner());
-    setLabeler(new LabelVectorReturner());
-
-    FeatureVector result = classify((Object) vector);
-
-    setExtractor(saveExtractor);
-    setLabeler(saveLabeler);
-    return result;
+    return classify((Object) getVectorArray(vector));
   }
 
 
@@ -475,16 +476,7 @@ public abstract class Learner extends Classifier
     * @return The classification of <code>vector</code> as a feature.
    **/
   public Feature featureValue(FeatureVector vector) {
-    Classifier saveExtractor = getExtractor();
-    Classifier saveLabeler = getLabeler();
-    setExtractor(new FeatureVectorReturner());
-    setLabeler(new LabelVectorReturner());
-
-    Feature result = featureValue((Object) vector);
-
-    setExtractor(saveExtractor);
-    setLabeler(saveLabeler);
-    return result;
+    return featureValue((Object) getVectorArray(vector));
   }
 
 
@@ -526,16 +518,7 @@ public abstract class Learner extends Classifier
     * @return The discrete value.
    **/
   public String discreteValue(FeatureVector vector) {
-    Classifier saveExtractor = getExtractor();
-    Classifier saveLabeler = getLabeler();
-    setExtractor(new FeatureVectorReturner());
-    setLabeler(new LabelVectorReturner());
-
-    String result = discreteValue((Object) vector);
-
-    setExtractor(saveExtractor);
-    setLabeler(saveLabeler);
-    return result;
+    return discreteValue((Object) getVectorArray(vector));
   }
 
 
@@ -577,16 +560,7 @@ public abstract class Learner extends Classifier
     * @return The real value.
    **/
   public double realValue(FeatureVector vector) {
-    Classifier saveExtractor = getExtractor();
-    Classifier saveLabeler = getLabeler();
-    setExtractor(new FeatureVectorReturner());
-    setLabeler(new LabelVectorReturner());
-
-    double result = realValue((Object) vector);
-
-    setExtractor(saveExtractor);
-    setLabeler(saveLabeler);
-    return result;
+    return realValue((Object) getVectorArray(vector));
   }
 
 
@@ -614,6 +588,7 @@ public abstract class Learner extends Classifier
     * method does nothing.
    **/
   public void doneLearning() {
+    checkNotFrozen("doneLearning");
   }
 
 
@@ -630,11 +605,13 @@ public abstract class Learner extends Classifier
     *                     training.
    **/
   public void initialize(int numExamples, int numFeatures) {
+    checkNotFrozen("initialize");
   }
 
 
   /** Called after each round of training.  Does nothing by default. */
   public void doneWithRound() {
+    checkNotFrozen("doneWithRound");
   }
 
 
@@ -675,10 +652,8 @@ public abstract class Learner extends Classifier
         && ((Object[]) example)[1] instanceof double[])
       return (Object[]) example;
 
-    if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0)) {
-      readLexicon(lexFilePath);
-      readLexiconOnDemand = false;
-    }
+    if (training) checkNotFrozen("learn");
+    if (readLexiconOnDemand) demandLexicon();
 
     Object[] exampleArray = null;
     Lexicon.CountPolicy countPolicy = lexicon.getCountPolicy();
@@ -686,23 +661,9 @@ public abstract class Learner extends Classifier
 
     // Get example labels
     if (training) {
-      FeatureVector labelVector = labeler.classify(example);
-      int F = labelVector.featuresSize();
-      int[] labelArray = new int[F];
-      double[] labelValues = new double[F];
-
-      for (int f = 0; f < F; ++f) {
-        Feature label = labelVector.getFeature(f);
-        if (label.isDiscrete())
-          labelArray[f] = labelLexicon.lookup(label, true);
-        else
-          labelArray[f] =
-            labelLexicon.lookup(label.getFeatureKey(labelLexicon), true);
-        labelValues[f] += label.getStrength();
-        createPrediction(labelArray[f]);
-      }
-
-      exampleArray = new Object[]{ null, null, labelArray, labelValues };
+      Object[] labels = getExampleLabels(example);
+      int[] labelArray = (int[]) labels[0];
+      exampleArray = new Object[]{ null, null, labelArray, labels[1] };
       if (countPolicy == Lexicon.CountPolicy.perClass)
           //&& labeler.getOutputType().equals("discrete") && F == 1)
           // Don't really want to do this comparison for every example; we'll
@@ -714,7 +675,8 @@ public abstract class Learner extends Classifier
     else exampleArray = new Object[2];
 
     // Get example features.
-    FeatureVector featureVector = extractor.classify(example);
+    FeatureVector featureVector =
+      FeatureExtractionContext.classify(extractor, example);
     int F = featureVector.featuresSize();
     int[] exampleArrayFeatures = new int[F];
     double[] exampleArrayValues = new double[F];
@@ -731,7 +693,66 @@ public abstract class Learner extends Classifier
 
     return exampleArray;
   }
-  
+
+
+  /**
+    * Converts a feature vector into the first two arrays
+    * {@link #getExampleArray(Object,boolean)} would return if this learner's
+    * extractor were a {@link FeatureVectorReturner}, without changing the
+    * extractor.  Labels in the vector are ignored.
+    *
+    * @param vector The feature vector.
+    * @return The converted example array.
+   **/
+  protected Object[] getVectorArray(FeatureVector vector) {
+    if (readLexiconOnDemand) demandLexicon();
+
+    int F = vector.featuresSize();
+    int[] exampleArrayFeatures = new int[F];
+    double[] exampleArrayValues = new double[F];
+
+    for (int f = 0; f < F; ++f) {
+      Feature feature = vector.getFeature(f);
+      exampleArrayFeatures[f] =
+        lexicon.lookup(feature.getFeatureKey(lexicon, false, -1), false, -1);
+      exampleArrayValues[f] += feature.getStrength();
+    }
+
+    return new Object[]{ exampleArrayFeatures, exampleArrayValues };
+  }
+
+
+  /**
+    * Computes only the labels of an example object, adding any labels not
+    * seen before to the label lexicon.  The first of the two returned arrays
+    * contains the labels' indexes in the label lexicon, and the second
+    * their values, just like the third and fourth arrays returned by
+    * {@link #getExampleArray(Object,boolean)}.
+    *
+    * @param example  The example object.
+    * @return The label indexes and values.
+   **/
+  public Object[] getExampleLabels(Object example) {
+    checkNotFrozen("learn");
+    FeatureVector labelVector = labeler.classify(example);
+    int F = labelVector.featuresSize();
+    int[] labelArray = new int[F];
+    double[] labelValues = new double[F];
+
+    for (int f = 0; f < F; ++f) {
+      Feature label = labelVector.getFeature(f);
+      if (label.isDiscrete())
+        labelArray[f] = labelLexicon.lookup(label, true);
+      else
+        labelArray[f] =
+          labelLexicon.lookup(label.getFeatureKey(labelLexicon), true);
+      labelValues[f] += label.getStrength();
+      createPrediction(labelArray[f]);
+    }
+
+    return new Object[]{ labelArray, labelValues };
+  }
+
   public void setReadLexiconOnDemand(){ 
      readLexiconOnDemand = true; 
   }
@@ -793,6 +814,7 @@ public abstract class Learner extends Classifier
     * examples and features to 0, for learners that use this.
    **/
   public void forget() {
+    checkNotFrozen("forget");
     lexicon = new Lexicon(encoding);
     labelLexicon = new Lexicon();
     predictions = new FVector();
@@ -832,16 +854,7 @@ public abstract class Learner extends Classifier
     *         example vector.
    **/
   public ScoreSet scores(FeatureVector vector) {
-    Classifier saveExtractor = getExtractor();
-    Classifier saveLabeler = getLabeler();
-    setExtractor(new FeatureVectorReturner());
-    setLabeler(new LabelVectorReturner());
-
-    ScoreSet result = scores((Object) vector);
-
-    setExtractor(saveExtractor);
-    setLabeler(saveLabeler);
-    return result;
+    return scores((Object) getVectorArray(vector));
   }
 
 
@@ -1274,7 +1287,9 @@ public abstract class Learner extends Classifier
                                     boolean whole) {
     String name = in.readString();
     if (name == null) return null;
-    Learner result = ClassUtils.getLearner(name);
+    Learner result = null;
+    try { result = (Learner) Class.forName(name).newInstance(); }
+    catch (Exception e) { in.fail("Can't instantiate '" + name + "':", e); }
     result.unclone();
     if (whole) result.read(in);     // Overridden by decendents
     else {
@@ -1294,7 +1309,10 @@ public abstract class Learner extends Classifier
     *
     * @param in The input stream.
    **/
-  public void read(ExceptionlessInputStream in) { readLabelLexicon(in); }
+  public void read(ExceptionlessInputStream in) {
+    checkNotFrozen("read");
+    readLabelLexicon(in);
+  }
 
 
   /**
@@ -1311,15 +1329,31 @@ public abstract class Learner extends Classifier
     encoding = in.readString();
     if (encoding != null) encoding = encoding.intern();
     String s = in.readString();
-    labeler = s == null ? null : ClassUtils.getClassifier(s);
+    labeler = s == null ? null : readClassifier(in, s);
     s = in.readString();
-    extractor = s == null ? null : ClassUtils.getClassifier(s);
+    extractor = s == null ? null : readClassifier(in, s);
     labelLexicon = Lexicon.readLexicon(in);
     if (predictions == null) predictions = new FVector();
     predictions.read(in);
   }
 
 
+  /**
+    * Instantiates the named classifier, whose name was read from the given
+    * stream, reporting a failure through the stream.
+    *
+    * @param in   The input stream.
+    * @param name The fully qualified name of the classifier's class.
+    * @return The classifier.
+   **/
+  private static Classifier readClassifier(ExceptionlessInputStream in,
+                                           String name) {
+    try { return (Classifier) Class.forName(name).newInstance(); }
+    catch (Exception e) { in.fail("Can't instantiate '" + name + "':", e); }
+    return null;
+  }
+
+
   /**
     * Prepares this learner to read in its feature lexicon from the specified
     * location on demand; has no effect if this learner already has a
@@ -1363,15 +1397,69 @@ public abstract class Learner extends Classifier
     * @see #readLexiconOnDemand
     * @return The lexicon just read into {@link #lexicon}.
    **/
-  public Lexicon demandLexicon() {
+  public synchronized Lexicon demandLexicon() {
     if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0)) {
       readLexicon(lexFilePath);
+      lexicon.lazyMapCreation();
       readLexiconOnDemand = false;
     }
     return lexicon;
   }
 
 
+  /**
+    * Prepares this learner to be shared by threads that only make
+    * predictions with it.  The feature lexicon is read if it is still to be
+    * read on demand, the lexicons' maps are built, and the prediction
+    * features of all labels are created, so that classifying an example
+    * modifies nothing this learner holds.  From then on, anything that would
+    * change the model, such as any of the <code>learn</code> methods,
+    * {@link #doneLearning()}, {@link #setParameters(Learner.Parameters)},
+    * {@link #read(ExceptionlessInputStream)}, or {@link #forget()}, throws
+    * an <code>IllegalStateException</code>.  Freezing a frozen learner has
+    * no effect.
+    *
+    * <p> Freezing is meant to follow loading and precede sharing; the
+    * learner must be handed to other threads safely, for example through a
+    * <code>final</code> or <code>volatile</code> field, after this method
+    * returns.
+   **/
+  public synchronized void freeze() {
+    if (frozen) return;
+    demandLexicon();
+    if (lexicon != null) lexicon.lazyMapCreation();
+
+    if (labelLexicon != null) {
+      labelLexicon.lazyMapCreation();
+      if (predictions == null) predictions = new FVector();
+      int N = labelLexicon.size();
+      for (int i = 0; i < N; ++i) createPrediction(i);
+    }
+
+    frozen = true;
+  }
+
+
+  /** Returns whether this learner has been {@link #freeze() frozen}. */
+  public boolean isFrozen() { return frozen; }
+
+
+  /**
+    * Throws an exception if this learner has been {@link #freeze() frozen}.
+    * Every method that changes the model calls this first, unless it starts
+    * by calling the method it overrides.
+    *
+    * @param method The name of the method that would change the model.
+    * @throws IllegalStateException If this learner is frozen.
+   **/
+  protected void checkNotFrozen(String method) {
+    if (frozen)
+      throw new IllegalStateException(
+          "LBJava ERROR: Learner." + method + ": learner '" + name
+          + "' is frozen.");
+  }
+
+
   /**
     * Serializes a {@link Learner.Parameters} object to the specified file.
     *
@@ -16,9 +16,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscreteConjunctiveFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscreteReferrer;
 import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.RealConjunctiveFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.RealReferrer;
 import edu.illinois.cs.cogcomp.lbjava.util.ByteString;
-import edu.illinois.cs.cogcomp.lbjava.util.ClassUtils;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.FVector;
@@ -123,14 +126,10 @@ public class Lexicon implements Cloneable, Serializable
                                     boolean readCounts) {
     String name = in.readString();
     if (name == null) return null;
-    Class clazz = ClassUtils.getClass(name);
-
     Lexicon lexicon = null;
-    try { lexicon = (Lexicon) clazz.newInstance(); }
-    catch (Exception e) {
-      System.err.println("Can't instantiate '" + name + "': " + e);
-      System.exit(1);
-    }
+
+    try { lexicon = (Lexicon) Class.forName(name).newInstance(); }
+    catch (Exception e) { in.fail("Can't instantiate '" + name + "':", e); }
 
     lexicon.read(in, readCounts);
     return lexicon;
@@ -138,8 +137,13 @@ public class Lexicon implements Cloneable, Serializable
 
 
   // Member variables.
-  /** The map of features to integer keys. */
-  protected Map lexicon;
+  /**
+    * The map of features to integer keys.  It is volatile so that a map
+    * built by {@link #lazyMapCreation()} on one thread is seen whole by
+    * every other thread, whether or not the lexicon's learner was
+    * {@link Learner#freeze() frozen}.
+   **/
+  protected volatile Map lexicon;
   /** The inverted map of integer keys to their features. */
   protected FVector lexiconInv;
   /** The encoding to use for new features added to this lexicon. */
@@ -674,6 +678,89 @@ public class Lexicon implements Cloneable, Serializable
   }
 
 
+  /** <!-- compact(boolean[]) -->
+    * Permanently removes the features not marked in the given array and
+    * renumbers the remaining features densely, preserving their relative
+    * order.  Features that are still needed as children of remaining
+    * conjunctive or referring features, or that are also stored in
+    * {@link #lexiconChildren}, are kept regardless, since the lexicon could
+    * not be written or read without them.  All feature counts are
+    * discarded.
+    *
+    * <p> The returned map should be passed to every learner whose weights
+    * are indexed by this lexicon, e.g. via
+    * {@link LinearThresholdUnit#renumberFeatures(int[])}.
+    *
+    * @param keep An array with an element for every feature in the lexicon
+    *             which is <code>true</code> iff that feature should be kept.
+    *             It may be modified by this method.
+    * @return A map from features' original indexes to their new ones, where
+    *         -1 indicates a feature that has been removed.
+   **/
+  public int[] compact(boolean[] keep) {
+    lazyMapCreation();
+    int N = lexiconInv.size();
+
+    for (int i = 0; i < N; ++i) {
+      Feature f = lexiconInv.get(i);
+      if (!keep[i] && lexiconChildren != null && lexiconChildren.contains(f))
+        keep[i] = true;
+      if (keep[i]) keepChildren(f, keep);
+    }
+
+    int[] map = new int[N];
+    FVector compacted = new FVector(N);
+    for (int i = 0; i < N; ++i) {
+      if (keep[i]) {
+        map[i] = compacted.size();
+        compacted.add(lexiconInv.get(i));
+      }
+      else map[i] = -1;
+    }
+
+    lexiconInv = new FVector(compacted);
+    lexicon = null;
+    featureCounts = null;
+    perClassFeatureCounts = null;
+    pruneCutoff = -1;
+    return map;
+  }
+
+
+  /**
+    * Helper method for {@link #compact(boolean[])} that marks the children
+    * of the given feature that are stored in this lexicon, as well as their
+    * children, as features that must be kept.
+    *
+    * @param f    A feature that will be kept.
+    * @param keep Indicates which features will be kept.
+   **/
+  private void keepChildren(Feature f, boolean[] keep) {
+    Feature[] children = null;
+    if (f instanceof DiscreteConjunctiveFeature) {
+      DiscreteConjunctiveFeature c = (DiscreteConjunctiveFeature) f;
+      children = new Feature[]{ c.getLeft(), c.getRight() };
+    }
+    else if (f instanceof RealConjunctiveFeature) {
+      RealConjunctiveFeature c = (RealConjunctiveFeature) f;
+      children = new Feature[]{ c.getLeft(), c.getRight() };
+    }
+    else if (f instanceof DiscreteReferrer)
+      children = new Feature[]{ ((DiscreteReferrer) f).getReferent() };
+    else if (f instanceof RealReferrer)
+      children = new Feature[]{ ((RealReferrer) f).getReferent() };
+    else return;
+
+    for (int i = 0; i < children.length; ++i) {
+      Integer I = (Integer) lexicon.get(children[i]);
+      if (I != null && !keep[I.intValue()]) {
+        keep[I.intValue()] = true;
+        keepChildren(children[i], keep);
+      }
+    }
+  }
+
+
   /** <!-- clone() -->
     * Returns a deep clone of this lexicon implemented as a
     * <code>HashMap</code>.
@@ -853,14 +940,19 @@ public class Lexicon implements Cloneable, Serializable
   /**
     * Various other methods in this class call this method to ensure that
     * {@link #lexicon} is populated before performing operations on it.  The
-    * only reason it wouldn't be is if it had just been read off disk.
+    * only reason it wouldn't be is if it had just been read off disk.  The
+    * map is filled before it is assigned to the volatile field, so that a
+    * thread looking features up never sees it half built.  Two threads may
+    * both build it, in which case either map may be kept, since they are
+    * equal.
    **/
   protected void lazyMapCreation() {
     if (lexicon == null) {
-      lexicon = new HashMap();
+      Map map = new HashMap();
       int N = lexiconInv.size();
       for (int i = 0; i < N; ++i)
-        lexicon.put(lexiconInv.get(i), new Integer(i));
+        map.put(lexiconInv.get(i), new Integer(i));
+      lexicon = map;
     }
   }
 
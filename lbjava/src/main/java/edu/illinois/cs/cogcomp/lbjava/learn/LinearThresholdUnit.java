@@ -282,6 +282,7 @@ public abstract class LinearThresholdUnit extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     learningRate = p.learningRate;
     weightVector = p.weightVector;
     initialWeight = p.initialWeight;
@@ -455,6 +456,7 @@ public abstract class LinearThresholdUnit extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     assert exampleLabels.length == 1
       : "Example must have a single label.";
     assert exampleLabels[0] == 0 || exampleLabels[0] == 1
@@ -528,6 +530,7 @@ public abstract class LinearThresholdUnit extends Learner
     * of features, setting each weight equal to {@link #initialWeight}.
    **/
   public void initialize(int numExamples, int numFeatures) {
+    checkNotFrozen("initialize");
     double[] weights = new double[numFeatures];
     Arrays.fill(weights, initialWeight);
     weightVector = new SparseWeightVector(weights);
@@ -641,6 +644,20 @@ public abstract class LinearThresholdUnit extends Learner
   }
 
 
+  /**
+    * Moves every weight to the new index of its feature after the feature
+    * lexicon has been compacted with {@link Lexicon#compact(boolean[])}.
+    * Subclasses that keep other per-feature information should override
+    * this method to renumber it as well.
+    *
+    * @param map  A map from features' original indexes to their new ones,
+    *             where -1 indicates a feature that has been removed.
+   **/
+  public void renumberFeatures(int[] map) {
+    weightVector.renumber(map, initialWeight);
+  }
+
+
   /**
     * If the <code>LinearThresholdUnit</code> is mistake driven, this method
     * should be overridden and used to update the internal representation when
@@ -0,0 +1,227 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+  * A compact, append-only store of sparse example vectors that lives in a
+  * temporary file on disk instead of on the heap.  Each example is written as
+  * its number of features followed by pairs of <code>int</code> feature
+  * indices and <code>double</code> feature values, so it costs 12 bytes per
+  * feature instead of a Java object per feature.  The only per-example data
+  * kept in memory is the example's byte offset in the file.
+  *
+  * <p> Examples are appended with {@link #add(int[],double[],int)}.  Once
+  * {@link #finishWriting()} has been called, the file is memory-mapped in
+  * segments of at most {@link #maxSegmentBytes} bytes, each holding only
+  * whole examples, and examples may be read back in any order with
+  * {@link #read(int,int[],double[])}.  {@link #delete()} must be called
+  * when the data is no longer needed, since nothing else removes the file.
+ **/
+public class MappedExampleFile
+{
+  /** The largest number of bytes mapped by a single buffer. */
+  protected static final long maxSegmentBytes = 1L << 30;
+  /** The number of bytes used to store a single feature. */
+  protected static final int bytesPerFeature = 4 + 8;
+
+
+  /** The temporary file holding the examples. */
+  protected File file;
+  /** Used to append examples to {@link #file}. */
+  protected DataOutputStream out;
+  /** The number of bytes written to {@link #file} so far. */
+  protected long bytesWritten;
+  /** The byte offset of each example in {@link #file}. */
+  protected long[] offsets;
+  /** The number of examples stored. */
+  protected int size;
+  /** The largest number of features in any single example. */
+  protected int maxLength;
+  /** The byte offset in {@link #file} at which each segment starts. */
+  protected long[] segmentStarts;
+  /** The number of segments. */
+  protected int segments;
+  /** The memory-mapped segments of {@link #file}. */
+  protected MappedByteBuffer[] buffers;
+
+
+  /**
+    * Creates a new temporary file in the specified directory.
+    *
+    * @param directory  The directory in which to create the file, or
+    *                   <code>null</code> for the system's default temporary
+    *                   directory.
+   **/
+  public MappedExampleFile(File directory) {
+    offsets = new long[1 << 10];
+    segmentStarts = new long[4];
+    segments = 1;
+
+    try {
+      file = File.createTempFile("LBJ", ".examples", directory);
+      out =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+    catch (Exception e) {
+      System.err.println(
+          "LBJava ERROR: Can't create a temporary example file in '"
+          + directory + "':");
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+
+  /** Returns the number of examples stored. */
+  public int size() { return size; }
+
+  /** Returns the largest number of features in any single example. */
+  public int maxLength() { return maxLength; }
+
+
+  /**
+    * Appends an example to the file.
+    *
+    * @param features The example's feature indices.
+    * @param values   The example's feature values.
+    * @param length   The number of features to take from the arrays.
+   **/
+  public void add(int[] features, double[] values, int length) {
+    long bytes = 4 + (long) length * bytesPerFeature;
+    if (bytesWritten - segmentStarts[segments - 1] + bytes > maxSegmentBytes
+        && bytesWritten > segmentStarts[segments - 1]) {
+      if (segments == segmentStarts.length) {
+        long[] temp = new long[segments * 2];
+        System.arraycopy(segmentStarts, 0, temp, 0, segments);
+        segmentStarts = temp;
+      }
+
+      segmentStarts[segments++] = bytesWritten;
+    }
+
+    if (size == offsets.length) {
+      long[] temp = new long[size * 2];
+      System.arraycopy(offsets, 0, temp, 0, size);
+      offsets = temp;
+    }
+
+    offsets[size++] = bytesWritten;
+    maxLength = Math.max(maxLength, length);
+
+    try {
+      out.writeInt(length);
+      for (int i = 0; i < length; ++i) {
+        out.writeInt(features[i]);
+        out.writeDouble(values[i]);
+      }
+    }
+    catch (Exception e) {
+      System.err.println("LBJava ERROR: Can't write to '" + file + "':");
+      e.printStackTrace();
+      System.exit(1);
+    }
+
+    bytesWritten += bytes;
+  }
+
+
+  /**
+    * Exchanges the positions of two examples in the ordering used by
+    * {@link #read(int,int[],double[])}.  No data is moved on disk.
+    *
+    * @param i  The index of one example.
+    * @param j  The index of the other.
+   **/
+  public void swap(int i, int j) {
+    long t = offsets[i];
+    offsets[i] = offsets[j];
+    offsets[j] = t;
+  }
+
+
+  /**
+    * Closes the output stream and memory-maps the file for reading.  No more
+    * examples may be added after this method is called.
+   **/
+  public void finishWriting() {
+    if (buffers != null) return;
+    buffers = new MappedByteBuffer[segments];
+    RandomAccessFile raf = null;
+
+    try {
+      out.close();
+      raf = new RandomAccessFile(file, "r");
+      FileChannel channel = raf.getChannel();
+
+      for (int s = 0; s < segments; ++s) {
+        long end = s + 1 < segments ? segmentStarts[s + 1] : bytesWritten;
+        buffers[s] =
+          channel.map(FileChannel.MapMode.READ_ONLY, segmentStarts[s],
+                      end - segmentStarts[s]);
+      }
+
+      raf.close();
+    }
+    catch (Exception e) {
+      System.err.println("LBJava ERROR: Can't map '" + file + "':");
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+
+  /**
+    * Reads an example into the given arrays, which must have room for at
+    * least {@link #maxLength()} elements.
+    *
+    * @param example  The index of the example to read.
+    * @param features Receives the example's feature indices.
+    * @param values   Receives the example's feature values.
+    * @return The number of features read.
+   **/
+  public int read(int example, int[] features, double[] values) {
+    long offset = offsets[example];
+    int s = segments - 1;
+    while (segmentStarts[s] > offset) --s;
+
+    MappedByteBuffer buffer = buffers[s];
+    int position = (int) (offset - segmentStarts[s]);
+    int length = buffer.getInt(position);
+    position += 4;
+
+    for (int i = 0; i < length; ++i, position += bytesPerFeature) {
+      features[i] = buffer.getInt(position);
+      values[i] = buffer.getDouble(position + 4);
+    }
+
+    return length;
+  }
+
+
+  /** Releases the mappings and deletes the file. */
+  public void delete() {
+    try { if (buffers == null) out.close(); }
+    catch (Exception e) { }
+    buffers = null;
+    offsets = null;
+    file.delete();
+  }
+}
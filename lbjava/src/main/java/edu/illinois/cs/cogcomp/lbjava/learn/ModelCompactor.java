@@ -0,0 +1,332 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.util.OVector;
+
+
+/**
+  * Shrinks a trained {@link LinearThresholdUnit} or
+  * {@link SparseNetworkLearner} after {@link Learner#doneLearning()} has been
+  * called.  Weights whose magnitude falls below a threshold can be reset
+  * with {@link #pruneBelow(double)}, or all but the largest weights can be
+  * reset with {@link #keepLargest(int)}.
+  * {@link #compactLexicon()} then removes every feature whose weight is the
+  * weight of a missing feature in every LTU from the feature lexicon and
+  * renumbers the remaining features densely, so that both the lexicon and
+  * the weight vectors shrink.  Since a feature that isn't in the lexicon
+  * gets that weight anyway, none of this changes the learner's predictions
+  * beyond the effect of the weights that were reset.
+  *
+  * <p> {@link #fitToBudget(long)} does both steps, keeping as many of the
+  * largest weights as it can while the binary representations of the model
+  * and its lexicon fit in the given number of bytes.  Afterwards,
+  * {@link #test(Parser)} measures the accuracy of the compacted learner and
+  * {@link #printReport(Parser,PrintStream)} summarizes what was gained and
+  * lost.
+  *
+  * <p> Magnitudes are measured relative to the weight each LTU gives a
+  * feature that is not in its weight vector, and averaged weights are used
+  * when the LTU's weight vector keeps them, since those are the weights it
+  * scores examples with.  For an averaged vector whose initial weight isn't
+  * 0, the weight of a missing feature is not the initial weight itself.
+ **/
+public class ModelCompactor
+{
+  /** The learner being compacted. */
+  protected Learner learner;
+  /** The LTUs whose weights are indexed by {@link #learner}'s lexicon. */
+  protected LinearThresholdUnit[] units;
+  /** The size in bytes of the learner before compaction. */
+  protected long originalBytes;
+  /** The number of features in the lexicon before compaction. */
+  protected int originalFeatures;
+  /** The number of non-default weights before compaction. */
+  protected int originalWeights;
+
+
+  /**
+    * Prepares to compact the given learner.
+    *
+    * @param l  A trained {@link LinearThresholdUnit} or
+    *           {@link SparseNetworkLearner}.
+    * @throws IllegalArgumentException If the learner is of any other type.
+   **/
+  public ModelCompactor(Learner l) {
+    learner = l;
+
+    if (l instanceof LinearThresholdUnit)
+      units = new LinearThresholdUnit[]{ (LinearThresholdUnit) l };
+    else if (l instanceof SparseNetworkLearner) {
+      OVector network = ((SparseNetworkLearner) l).getNetwork();
+      int N = network.size();
+      int n = 0;
+      for (int i = 0; i < N; ++i) if (network.get(i) != null) ++n;
+      units = new LinearThresholdUnit[n];
+      n = 0;
+      for (int i = 0; i < N; ++i)
+        if (network.get(i) != null)
+          units[n++] = (LinearThresholdUnit) network.get(i);
+    }
+    else
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ModelCompactor: Can't compact a "
+          + l.getClass().getName() + "; only LinearThresholdUnits and "
+          + "SparseNetworkLearners are supported.");
+
+    originalBytes = modelBytes();
+    originalFeatures = learner.getLexicon().size();
+    originalWeights = countWeights();
+  }
+
+
+  /** Returns the learner being compacted. */
+  public Learner getLearner() { return learner; }
+
+
+  /**
+    * Returns the effective weight the given LTU gives a feature that is not
+    * in its weight vector, as every feature removed from the lexicon will be.
+    *
+    * @param ltu  The LTU.
+    * @return The weight of a missing feature.
+   **/
+  protected static double absentWeight(LinearThresholdUnit ltu) {
+    // No weight vector reaches this index.
+    return ltu.getWeightVector()
+           .getEffectiveWeight(Integer.MAX_VALUE, ltu.getInitialWeight());
+  }
+
+
+  /**
+    * Returns the distance of the given feature's effective weight from the
+    * weight the given LTU would give it if it weren't in the weight vector.
+    *
+    * @param ltu  The LTU.
+    * @param i    The feature index.
+    * @return The magnitude of the weight.
+   **/
+  protected static double magnitude(LinearThresholdUnit ltu, int i) {
+    double d = ltu.getInitialWeight();
+    return
+      Math.abs(ltu.getWeightVector().getEffectiveWeight(i, d)
+               - absentWeight(ltu));
+  }
+
+
+  /**
+    * Returns the number of weights in all LTUs whose magnitude is non-zero.
+   **/
+  public int countWeights() {
+    int result = 0;
+    for (int u = 0; u < units.length; ++u) {
+      int N = units[u].getWeightVector().size();
+      for (int i = 0; i < N; ++i)
+        if (magnitude(units[u], i) != 0) ++result;
+    }
+    return result;
+  }
+
+
+  /**
+    * Resets every weight whose magnitude is non-zero but less than the given
+    * threshold, as {@link SparseWeightVector#resetWeight(int,double)} does.
+    *
+    * @param threshold  The smallest magnitude a weight may have and survive.
+    * @return The number of weights that were reset.
+   **/
+  public int pruneBelow(double threshold) {
+    int result = 0;
+
+    for (int u = 0; u < units.length; ++u) {
+      SparseWeightVector w = units[u].getWeightVector();
+      double d = units[u].getInitialWeight();
+      int N = w.size();
+
+      for (int i = 0; i < N; ++i) {
+        double m = magnitude(units[u], i);
+        if (m != 0 && m < threshold) {
+          w.resetWeight(i, d);
+          ++result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+
+  /**
+    * Resets all but the <code>n</code> weights with the largest magnitudes,
+    * taken over all LTUs together.
+    *
+    * @param n  The number of weights to keep.
+    * @return The number of weights that were reset.
+   **/
+  public int keepLargest(int n) {
+    double[] magnitudes = new double[countWeights()];
+    if (n >= magnitudes.length) return 0;
+    if (n <= 0) return pruneBelow(Double.POSITIVE_INFINITY);
+
+    int m = 0;
+    for (int u = 0; u < units.length; ++u) {
+      int N = units[u].getWeightVector().size();
+      for (int i = 0; i < N; ++i) {
+        double w = magnitude(units[u], i);
+        if (w != 0) magnitudes[m++] = w;
+      }
+    }
+
+    Arrays.sort(magnitudes);
+    double threshold = magnitudes[magnitudes.length - n];
+    // Weights tied with the threshold are kept in order until n is reached.
+    int ties = n;
+    for (int i = magnitudes.length - n; i < magnitudes.length; ++i)
+      if (magnitudes[i] > threshold) --ties;
+
+    int result = 0;
+    for (int u = 0; u < units.length; ++u) {
+      SparseWeightVector w = units[u].getWeightVector();
+      double d = units[u].getInitialWeight();
+      int N = w.size();
+
+      for (int i = 0; i < N; ++i) {
+        double mi = magnitude(units[u], i);
+        if (mi == 0 || mi > threshold) continue;
+        if (mi == threshold && ties > 0) --ties;
+        else {
+          w.resetWeight(i, d);
+          ++result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+
+  /**
+    * Removes every feature whose weight is that of a missing feature in all
+    * LTUs from the lexicon and renumbers the weight vectors to match.
+    *
+    * @return The number of features removed from the lexicon.
+   **/
+  public int compactLexicon() {
+    Lexicon lexicon = learner.getLexicon();
+    int N = lexicon.size();
+    boolean[] keep = new boolean[N];
+
+    for (int u = 0; u < units.length; ++u) {
+      int size = Math.min(N, units[u].getWeightVector().size());
+      for (int i = 0; i < size; ++i)
+        if (magnitude(units[u], i) != 0) keep[i] = true;
+    }
+
+    int[] map = lexicon.compact(keep);
+    if (learner instanceof SparseNetworkLearner)
+      ((SparseNetworkLearner) learner).renumberFeatures(map);
+    else units[0].renumberFeatures(map);
+    return N - lexicon.size();
+  }
+
+
+  /**
+    * Keeps as many of the largest weights as possible such that the model
+    * and its lexicon, once compacted, take no more than the given number of
+    * bytes in binary form.  The right number of weights is found by binary
+    * search over compacted clones of the learner, after which the learner
+    * itself is compacted.
+    *
+    * @param budget The largest acceptable size in bytes.
+    * @return The number of weights kept.
+   **/
+  public int fitToBudget(long budget) {
+    int low = 0, high = countWeights();
+
+    if (modelBytes() > budget) {
+      while (low < high) {
+        int middle = low + (high - low + 1) / 2;
+        ModelCompactor probe = new ModelCompactor((Learner) learner.clone());
+        probe.keepLargest(middle);
+        probe.compactLexicon();
+        if (probe.modelBytes() <= budget) low = middle;
+        else high = middle - 1;
+      }
+    }
+    else low = high;
+
+    keepLargest(low);
+    compactLexicon();
+    return low;
+  }
+
+
+  /**
+    * Returns the number of bytes in the binary representations of the
+    * learner and its lexicon, before compression.
+   **/
+  public long modelBytes() {
+    final long[] count = new long[1];
+    OutputStream counter =
+      new OutputStream() {
+        public void write(int b) { ++count[0]; }
+        public void write(byte[] b, int off, int len) { count[0] += len; }
+      };
+
+    ExceptionlessOutputStream out = new ExceptionlessOutputStream(counter);
+    learner.write(out);
+    out.close();
+    out = new ExceptionlessOutputStream(counter);
+    learner.getLexicon().write(out);
+    out.close();
+    return count[0];
+  }
+
+
+  /**
+    * Returns the accuracy of the learner on the examples from the given
+    * parser as judged by the learner's labeler.  The parser is reset first.
+    *
+    * @param parser The parser supplying test examples.
+    * @return The fraction of examples classified correctly.
+   **/
+  public double test(Parser parser) {
+    parser.reset();
+    return new Accuracy().test(learner, learner.getLabeler(), parser);
+  }
+
+
+  /**
+    * Prints the size of the learner, its lexicon, and its weights before and
+    * after compaction, followed by its accuracy on the given parser.
+    *
+    * @param parser The parser supplying test examples, or <code>null</code>
+    *               to skip testing.
+    * @param out    The stream to print to.
+   **/
+  public void printReport(Parser parser, PrintStream out) {
+    long bytes = modelBytes();
+    out.println("Model size:       " + originalBytes + " -> " + bytes
+                + " bytes (" + Math.round(100.0 * bytes / originalBytes)
+                + "%)");
+    out.println("Lexicon features: " + originalFeatures + " -> "
+                + learner.getLexicon().size());
+    out.println("Non-zero weights: " + originalWeights + " -> "
+                + countWeights());
+    if (parser != null) out.println("Accuracy:         " + test(parser));
+  }
+}
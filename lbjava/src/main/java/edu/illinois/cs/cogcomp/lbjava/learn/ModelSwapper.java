@@ -0,0 +1,421 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.ValueCaches;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+
+
+/**
+  * Replaces the model of a learner in a running program without stopping
+  * it.  A new model and its lexicon are read, {@link Learner#freeze()
+  * frozen}, and warmed up by classifying a few examples, all without
+  * disturbing the model in use, and are then published with a single atomic
+  * assignment.  Requests that get the model from {@link #getLearner()} once
+  * and use it throughout finish on the model they started with, which is
+  * never modified, and every request started after the swap uses the new
+  * one.  If the model can't be read or fails to classify the warm-up
+  * examples, an exception is thrown and the old model stays in place.
+  *
+  * <p> Publishing a model empties every cache created through
+  * {@link ValueCaches}, since the values cached by classifiers declared with
+  * <code>cachedinmap</code> may have been computed from the old model, and
+  * which of them were can't be told.  The single example caches of
+  * classifiers declared with <code>cached</code> other than the learner
+  * itself are not emptied; each holds the result of the last example its
+  * thread classified.
+  *
+  * <p> A swapper can manage a learner class generated by LBJava, in which
+  * case publishing a model also replaces the class's shared
+  * <code>instance</code>, so that every instance of the class created with
+  * its no-argument constructor switches to the new model, and empties the
+  * class's own caches of classification results:
+  *
+  * <blockquote><pre>
+  *   ModelSwapper swapper = new ModelSwapper(MyLearner.class);
+  *   swapper.setWarmUpExamples(someExamples);
+  *   ...
+  *   swapper.swapInBackground("MyLearner.lc", "MyLearner.lex");
+  * </pre></blockquote>
+  *
+  * Every method of such an instance reads the shared <code>instance</code>
+  * anew, so each call is answered by a single model, but a request that
+  * makes several calls may have some answered by the old model and others
+  * by the new one.  Requests that must see a single model throughout should
+  * call {@link #getLearner()} once and use the learner it returns.  Each
+  * published model is described by a {@link Version} for monitoring.
+ **/
+public class ModelSwapper
+{
+  /** The generated learner class whose instance is replaced, if any. */
+  private Class learnerClass;
+  /** The published version. */
+  private final AtomicReference current = new AtomicReference();
+  /** Examples classified by each new model before it is published. */
+  private volatile Object[] warmUpExamples = new Object[0];
+  /** Loads models in the background; created when first needed. */
+  private ExecutorService loader;
+
+
+  /**
+    * Manages a learner that isn't associated with a generated class.  The
+    * given learner is frozen and becomes version 1.
+    *
+    * @param initial  The learner to start with.
+   **/
+  public ModelSwapper(Learner initial) {
+    if (initial == null)
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ModelSwapper: the initial learner must not be null.");
+    initial.freeze();
+    current.set(new Version(initial, 1, initial.lcFilePath,
+                            initial.lexFilePath, 0));
+  }
+
+
+  /**
+    * Manages a learner class generated by LBJava.  The class's shared
+    * instance is loaded if it hasn't been, is frozen, and becomes version 1.
+    *
+    * @param c  The generated learner class.
+   **/
+  public ModelSwapper(Class c) {
+    if (c == null || !Learner.class.isAssignableFrom(c))
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ModelSwapper: " + c + " is not a learner class.");
+    learnerClass = c;
+
+    Learner initial = null;
+    try {
+      Method getInstance = c.getMethod("getInstance", new Class[0]);
+      initial = (Learner) getInstance.invoke(null, new Object[0]);
+      instanceField();
+    }
+    catch (Exception e) {
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ModelSwapper: " + c.getName()
+          + " is not a learner class generated by LBJava: " + e);
+    }
+
+    initial.freeze();
+    current.set(new Version(initial, 1, initial.lcFilePath,
+                            initial.lexFilePath, 0));
+  }
+
+
+  /** Returns the published model. */
+  public Learner getLearner() { return getVersion().learner; }
+
+
+  /** Returns the description of the published model. */
+  public Version getVersion() { return (Version) current.get(); }
+
+
+  /**
+    * Sets the examples each new model classifies before it is published, so
+    * that its lexicon is read and any lazily built structures are in place
+    * before it serves requests.
+    *
+    * @param examples The examples, or <code>null</code> for none.
+   **/
+  public void setWarmUpExamples(Object[] examples) {
+    warmUpExamples = examples == null ? new Object[0] : examples;
+  }
+
+
+  /**
+    * Reads a model and its lexicon from the given files, prepares it, and
+    * publishes it, all on the calling thread.
+    *
+    * @param modelPath    The file holding the model.
+    * @param lexiconPath  The file holding the lexicon.
+    * @return The version published.
+    * @throws IllegalStateException    If the model or lexicon can't be read,
+    *                                  or the model fails to classify the
+    *                                  warm-up examples.
+    * @throws IllegalArgumentException If no model of the right type is
+    *                                  found.
+   **/
+  public Version swap(String modelPath, String lexiconPath) {
+    return swap(toURL(modelPath), toURL(lexiconPath));
+  }
+
+
+  /**
+    * Reads a model and its lexicon from the given locations, prepares it,
+    * and publishes it, all on the calling thread.  Errors in reading either
+    * are thrown rather than ending the program.
+    *
+    * @param model    The location of the model.
+    * @param lexicon  The location of the lexicon.
+    * @return The version published.
+    * @throws IllegalStateException    If the model or lexicon can't be read,
+    *                                  or the model fails to classify the
+    *                                  warm-up examples.
+    * @throws IllegalArgumentException If no model of the right type is
+    *                                  found.
+   **/
+  public Version swap(URL model, URL lexicon) {
+    long start = System.currentTimeMillis();
+    Learner learner = null;
+    Lexicon features = null;
+
+    try {
+      ExceptionlessInputStream in =
+        ExceptionlessInputStream.openCompressedStream(model, true);
+      try { learner = Learner.readLearner(in); }
+      finally { in.close(); }
+      if (learner == null)
+        throw new IllegalArgumentException(
+            "LBJava ERROR: ModelSwapper: no learner found at " + model);
+
+      in = ExceptionlessInputStream.openCompressedStream(lexicon, true);
+      try { features = Lexicon.readLexicon(in); }
+      finally { in.close(); }
+    }
+    catch (IllegalStateException e) { throw e; }
+    catch (IllegalArgumentException e) { throw e; }
+    catch (RuntimeException e) {
+      throw new IllegalStateException(
+          "LBJava ERROR: ModelSwapper: can't read the model at " + model
+          + ": " + e, e);
+    }
+
+    learner.lcFilePath = model;
+    learner.lexicon = features;
+    learner.lexFilePath = lexicon;
+    return publish(learner, model, lexicon, start);
+  }
+
+
+  /**
+    * Does the same as {@link #swap(String,String)} on a background thread.
+    *
+    * @param modelPath    The file holding the model.
+    * @param lexiconPath  The file holding the lexicon.
+    * @return The eventual {@link Version} published, or the exception that
+    *         kept the model from being published.
+   **/
+  public Future swapInBackground(String modelPath, String lexiconPath) {
+    return swapInBackground(toURL(modelPath), toURL(lexiconPath));
+  }
+
+
+  /**
+    * Does the same as {@link #swap(URL,URL)} on a background thread.
+    *
+    * @param model    The location of the model.
+    * @param lexicon  The location of the lexicon.
+    * @return The eventual {@link Version} published, or the exception that
+    *         kept the model from being published.
+   **/
+  public Future swapInBackground(final URL model, final URL lexicon) {
+    return getLoader().submit(
+        new Callable() {
+          public Object call() { return swap(model, lexicon); }
+        });
+  }
+
+
+  /**
+    * Prepares a learner that has already been read and publishes it.
+    *
+    * @param learner  The new model.
+    * @return The version published.
+   **/
+  public Version publish(Learner learner) {
+    return publish(learner, learner.lcFilePath, learner.lexFilePath,
+                   System.currentTimeMillis());
+  }
+
+
+  /**
+    * Freezes and warms up a new model, then publishes it.  Publication is
+    * serialized so that version numbers follow the order in which models are
+    * published.
+    *
+    * @param learner  The new model.
+    * @param model    Where the model was read from.
+    * @param lexicon  Where the lexicon was read from.
+    * @param start    When reading the model started, in milliseconds.
+    * @return The version published.
+   **/
+  private Version publish(Learner learner, URL model, URL lexicon,
+                          long start) {
+    if (learnerClass != null && !learnerClass.isInstance(learner))
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ModelSwapper: expected a model of "
+          + learnerClass.getName() + ", but got one of "
+          + learner.getClass().getName() + ".");
+
+    learner.freeze();
+    Object[] examples = warmUpExamples;
+    for (int i = 0; i < examples.length; ++i) {
+      try { learner.classify(examples[i]); }
+      catch (RuntimeException e) {
+        throw new IllegalStateException(
+            "LBJava ERROR: ModelSwapper: the new model failed to classify "
+            + "warm-up example " + i + ": " + e, e);
+      }
+    }
+
+    long loadMillis = System.currentTimeMillis() - start;
+
+    synchronized (this) {
+      Version result =
+        new Version(learner, getVersion().number + 1, model, lexicon,
+                    loadMillis);
+      if (learnerClass != null) setInstance(learner);
+      current.set(result);
+      ValueCaches.clear();
+      return result;
+    }
+  }
+
+
+  /**
+    * Replaces the shared instance of {@link #learnerClass} and empties its
+    * single example cache, which was computed by the old model.  Calls made
+    * through clones of the class after this method returns use the new
+    * instance; a call already in progress finishes on the old one.
+    *
+    * @param learner  The new shared instance.
+   **/
+  private void setInstance(Learner learner) {
+    try {
+      instanceField().set(null, learner);
+
+      Method clearCache = null;
+      try { clearCache = learnerClass.getMethod("clearCache", new Class[0]); }
+      catch (NoSuchMethodException e) { }
+      if (clearCache != null) clearCache.invoke(null, new Object[0]);
+    }
+    catch (Exception e) {
+      throw new IllegalStateException(
+          "LBJava ERROR: ModelSwapper: can't replace the instance of "
+          + learnerClass.getName() + ": " + e);
+    }
+  }
+
+
+  /** Returns the static <code>instance</code> field of the learner class. */
+  private Field instanceField() throws NoSuchFieldException {
+    Field result = learnerClass.getField("instance");
+    if (!Modifier.isStatic(result.getModifiers()))
+      throw new NoSuchFieldException("instance is not static");
+    return result;
+  }
+
+
+  /** Returns the background loader, creating it if necessary. */
+  private synchronized ExecutorService getLoader() {
+    if (loader == null)
+      loader =
+        Executors.newSingleThreadExecutor(
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread result = new Thread(r, "LBJava model loader");
+              result.setDaemon(true);
+              return result;
+            }
+          });
+    return loader;
+  }
+
+
+  /**
+    * Stops the background loader after the swaps already requested have
+    * finished.  Later calls to {@link #swapInBackground(URL,URL)} start a
+    * new one.
+   **/
+  public synchronized void shutdown() {
+    if (loader != null) loader.shutdown();
+    loader = null;
+  }
+
+
+  /**
+    * Converts a file name to a URL.
+    *
+    * @param path The file name.
+    * @return The URL of the file.
+   **/
+  private static URL toURL(String path) {
+    try { return new File(path).toURI().toURL(); }
+    catch (Exception e) {
+      throw new IllegalArgumentException(
+          "LBJava ERROR: ModelSwapper: can't create a URL for '" + path
+          + "': " + e);
+    }
+  }
+
+
+  /**
+    * Describes a published model.
+   **/
+  public static class Version
+  {
+    /** The model. */
+    public final Learner learner;
+    /** The number of the version, starting from 1. */
+    public final int number;
+    /** Where the model was read from, if known. */
+    public final URL modelLocation;
+    /** Where the lexicon was read from, if known. */
+    public final URL lexiconLocation;
+    /** When the model was published, in milliseconds since the epoch. */
+    public final long publishTime;
+    /**
+      * How long it took to read, freeze, and warm up the model, in
+      * milliseconds.
+     **/
+    public final long loadMillis;
+
+
+    /**
+      * Initializing constructor.
+      *
+      * @param l  The model.
+      * @param n  The number of the version.
+      * @param m  Where the model was read from.
+      * @param x  Where the lexicon was read from.
+      * @param t  How long it took to load the model.
+     **/
+    public Version(Learner l, int n, URL m, URL x, long t) {
+      learner = l;
+      number = n;
+      modelLocation = m;
+      lexiconLocation = x;
+      publishTime = System.currentTimeMillis();
+      loadMillis = t;
+    }
+
+
+    /** Returns a one line description of this version. */
+    public String toString() {
+      return "version " + number + " of " + learner.getClass().getName()
+             + " from " + modelLocation + ", published at " + publishTime
+             + " after loading for " + loadMillis + " ms";
+    }
+  }
+}
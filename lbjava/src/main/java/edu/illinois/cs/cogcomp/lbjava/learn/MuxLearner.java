@@ -164,6 +164,7 @@ public class MuxLearner extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     setBase(p.baseLearner);
     defaultPrediction = p.defaultPrediction;
     setDefaultFeature();
@@ -251,6 +252,7 @@ public class MuxLearner extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     assert exampleFeatures.length > exampleLabels.length
       : "MuxLearner ERROR: The example vector must have more features "
         + "than labels, since it is assumed that there is a correspondence "
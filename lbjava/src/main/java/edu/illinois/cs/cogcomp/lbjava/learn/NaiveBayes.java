@@ -10,9 +10,7 @@
  */
 package edu.illinois.cs.cogcomp.lbjava.learn;
 
-import java.io.IOException;
 import java.io.PrintStream;
-import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
@@ -21,8 +19,8 @@ import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
 import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
 import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
 import edu.illinois.cs.cogcomp.lbjava.classify.RealFeature;
-import edu.illinois.cs.cogcomp.lbjava.classify.Score;
 import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.util.DVector;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.OVector;
@@ -146,6 +144,7 @@ public class NaiveBayes extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     smoothing = p.smoothing;
   }
 
@@ -200,6 +199,7 @@ public class NaiveBayes extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     int label = exampleLabels[0];
     int N = network.size();
 
@@ -216,6 +216,18 @@ public class NaiveBayes extends Learner
   }
 
 
+  /**
+    * Computes the log tables of every {@link NaiveBayesVector} in the
+    * network so that classification needs no calls to <code>Math.log</code>.
+   **/
+  public void doneLearning() {
+    super.doneLearning();
+    int N = network.size();
+    for (int i = 0; i < N; ++i)
+      ((NaiveBayesVector) network.get(i)).computeLogs();
+  }
+
+
   /** Clears the network. */
   public void forget() {
     super.forget();
@@ -234,35 +246,30 @@ public class NaiveBayes extends Learner
     *         example object.
    **/
   public ScoreSet scores(int[] exampleFeatures, double[] exampleValues) {
-    ScoreSet s = new ScoreSet();
+    int N = network.size();
+    double[] scores = new double[N];
+    double max = Double.NEGATIVE_INFINITY;
 
-    for (int l = 0; l < network.size(); l++) {
+    for (int l = 0; l < N; l++) {
       NaiveBayesVector vector = (NaiveBayesVector) network.get(l);
-      double score = vector.dot(exampleFeatures, exampleValues);
-      s.put(labelLexicon.lookupKey(l).getStringValue(), score);
+      scores[l] = vector.dot(exampleFeatures, exampleValues);
+      if (scores[l] > max) max = scores[l];
     }
 
-    Score[] original = s.toArray();
-    ScoreSet result = new ScoreSet();
-
-    // This code would clearly run quicker if you computed each exp(score)
-    // ahead of time, and divided them each by their sum.  However, each score
-    // is likely to be a very negative number, so exp(score) may not be
-    // numerically stable.  Subtracting two scores, however, hopefully leaves
-    // you with a "less negative" number, so exp applied to the subtraction
-    // hopefully behaves better.
+    // Each score is likely to be a very negative number, so exp(score) may
+    // underflow.  Shifting every score by the maximum before exponentiating
+    // (the log-sum-exp trick) keeps the largest term at exactly 1 and lets
+    // the posteriors be normalized in a single pass.
 
-    for (int i = 0; i < original.length; ++i) {
-      double score = 1;
-
-      for (int j = 0; j < original.length; ++j) {
-        if (i == j) continue;
-        score += Math.exp(original[j].score - original[i].score);
-      }
-
-      result.put(original[i].value, 1 / score);
+    double sum = 0;
+    for (int l = 0; l < N; l++) {
+      scores[l] = Math.exp(scores[l] - max);
+      sum += scores[l];
     }
 
+    ScoreSet result = new ScoreSet();
+    for (int l = 0; l < N; l++)
+      result.put(labelLexicon.lookupKey(l).getStringValue(), scores[l] / sum);
     return result;
   }
 
@@ -368,6 +375,7 @@ public class NaiveBayes extends Learner
     for (int i = 0; i < N; ++i) {
       NaiveBayesVector nbv = new NaiveBayesVector();
       nbv.read(in);
+      nbv.computeLogs();
       network.add(nbv);
     }
   }
@@ -452,125 +460,18 @@ public class NaiveBayes extends Learner
 
 
   /**
-    * A <code>Count</code> object stores two <code>doubles</code>, one which
-    * holds a accumulated count value and the other intended to hold the
-    * natural logarithm of the count.  The object also contains a
-    * <code>boolean</code> flag that is set when the log needs to be updated.
+    * Keeps track of all the counts associated with a given label.  Feature
+    * counts are stored in a primitive {@link DVector} indexed by their
+    * {@link Lexicon} key; those not appearing in this vector are assumed to
+    * have a count of 0.  The invocation of either of the
+    * <code>scaledAdd</code> methods increments the prior count for the label.
     *
-    * @author Nick Rizzolo
-   **/
-  protected static class Count implements Cloneable, Serializable
-  {
-    /** The accumulated value. */
-    protected double count;
-    /** The natural logartihm of {@link #count} is sometimes stored here. */
-    protected transient double logCount;
-    /** A flag that is set iff {@link #logCount} is not up to date. */
-    protected transient boolean updateLog;
-
-
-    /** Sets the count to 0. */
-    public Count() {
-      count = 0;
-      logCount = 0;
-      updateLog = true;
-    }
-
-
-    /** Returns the integer count. */
-    public double getCount() { return count; }
-
-
-    /**
-      * Increments the count, but does not update the log.
-      *
-      * @param inc  The amount the count should be incremented by.
-     **/
-    public void increment(double inc) {
-      count += inc;
-      updateLog = true;
-    }
-
-
-    /** Returns the log after updating it. */
-    public double getLog() {
-      if (updateLog) {
-        logCount = Math.log(count);
-        updateLog = false;
-      }
-
-      return logCount;
-    }
-
-
-    /**
-      * The string representation of a <code>Count</code> object is simply the
-      * integer count.
-     **/
-    public String toString() { return "" + count; }
-
-
-    /**
-      * Writes the count's internal representation in binary form.
-      *
-      * @param out  The output stream.
-     **/
-    public void write(ExceptionlessOutputStream out) {
-      out.writeDouble(count);
-    }
-
-
-    /**
-      * Reads the binary representation of a count into this object,
-      * overwriting any data that may already be here.
-      *
-      * @param in The input stream.
-     **/
-    public void read(ExceptionlessInputStream in) {
-      count = in.readDouble();
-      updateLog = true;
-    }
-
-
-    /**
-      * This method returns a shallow clone.
-      *
-      * @return A shallow clone.
-     **/
-    public Object clone() {
-      Object clone = null;
-
-      try { clone = super.clone(); }
-      catch (Exception e) {
-        System.err.println("Error cloning " + getClass().getName() + ":");
-        e.printStackTrace();
-        System.exit(1);
-      }
-
-      return clone;
-    }
-
-
-    /**
-      * Special handling during deserialization to ensure that
-      * {@link #updateLog} is set to <code>true</code>.
-      *
-      * @param in The stream to deserialize from.
-     **/
-    private void readObject(java.io.ObjectInputStream in)
-            throws IOException, ClassNotFoundException {
-      in.defaultReadObject();
-      updateLog = true;
-    }
-  }
-
-
-  /**
-    * Keeps track of all the counts associated with a given label.
-    * Features are associated with {@link NaiveBayes.Count}s.  Those not
-    * appearing in this vector are assumed to have a count of 0.  The
-    * invocation of either of the <code>scaledAdd</code> methods increments
-    * the prior count for the label.
+    * <p> The natural logarithms of the counts are cached in a transient
+    * <code>double[]</code> table that is rebuilt by {@link #computeLogs()}.
+    * {@link NaiveBayes#doneLearning()} builds every table once, after which
+    * {@link #dot(int[],double[],double)} does nothing more than one array
+    * lookup per feature.  If counts change after the table has been built,
+    * it is rebuilt lazily on the next call to <code>dot</code>.
     *
     * <p> {@link RealFeature}s' strengths are ignored by this vector; they are
     * assumed to be equal to 1, as if the feature were an active Boolean
@@ -581,32 +482,42 @@ public class NaiveBayes extends Learner
   protected class NaiveBayesVector extends SparseWeightVector
   {
     /** The counts in the vector indexed by their {@link Lexicon} key. */
-    protected OVector counts;
+    protected DVector counts;
     /**
       * The prior count is the number of times either <code>scaledAdd</code>
       * method has been called.
      **/
-    protected Count priorCount;
+    protected double priorCount;
+    /**
+      * The natural logarithm of each element of {@link #counts}, or
+      * <code>null</code> when it needs to be recomputed.
+     **/
+    protected transient double[] logCounts;
+    /** The natural logarithm of {@link #priorCount}. */
+    protected transient double logPrior;
 
 
     /** Simply instantiates {@link NaiveBayes.NaiveBayesVector#counts}. */
-    public NaiveBayesVector() { this(new OVector(defaultCapacity)); }
+    public NaiveBayesVector() { this(new DVector(defaultCapacity)); }
 
     /**
       * Simply initializes {@link #counts}.
       *
       * @param w  An array of counts.
      **/
-    public NaiveBayesVector(Count[] w) { this(new OVector(w)); }
+    public NaiveBayesVector(double[] w) { this(new DVector(w)); }
 
     /**
-      * Simply initializes {@link #counts}.
+      * Simply initializes {@link #counts}.  The inherited
+      * {@link SparseWeightVector#weights} vector is never used, so it is
+      * given the smallest possible capacity.
       *
       * @param w  A vector of counts.
      **/
-    public NaiveBayesVector(OVector w) {
+    public NaiveBayesVector(DVector w) {
+      super(new DVector(0));
       counts = w;
-      priorCount = new Count();
+      priorCount = 0;
     }
 
 
@@ -614,7 +525,22 @@ public class NaiveBayes extends Learner
       * Returns the prior count of the prediction value associated with this
       * vector.
      **/
-    public Count getPrior() { return priorCount; }
+    public double getPrior() { return priorCount; }
+
+
+    /**
+      * Fills {@link #logCounts} and {@link #logPrior} with the natural
+      * logarithms of the current counts.  Features with a count of 0 get a
+      * logarithm of negative infinity, which signals that the smoothing
+      * weight should be used instead.
+     **/
+    public void computeLogs() {
+      int N = counts.size();
+      double[] logs = new double[N];
+      for (int i = 0; i < N; ++i) logs[i] = Math.log(counts.get(i));
+      logPrior = Math.log(priorCount);
+      logCounts = logs;
+    }
 
 
     /**
@@ -626,8 +552,8 @@ public class NaiveBayes extends Learner
       * @return The computed dot product.
      **/
     public double dot(int[] exampleFeatures, double[] exampleValues) {
-      return
-        dot(exampleFeatures, exampleValues, priorCount.getLog() + smoothing);
+      if (logCounts == null) computeLogs();
+      return dot(exampleFeatures, exampleValues, logPrior + smoothing);
     }
 
 
@@ -649,9 +575,16 @@ public class NaiveBayes extends Learner
      **/
     public double dot(int[] exampleFeatures, double[] exampleValues,
                       double defaultW) {
-      double sum = (1 - exampleFeatures.length) * priorCount.getLog();
-      for (int i = 0; i < exampleFeatures.length; i++)
-        sum += getWeight(exampleFeatures[i], defaultW);
+      if (logCounts == null) computeLogs();
+      double[] logs = logCounts;
+      double sum = (1 - exampleFeatures.length) * logPrior;
+
+      for (int i = 0; i < exampleFeatures.length; i++) {
+        int f = exampleFeatures[i];
+        double w = f < logs.length ? logs[f] : Double.NEGATIVE_INFINITY;
+        sum += w == Double.NEGATIVE_INFINITY ? defaultW : w;
+      }
+
       return sum;
     }
 
@@ -663,8 +596,7 @@ public class NaiveBayes extends Learner
       * @return The count of the feature.
      **/
     public double getCount(int featureIndex) {
-      while (counts.size() <= featureIndex) counts.add(new Count());
-      return ((Count) counts.get(featureIndex)).getCount();
+      return counts.get(featureIndex);
     }
 
 
@@ -676,10 +608,9 @@ public class NaiveBayes extends Learner
       * @return The weight of the feature.
      **/
     public double getWeight(int featureIndex, double defaultW) {
-      while (counts.size() <= featureIndex) counts.add(new Count());
-      Count c = (Count) counts.get(featureIndex);
-      if (c.getCount() == 0) return defaultW;
-      return c.getLog();
+      double c = counts.get(featureIndex);
+      if (c == 0) return defaultW;
+      return Math.log(c);
     }
 
 
@@ -700,14 +631,8 @@ public class NaiveBayes extends Learner
       * @param factor        The factor by which to increment.
      **/
     public void incrementCount(int featureIndex, double factor) {
-      if (featureIndex < counts.size())
-        ((Count) counts.get(featureIndex)).increment(factor);
-      else {
-        while (counts.size() < featureIndex) counts.add(new Count());
-        Count c = new Count();
-        c.increment(factor);
-        counts.add(c);
-      }
+      counts.set(featureIndex, counts.get(featureIndex) + factor);
+      logCounts = null;
     }
 
 
@@ -724,9 +649,10 @@ public class NaiveBayes extends Learner
      **/
     public void scaledAdd(int[] exampleFeatures, double[] exampleValues,
                           double factor) {
-      priorCount.increment(factor);
+      priorCount += factor;
       for (int i = 0; i < exampleFeatures.length; i++)
         incrementCount(exampleFeatures[i], factor);
+      logCounts = null;
     }
 
 
@@ -819,10 +745,8 @@ public class NaiveBayes extends Learner
       * @param out  The output stream.
      **/
     public void write(ExceptionlessOutputStream out) {
-      priorCount.write(out);
-      out.writeInt(counts.size());
-      for (int i = 0; i < counts.size(); ++i)
-        ((Count) counts.get(i)).write(out);
+      out.writeDouble(priorCount);
+      counts.write(out);
     }
 
 
@@ -837,15 +761,10 @@ public class NaiveBayes extends Learner
       * @param in The input stream.
      **/
     public void read(ExceptionlessInputStream in) {
-      priorCount = new Count();
-      priorCount.read(in);
-      int N = in.readInt();
-      counts = new OVector(N);
-      for (int i = 0; i < N; ++i) {
-        Count c = new Count();
-        c.read(in);
-        counts.add(c);
-      }
+      priorCount = in.readDouble();
+      counts = new DVector(0);
+      counts.read(in);
+      logCounts = null;
     }
 
 
@@ -856,10 +775,8 @@ public class NaiveBayes extends Learner
      **/
     public Object clone() {
       NaiveBayesVector clone = (NaiveBayesVector) super.clone();
-      Count[] array = new Count[counts.size()];
-      for (int i = 0; i < counts.size(); ++i)
-        array[i] = (Count) ((Count) counts.get(i)).clone();
-      clone.counts = new OVector(array);
+      clone.counts = (DVector) counts.clone();
+      clone.logCounts = null;
       return clone;
     }
 
@@ -875,4 +792,3 @@ public class NaiveBayes extends Learner
     }
   }
 }
-
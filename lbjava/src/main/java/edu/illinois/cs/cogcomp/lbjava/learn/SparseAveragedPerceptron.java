@@ -305,6 +305,7 @@ public class SparseAveragedPerceptron extends SparsePerceptron
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     assert exampleLabels.length == 1
       : "Example must have a single label.";
     assert exampleLabels[0] == 0 || exampleLabels[0] == 1
@@ -331,6 +332,7 @@ public class SparseAveragedPerceptron extends SparsePerceptron
     * @param numFeatures   The number of features
    **/
   public void initialize(int numExamples, int numFeatures) {
+    checkNotFrozen("initialize");
     double[] weights = new double[numFeatures];
     Arrays.fill(weights, initialWeight);
     weightVector = awv = new AveragedWeightVector(weights);
@@ -495,6 +497,52 @@ public class SparseAveragedPerceptron extends SparsePerceptron
     }
 
 
+    /**
+      * Returns the averaged weight of the given feature, since that is the
+      * weight used by {@link #dot(int[],double[],double)}.
+      *
+      * @param featureIndex The feature index.
+      * @param defaultW     The default weight.
+      * @return The weight used for the feature when scoring.
+     **/
+    public double getEffectiveWeight(int featureIndex, double defaultW) {
+      return getAveragedWeight(featureIndex, defaultW);
+    }
+
+
+    /**
+      * Resets the given feature so that both of its stored values are the
+      * default weight.  Its averaged weight is then the same as that of a
+      * feature not in this vector, which is not the default weight itself
+      * unless the default weight is 0.
+      *
+      * @param featureIndex The feature index.
+      * @param defaultW     The default weight.
+     **/
+    public void resetWeight(int featureIndex, double defaultW) {
+      if (featureIndex < weights.size()
+          || featureIndex < averagedWeights.size()) {
+        weights.set(featureIndex, defaultW, defaultW);
+        averagedWeights.set(featureIndex, defaultW, defaultW);
+      }
+    }
+
+
+    /**
+      * Moves every weight and averaged weight to a new index according to
+      * the given map.  Gaps left in either vector are filled with the default
+      * weight, just as {@link #resetWeight(int,double)} leaves them.
+      *
+      * @param map      A map from features' original indexes to their new
+      *                 ones.
+      * @param defaultW The default weight.
+     **/
+    public void renumber(int[] map, double defaultW) {
+      weights = renumber(weights, map, defaultW, false);
+      averagedWeights = renumber(averagedWeights, map, defaultW, false);
+    }
+
+
     /**
       * Takes the dot product of this <code>AveragedWeightVector</code> with
       * the argument vector, using the hard coded default weight.
@@ -702,7 +750,8 @@ public class SparseAveragedPerceptron extends SparsePerceptron
     public void write(ExceptionlessOutputStream out) {
       super.write(out);
       out.writeInt(examples);
-      averagedWeights.write(out);
+      if (sparseOutput) averagedWeights.writeSparse(out);
+      else averagedWeights.write(out);
     }
 
 
@@ -50,6 +50,13 @@ import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
   * values.  Assertions will produce error messages if these assumptions do
   * not hold.
   *
+  * <p> The means may be regularized with L2 weight decay and
+  * truncated-gradient L1 regularization by setting {@link #l2Penalty} and
+  * {@link #l1Penalty}.  Since this algorithm has no learning rate, each
+  * example applies the full penalties.  A {@link LazyRegularizer} applies them
+  * only to the features of the current example, and catches up every other
+  * weight in {@link #doneLearning()}.
+  *
   * <p> This algorithm's user-configurable parameters are stored in member
   * fields of this class.  They may be set via either a constructor that names
   * each parameter explicitly or a constructor that takes an instance of
@@ -69,6 +76,10 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
   public static final double defaultConfidence = 2;
   /** Default value for {@link #initialVariance}. */
   public static final double defaultInitialVariance = 1;
+  /** Default value for {@link #l1Penalty}. */
+  public static final double defaultL1Penalty = 0;
+  /** Default value for {@link #l2Penalty}. */
+  public static final double defaultL2Penalty = 0;
 
 
   /**
@@ -85,6 +96,18 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
   protected SparseWeightVector variances;
   /** The bias element of the {@link #variances} vector. */
   protected double variancesBias;
+  /**
+    * The L1 regularization penalty on the means; default
+    * {@link #defaultL1Penalty}.
+   **/
+  protected double l1Penalty;
+  /**
+    * The L2 regularization penalty on the means; default
+    * {@link #defaultL2Penalty}.
+   **/
+  protected double l2Penalty;
+  /** Applies {@link #l1Penalty} and {@link #l2Penalty} lazily. */
+  protected LazyRegularizer regularizer;
 
 
   /** All parameters get default values. */
@@ -241,6 +264,9 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
     initialVariance = p.initialVariance;
     variances = p.variances;
     variancesBias = 1 / initialVariance;
+    l1Penalty = p.l1Penalty;
+    l2Penalty = p.l2Penalty;
+    regularizer = new LazyRegularizer(l1Penalty, l2Penalty);
   }
 
 
@@ -256,6 +282,8 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
     p.confidence = confidence;
     p.initialVariance = initialVariance;
     p.variances = variances.emptyClone();
+    p.l1Penalty = l1Penalty;
+    p.l2Penalty = l2Penalty;
     return p;
   }
 
@@ -304,11 +332,15 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     assert exampleLabels.length == 1
       : "Example must have a single label.";
     assert exampleLabels[0] == 0 || exampleLabels[0] == 1
       : "Example has unallowed label value.";
 
+    boolean regularize = regularizer.isActive();
+    if (regularize) regularizer.catchUp(weightVector, exampleFeatures);
+
     double y = 2 * exampleLabels[0] - 1;
     double m = y * (weightVector.dot(exampleFeatures, exampleValues) + bias);
 
@@ -334,6 +366,18 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
                           2 * alpha * confidence);
       variancesBias += 2 * alpha * confidence;
     }
+
+    if (regularize) regularizer.step(1);
+  }
+
+
+  /**
+    * Applies any regularization that is still pending to every mean in the
+    * weight vector.
+   **/
+  public void doneLearning() {
+    super.doneLearning();
+    if (regularizer.isActive()) regularizer.finish(weightVector, initialWeight);
   }
 
 
@@ -363,6 +407,21 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
     super.forget();
     variances = variances.emptyClone();
     variancesBias = 1 / initialVariance;
+    regularizer.reset();
+  }
+
+
+  /**
+    * Renumbers the variances along with the means.  Any regularization still
+    * pending is forgotten, so {@link #doneLearning()} should be called first.
+    *
+    * @param map  A map from features' original indexes to their new ones,
+    *             where -1 indicates a feature that has been removed.
+   **/
+  public void renumberFeatures(int[] map) {
+    super.renumberFeatures(map);
+    variances.renumber(map, initialVariance);
+    regularizer.reset();
   }
 
 
@@ -432,6 +491,8 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
 
     if (variances != null)
       clone.variances = (SparseWeightVector) variances.clone();
+    if (regularizer != null)
+      clone.regularizer = (LazyRegularizer) regularizer.clone();
     return clone;
   }
 
@@ -460,6 +521,16 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
       * {@link LinearThresholdUnit#defaultWeightVector}.
      **/
     protected SparseWeightVector variances;
+    /**
+      * The L1 regularization penalty on the means; default
+      * {@link SparseConfidenceWeighted#defaultL1Penalty}.
+     **/
+    public double l1Penalty;
+    /**
+      * The L2 regularization penalty on the means; default
+      * {@link SparseConfidenceWeighted#defaultL2Penalty}.
+     **/
+    public double l2Penalty;
 
 
     /** Sets all the default values. */
@@ -467,6 +538,8 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
       confidence = defaultConfidence;
       initialVariance = defaultInitialVariance;
       variances = (SparseWeightVector) defaultWeightVector.clone();
+      l1Penalty = defaultL1Penalty;
+      l2Penalty = defaultL2Penalty;
     }
 
 
@@ -479,6 +552,8 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
       confidence = defaultConfidence;
       initialVariance = defaultInitialVariance;
       variances = (SparseWeightVector) defaultWeightVector.clone();
+      l1Penalty = defaultL1Penalty;
+      l2Penalty = defaultL2Penalty;
     }
 
 
@@ -488,6 +563,8 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
       confidence = p.confidence;
       initialVariance = p.initialVariance;
       variances = p.variances;
+      l1Penalty = p.l1Penalty;
+      l2Penalty = p.l2Penalty;
     }
 
 
@@ -513,6 +590,10 @@ public class SparseConfidenceWeighted extends LinearThresholdUnit
         result += ", confidence = " + confidence;
       if (initialVariance != SparseConfidenceWeighted.defaultInitialVariance)
         result += ", initialVariance = " + initialVariance;
+      if (l1Penalty != SparseConfidenceWeighted.defaultL1Penalty)
+        result += ", l1Penalty = " + l1Penalty;
+      if (l2Penalty != SparseConfidenceWeighted.defaultL2Penalty)
+        result += ", l2Penalty = " + l2Penalty;
 
       if (result.startsWith(", ")) result = result.substring(2);
       return result;
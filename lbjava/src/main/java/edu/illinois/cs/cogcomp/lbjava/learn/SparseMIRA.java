@@ -155,6 +155,7 @@ public class SparseMIRA extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     int label = exampleLabels[0];
     int N = network.size();
 
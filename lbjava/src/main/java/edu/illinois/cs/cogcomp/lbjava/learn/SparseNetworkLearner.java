@@ -154,6 +154,7 @@ public class SparseNetworkLearner extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     if (!p.baseLTU.getOutputType().equals("discrete")) {
       System.err.println(
           "LBJava WARNING: SparseNetworkLearner will only work with a "
@@ -252,6 +253,7 @@ public class SparseNetworkLearner extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     int label = exampleLabels[0];
     int N = network.size();
 
@@ -289,6 +291,7 @@ public class SparseNetworkLearner extends Learner
 
   /** Sets the number of examples and features. */
   public void initialize(int ne, int nf) {
+    checkNotFrozen("initialize");
     numExamples = ne;
     numFeatures = nf;
   }
@@ -314,6 +317,24 @@ public class SparseNetworkLearner extends Learner
   }
 
 
+  /**
+    * Calls {@link LinearThresholdUnit#renumberFeatures(int[])} on every LTU
+    * in the network after the feature lexicon has been compacted with
+    * {@link Lexicon#compact(boolean[])}.
+    *
+    * @param map  A map from features' original indexes to their new ones,
+    *             where -1 indicates a feature that has been removed.
+   **/
+  public void renumberFeatures(int[] map) {
+    int N = network.size();
+    for (int i = 0; i < N; ++i) {
+      LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(i);
+      if (ltu == null) continue;
+      ltu.renumberFeatures(map);
+    }
+  }
+
+
   /**
     * Returns scores for only those labels in the given collection.  If the
     * given collection is empty, scores for all labels will be returned.  If
@@ -18,7 +18,6 @@ import java.util.Comparator;
 import java.util.Map;
 
 import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
-import edu.illinois.cs.cogcomp.lbjava.util.ClassUtils;
 import edu.illinois.cs.cogcomp.lbjava.util.DVector;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
@@ -45,6 +44,12 @@ public class SparseWeightVector implements Cloneable, Serializable
 
 	/** The weights in the vector indexed by their {@link Lexicon} key. */
 	protected DVector weights;
+	/**
+	 * Whether {@link #write(ExceptionlessOutputStream)} may leave out the
+	 * zero weights.  Runtimes older than this option can't read vectors
+	 * written that way, so it is off unless a learner turns it on.
+	 **/
+	protected boolean sparseOutput;
 
 	/** Simply instantiates {@link #weights}. */
 	public SparseWeightVector() { this(new DVector(defaultCapacity)); }
@@ -63,6 +68,17 @@ public class SparseWeightVector implements Cloneable, Serializable
 	 **/
 	public SparseWeightVector(DVector w) { weights = w; }
 
+	/**
+	 * Sets {@link #sparseOutput}.
+	 *
+	 * @param s  Whether the binary representation may leave out the zero
+	 *           weights.
+	 **/
+	public void setSparseOutput(boolean s) { sparseOutput = s; }
+
+	/** Returns the value of {@link #sparseOutput}. */
+	public boolean getSparseOutput() { return sparseOutput; }
+
 	/**
 	 * Returns the weight of the given feature.
 	 *
@@ -267,6 +283,78 @@ public class SparseWeightVector implements Cloneable, Serializable
 	/** Returns the length of the weight vector. */
 	public int size() { return weights.size(); }
 
+
+	/**
+	 * Returns the weight that the dot product actually uses for the given
+	 * feature.  In this class, that is simply the stored weight, but
+	 * subclasses that score examples with some function of their stored
+	 * weights should override this method.
+	 *
+	 * @param featureIndex The feature index.
+	 * @param defaultW     The default weight.
+	 * @return The weight used for the feature when scoring.
+	 **/
+	public double getEffectiveWeight(int featureIndex, double defaultW) {
+		return getWeight(featureIndex, defaultW);
+	}
+
+
+	/**
+	 * Resets the given feature so that its effective weight is the one a
+	 * feature not in this vector gets, as if it had never been updated.  In
+	 * this class, that is the default weight.
+	 *
+	 * @param featureIndex The feature index.
+	 * @param defaultW     The default weight.
+	 **/
+	public void resetWeight(int featureIndex, double defaultW) {
+		if (featureIndex < weights.size()) weights.set(featureIndex, defaultW);
+	}
+
+
+	/**
+	 * Moves every weight to a new index according to the given map, as
+	 * produced by {@link Lexicon#compact(boolean[])}.  Weights of features
+	 * mapped to -1 are discarded, and trailing weights equal to the default
+	 * weight are not stored at all.
+	 *
+	 * @param map      A map from features' original indexes to their new
+	 *                 ones.
+	 * @param defaultW The default weight.
+	 **/
+	public void renumber(int[] map, double defaultW) {
+		weights = renumber(weights, map, defaultW, true);
+	}
+
+
+	/**
+	 * Helper method for {@link #renumber(int[],double)} that returns a new
+	 * vector containing the elements of the given vector at their new
+	 * indexes.
+	 *
+	 * @param v        The vector to renumber.
+	 * @param map      A map from original indexes to new ones, where -1
+	 *                 indicates an element that should be discarded.
+	 * @param defaultW The value of elements not explicitly stored.
+	 * @param trim     Whether or not to drop trailing elements equal to
+	 *                 <code>defaultW</code>.
+	 * @return The renumbered vector.
+	 **/
+	protected static DVector renumber(DVector v, int[] map, double defaultW,
+			boolean trim) {
+		int N = Math.min(v.size(), map.length);
+		int size = 0;
+		for (int i = 0; i < N; ++i)
+			if (map[i] >= 0 && (!trim || v.get(i) != defaultW))
+				size = Math.max(size, map[i] + 1);
+
+		DVector result = new DVector(size);
+		for (int i = 0; i < N; ++i)
+			if (map[i] >= 0 && map[i] < size)
+				result.set(map[i], v.get(i), defaultW);
+		return result;
+	}
+
 	/**
 	 * Outputs the contents of this <code>SparseWeightVector</code> into the
 	 * specified <code>PrintStream</code>.  The string representation starts
@@ -405,12 +493,16 @@ public class SparseWeightVector implements Cloneable, Serializable
 
 	/**
 	 * Writes the weight vector's internal representation in binary form.
+	 * When {@link #sparseOutput} is set, only the non-zero weights are
+	 * written if that takes less space, as it does after L1 regularization
+	 * has zeroed most of them.
 	 *
 	 * @param out  The output stream.
 	 **/
 	public void write(ExceptionlessOutputStream out) {
 		out.writeString(getClass().getName());
-		weights.write(out);
+		if (sparseOutput) weights.writeSparse(out);
+		else weights.write(out);
 	}
 
 
@@ -431,15 +523,11 @@ public class SparseWeightVector implements Cloneable, Serializable
 			ExceptionlessInputStream in) {
 		String name = in.readString();
 		if (name == null) return null;
-		Class c = ClassUtils.getClass(name);
 		SparseWeightVector result = null;
 
-		try { result = (SparseWeightVector) c.newInstance(); }
+		try { result = (SparseWeightVector) Class.forName(name).newInstance(); }
 		catch (Exception e) {
-			System.err.println("Error instantiating weight vector '" + name + "':");
-			e.printStackTrace();
-			in.close();
-			System.exit(1);
+			in.fail("Error instantiating weight vector '" + name + "':", e);
 		}
 
 		result.read(in);
@@ -27,6 +27,13 @@ import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
   * approximation to gradient descent in which the approximated function is
   * assumed to have linear form.
   *
+  * <p> L2 weight decay and truncated-gradient L1 regularization can be
+  * enabled with {@link #l2Penalty} and {@link #l1Penalty}.  They are applied
+  * lazily by a {@link LazyRegularizer}, so a regularized update still costs
+  * time proportional to the number of active features in the example.
+  * Pending regularization is applied to every weight in
+  * {@link #doneLearning()}.
+  *
   * <p> This algorithm's user-configurable parameters are stored in member
   * fields of this class.  They may be set via either a constructor that names
   * each parameter explicitly or a constructor that takes an instance of
@@ -47,6 +54,10 @@ public class StochasticGradientDescent extends Learner
   /** Default for {@link #weightVector}. */
   public static final SparseWeightVector defaultWeightVector =
     new SparseWeightVector();
+  /** Default value for {@link #l1Penalty}. */
+  public static final double defaultL1Penalty = 0;
+  /** Default value for {@link #l2Penalty}. */
+  public static final double defaultL2Penalty = 0;
 
 
   /** The hypothesis vector; default {@link #defaultWeightVector}. */
@@ -60,6 +71,20 @@ public class StochasticGradientDescent extends Learner
     * {@link #defaultLearningRate}.
    **/
   protected double learningRate;
+  /**
+    * The L1 regularization penalty; each example truncates every weight
+    * towards 0 by <code>learningRate * l1Penalty</code>; default
+    * {@link #defaultL1Penalty}.
+   **/
+  protected double l1Penalty;
+  /**
+    * The L2 regularization penalty; each example multiplies every weight by
+    * <code>1 - learningRate * l2Penalty</code>; default
+    * {@link #defaultL2Penalty}.
+   **/
+  protected double l2Penalty;
+  /** Applies {@link #l1Penalty} and {@link #l2Penalty} lazily. */
+  protected LazyRegularizer regularizer;
 
 
   /**
@@ -125,8 +150,12 @@ public class StochasticGradientDescent extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     weightVector = p.weightVector;
     learningRate = p.learningRate;
+    l1Penalty = p.l1Penalty;
+    l2Penalty = p.l2Penalty;
+    regularizer = new LazyRegularizer(l1Penalty, l2Penalty);
   }
 
 
@@ -140,6 +169,8 @@ public class StochasticGradientDescent extends Learner
     Parameters p = new Parameters(super.getParameters());
     p.weightVector = weightVector.emptyClone();
     p.learningRate = learningRate;
+    p.l1Penalty = l1Penalty;
+    p.l2Penalty = l2Penalty;
     return p;
   }
 
@@ -166,6 +197,7 @@ public class StochasticGradientDescent extends Learner
     super.forget();
     weightVector = weightVector.emptyClone();
     bias = 0;
+    regularizer.reset();
   }
 
 
@@ -187,9 +219,13 @@ public class StochasticGradientDescent extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     assert exampleLabels.length == 1
       : "Example must have a single label.";
 
+    boolean regularize = regularizer.isActive();
+    if (regularize) regularizer.catchUp(weightVector, exampleFeatures);
+
     double labelValue = labelValues[0];
     double multiplier =
       learningRate
@@ -197,6 +233,18 @@ public class StochasticGradientDescent extends Learner
          - bias);
     weightVector.scaledAdd(exampleFeatures, exampleValues, multiplier);
     bias += multiplier;
+
+    if (regularize) regularizer.step(learningRate);
+  }
+
+
+  /**
+    * Applies any regularization that is still pending to every weight in the
+    * weight vector.
+   **/
+  public void doneLearning() {
+    super.doneLearning();
+    if (regularizer.isActive()) regularizer.finish(weightVector, 0);
   }
 
 
@@ -306,6 +354,7 @@ public class StochasticGradientDescent extends Learner
     }
 
     clone.weightVector = (SparseWeightVector) weightVector.clone();
+    clone.regularizer = (LazyRegularizer) regularizer.clone();
     return clone;
   }
 
@@ -329,12 +378,24 @@ public class StochasticGradientDescent extends Learner
       * {@link #defaultLearningRate}.
      **/
     public double learningRate;
+    /**
+      * The L1 regularization penalty; default
+      * {@link StochasticGradientDescent#defaultL1Penalty}.
+     **/
+    public double l1Penalty;
+    /**
+      * The L2 regularization penalty; default
+      * {@link StochasticGradientDescent#defaultL2Penalty}.
+     **/
+    public double l2Penalty;
 
 
     /** Sets all the default values. */
     public Parameters() {
       weightVector = (SparseWeightVector) defaultWeightVector.clone();
       learningRate = defaultLearningRate;
+      l1Penalty = defaultL1Penalty;
+      l2Penalty = defaultL2Penalty;
     }
 
 
@@ -346,6 +407,8 @@ public class StochasticGradientDescent extends Learner
       super(p);
       weightVector = (SparseWeightVector) defaultWeightVector.clone();
       learningRate = defaultLearningRate;
+      l1Penalty = defaultL1Penalty;
+      l2Penalty = defaultL2Penalty;
     }
 
 
@@ -354,6 +417,8 @@ public class StochasticGradientDescent extends Learner
       super(p);
       weightVector = p.weightVector;
       learningRate = p.learningRate;
+      l1Penalty = p.l1Penalty;
+      l2Penalty = p.l2Penalty;
     }
 
 
@@ -377,6 +442,10 @@ public class StochasticGradientDescent extends Learner
 
       if (learningRate != StochasticGradientDescent.defaultLearningRate)
         result += ", learningRate = " + learningRate;
+      if (l1Penalty != StochasticGradientDescent.defaultL1Penalty)
+        result += ", l1Penalty = " + l1Penalty;
+      if (l2Penalty != StochasticGradientDescent.defaultL2Penalty)
+        result += ", l2Penalty = " + l2Penalty;
 
       if (result.startsWith(", ")) result = result.substring(2);
       return result;
@@ -10,12 +10,17 @@
  */
 package edu.illinois.cs.cogcomp.lbjava.learn;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.bwaldvogel.liblinear.FeatureNode;
 import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
@@ -29,6 +34,7 @@ import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
 import edu.illinois.cs.cogcomp.lbjava.util.FVector;
 import edu.illinois.cs.cogcomp.lbjava.util.IVector;
 import edu.illinois.cs.cogcomp.lbjava.util.OVector;
+import edu.illinois.cs.cogcomp.lbjava.util.Sort;
 
 
 /**
@@ -56,6 +62,29 @@ import edu.illinois.cs.cogcomp.lbjava.util.OVector;
   * 1-vs.-all) whenever the solver type is <b>not</b> <code>MCSVM_CS</code>
   * and exactly two class labels are observed in the training data.
   *
+  * <p> When {@link #streaming} is enabled, the buffered examples are not kept
+  * on the heap as <code>liblinear</code> feature objects.  Instead, they are
+  * spilled to a compact, memory-mapped {@link MappedExampleFile}, and an
+  * in-project dual coordinate descent solver reads them back from that file.
+  * Training memory then grows by a few primitives per example rather than
+  * an object per feature.  Only the <code>"L1LOSS_SVM_DUAL"</code> and
+  * <code>"L2LOSS_SVM_DUAL"</code> solver types can be trained this way; any
+  * other solver type, including the default, makes {@link #learn(Object)}
+  * throw an <code>IllegalArgumentException</code> when streaming is enabled.
+  *
+  * <p> When more than two labels are observed, the solver type is not
+  * <code>"MCSVM_CS"</code>, and {@link #trainingThreads} is greater than 1,
+  * each label's one-vs.-rest problem is handed to <code>liblinear</code> as
+  * a binary problem of its own, and up to {@link #trainingThreads} of them
+  * are fit concurrently, all reading one shared example matrix.  With a
+  * single thread, <code>liblinear</code> fits them all in one call as it
+  * always has.  The primal solvers draw no random numbers, so the weights
+  * they learn don't depend on the number of threads.  The dual solvers
+  * shuffle the examples with <code>liblinear</code>'s one shared random
+  * number generator, which is reset to its default seed before the problems
+  * are fit, but the order in which concurrent problems draw from it is up to
+  * the scheduler, so their weights may differ slightly from run to run.
+  *
   * <p> This algorithm's user-configurable parameters are stored in member
   * fields of this class.  They may be set via either a constructor that names
   * each parameter explicitly or a constructor that takes an instance of
@@ -79,6 +108,15 @@ public class SupportVectorMachine extends Learner
   public static final double defaultEpsilon = 0.1;
   /** Default for {@link #bias}. */
   public static final double defaultBias = 1.0;
+  /** Default for {@link #streaming}. */
+  public static final boolean defaultStreaming = false;
+  /** Default for {@link #trainingThreads}. */
+  public static final int defaultTrainingThreads = 1;
+  /**
+    * The maximum number of passes over the training data made by the
+    * streaming dual coordinate descent solver.
+   **/
+  protected static final int maxIterations = 1000;
 
   /**
     * Keeps track of whether the doneLearning() warning message has been
@@ -130,6 +168,23 @@ public class SupportVectorMachine extends Learner
   /** Controls if <code>liblinear</code>-related messages are output */
   protected boolean displayLL = false;
 
+  /**
+    * Whether training examples are spilled to a {@link MappedExampleFile}
+    * and trained from disk as described above, which requires one of the
+    * dual solver types; default {@link #defaultStreaming}.
+   **/
+  protected boolean streaming;
+  /**
+    * The directory in which {@link #exampleFile} is created; the system's
+    * default temporary directory is used when this is empty.
+   **/
+  protected String spillDirectory;
+  /**
+    * The number of threads used to fit the one-vs.-rest binary problems of a
+    * multi-class SVM concurrently; default {@link #defaultTrainingThreads}.
+   **/
+  protected int trainingThreads;
+
   /** The number of unique class labels seen during training. */
   protected int numClasses;
   /** The number of unique features seen during training. */
@@ -147,6 +202,8 @@ public class SupportVectorMachine extends Learner
   protected IVector allLabels;
   /** The array of example vectors. */
   protected OVector allExamples;
+  /** The example vectors when {@link #streaming} is enabled. */
+  protected MappedExampleFile exampleFile;
 
   /** The label producing classifier's allowable values. */
   protected String[] allowableValues;
@@ -343,12 +400,16 @@ public class SupportVectorMachine extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     C = p.C;
     epsilon = p.epsilon;
     bias = p.bias;
     biasFeatures = (bias >= 0) ? 1 : 0;
     solverType = p.solverType;
     displayLL = p.displayLL;
+    streaming = p.streaming;
+    spillDirectory = p.spillDirectory;
+    trainingThreads = p.trainingThreads;
   }
 
 
@@ -365,6 +426,9 @@ public class SupportVectorMachine extends Learner
     p.bias = bias;
     p.solverType = solverType;
     p.displayLL = displayLL;
+    p.streaming = streaming;
+    p.spillDirectory = spillDirectory;
+    p.trainingThreads = trainingThreads;
     return p;
   }
 
@@ -399,8 +463,9 @@ public class SupportVectorMachine extends Learner
     * @param nf   The number of features.
    **/
   public void initialize(int ne, int nf) {
+    checkNotFrozen("initialize");
     allLabels = new IVector(ne);
-    allExamples = new OVector(ne);
+    if (!streaming) allExamples = new OVector(ne);
   }
 
 
@@ -419,12 +484,19 @@ public class SupportVectorMachine extends Learner
    **/
   public void learn(final int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     // Expand the size of the example arrays if they are full.
 
     if (allLabels == null || allLabels.size() == 0) {
       if (allLabels == null) {
         allLabels = new IVector();
-        allExamples = new OVector();
+        if (!streaming) allExamples = new OVector();
+      }
+      if (streaming && exampleFile == null) {
+        checkStreamable();
+        exampleFile =
+          new MappedExampleFile(
+              spillDirectory.length() == 0 ? null : new File(spillDirectory));
       }
       weights = null;
       warningPrinted = false;
@@ -437,6 +509,11 @@ public class SupportVectorMachine extends Learner
 
     allLabels.add(exampleLabels[0]);
 
+    if (streaming) {
+      spillExample(exampleFeatures, exampleValues);
+      return;
+    }
+
     // Add the example to the examples list.  Space for the bias feature is
     // allocated, but it isn't instantiated because we don't know its index
     // yet.
@@ -495,6 +572,61 @@ public class SupportVectorMachine extends Learner
   }
 
 
+  /**
+    * Throws an exception unless {@link #solverType} is one of the dual
+    * solver types, the only ones that can be trained from
+    * {@link #exampleFile} without building every example on the heap.
+   **/
+  protected void checkStreamable() {
+    if (!solverType.equals("L1LOSS_SVM_DUAL")
+        && !solverType.equals("L2LOSS_SVM_DUAL"))
+      throw new IllegalArgumentException(
+          "LBJava ERROR: SupportVectorMachine: streaming requires the "
+          + "L1LOSS_SVM_DUAL or L2LOSS_SVM_DUAL solver type, not '"
+          + (solverType.length() == 0 ? defaultSolverType : solverType)
+          + "'.");
+  }
+
+
+  /**
+    * Writes an example to {@link #exampleFile} with its features sorted by
+    * index and the strengths of duplicate features added together, just as
+    * {@link #learn(int[],double[],int[],double[])} does for the examples it
+    * keeps in memory.
+    *
+    * @param exampleFeatures  The example's array of feature indices.
+    * @param exampleValues    The example's array of feature values.
+   **/
+  protected void spillExample(final int[] exampleFeatures,
+                              double[] exampleValues) {
+    int F = exampleFeatures.length;
+    int[] order = new int[F];
+    for (int i = 0; i < F; ++i) order[i] = i;
+    Sort.sort(order,
+              new Sort.IntComparator() {
+                public int compare(int i1, int i2) {
+                  return exampleFeatures[i1] - exampleFeatures[i2];
+                }
+              });
+
+    int[] features = new int[F];
+    double[] values = new double[F];
+    int k = -1;
+
+    for (int i = 0; i < F; ++i) {
+      int f = exampleFeatures[order[i]];
+      if (k >= 0 && features[k] == f) values[k] += exampleValues[order[i]];
+      else {
+        features[++k] = f;
+        values[k] = exampleValues[order[i]];
+      }
+    }
+
+    if (k >= 0) numFeatures = Math.max(numFeatures, features[k] + 1);
+    exampleFile.add(features, values, k + 1);
+  }
+
+
   /**
     * This method converts the arrays of examples stored in this class
     * into input for the <code>liblinear</code> training method.
@@ -521,7 +653,7 @@ public class SupportVectorMachine extends Learner
     if (labelLexicon.size() > 2 || solverType.equals("MCSVM_CS")) {
       newLabelLexicon = new Lexicon();
       boolean same = true;
-      for (int i = 0; i < allExamples.size(); i++) {
+      for (int i = 0; i < allLabels.size(); i++) {
         Feature label = labelLexicon.lookupKey(allLabels.get(i));
         int newLabel = newLabelLexicon.lookup(label, true);
         same &= newLabel == allLabels.get(i);
@@ -559,10 +691,10 @@ public class SupportVectorMachine extends Learner
     for (int i = 0; i < numClasses && !conjunctiveLabels; ++i)
       conjunctiveLabels = newLabelLexicon.lookupKey(i).isConjunctive();
 
-    int l = allExamples.size(); // number of examples
+    int l = allLabels.size(); // number of examples
     int n = numFeatures + biasFeatures; // number of features
 
-    if (biasFeatures == 1)
+    if (biasFeatures == 1 && !streaming)
       for (int i = 0; i < l; i++) {
         FeatureNode[] ex = (FeatureNode[]) allExamples.get(i);
         ex[ex.length - 1] = new FeatureNode(n, bias);
@@ -587,7 +719,8 @@ public class SupportVectorMachine extends Learner
       if (positive > 0 && positive < l) {
         allLabels.set(0, p);
         allLabels.set(positive, 1 - p);
-        allExamples.set(0, allExamples.set(positive, allExamples.get(0)));
+        if (streaming) exampleFile.swap(0, positive);
+        else allExamples.set(0, allExamples.set(positive, allExamples.get(0)));
 
         newLabelLexicon = new Lexicon();
         newLabelLexicon.lookup(f, true);
@@ -602,6 +735,37 @@ public class SupportVectorMachine extends Learner
       }
     }
 
+    if (streaming) exampleFile.finishWriting();
+
+    try { train(l, n); }
+    finally {
+      if (exampleFile != null) {
+        exampleFile.delete();
+        exampleFile = null;
+      }
+    }
+  }
+
+
+  /**
+    * Trains on the buffered examples, which {@link #doneLearning()} has
+    * already relabeled, and stores the learned weights in {@link #weights}.
+    * The example file, if any, is left for the caller to delete.
+    *
+    * @param l  The number of examples.
+    * @param n  The number of features, including the bias feature.
+   **/
+  private void train(int l, int n) {
+    if (streaming) {
+      weights = dualCoordinateDescent(l, n);
+      allExamples = null;
+      allLabels = null;
+
+      if (displayLL)
+        System.out.println("  Finished training at " + new Date());
+      return;
+    }
+
     de.bwaldvogel.liblinear.Problem prob = new de.bwaldvogel.liblinear.Problem();
     prob.bias = bias;
     prob.l = l;
@@ -615,8 +779,13 @@ public class SupportVectorMachine extends Learner
       new de.bwaldvogel.liblinear.Parameter(Parameters.getSolverType(solverType), C,
                               epsilon);
 
-    de.bwaldvogel.liblinear.Model trainedModel = de.bwaldvogel.liblinear.Linear.train(prob, params);
-    weights = trainedModel.getFeatureWeights();
+    if (numClasses > 2 && !solverType.equals("MCSVM_CS")
+        && trainingThreads > 1)
+      weights = trainOneVsRest(prob, params);
+    else {
+      de.bwaldvogel.liblinear.Model trainedModel = de.bwaldvogel.liblinear.Linear.train(prob, params);
+      weights = trainedModel.getFeatureWeights();
+    }
     allExamples = null;
     allLabels = null;
 
@@ -625,6 +794,249 @@ public class SupportVectorMachine extends Learner
   }
 
 
+  /**
+    * Fits one binary problem per class in one-vs.-rest fashion, each with its
+    * own call to <code>Linear.train(Problem,Parameter)</code>, up to
+    * {@link #trainingThreads} of them at once.  <code>liblinear</code>'s
+    * random number generator is reset to its default seed first.
+    *
+    * @param prob   The multi-class problem, which is only read.
+    * @param params The solver's parameters.
+    * @return The learned weights, laid out as <code>liblinear</code> lays
+    *         them out.
+   **/
+  protected double[] trainOneVsRest(final de.bwaldvogel.liblinear.Problem prob,
+                                    final de.bwaldvogel.liblinear.Parameter params) {
+    final int n = prob.n;
+    final double[] w = new double[n * numClasses];
+    Runnable[] tasks = new Runnable[numClasses];
+
+    for (int c = 0; c < numClasses; ++c) {
+      final int label = c;
+      tasks[c] = new Runnable() {
+        public void run() {
+          de.bwaldvogel.liblinear.Problem sub =
+            new de.bwaldvogel.liblinear.Problem();
+          sub.l = prob.l;
+          sub.n = n;
+          sub.bias = prob.bias;
+          sub.x = prob.x;
+          sub.y = new double[sub.l];
+          for (int k = 0; k < sub.l; ++k)
+            sub.y[k] = prob.y[k] == label ? 1 : -1;
+
+          // liblinear's binary weights favor the label it sees first
+          de.bwaldvogel.liblinear.Model model =
+            de.bwaldvogel.liblinear.Linear.train(sub, params);
+          double[] v = model.getFeatureWeights();
+          double sign = model.getLabels()[0] == 1 ? 1 : -1;
+          for (int j = 0; j < n; ++j) w[j * numClasses + label] = sign * v[j];
+        }
+      };
+    }
+
+    de.bwaldvogel.liblinear.Linear.resetRandom();
+    runConcurrently(tasks);
+    return w;
+  }
+
+
+  /**
+    * Runs the given tasks on up to {@link #trainingThreads} threads and waits
+    * for all of them to finish.  When only one thread is allowed, the tasks
+    * run in order on the calling thread.
+    *
+    * @param tasks  The tasks.
+   **/
+  protected void runConcurrently(Runnable[] tasks) {
+    int threads = Math.min(trainingThreads, tasks.length);
+
+    if (threads <= 1) {
+      for (int i = 0; i < tasks.length; ++i) tasks[i].run();
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    Future[] results = new Future[tasks.length];
+    for (int i = 0; i < tasks.length; ++i) results[i] = pool.submit(tasks[i]);
+
+    try {
+      for (int i = 0; i < tasks.length; ++i) results[i].get();
+    }
+    catch (Exception e) {
+      System.err.println(
+          "LBJava ERROR: SupportVectorMachine: training failed:");
+      e.printStackTrace();
+      System.exit(1);
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+
+  /**
+    * Copies the features of a buffered training example into the given
+    * arrays, reading from {@link #exampleFile} when {@link #streaming} is
+    * enabled and from {@link #allExamples} otherwise.  Feature indices are
+    * zero-based, and the bias feature is never included.
+    *
+    * @param example  The index of the example to read.
+    * @param features Receives the example's feature indices.
+    * @param values   Receives the example's feature values.
+    * @return The number of features read.
+   **/
+  protected int readExample(int example, int[] features, double[] values) {
+    if (streaming) return exampleFile.read(example, features, values);
+    FeatureNode[] ex = (FeatureNode[]) allExamples.get(example);
+    int F = ex.length - biasFeatures;
+
+    for (int i = 0; i < F; ++i) {
+      features[i] = ex[i].index - 1;
+      values[i] = ex[i].value;
+    }
+
+    return F;
+  }
+
+
+  /**
+    * Trains the L1- or L2-loss SVM by dual coordinate descent (Hsieh et al.,
+    * 2008), reading the examples with {@link #readExample(int,int[],double[])}
+    * on each pass.  This is the same algorithm as <code>liblinear</code>'s
+    * dual solvers, without the shrinking heuristic.  When more than two
+    * classes were observed, one binary problem is solved per class in
+    * one-vs.-rest fashion, concurrently if {@link #trainingThreads} is
+    * greater than 1.  The returned weights are laid out exactly as
+    * <code>liblinear</code> lays them out, so the rest of this class need
+    * not know which solver produced them.
+    *
+    * @param l  The number of examples.
+    * @param n  The number of features, including the bias feature.
+    * @return The learned weights.
+   **/
+  protected double[] dualCoordinateDescent(final int l, final int n) {
+    // liblinear learns one weight vector for binary problems, and considers
+    // the label of the first example to represent "positive".
+    final int nrW = numClasses > 2 ? numClasses : 1;
+    final double[] w = new double[n * nrW];
+
+    int maxLength = 0;
+    if (streaming) maxLength = exampleFile.maxLength();
+    else
+      for (int i = 0; i < l; ++i)
+        maxLength =
+          Math.max(maxLength,
+                   ((FeatureNode[]) allExamples.get(i)).length - biasFeatures);
+
+    final int length = maxLength;
+    int[] features = new int[length];
+    double[] values = new double[length];
+    double biasSquared = biasFeatures == 1 ? bias * bias : 0;
+    final double[] QD = new double[l];
+
+    for (int i = 0; i < l; ++i) {
+      int F = readExample(i, features, values);
+      double norm = biasSquared;
+      for (int j = 0; j < F; ++j) norm += values[j] * values[j];
+      QD[i] = norm;
+    }
+
+    Runnable[] tasks = new Runnable[nrW];
+    for (int c = 0; c < nrW; ++c) {
+      final int label = c;
+      tasks[c] = new Runnable() {
+        public void run() {
+          solveBinary(label, nrW, l, n, QD, w, new int[length],
+                      new double[length]);
+        }
+      };
+    }
+
+    runConcurrently(tasks);
+    return w;
+  }
+
+
+  /**
+    * Solves the binary problem of a single class by dual coordinate descent
+    * and stores its weights in column <code>c</code> of <code>w</code>.
+    * This method only reads the shared example data, so several classes may
+    * be solved at once as long as each call gets its own buffers.
+    *
+    * @param c        The index of the class whose weights are learned.
+    * @param nrW      The number of weight vectors interleaved in
+    *                 <code>w</code>.
+    * @param l        The number of examples.
+    * @param n        The number of features, including the bias feature.
+    * @param QD       The squared norm of each example.
+    * @param w        The interleaved weight vectors.
+    * @param features A buffer for example feature indices.
+    * @param values   A buffer for example feature values.
+   **/
+  protected void solveBinary(int c, int nrW, int l, int n, double[] QD,
+                             double[] w, int[] features, double[] values) {
+    int positive = nrW == 1 ? (l > 0 ? allLabels.get(0) : 0) : c;
+    boolean l1Loss = solverType.equals("L1LOSS_SVM_DUAL");
+    double diag = l1Loss ? 0 : 0.5 / C;
+    double upper = l1Loss ? C : Double.POSITIVE_INFINITY;
+
+    double[] v = new double[n];
+    double[] alpha = new double[l];
+    byte[] y = new byte[l];
+    int[] index = new int[l];
+    Random random = new Random(0);
+
+    for (int i = 0; i < l; ++i) {
+      y[i] = (byte) (allLabels.get(i) == positive ? 1 : -1);
+      index[i] = i;
+    }
+
+    for (int iteration = 0; iteration < maxIterations; ++iteration) {
+      for (int i = l - 1; i > 0; --i) {
+        int j = random.nextInt(i + 1);
+        int t = index[i];
+        index[i] = index[j];
+        index[j] = t;
+      }
+
+      double PGmax = Double.NEGATIVE_INFINITY;
+      double PGmin = Double.POSITIVE_INFINITY;
+
+      for (int s = 0; s < l; ++s) {
+        int i = index[s];
+        int F = readExample(i, features, values);
+
+        double G = 0;
+        for (int j = 0; j < F; ++j) G += v[features[j]] * values[j];
+        if (biasFeatures == 1) G += v[n - 1] * bias;
+        G = G * y[i] - 1 + alpha[i] * diag;
+
+        double PG = 0;
+        if (alpha[i] == 0) { if (G < 0) PG = G; }
+        else if (alpha[i] == upper) { if (G > 0) PG = G; }
+        else PG = G;
+
+        PGmax = Math.max(PGmax, PG);
+        PGmin = Math.min(PGmin, PG);
+
+        if (Math.abs(PG) > 1e-12 && QD[i] + diag > 0) {
+          double old = alpha[i];
+          alpha[i] =
+            Math.min(Math.max(alpha[i] - G / (QD[i] + diag), 0), upper);
+          double d = (alpha[i] - old) * y[i];
+          for (int j = 0; j < F; ++j) v[features[j]] += d * values[j];
+          if (biasFeatures == 1) v[n - 1] += d * bias;
+        }
+      }
+
+      if (PGmax - PGmin <= epsilon) break;
+    }
+
+    for (int j = 0; j < n; ++j) w[j * nrW + c] = v[j];
+  }
+
+
   /**
     * Writes the algorithm's internal representation as text.  In the first
     * line of output, the name of the classifier is printed, followed by
@@ -1062,6 +1474,10 @@ public class SupportVectorMachine extends Learner
     numClasses = numFeatures = 0;
     allLabels = null;
     allExamples = null;
+    if (exampleFile != null) {
+      exampleFile.delete();
+      exampleFile = null;
+    }
     weights = null;
     conjunctiveLabels = false;
   }
@@ -1111,6 +1527,24 @@ public class SupportVectorMachine extends Learner
       * displayed; default <code>false</code>
      **/
     public boolean displayLL;
+    /**
+      * Whether training examples are spilled to a memory-mapped file and
+      * trained from disk, which requires one of the dual solver types;
+      * default {@link SupportVectorMachine#defaultStreaming}.
+     **/
+    public boolean streaming;
+    /**
+      * The directory in which the spill file is created when
+      * {@link #streaming} is enabled; default <code>""</code>, which means
+      * the system's default temporary directory.
+     **/
+    public String spillDirectory;
+    /**
+      * The number of threads used to fit the one-vs.-rest binary problems of
+      * a multi-class SVM concurrently; default
+      * {@link SupportVectorMachine#defaultTrainingThreads}.
+     **/
+    public int trainingThreads;
 
 
     /** Sets all the default values. */
@@ -1120,6 +1554,9 @@ public class SupportVectorMachine extends Learner
       epsilon = defaultEpsilon;
       bias = defaultBias;
       displayLL = false;
+      streaming = defaultStreaming;
+      spillDirectory = "";
+      trainingThreads = defaultTrainingThreads;
     }
 
 
@@ -1134,6 +1571,9 @@ public class SupportVectorMachine extends Learner
       epsilon = defaultEpsilon;
       bias = defaultBias;
       displayLL = false;
+      streaming = defaultStreaming;
+      spillDirectory = "";
+      trainingThreads = defaultTrainingThreads;
     }
 
 
@@ -1145,6 +1585,9 @@ public class SupportVectorMachine extends Learner
       epsilon = p.epsilon;
       bias = p.bias;
       displayLL = p.displayLL;
+      streaming = p.streaming;
+      spillDirectory = p.spillDirectory;
+      trainingThreads = p.trainingThreads;
     }
 
 
@@ -1198,6 +1641,12 @@ public class SupportVectorMachine extends Learner
         result += ", epsilon = " + epsilon;
       if (bias != SupportVectorMachine.defaultBias)
         result += ", bias = " + bias;
+      if (streaming != SupportVectorMachine.defaultStreaming)
+        result += ", streaming = " + streaming;
+      if (!spillDirectory.equals(""))
+        result += ", spillDirectory = \"" + spillDirectory + "\"";
+      if (trainingThreads != SupportVectorMachine.defaultTrainingThreads)
+        result += ", trainingThreads = " + trainingThreads;
 
       if (result.startsWith(", ")) result = result.substring(2);
       return result;
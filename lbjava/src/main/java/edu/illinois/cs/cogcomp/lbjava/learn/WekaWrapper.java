@@ -230,6 +230,7 @@ public class WekaWrapper extends Learner
     * @param p  The parameters.
    **/
   public void setParameters(Parameters p) {
+    checkNotFrozen("setParameters");
     baseClassifier = p.baseClassifier;
     attributeString = p.attributeString;
     initializeAttributes();
@@ -329,6 +330,7 @@ public class WekaWrapper extends Learner
    **/
   public void learn(int[] exampleFeatures, double[] exampleValues,
                     int[] exampleLabels, double[] labelValues) {
+    checkNotFrozen("learn");
     instances.add(makeInstance(exampleFeatures, exampleValues,
                                exampleLabels, labelValues));
   }
@@ -612,6 +614,7 @@ public class WekaWrapper extends Learner
     * classifier's <code>buildClassifier(Instances)</code> method.
    **/
   public void doneLearning() {
+    checkNotFrozen("doneLearning");
     if (trained) {
       System.err.println(
           "WekaWrapper: Error - Cannot call 'doneLearning()' again without "
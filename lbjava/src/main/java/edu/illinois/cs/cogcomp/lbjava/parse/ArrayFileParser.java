@@ -97,6 +97,12 @@ public class ArrayFileParser implements Parser
   /** Setter for {@link #includePruned}. */
   public void setIncludePruned(boolean b) { includePruned = b; }
 
+  /**
+    * Returns the value of {@link #exampleData}, which is <code>null</code>
+    * when examples are parsed from a file.
+   **/
+  public byte[] getExampleData() { return exampleData; }
+
 
   /**
     * Returns the number of examples left in the example file.  This may be
@@ -0,0 +1,76 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.parse;
+
+import java.util.List;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+
+
+/**
+  * This parser returns the example objects of another parser unchanged,
+  * recording the labels other learners give them on the way.  It lets the
+  * learner pre-extracting a shared example file label the examples for the
+  * learners reusing that file in the same pass, so that they can read the
+  * file with a {@link RelabelingParser} without parsing the examples again.
+  * A {@link FoldSeparator} is recorded as itself.  Resetting the parser
+  * discards what was recorded, so that the lists always describe the last
+  * pass.
+ **/
+public class LabelRecordingParser implements Parser
+{
+  /** Returns the example objects. */
+  protected Parser examples;
+  /** The learners whose labelers label the examples. */
+  protected Learner[] learners;
+  /**
+    * For each learner, the list into which the arrays returned by
+    * {@link Learner#getExampleLabels(Object)} are added.
+   **/
+  protected List[] labels;
+
+
+  /**
+    * Initializing constructor.
+    *
+    * @param e  The parser returning the example objects.
+    * @param l  The learners whose labelers label the examples.
+    * @param r  For each learner, the list recording its labels.
+   **/
+  public LabelRecordingParser(Parser e, Learner[] l, List[] r) {
+    examples = e;
+    learners = l;
+    labels = r;
+  }
+
+
+  /** Returns the next example after recording its labels. */
+  public Object next() {
+    Object example = examples.next();
+    if (example == null) return null;
+
+    for (int i = 0; i < learners.length; ++i)
+      labels[i].add(example == FoldSeparator.separator
+                    ? example : learners[i].getExampleLabels(example));
+    return example;
+  }
+
+
+  /** Resets the parser and discards the recorded labels. */
+  public void reset() {
+    examples.reset();
+    for (int i = 0; i < labels.length; ++i) labels[i].clear();
+  }
+
+
+  /** Frees any resources the parser may be holding. */
+  public void close() { examples.close(); }
+}
@@ -0,0 +1,126 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.parse;
+
+import java.util.List;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+
+
+/**
+  * This parser gives a learner its own labels for examples whose features
+  * have already been pre-extracted for a different learner with the same
+  * feature extractor.  It reads the example objects from the original
+  * parser and their feature vectors from the other learner's example file
+  * in lockstep, and returns arrays in the same format as
+  * {@link ArrayFileParser}, with the features taken from the file and the
+  * labels computed by the given learner's labeler.  So the examples are
+  * parsed again, but their features aren't extracted again.  Better still,
+  * the labels can be recorded by a {@link LabelRecordingParser} while the
+  * example file is written, in which case the examples aren't parsed again
+  * at all.
+  *
+  * <p> The original parser or recorded labels must describe the same
+  * examples in the same order as when the example file was written, and
+  * the learner's feature lexicon must be the one the example file was
+  * written with.
+ **/
+public class RelabelingParser implements Parser
+{
+  /** Returns the example objects. */
+  protected Parser examples;
+  /** Returns the pre-extracted feature vectors of the same examples. */
+  protected Parser features;
+  /** The learner whose labeler and label lexicon are used. */
+  protected Learner learner;
+  /**
+    * The labels recorded by a {@link LabelRecordingParser}, or
+    * <code>null</code> if the examples are labeled as they're parsed.
+   **/
+  protected List labels;
+  /** The index in {@link #labels} of the next example's labels. */
+  protected int index;
+
+
+  /**
+    * Initializing constructor.
+    *
+    * @param e  The parser returning the example objects.
+    * @param f  The parser returning their pre-extracted feature vectors.
+    * @param l  The learner whose labeler labels the examples.
+   **/
+  public RelabelingParser(Parser e, Parser f, Learner l) {
+    examples = e;
+    features = f;
+    learner = l;
+  }
+
+
+  /**
+    * Initializing constructor for labels that have already been recorded.
+    *
+    * @param r  The labels recorded by a {@link LabelRecordingParser}.
+    * @param f  The parser returning the pre-extracted feature vectors.
+   **/
+  public RelabelingParser(List r, Parser f) {
+    labels = r;
+    features = f;
+  }
+
+
+  /**
+    * Returns the pre-extracted feature vector of the next example with the
+    * labels computed by the learner, or a {@link FoldSeparator} if both
+    * parsers return one.
+   **/
+  public Object next() {
+    Object example =
+      labels == null ? examples.next()
+                     : index < labels.size() ? labels.get(index++) : null;
+    Object extracted = features.next();
+    if (example == null && extracted == null) return null;
+
+    if (example == FoldSeparator.separator
+        && extracted == FoldSeparator.separator)
+      return example;
+
+    if (example == null || extracted == null
+        || example == FoldSeparator.separator
+        || extracted == FoldSeparator.separator) {
+      System.err.println(
+          "LBJava ERROR: RelabelingParser: The parser didn't return the same "
+          + "examples as when the shared example file was written.");
+      System.exit(1);
+    }
+
+    Object[] result = (Object[]) extracted;
+    Object[] exampleLabels =
+      labels == null ? learner.getExampleLabels(example) : (Object[]) example;
+    result[2] = exampleLabels[0];
+    result[3] = exampleLabels[1];
+    return result;
+  }
+
+
+  /** Resets both parsers. */
+  public void reset() {
+    if (labels == null) examples.reset();
+    else index = 0;
+    features.reset();
+  }
+
+
+  /** Frees any resources both parsers may be holding. */
+  public void close() {
+    if (examples != null) examples.close();
+    features.close();
+  }
+}
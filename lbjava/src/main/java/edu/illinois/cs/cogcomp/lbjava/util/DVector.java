@@ -306,19 +306,59 @@ public class DVector implements Cloneable, java.io.Serializable
   }
 
 
+  /**
+    * Writes a binary representation of the vector that lists only its
+    * non-zero elements with their indexes, unless that would be larger than
+    * the representation written by {@link #write(ExceptionlessOutputStream)}.
+    * Either one can be read by {@link #read(ExceptionlessInputStream)}.
+    *
+    * @param out  The output stream.
+   **/
+  public void writeSparse(ExceptionlessOutputStream out) {
+    int nonZero = 0;
+    for (int i = 0; i < size; ++i) if (vector[i] != 0) ++nonZero;
+
+    // A dense vector takes 4 + 8 * size bytes, a sparse one 8 + 12 * nonZero.
+    if (8 + 12L * nonZero >= 4 + 8L * size) {
+      write(out);
+      return;
+    }
+
+    // A negative size tells read(ExceptionlessInputStream) the vector is
+    // sparse.
+    out.writeInt(-1 - size);
+    out.writeInt(nonZero);
+    for (int i = 0; i < size; ++i)
+      if (vector[i] != 0) {
+        out.writeInt(i);
+        out.writeDouble(vector[i]);
+      }
+  }
+
+
   /**
     * Reads the binary representation of a vector from the specified stream,
-    * overwriting the data in this object.
+    * overwriting the data in this object.  The representation may have been
+    * written by either {@link #write(ExceptionlessOutputStream)} or
+    * {@link #writeSparse(ExceptionlessOutputStream)}.
     *
     * @param in The input stream.
    **/
   public void read(ExceptionlessInputStream in) {
     size = in.readInt();
-    if (size == 0) vector = new double[defaultCapacity];
+
+    if (size < 0) {
+      size = -1 - size;
+      vector = new double[Math.max(size, defaultCapacity)];
+      for (int nonZero = in.readInt(); nonZero > 0; --nonZero) {
+        int i = in.readInt();
+        vector[i] = in.readDouble();
+      }
+    }
+    else if (size == 0) vector = new double[defaultCapacity];
     else {
       vector = new double[size];
       for (int i = 0; i < size; ++i) vector[i] = in.readDouble();
     }
   }
 }
-
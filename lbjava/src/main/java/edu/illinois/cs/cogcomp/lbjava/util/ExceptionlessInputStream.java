@@ -14,15 +14,22 @@ import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 
 /**
   * This class intends to operate just as a <code>DataInputStream</code> with
-  * some additional convenience methods and built-in exception handling.
+  * some additional convenience methods and built-in exception handling.  By
+  * default, any error ends the program.  A stream may instead be
+  * {@link #setThrowExceptions(boolean) set} to throw an
+  * <code>IllegalStateException</code>, so that a program that must keep
+  * running, such as one replacing its models while serving, can recover
+  * from a model that can't be read.
   *
   * @author Nick Rizzolo
  **/
@@ -37,6 +44,8 @@ public class ExceptionlessInputStream extends FilterInputStream
   private char[] chars = null;
   /** The underlying data input stream. */
   private DataInputStream dis;
+  /** Whether errors are thrown rather than ending the program. */
+  private boolean throwExceptions;
 
 
   /**
@@ -144,6 +153,49 @@ public class ExceptionlessInputStream extends FilterInputStream
   }
 
 
+  /**
+    * Opens a compressed stream for reading from the specified location,
+    * which throws an <code>IllegalStateException</code> on any error
+    * instead of ending the program if so requested.
+    *
+    * @param url              The location to read from.
+    * @param throwExceptions  Whether errors are thrown.
+    * @return The newly opened stream.
+    * @throws IllegalStateException If <code>throwExceptions</code> is
+    *                               <code>true</code> and the location
+    *                               can't be opened.
+   **/
+  public static ExceptionlessInputStream openCompressedStream(
+      URL url, boolean throwExceptions) {
+    if (!throwExceptions) return openCompressedStream(url);
+    ExceptionlessInputStream eis = null;
+
+    try {
+      InputStream in = null;
+      if (url.getProtocol().equals("file")) {
+        ZipFile zip = new ZipFile(url.getFile());
+        ZipEntry entry = zip.getEntry(zipEntryName);
+        if (entry != null) in = zip.getInputStream(entry);
+      }
+      else {
+        ZipInputStream zip = new ZipInputStream(url.openStream());
+        if (zip.getNextEntry() != null) in = zip;
+      }
+
+      if (in == null)
+        throw new IOException("no entry named " + zipEntryName);
+      eis = new ExceptionlessInputStream(new BufferedInputStream(in));
+    }
+    catch (Exception e) {
+      throw new IllegalStateException(
+          "LBJava ERROR: Can't open '" + url + "' for input: " + e, e);
+    }
+
+    eis.setThrowExceptions(true);
+    return eis;
+  }
+
+
   /**
     * Creates a new data input stream to read data from the specified
     * underlying input stream.
@@ -156,6 +208,19 @@ public class ExceptionlessInputStream extends FilterInputStream
   }
 
 
+  /**
+    * Sets whether errors are thrown as <code>IllegalStateException</code>s
+    * rather than ending the program.
+    *
+    * @param t  Whether errors are thrown.
+   **/
+  public void setThrowExceptions(boolean t) { throwExceptions = t; }
+
+
+  /** Returns whether errors are thrown rather than ending the program. */
+  public boolean throwsExceptions() { return throwExceptions; }
+
+
   /**
     * Whenever an exception is caught, this method attempts to close the
     * stream and exit the program.
@@ -163,7 +228,29 @@ public class ExceptionlessInputStream extends FilterInputStream
     * @param e  The thrown exception.
    **/
   private void handleException(Exception e) {
-    System.err.println("Can't read from input stream:");
+    fail("Can't read from input stream:", e);
+  }
+
+
+  /**
+    * Reports an error in reading from this stream.  The stream is closed,
+    * and either an <code>IllegalStateException</code> is thrown or the
+    * program exits, depending on {@link #throwsExceptions()}.
+    *
+    * @param message  A description of the error.
+    * @param e        The exception that caused it, if any.
+    * @throws IllegalStateException If this stream throws exceptions.
+   **/
+  public void fail(String message, Exception e) {
+    if (throwExceptions) {
+      try { dis.close(); }
+      catch (Exception x) { }
+      throw new IllegalStateException(
+          "LBJava ERROR: " + message + (e == null ? "" : " " + e), e);
+    }
+
+    System.err.println(message);
+    if (e == null) e = new Exception();
     e.printStackTrace();
     close();
     System.exit(1);
@@ -177,6 +264,9 @@ public class ExceptionlessInputStream extends FilterInputStream
   public void close() {
     try { dis.close(); }
     catch (Exception e) {
+      if (throwExceptions)
+        throw new IllegalStateException(
+            "LBJava ERROR: Can't close input stream: " + e, e);
       System.err.println("Can't close input stream:");
       e.printStackTrace();
       System.exit(1);
@@ -457,21 +547,15 @@ public class ExceptionlessInputStream extends FilterInputStream
           /* 110x xxxx   10xx xxxx*/
           count += 2;
           if (count > utfLength) {
-            System.err.println(
-                "Error in UTF formatting: partial character at end");
-            new Exception().printStackTrace();
-            close();
-            System.exit(1);
+            fail(
+                "Error in UTF formatting: partial character at end", null);
           }
 
           char2 = (int) buffer[count - 1];
           if ((char2 & 0xC0) != 0x80) {
-            System.err.println(
+            fail(
                 "Error in UTF formatting: malformed input around byte "
-                + count);
-            new Exception().printStackTrace();
-            close();
-            System.exit(1);
+                + count, null);
           }
 
           chars[charsCount++] = (char) (((c & 0x1F) << 6) | (char2 & 0x3F));
@@ -480,22 +564,16 @@ public class ExceptionlessInputStream extends FilterInputStream
           /* 1110 xxxx  10xx xxxx  10xx xxxx */
           count += 3;
           if (count > utfLength) {
-            System.err.println(
-                "Error in UTF formatting: partial character at end");
-            new Exception().printStackTrace();
-            close();
-            System.exit(1);
+            fail(
+                "Error in UTF formatting: partial character at end", null);
           }
 
           char2 = (int) buffer[count - 2];
           char3 = (int) buffer[count - 1];
           if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80)) {
-            System.err.println(
+            fail(
                 "Error in UTF formatting: malformed input around byte "
-                + (count - 1));
-            new Exception().printStackTrace();
-            close();
-            System.exit(1);
+                + (count - 1), null);
           }
 
           chars[charsCount++] = (char) (((c     & 0x0F) << 12) |
@@ -504,12 +582,9 @@ public class ExceptionlessInputStream extends FilterInputStream
           break;
         default:
           /* 10xx xxxx,  1111 xxxx */
-          System.err.println(
+          fail(
               "Error in UTF formatting: malformed input around byte "
-              + count);
-          new Exception().printStackTrace();
-          close();
-          System.exit(1);
+              + count, null);
       }
     }
 
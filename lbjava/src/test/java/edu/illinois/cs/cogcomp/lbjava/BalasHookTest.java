@@ -0,0 +1,219 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.BalasHook;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>BalasHook</code>, checked against exhaustive search
+ */
+public class BalasHookTest {
+
+    static final double tolerance = 1e-9;
+
+    /**
+     * A small random problem: an objective function and constraints of the
+     * form <code>a * x &lt;= b</code> or <code>a * x &gt;= b</code>
+     */
+    static class Problem {
+        final boolean maximize;
+        final double[] objective;
+        final double[][] a;
+        final double[] b;
+        final boolean[] greaterThan;
+
+        Problem(Random random, int variables, int constraints) {
+            maximize = random.nextBoolean();
+            objective = new double[variables];
+            for (int j = 0; j < variables; ++j)
+                objective[j] = random.nextInt(7) - 3;
+
+            a = new double[constraints][variables];
+            b = new double[constraints];
+            greaterThan = new boolean[constraints];
+            for (int i = 0; i < constraints; ++i) {
+                for (int j = 0; j < variables; ++j)
+                    a[i][j] = random.nextInt(5) - 2;
+                b[i] = random.nextInt(5) - 2;
+                greaterThan[i] = random.nextBoolean();
+            }
+        }
+
+        Problem(double[] objective, boolean maximize, double[][] a, double[] b,
+                boolean[] greaterThan) {
+            this.objective = objective;
+            this.maximize = maximize;
+            this.a = a;
+            this.b = b;
+            this.greaterThan = greaterThan;
+        }
+
+        BalasHook newHook() {
+            BalasHook result = new BalasHook();
+            int[] indexes = new int[objective.length];
+            for (int j = 0; j < objective.length; ++j)
+                indexes[j] = result.addBooleanVariable(objective[j]);
+            for (int i = 0; i < a.length; ++i) {
+                if (greaterThan[i])
+                    result.addGreaterThanConstraint(indexes, a[i].clone(), b[i]);
+                else result.addLessThanConstraint(indexes, a[i].clone(), b[i]);
+            }
+            result.setMaximize(maximize);
+            return result;
+        }
+
+        boolean feasible(int[] x) {
+            for (int i = 0; i < a.length; ++i) {
+                double lhs = 0;
+                for (int j = 0; j < x.length; ++j) lhs += a[i][j] * x[j];
+                if (greaterThan[i] ? lhs < b[i] - tolerance : lhs > b[i] + tolerance)
+                    return false;
+            }
+            return true;
+        }
+
+        double value(int[] x) {
+            double result = 0;
+            for (int j = 0; j < x.length; ++j) result += objective[j] * x[j];
+            return result;
+        }
+
+        /** Returns the optimal objective value, or <code>null</code> if infeasible. */
+        Double bruteForce() {
+            int n = objective.length;
+            Double best = null;
+            int[] x = new int[n];
+            for (int bits = 0; bits < 1 << n; ++bits) {
+                for (int j = 0; j < n; ++j) x[j] = (bits >> j) & 1;
+                if (!feasible(x)) continue;
+                double v = value(x);
+                if (best == null || (maximize ? v > best : v < best)) best = v;
+            }
+            return best;
+        }
+    }
+
+    static int[] solution(BalasHook hook, int variables) {
+        int[] result = new int[variables];
+        for (int j = 0; j < variables; ++j)
+            result[j] = hook.getBooleanValue(j) ? 1 : 0;
+        return result;
+    }
+
+    /**
+     * Test that the solver finds the optimum of random problems, and that the
+     * values of the variables it reports, including those it negated while
+     * searching, are feasible and attain that optimum
+     */
+    @Test
+    public void testMatchesExhaustiveSearch() throws Exception {
+        Random random = new Random(23);
+        int solved = 0;
+
+        for (int t = 0; t < 300; ++t) {
+            Problem problem = new Problem(random, 8, 1 + random.nextInt(4));
+            Double expected = problem.bruteForce();
+            BalasHook hook = problem.newHook();
+            boolean result = hook.solve();
+
+            assertEquals("problem " + t, expected != null, result);
+            if (!result) continue;
+            ++solved;
+
+            assertEquals("problem " + t, expected, hook.objectiveValue(), tolerance);
+            int[] x = solution(hook, problem.objective.length);
+            assertTrue("problem " + t, problem.feasible(x));
+            assertEquals("problem " + t, expected, problem.value(x), tolerance);
+        }
+
+        assertTrue(solved > 100);
+    }
+
+    /**
+     * Solves the problem sequentially and in parallel at several split depths,
+     * and checks that every search picks the same solution
+     */
+    static void assertParallelMatchesSequential(String message, Problem problem)
+            throws Exception {
+        int n = problem.objective.length;
+        BalasHook sequential = problem.newHook();
+        boolean expected = sequential.solve();
+
+        for (int depth = 1; depth <= 3; ++depth) {
+            BalasHook parallel = problem.newHook();
+            parallel.setParallel(true);
+            parallel.setSplitDepth(depth);
+            String m = message + " at split depth " + depth;
+
+            assertEquals(m, expected, parallel.solve());
+            if (!expected) continue;
+            assertEquals(m, sequential.objectiveValue(), parallel.objectiveValue(), 0);
+            assertArrayEquals(m, solution(sequential, n), solution(parallel, n));
+        }
+    }
+
+    /**
+     * Test that a parallel search finds the same optimum as the sequential
+     * search, and breaks ties between optimal solutions the same way
+     */
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        Random random = new Random(29);
+        for (int t = 0; t < 200; ++t)
+            assertParallelMatchesSequential("problem " + t,
+                    new Problem(random, 10, 1 + random.nextInt(4)));
+    }
+
+    /**
+     * Test that a parallel search solves the problems in
+     * <code>JalgoHookTest</code> the same way as the sequential search: two
+     * variables with <code>x0 + 2 x1</code> between two bounds, minimized or
+     * maximized
+     */
+    @Test
+    public void testParallelSolvesJalgoHookProblems() throws Exception {
+        double[][] objectives = { {-1, -1}, {1.5, 1.5}, {1.5, 2.5} };
+        double[][] ranges = { {-3, 4}, {1, 4}, {1, 2} };
+
+        for (double[] objective : objectives)
+            for (double[] range : ranges)
+                for (int d = 0; d < 2; ++d) {
+                    Problem problem = new Problem(objective, d == 1,
+                            new double[][]{ {1, 2}, {1, 2} }, range, new boolean[]{ true, false });
+                    assertParallelMatchesSequential(
+                            Arrays.toString(objective) + " in "
+                            + Arrays.toString(range), problem);
+                }
+    }
+
+    /**
+     * Test that the values reported for variables negated during the search
+     * are flipped back: maximizing positive coefficients negates them all
+     */
+    @Test
+    public void testNegatedVariablesAreRestored() throws Exception {
+        BalasHook hook = new BalasHook();
+        int[] indexes = { hook.addBooleanVariable(1.5), hook.addBooleanVariable(2.5) };
+        hook.addLessThanConstraint(indexes, new double[]{ 1, 2 }, 2);
+        hook.setMaximize(true);
+
+        assertTrue(hook.solve());
+        assertEquals(2.5, hook.objectiveValue(), 0);
+        assertFalse(hook.getBooleanValue(0));
+        assertTrue(hook.getBooleanValue(1));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.BatchInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.Inference;
+import edu.illinois.cs.cogcomp.lbjava.infer.InferenceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>BatchInference</code>
+ */
+public class BatchInferenceTest {
+
+    static final ScriptedLearner learner = ILPTemplateTest.learner;
+
+    /**
+     * The inference of <code>ILPTemplateTest</code>, with the constructor
+     * <code>BatchInference</code> calls
+     */
+    public static class TokenInference extends ILPTemplateTest.TokenInference {
+        public TokenInference(Object[] head) {
+            super(head, 0, false);
+        }
+    }
+
+    static final String name = TokenInference.class.getName();
+
+    List heads;
+
+    @Before
+    public void setUp() {
+        ILPInference.clearTemplates();
+        InferenceManager.clear();
+
+        Random random = new Random(59);
+        heads = new ArrayList();
+        for (int h = 0; h < 3 * InferenceManager.defaultCapacity; ++h)
+            heads.add(ILPTemplateTest.newHead(random, 4));
+    }
+
+    @After
+    public void tearDown() {
+        InferenceManager.clear();
+    }
+
+    /**
+     * Test that every head of a batch larger than the cache's capacity gets
+     * the solution of its own inference, both from the returned objects and
+     * from the calling thread's cache
+     */
+    @Test
+    public void testBatchLargerThanCapacity() throws Exception {
+        InferenceManager.Scope scope = InferenceManager.beginScope();
+        try {
+            Inference[] result = new BatchInference(TokenInference.class, 3).infer(heads);
+            assertEquals(heads.size(), result.length);
+
+            for (int h = 0; h < heads.size(); ++h) {
+                Object[] head = (Object[]) heads.get(h);
+                String[] expected = ILPTemplateTest.solve(head, 0, false);
+                assertSame(head, result[h].getHead());
+                assertSame(result[h], InferenceManager.get(name, head));
+                for (int i = 0; i < head.length; ++i)
+                    assertEquals(expected[i], result[h].valueOf(learner, head[i]));
+            }
+        } finally {
+            scope.close();
+        }
+
+        assertNull(InferenceManager.get(name, heads.get(0)));
+    }
+
+    /**
+     * Test that only the scope the batch ran in is enlarged, and only until
+     * it is closed
+     */
+    @Test
+    public void testScopeReleasesBatch() throws Exception {
+        InferenceManager.Scope scope = InferenceManager.beginScope();
+        try {
+            new BatchInference(TokenInference.class, 2).infer(heads);
+            assertEquals(heads.size(), InferenceManager.size());
+        } finally {
+            scope.close();
+        }
+
+        for (int h = 0; h < heads.size(); ++h)
+            InferenceManager.put(name, new TokenInference((Object[]) heads.get(h)));
+        assertEquals(InferenceManager.getCapacity(), InferenceManager.size());
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.DualDecompositionInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.OJalgoHook;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>DualDecompositionInference</code>
+ */
+public class DualDecompositionInferenceTest {
+
+    static final String[] values = ILPTemplateTest.values;
+    static final ScriptedLearner learner = ILPTemplateTest.learner;
+
+    /**
+     * Requires at least one token of a head to be labeled "A", and at most
+     * one if <code>exactlyOne</code> is set
+     */
+    static class TokenInference extends DualDecompositionInference {
+        TokenInference(Object[] head, boolean exactlyOne, int maxIterations) {
+            super(head, new OJalgoHook(), maxIterations);
+
+            FirstOrderConstraint c = isA(head[0]);
+            for (int i = 1; i < head.length; ++i)
+                c = new FirstOrderDisjunction(c, isA(head[i]));
+
+            if (exactlyOne)
+                for (int i = 0; i < head.length; ++i)
+                    for (int j = i + 1; j < head.length; ++j)
+                        c = new FirstOrderConjunction(c, new FirstOrderNegation(
+                                new FirstOrderConjunction(isA(head[i]), isA(head[j]))));
+            addConstraint(c);
+        }
+
+        static FirstOrderConstraint isA(Object token) {
+            return ILPTemplateTest.TokenInference.equals(token, "A");
+        }
+
+        public String getHeadType() {
+            return "java.lang.Object[]";
+        }
+    }
+
+    static Object[] newHead(double[][] scores) {
+        Object[] result = new Object[scores.length];
+        for (int i = 0; i < scores.length; ++i) {
+            result[i] = new Object();
+            learner.setScores(result[i], scores[i]);
+        }
+        return result;
+    }
+
+    static String[] labels(ILPInference inference, Object[] head) throws Exception {
+        String[] result = new String[head.length];
+        for (int i = 0; i < head.length; ++i)
+            result[i] = inference.valueOf(learner, head[i]);
+        return result;
+    }
+
+    /** Returns the best labels with at least one, or exactly one, "A". */
+    static String[] bruteForce(double[][] scores, boolean exactlyOne) {
+        int n = scores.length;
+        int[] labels = new int[n];
+        int[] best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int k = 0, total = (int) Math.pow(values.length, n); k < total; ++k) {
+            int as = 0;
+            double score = 0;
+            for (int i = 0, r = k; i < n; ++i, r /= values.length) {
+                labels[i] = r % values.length;
+                if (labels[i] == 0) ++as;
+                score += scores[i][labels[i]];
+            }
+            if (as == 0 || exactlyOne && as > 1) continue;
+            if (score > bestScore) {
+                best = labels.clone();
+                bestScore = score;
+            }
+        }
+
+        String[] result = new String[n];
+        for (int i = 0; i < n; ++i) result[i] = values[best[i]];
+        return result;
+    }
+
+    @Before
+    public void setUp() {
+        ILPInference.clearTemplates();
+        DualDecompositionInference.resetStatistics();
+    }
+
+    /**
+     * Test that predictions that already satisfy the constraints are
+     * certified optimal by the first iteration
+     */
+    @Test
+    public void testSatisfiedPredictionsAreCertified() throws Exception {
+        double[][] scores = { { 0.2, 0.5, 0.1 }, { 0.7, 0.1, 0.3 } };
+        Object[] head = newHead(scores);
+        TokenInference inference = new TokenInference(head, true, 100);
+
+        assertArrayEquals(new String[]{ "B", "A" }, labels(inference, head));
+        assertTrue(inference.isCertified());
+        assertEquals(1, inference.getIterations());
+        assertEquals(0, DualDecompositionInference.getFallbacks());
+    }
+
+    /**
+     * Test that the subgradient search raises the scores of "A" until the
+     * token that loses least by it switches, which certifies the solution
+     */
+    @Test
+    public void testSubgradientReachesCertificate() throws Exception {
+        // the first token gives up less than the second by being labeled "A"
+        double[][] scores = { { 0.2, 0.5, 0.1 }, { 0.1, 0.9, 0.3 } };
+        Object[] head = newHead(scores);
+        TokenInference inference = new TokenInference(head, false, 100);
+
+        assertArrayEquals(new String[]{ "A", "B" }, labels(inference, head));
+        assertTrue(inference.isCertified());
+        assertTrue(inference.getIterations() > 1);
+        assertEquals(0, DualDecompositionInference.getFallbacks());
+    }
+
+    /**
+     * Test that the ILP solver finds the optimum when the iterations run out
+     * before a certificate is found
+     */
+    @Test
+    public void testFallbackWithoutCertificate() throws Exception {
+        double[][] scores = { { 0.2, 0.5, 0.1 }, { 0.1, 0.9, 0.3 } };
+        Object[] head = newHead(scores);
+        TokenInference inference = new TokenInference(head, false, 1);
+
+        assertArrayEquals(new String[]{ "A", "B" }, labels(inference, head));
+        assertFalse(inference.isCertified());
+        assertEquals(1, inference.getIterations());
+        assertEquals(1, DualDecompositionInference.getFallbacks());
+    }
+
+    /**
+     * Test that certified and fallback solutions alike are optimal when
+     * exactly one token must be labeled "A"
+     */
+    @Test
+    public void testMatchesExhaustiveSearch() throws Exception {
+        Random random = new Random(43);
+        int problems = 40;
+
+        for (int t = 0; t < problems; ++t) {
+            double[][] scores = new double[2 + random.nextInt(4)][values.length];
+            for (int i = 0; i < scores.length; ++i)
+                for (int a = 0; a < values.length; ++a)
+                    scores[i][a] = random.nextDouble();
+            Object[] head = newHead(scores);
+
+            TokenInference inference = new TokenInference(head, true, 100);
+            assertArrayEquals("problem " + t, bruteForce(scores, true), labels(inference, head));
+        }
+
+        assertEquals(problems, DualDecompositionInference.getSolves());
+        assertTrue(DualDecompositionInference.getFallbacks() < problems);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.IR.AST;
+import edu.illinois.cs.cogcomp.lbjava.IR.LearningClassifierExpression;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.frontend.Yylex;
+import edu.illinois.cs.cogcomp.lbjava.frontend.parser;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>ExampleCache</code>
+ */
+public class ExampleCacheTest {
+
+    /* the learner is declared once, since its name can't be declared again */
+    static File input;
+    static LearningClassifierExpression lce;
+    File directory;
+
+    static void write(File file, String contents) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) delete(child);
+        file.delete();
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Main.fileNames = new HashSet<>();
+        Main.generatedSourceDirectory = "target/test-classes/lbj";
+        Main.classDirectory = "target/test-classes";
+        Main.classPackageDirectory = "target/test-classes/lbj";
+        Main.sourceDirectory = "target/test-classes/lbj";
+
+        input = File.createTempFile("examples", ".train");
+        String script = "import java.util.Vector;\n" +
+                "import edu.illinois.cs.cogcomp.lbjava.VectorParser;\n" +
+                "import edu.illinois.cs.cogcomp.lbjava.features.PredefinedFeature;\n" +
+                "import edu.illinois.cs.cogcomp.lbjava.PredefinedLabel;\n" +
+                "\n" +
+                "discrete CachedLearner(Vector v) <-\n" +
+                "learn PredefinedLabel\n" +
+                "\tusing testFeature1\n" +
+                "\tfrom new VectorParser(\"" + input.getPath().replace("\\", "\\\\") + "\")\n" +
+                "\twith new NaiveBayes()\n" +
+                "end";
+        AST ast = (AST) new parser(new Yylex(new ByteArrayInputStream(script.getBytes()))).parse().value;
+        Main.runSemanticAnalysis(ast);
+        lce = (LearningClassifierExpression) ast.declarations.iterator().next().iterator().children[2];
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        input.delete();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        write(input, "0(1.0), 1(0.5)\n");
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        Main.exampleCacheDirectory = directory.getPath();
+        ExampleCache.clearInputDigests();
+    }
+
+    @After
+    public void tearDown() {
+        Main.exampleCacheDirectory = null;
+        ExampleCache.clearInputDigests();
+        delete(directory);
+    }
+
+    /**
+     * Test that the key changes with the contents of the parser's input, but
+     * that an input is only read once per build
+     */
+    @Test
+    public void testKeyFollowsInputs() throws Exception {
+        String key = ExampleCache.getKey(lce, false);
+        assertEquals(key, ExampleCache.getKey(lce, false));
+        assertFalse(key.equals(ExampleCache.getKey(lce, true)));
+
+        // same length, different contents
+        write(input, "0(2.0), 1(0.5)\n");
+        assertEquals(key, ExampleCache.getKey(lce, false));
+        ExampleCache.clearInputDigests();
+        String changed = ExampleCache.getKey(lce, false);
+        assertFalse(key.equals(changed));
+
+        write(input, "0(1.0), 1(0.5)\n");
+        assertEquals(changed, ExampleCache.getKey(lce, false));
+        ExampleCache.clearInputDigests();
+        assertEquals(key, ExampleCache.getKey(lce, false));
+    }
+
+    /**
+     * Test that stored examples are retrieved under their own key, both in
+     * memory and copied to a file, and that other keys miss
+     */
+    @Test
+    public void testStoreAndRetrieve() throws Exception {
+        String key = ExampleCache.getKey(lce, false);
+        assertNull(ExampleCache.retrieve(key, null));
+
+        Lexicon lexicon = new Lexicon();
+        lexicon.lookup(new DiscretePrimitiveStringFeature("", "f", "", "true", (short) 0, (short) 0), true);
+        Lexicon labels = new Lexicon();
+        byte[] examples = { 1, 2, 3, 5, 8 };
+        ExampleCache.store(key, null, examples, lexicon, labels);
+
+        Object[] cached = ExampleCache.retrieve(key, null);
+        assertNotNull(cached);
+        assertEquals(1, ((Lexicon) cached[0]).size());
+        assertEquals(0, ((Lexicon) cached[1]).size());
+        assertArrayEquals(examples, (byte[]) cached[2]);
+
+        File copy = File.createTempFile("examples", ".ex");
+        try {
+            cached = ExampleCache.retrieve(key, copy.getPath());
+            assertNotNull(cached);
+            assertNull(cached[2]);
+            assertEquals(examples.length, copy.length());
+        } finally {
+            copy.delete();
+        }
+
+        write(input, "0(2.0), 1(0.5)\n");
+        ExampleCache.clearInputDigests();
+        assertNull(ExampleCache.retrieve(ExampleCache.getKey(lce, false), null));
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureExtractionContext;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>FeatureExtractionContext</code>
+ */
+public class FeatureExtractionContextTest {
+
+    /** A hand-written classifier with a parameter, counting its calls. */
+    static class Threshold extends Classifier {
+        final double threshold;
+        int calls;
+
+        Threshold(double threshold) {
+            this.threshold = threshold;
+            containingPackage = "";
+            name = "Threshold";
+        }
+
+        public String getOutputType() { return "discrete"; }
+
+        public Feature featureValue(Object o) {
+            ++calls;
+            String value = "" + ((Double) o > threshold);
+            return new DiscretePrimitiveStringFeature(containingPackage, name, "", value, (short) 0, (short) 0);
+        }
+
+        public FeatureVector classify(Object o) {
+            ++calls;
+            return new FeatureVector(new DiscretePrimitiveStringFeature(containingPackage, name, "",
+                    "" + ((Double) o > threshold), (short) 0, (short) 0));
+        }
+    }
+
+    /** A classifier like the generated ones, equal to its whole class. */
+    static class Generated extends Threshold {
+        Generated() { super(0.5); }
+
+        public int hashCode() { return "Generated".hashCode(); }
+        public boolean equals(Object o) { return o instanceof Generated; }
+    }
+
+    /** A learner counting the times it's asked for features. */
+    static class CountingLearner extends ScriptedLearner {
+        int calls;
+
+        CountingLearner() { super("CountingLearner", new String[]{ "A", "B" }); }
+
+        public FeatureVector classify(Object o) {
+            ++calls;
+            return new FeatureVector();
+        }
+    }
+
+    FeatureExtractionContext context;
+
+    @Before
+    public void setUp() {
+        FeatureExtractionContext.resetStatistics();
+        context = FeatureExtractionContext.begin();
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+        assertNull(FeatureExtractionContext.current());
+    }
+
+    /**
+     * Test that features are extracted once per classifier, example and
+     * method, and that the hits and misses are counted
+     */
+    @Test
+    public void testHitsAndMisses() {
+        Threshold t = new Threshold(0.5);
+        Double x = 0.7;
+        Double y = 0.2;
+
+        FeatureVector v = FeatureExtractionContext.classify(t, x);
+        assertSame(v, FeatureExtractionContext.classify(t, x));
+        Feature f = FeatureExtractionContext.featureValue(t, x);
+        assertSame(f, FeatureExtractionContext.featureValue(t, x));
+        assertNotSame(v, FeatureExtractionContext.classify(t, y));
+        assertEquals(3, t.calls);
+
+        assertEquals(2, context.getHits());
+        assertEquals(3, context.getMisses());
+        assertEquals(2, context.getHits(Threshold.class.getName()));
+        assertEquals(3, context.getMisses(Threshold.class.getName()));
+        assertEquals(0.4, context.getHitRate(), 1e-12);
+        assertEquals(2, context.size());
+    }
+
+    /**
+     * Test that instances of a class with parameters are told apart, while
+     * the instances of a generated classifier share their features
+     */
+    @Test
+    public void testClassifierKeys() {
+        Threshold low = new Threshold(0.1);
+        Threshold high = new Threshold(0.9);
+        Double x = 0.5;
+        assertEquals("true", FeatureExtractionContext.classify(low, x).getFeature(0).getStringValue());
+        assertEquals("false", FeatureExtractionContext.classify(high, x).getFeature(0).getStringValue());
+        assertEquals(1, low.calls);
+        assertEquals(1, high.calls);
+
+        Generated first = new Generated();
+        Generated second = new Generated();
+        FeatureVector v = FeatureExtractionContext.classify(first, x);
+        assertSame(v, FeatureExtractionContext.classify(second, x));
+        assertEquals(1, first.calls);
+        assertEquals(0, second.calls);
+    }
+
+    /**
+     * Test that a context's features are only seen by the requests made in
+     * it on its own thread, and that they're gone once it's closed
+     */
+    @Test
+    public void testContextsAreIsolated() throws Exception {
+        final Threshold t = new Threshold(0.5);
+        final Double x = 0.7;
+        FeatureVector v = FeatureExtractionContext.classify(t, x);
+
+        FeatureExtractionContext nested = FeatureExtractionContext.begin();
+        assertSame(nested, FeatureExtractionContext.current());
+        assertNotSame(v, FeatureExtractionContext.classify(t, x));
+        nested.close();
+        assertSame(context, FeatureExtractionContext.current());
+        assertSame(v, FeatureExtractionContext.classify(t, x));
+        assertEquals(2, t.calls);
+
+        final Object[] seen = new Object[2];
+        Thread other = new Thread() {
+            public void run() {
+                seen[0] = FeatureExtractionContext.current();
+                seen[1] = FeatureExtractionContext.classify(t, x);
+                try {
+                    context.close();
+                } catch (IllegalStateException e) {
+                    seen[0] = e;
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertTrue(seen[0] instanceof IllegalStateException);
+        assertNotSame(v, seen[1]);
+        assertEquals(3, t.calls);
+
+        context.close();
+        assertNull(FeatureExtractionContext.current());
+        assertEquals(1, FeatureExtractionContext.getTotalHits());
+        assertEquals(2, FeatureExtractionContext.getTotalMisses());
+        FeatureExtractionContext.classify(t, x);
+        FeatureExtractionContext.classify(t, x);
+        assertEquals(5, t.calls);
+    }
+
+    /** Test that the features of learners are never remembered. */
+    @Test
+    public void testLearnersAreNotRemembered() {
+        CountingLearner learner = new CountingLearner();
+        Double x = 0.7;
+        FeatureExtractionContext.classify(learner, x);
+        FeatureExtractionContext.classify(learner, x);
+        assertEquals(2, learner.calls);
+        assertEquals(0, context.getHits() + context.getMisses());
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.features.PredefinedFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>Learner.freeze()</code>
+ */
+public class FrozenLearnerTest {
+
+    static final int numExamples = 300;
+
+    /* examples whose label and features all follow their first element */
+    Vector[] examples;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(67);
+        examples = new Vector[numExamples];
+        for (int i = 0; i < numExamples; ++i) {
+            Vector example = new Vector();
+            double x = random.nextDouble();
+            example.add(x);
+            for (int j = 0; j < 100; ++j)
+                example.add(random.nextInt(4) == 0 ? random.nextDouble() : x);
+            examples[i] = example;
+        }
+    }
+
+    static SparseNetworkLearner newLearner() {
+        SparseNetworkLearner result = new SparseNetworkLearner("frozen");
+        result.setExtractor(new PredefinedFeature(0.5));
+        result.setLabeler(new PredefinedLabel());
+        return result;
+    }
+
+    SparseNetworkLearner train() {
+        SparseNetworkLearner result = newLearner();
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < numExamples; ++i) result.learn(examples[i]);
+            result.doneWithRound();
+        }
+        result.doneLearning();
+        return result;
+    }
+
+    static void assertRejected(Runnable mutation) {
+        try {
+            mutation.run();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("'frozen' is frozen"));
+        }
+    }
+
+    /**
+     * Test that everything that would change a frozen learner's model throws
+     * an exception, and leaves its predictions as they were
+     */
+    @Test
+    public void testFrozenRejectsMutation() {
+        final SparseNetworkLearner learner = train();
+        String[] expected = new String[numExamples];
+        for (int i = 0; i < numExamples; ++i) expected[i] = learner.discreteValue(examples[i]);
+
+        final Object[] array = learner.getExampleArray(examples[0], true);
+        assertFalse(learner.isFrozen());
+        learner.freeze();
+        assertTrue(learner.isFrozen());
+        learner.freeze();
+        assertTrue(learner.isFrozen());
+
+        final FeatureVector vector = learner.getExtractor().classify(examples[0]);
+        vector.addLabels(learner.getLabeler().classify(examples[0]));
+
+        assertRejected(new Runnable() {
+            public void run() { learner.learn(examples[0]); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.learn((Object[]) examples); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.learn(vector); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.getExampleArray(examples[0], true); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.forget(); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.setLabelLexicon(new Lexicon()); }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                learner.learn((int[]) array[0], (double[]) array[1], (int[]) array[2], (double[]) array[3]);
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.initialize(numExamples, 100); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.doneWithRound(); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.doneLearning(); }
+        });
+        assertRejected(new Runnable() {
+            public void run() { learner.setParameters(learner.getParameters()); }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                learner.read(new ExceptionlessInputStream(new ByteArrayInputStream(new byte[0])));
+            }
+        });
+
+        assertTrue(learner.getExtractor() instanceof PredefinedFeature);
+        assertTrue(learner.getLabeler() instanceof PredefinedLabel);
+        for (int i = 0; i < numExamples; ++i)
+            assertEquals("example " + i, expected[i], learner.discreteValue(examples[i]));
+    }
+
+    /**
+     * Test that threads sharing a frozen learner, whose lexicon was to be
+     * read on demand, all make the same predictions as a learner used by one
+     * thread, and that classifying adds nothing to its lexicons
+     */
+    @Test
+    public void testFrozenClassifiesConcurrently() throws Exception {
+        SparseNetworkLearner trained = train();
+        final String[] expected = new String[numExamples];
+        final double[] expectedScores = new double[numExamples];
+        for (int i = 0; i < numExamples; ++i) {
+            expected[i] = trained.discreteValue(examples[i]);
+            expectedScores[i] = trained.scores(examples[i]).get(expected[i]);
+        }
+
+        File model = File.createTempFile("frozen", ".lc");
+        File lexicon = File.createTempFile("frozen", ".lex");
+        model.deleteOnExit();
+        lexicon.deleteOnExit();
+        trained.write(model.getPath(), lexicon.getPath());
+
+        // the extractor's threshold isn't saved
+        final Learner shared = Learner.readLearner(model.getPath());
+        shared.setExtractor(new PredefinedFeature(0.5));
+        shared.readLexiconOnDemand(lexicon.getPath());
+        shared.freeze();
+
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+            final int offset = t * numExamples / threads.length;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int round = 0; round < 5; ++round) {
+                            for (int k = 0; k < numExamples; ++k) {
+                                int i = (offset + k) % numExamples;
+                                assertEquals("example " + i, expected[i],
+                                        shared.discreteValue(examples[i]));
+                                ScoreSet scores = shared.scores(examples[i]);
+                                assertEquals("example " + i, expectedScores[i],
+                                        scores.get(expected[i]), 1e-12);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) { failures.add(e); }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(failures.toString(), 0, failures.size());
+        assertEquals(trained.getLexicon().size(), shared.getLexicon().size());
+        assertEquals(trained.getLabelLexicon().size(), shared.getLabelLexicon().size());
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderEqualityWithValue;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.OJalgoHook;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalConstraint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the templates with which <code>ILPInference</code> reuses the
+ * translation of constraints across heads
+ */
+public class ILPTemplateTest {
+
+    static final String[] values = { "A", "B", "C" };
+    static final ScriptedLearner learner = new ScriptedLearner("label", values);
+
+    /**
+     * Labels each token of a head under some constraints: at least one and at
+     * most one token is labeled "A", and one of two implications between the
+     * first two tokens' labels holds
+     */
+    static class TokenInference extends ILPInference {
+        /* the number of times constraints were translated with templates enabled */
+        static int translations;
+
+        final boolean templates;
+
+        TokenInference(Object[] head, int variant, boolean templates) {
+            super(head, new OJalgoHook());
+            this.templates = templates;
+
+            FirstOrderConstraint some = equals(head[0], "A");
+            for (int i = 1; i < head.length; ++i)
+                some = new FirstOrderDisjunction(some, equals(head[i], "A"));
+            FirstOrderConstraint c = some;
+
+            for (int i = 0; i < head.length; ++i)
+                for (int j = i + 1; j < head.length; ++j)
+                    c = new FirstOrderConjunction(c, new FirstOrderNegation(
+                            new FirstOrderConjunction(equals(head[i], "A"), equals(head[j], "A"))));
+
+            if (variant == 0)
+                c = new FirstOrderConjunction(c, new FirstOrderImplication(
+                        equals(head[0], "B"), new FirstOrderNegation(equals(head[1], "C"))));
+            else
+                c = new FirstOrderConjunction(c, new FirstOrderImplication(
+                        equals(head[0], "C"), equals(head[1], "C")));
+            addConstraint(c);
+        }
+
+        static FirstOrderConstraint equals(Object token, String value) {
+            return new FirstOrderEqualityWithValue(true, new FirstOrderVariable(learner, token), value);
+        }
+
+        public String getHeadType() {
+            return "java.lang.Object[]";
+        }
+
+        protected boolean translate(PropositionalConstraint propositional) {
+            if (templates) ++translations;
+            return super.translate(propositional);
+        }
+
+        protected Object getTemplateSignature(String[][] values) {
+            return templates ? super.getTemplateSignature(values) : null;
+        }
+
+        /* the approximate number of bytes all templates take */
+        static long templatesBytes() {
+            synchronized (ILPInference.templates) { return templatesSize; }
+        }
+    }
+
+    static Object[] newHead(Random random, int length) {
+        Object[] result = new Object[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = new Object();
+            learner.setScores(result[i],
+                    new double[]{ random.nextDouble(), random.nextDouble(), random.nextDouble() });
+        }
+        return result;
+    }
+
+    static String[] solve(Object[] head, int variant, boolean templates) throws Exception {
+        TokenInference inference = new TokenInference(head, variant, templates);
+        String[] result = new String[head.length];
+        for (int i = 0; i < head.length; ++i)
+            result[i] = inference.valueOf(learner, head[i]);
+        return result;
+    }
+
+    @Before
+    public void setUp() {
+        ILPInference.clearTemplates();
+        ILPInference.setTemplateBytes(1 << 20);
+        TokenInference.translations = 0;
+    }
+
+    @After
+    public void tearDown() {
+        ILPInference.setTemplateBytes(ILPInference.defaultTemplateBytes);
+        ILPInference.clearTemplates();
+    }
+
+    /**
+     * Test that replaying a template gives the same solutions as inference
+     * from scratch, and that heads with the same structure translate their
+     * constraints only once
+     */
+    @Test
+    public void testReplayMatchesFreshInference() throws Exception {
+        Random random = new Random(11);
+        for (int h = 0; h < 20; ++h) {
+            Object[] head = newHead(random, 5);
+            assertArrayEquals(solve(head, 0, false), solve(head, 0, true));
+        }
+
+        assertEquals(1, TokenInference.translations);
+    }
+
+    /**
+     * Test that heads with the same variables but different constraints
+     * don't replay each other's templates
+     */
+    @Test
+    public void testDifferentConstraintsAreTranslated() throws Exception {
+        Random random = new Random(13);
+        for (int h = 0; h < 10; ++h) {
+            Object[] head = newHead(random, 4);
+            int variant = h % 2;
+            assertArrayEquals(solve(head, variant, false), solve(head, variant, true));
+        }
+
+        assertEquals(2, TokenInference.translations);
+    }
+
+    /**
+     * Test that heads of different lengths get templates of their own
+     */
+    @Test
+    public void testDifferentLengths() throws Exception {
+        Random random = new Random(17);
+        for (int h = 0; h < 12; ++h) {
+            Object[] head = newHead(random, 3 + h % 3);
+            assertArrayEquals(solve(head, 0, false), solve(head, 0, true));
+        }
+
+        assertEquals(3, TokenInference.translations);
+    }
+
+    /**
+     * Test that templates are only used once they have been given memory
+     */
+    @Test
+    public void testTemplatesAreOptIn() throws Exception {
+        ILPInference.setTemplateBytes(ILPInference.defaultTemplateBytes);
+        Random random = new Random(19);
+        for (int h = 0; h < 5; ++h) {
+            Object[] head = newHead(random, 4);
+            assertArrayEquals(solve(head, 0, false), solve(head, 0, true));
+        }
+
+        assertEquals(5, TokenInference.translations);
+    }
+
+    /**
+     * Test that the least recently used templates are evicted to stay
+     * within the memory they were given
+     */
+    @Test
+    public void testTemplatesStayWithinBytes() throws Exception {
+        Random random = new Random(23);
+        solve(newHead(random, 4), 0, true);
+        solve(newHead(random, 4), 1, true);
+        assertEquals(2, TokenInference.translations);
+        solve(newHead(random, 4), 0, true);
+        solve(newHead(random, 4), 1, true);
+        assertEquals(2, TokenInference.translations);
+
+        // room for one of the two templates only
+        long both = TokenInference.templatesBytes();
+        ILPInference.setTemplateBytes(both * 3 / 4);
+        assertTrue(TokenInference.templatesBytes() <= both * 3 / 4);
+        TokenInference.translations = 0;
+        for (int h = 0; h < 8; ++h) {
+            Object[] head = newHead(random, 4);
+            int variant = h / 2 % 2;
+            assertArrayEquals(solve(head, variant, false), solve(head, variant, true));
+        }
+        // each change of variant evicts the other's template
+        assertEquals(4, TokenInference.translations);
+    }
+}
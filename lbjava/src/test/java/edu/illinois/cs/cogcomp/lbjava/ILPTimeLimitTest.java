@@ -0,0 +1,182 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.Score;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.OJalgoHook;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalConstraint;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Normalizer;
+import org.junit.Before;
+import org.junit.Test;
+import org.ojalgo.optimisation.ExpressionsBasedModel;
+import org.ojalgo.optimisation.Optimisation;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the time limit of <code>ILPInference</code>
+ */
+public class ILPTimeLimitTest {
+
+    static final ScriptedLearner learner = ILPTemplateTest.learner;
+
+    /**
+     * The inference of <code>ILPTemplateTest</code>, with scores that take a
+     * while to normalize
+     */
+    static class SlowInference extends ILPTemplateTest.TokenInference {
+        /* the number of times constraints were translated */
+        static int translations;
+
+        SlowInference(Object[] head) {
+            super(head, 0, false);
+        }
+
+        public Normalizer getNormalizer(Learner c) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getNormalizer(c);
+        }
+
+        protected boolean translate(PropositionalConstraint propositional) {
+            ++translations;
+            return super.translate(propositional);
+        }
+    }
+
+    /**
+     * The slow inference, with a normalizer that reverses the order of the
+     * scores
+     */
+    static class ReversedInference extends SlowInference {
+        ReversedInference(Object[] head) {
+            super(head);
+        }
+
+        public Normalizer getNormalizer(Learner c) {
+            super.getNormalizer(c);
+            return new Normalizer() {
+                public ScoreSet normalize(ScoreSet scores) {
+                    Score[] array = scores.toArray();
+                    for (int i = 0; i < array.length; ++i) array[i].score = -array[i].score;
+                    return scores;
+                }
+            };
+        }
+    }
+
+    /* every token prefers "A", but the constraints allow only one */
+    Object[] head;
+
+    @Before
+    public void setUp() {
+        ILPInference.clearTemplates();
+        SlowInference.translations = 0;
+
+        head = new Object[3];
+        for (int i = 0; i < head.length; ++i) {
+            head[i] = new Object();
+            learner.setScores(head[i], new double[]{ 0.9, 0.5 - 0.1 * i, 0.1 });
+        }
+    }
+
+    static int count(SlowInference inference, Object[] head, String value) throws Exception {
+        int result = 0;
+        for (int i = 0; i < head.length; ++i)
+            if (inference.valueOf(learner, head[i]).equals(value)) ++result;
+        return result;
+    }
+
+    /**
+     * Test that running out of time while the problem is being built stops
+     * building it and falls back on the highest scoring predictions
+     */
+    @Test
+    public void testDeadlineDuringBuild() throws Exception {
+        SlowInference inference = new SlowInference(head);
+        inference.setTimeLimit(5);
+
+        assertEquals(head.length, count(inference, head, "A"));
+        assertFalse(inference.isOptimal());
+        assertEquals(0, SlowInference.translations);
+    }
+
+    /**
+     * Test that the same problem is solved to optimality without a time limit
+     */
+    @Test
+    public void testNoTimeLimit() throws Exception {
+        SlowInference inference = new SlowInference(head);
+
+        assertEquals(1, count(inference, head, "A"));
+        assertTrue(inference.isOptimal());
+        assertEquals(1, SlowInference.translations);
+    }
+
+    /**
+     * Test that the fallback takes the values with the highest normalized
+     * scores, both for the variables added before time ran out, whose scores
+     * were already normalized, and for the rest
+     */
+    @Test
+    public void testArgmaxUsesNormalizedScores() throws Exception {
+        SlowInference inference = new ReversedInference(head);
+        inference.setTimeLimit(5);
+
+        assertEquals(head.length, count(inference, head, "C"));
+        assertFalse(inference.isOptimal());
+    }
+
+    /* the time limit oJalgo will use on the next solve */
+    static long timeAbort(OJalgoHook hook) throws Exception {
+        Field field = OJalgoHook.class.getDeclaredField("model");
+        field.setAccessible(true);
+        return ((ExpressionsBasedModel) field.get(hook)).options.time_abort;
+    }
+
+    /**
+     * Test that a deadline only limits the solves it was set for, and that a
+     * time limit set by the user outlasts it
+     */
+    @Test
+    public void testSolverTimeLimitIsLifted() throws Exception {
+        long unlimited = new Optimisation.Options().time_abort;
+        OJalgoHook hook = new OJalgoHook();
+        hook.setMaximize(true);
+        int x = hook.addBooleanVariable(1);
+        hook.addLessThanConstraint(new int[]{ x }, new double[]{ 1 }, 1);
+
+        hook.setDeadline(System.currentTimeMillis() + 60000);
+        assertTrue(hook.solve());
+        assertTrue(timeAbort(hook) <= 60000);
+
+        hook.setDeadline(0);
+        hook.addLessThanConstraint(new int[]{ x }, new double[]{ 1 }, 1);
+        assertTrue(hook.solve());
+        assertEquals(unlimited, timeAbort(hook));
+
+        hook.setTimeout(120000);
+        hook.setDeadline(System.currentTimeMillis() + 60000);
+        assertTrue(hook.solve());
+        assertTrue(timeAbort(hook) <= 60000);
+        hook.setDeadline(0);
+        assertTrue(hook.solve());
+        assertEquals(120000, timeAbort(hook));
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.Inference;
+import edu.illinois.cs.cogcomp.lbjava.infer.InferenceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>InferenceManager</code>
+ */
+public class InferenceManagerTest {
+
+    Object[][] heads;
+
+    @Before
+    public void setUp() {
+        InferenceManager.clear();
+        InferenceManager.resetStatistics();
+        Random random = new Random(83);
+        heads = new Object[InferenceManager.defaultCapacity + 1][];
+        for (int h = 0; h < heads.length; ++h) heads[h] = ILPTemplateTest.newHead(random, 2);
+    }
+
+    @After
+    public void tearDown() {
+        InferenceManager.clear();
+    }
+
+    static Inference newInference(Object[] head) {
+        return new BatchInferenceTest.TokenInference(head);
+    }
+
+    /**
+     * Test that each inference name has a capacity of its own, so that
+     * inferences over the same heads don't evict each other
+     */
+    @Test
+    public void testCapacityIsPerName() {
+        int capacity = InferenceManager.getCapacity();
+        Inference[] a = new Inference[capacity];
+        Inference[] b = new Inference[capacity];
+        for (int h = 0; h < capacity; ++h) {
+            InferenceManager.put("a", a[h] = newInference(heads[h]));
+            InferenceManager.put("b", b[h] = newInference(heads[h]));
+        }
+        assertEquals(2 * capacity, InferenceManager.size());
+        assertEquals(0, InferenceManager.getEvictions());
+
+        // uses "a"'s first object, so its second is now the least recent
+        assertSame(a[0], InferenceManager.get("a", heads[0]));
+        InferenceManager.put("a", newInference(heads[capacity]));
+        assertEquals(1, InferenceManager.getEvictions());
+        assertNull(InferenceManager.get("a", heads[1]));
+        assertSame(a[0], InferenceManager.get("a", heads[0]));
+        for (int h = 0; h < capacity; ++h)
+            assertSame(b[h], InferenceManager.get("b", heads[h]));
+
+        InferenceManager.remove("a");
+        assertEquals(capacity, InferenceManager.size());
+        assertNull(InferenceManager.get("a", heads[0]));
+    }
+
+    /**
+     * Test that <code>remove(String)</code> and <code>clear()</code> reach
+     * the cache of another thread
+     */
+    @Test
+    public void testRemoveReachesOtherThreads() throws Exception {
+        final int[] sizes = new int[3];
+        final CountDownLatch filled = new CountDownLatch(1);
+        final CountDownLatch removed = new CountDownLatch(1);
+        final CountDownLatch counted = new CountDownLatch(1);
+        final CountDownLatch cleared = new CountDownLatch(1);
+
+        Thread other = new Thread() {
+            public void run() {
+                try {
+                    InferenceManager.put("a", newInference(heads[0]));
+                    InferenceManager.put("b", newInference(heads[0]));
+                    sizes[0] = InferenceManager.size();
+                    filled.countDown();
+                    removed.await();
+                    sizes[1] = InferenceManager.size();
+                    counted.countDown();
+                    cleared.await();
+                    sizes[2] = InferenceManager.size();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        other.start();
+
+        filled.await();
+        InferenceManager.remove("a");
+        removed.countDown();
+        counted.await();
+        InferenceManager.clear();
+        cleared.countDown();
+        other.join();
+
+        assertEquals(2, sizes[0]);
+        assertEquals(1, sizes[1]);
+        assertEquals(0, sizes[2]);
+    }
+}
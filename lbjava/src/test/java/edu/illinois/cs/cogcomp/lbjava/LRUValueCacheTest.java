@@ -0,0 +1,203 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.LRUValueCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>LRUValueCache</code>
+ */
+public class LRUValueCacheTest {
+
+    /**
+     * With a capacity of 64, each of the 16 segments holds 4 values, and
+     * these keys all fall in the same segment
+     */
+    static Integer key(int i) {
+        return i * LRUValueCache.maxSegments;
+    }
+
+    /**
+     * Test that a full segment evicts its least recently used value, where
+     * both <code>get</code> and <code>put</code> count as uses
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LRUValueCache cache = new LRUValueCache(64);
+        for (int i = 0; i < 4; ++i) cache.put(key(i), "v" + i);
+        assertEquals(0, cache.getEvictions());
+
+        assertEquals("v0", cache.get(key(0)));
+        cache.put(key(1), "w1");
+        cache.put(key(4), "v4");
+
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(key(2)));
+        assertEquals("v0", cache.get(key(0)));
+        assertEquals("w1", cache.get(key(1)));
+        assertEquals("v3", cache.get(key(3)));
+        assertEquals("v4", cache.get(key(4)));
+        assertEquals(4, cache.size());
+    }
+
+    /**
+     * Test that the cache never holds more values than its capacity, and
+     * that the hits, misses, and evictions add up
+     */
+    @Test
+    public void testCapacityBoundsSize() {
+        LRUValueCache cache = new LRUValueCache(100);
+        Random random = new Random(61);
+        int puts = 0;
+
+        for (int t = 0; t < 5000; ++t) {
+            Integer example = random.nextInt(1000);
+            Object value = cache.get(example);
+            if (value == null) {
+                cache.put(example, example * 2);
+                ++puts;
+            } else assertEquals(example * 2, value);
+            assertTrue(cache.size() <= cache.getCapacity());
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(5000, cache.getHits() + cache.getMisses());
+        assertEquals(puts, cache.getMisses());
+        assertEquals(puts - cache.size(), cache.getEvictions());
+    }
+
+    /**
+     * Test that lowering the capacity evicts the values that no longer fit,
+     * keeping the most recently used ones, and that raising it again makes
+     * room for more
+     */
+    @Test
+    public void testSetCapacity() {
+        LRUValueCache cache = new LRUValueCache(64);
+        for (int i = 0; i < 4; ++i) cache.put(key(i), "v" + i);
+        cache.get(key(0));
+
+        cache.setCapacity(32);
+        assertEquals(32, cache.getCapacity());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals("v3", cache.get(key(3)));
+        assertEquals("v0", cache.get(key(0)));
+
+        cache.setCapacity(64);
+        for (int i = 4; i < 6; ++i) cache.put(key(i), "v" + i);
+        assertEquals(4, cache.size());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    /**
+     * Test that a capacity smaller than the number of segments still caches
+     * every example, and that the segments grow back with the capacity
+     */
+    @Test
+    public void testCapacityBelowSegments() {
+        LRUValueCache cache = new LRUValueCache(64);
+        for (int i = 0; i < 64; ++i) cache.put(i, "v" + i);
+
+        cache.setCapacity(1);
+        assertEquals(1, cache.size());
+        assertEquals(63, cache.getEvictions());
+        for (int i = 0; i < LRUValueCache.maxSegments; ++i) {
+            cache.put(i, "w" + i);
+            assertEquals("w" + i, cache.get(i));
+            assertEquals(1, cache.size());
+        }
+
+        // two segments, holding 0 and 2, and 1
+        cache.setCapacity(3);
+        for (int i = 0; i < 3; ++i) cache.put(i, "v" + i);
+        assertEquals(3, cache.size());
+        for (int i = 0; i < 3; ++i) assertEquals("v" + i, cache.get(i));
+
+        cache.setCapacity(64);
+        for (int i = 0; i < 64; ++i) cache.put(i, "v" + i);
+        assertEquals(64, cache.size());
+        for (int i = 0; i < 64; ++i) assertEquals("v" + i, cache.get(i));
+    }
+
+    /**
+     * Test that examples are compared with <code>equals(Object)</code>
+     * rather than by identity
+     */
+    @Test
+    public void testComparesWithEquals() {
+        LRUValueCache cache = new LRUValueCache(10);
+        cache.put(new String("example"), "value");
+        assertEquals("value", cache.get(new String("example")));
+        assertNull(cache.get(new String("other")));
+    }
+
+    /** Test that capacities must be positive. */
+    @Test
+    public void testInvalidCapacity() {
+        try {
+            new LRUValueCache(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+
+        LRUValueCache cache = new LRUValueCache(1);
+        try {
+            cache.setCapacity(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertEquals(1, cache.getCapacity());
+    }
+
+    /**
+     * Test that threads sharing a cache always get back the value cached for
+     * their example and never push it past its capacity
+     */
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final LRUValueCache cache = new LRUValueCache(200);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; ++t) {
+            final Random random = new Random(t);
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; ++i) {
+                            Integer example = random.nextInt(2000);
+                            Object value = cache.get(example);
+                            if (value == null) cache.put(example, example * 2);
+                            else assertEquals(example * 2, value);
+                            assertTrue(cache.size() <= 200);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) { failures.add(e); }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(failures.toString(), 0, failures.size());
+        assertEquals(200, cache.size());
+        assertEquals(threads.length * 20000, cache.getHits() + cache.getMisses());
+    }
+}
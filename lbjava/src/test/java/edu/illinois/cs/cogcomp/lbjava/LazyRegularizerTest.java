@@ -0,0 +1,176 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.LazyRegularizer;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseWeightVector;
+import edu.illinois.cs.cogcomp.lbjava.learn.StochasticGradientDescent;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>LazyRegularizer</code> and the compact weight vectors
+ * it leaves behind
+ */
+public class LazyRegularizerTest {
+
+    static final int numFeatures = 50;
+
+    /**
+     * Applies the same updates to a weight vector regularized lazily and to a
+     * dense array regularized eagerly after every update, and checks that
+     * they end up with the same weights
+     */
+    static void assertLazyMatchesEager(double l1, double l2) {
+        Random random = new Random(3);
+        LazyRegularizer regularizer = new LazyRegularizer(l1, l2);
+        SparseWeightVector lazy = new SparseWeightVector();
+        double[] eager = new double[numFeatures];
+
+        for (int t = 0; t < 500; ++t) {
+            int[] features = new int[1 + random.nextInt(4)];
+            double[] values = new double[features.length];
+            for (int j = 0; j < features.length; ++j) {
+                features[j] = random.nextInt(numFeatures);
+                values[j] = random.nextDouble() - 0.5;
+            }
+            double factor = random.nextDouble();
+            double rate = 0.01 + random.nextDouble() * 0.1;
+
+            regularizer.catchUp(lazy, features);
+            lazy.scaledAdd(features, values, factor);
+            regularizer.step(rate);
+
+            for (int j = 0; j < features.length; ++j)
+                eager[features[j]] += factor * values[j];
+            for (int f = 0; f < numFeatures; ++f) {
+                eager[f] *= 1 - rate * l2;
+                double truncation = rate * l1;
+                if (eager[f] > truncation) eager[f] -= truncation;
+                else if (eager[f] < -truncation) eager[f] += truncation;
+                else eager[f] = 0;
+            }
+        }
+
+        regularizer.finish(lazy, 0);
+        for (int f = 0; f < numFeatures; ++f)
+            assertEquals("feature " + f, eager[f], lazy.getWeight(f), 1e-12);
+    }
+
+    /**
+     * Test that lazily applied L2 decay gives the weights of eager decay
+     */
+    @Test
+    public void testL2CatchUpMatchesEagerDecay() {
+        assertLazyMatchesEager(0, 0.5);
+    }
+
+    /**
+     * Test that lazily applied L1 truncation gives the weights of eager
+     * truncation
+     */
+    @Test
+    public void testL1CatchUpMatchesEagerTruncation() {
+        assertLazyMatchesEager(0.05, 0);
+    }
+
+    static StochasticGradientDescent train(double l1) {
+        StochasticGradientDescent.Parameters p = new StochasticGradientDescent.Parameters();
+        p.l1Penalty = l1;
+        StochasticGradientDescent result = new StochasticGradientDescent(p);
+
+        // only the first two features predict the label; the rest are noise
+        Random random = new Random(5);
+        for (int t = 0; t < 2000; ++t) {
+            int[] features = new int[6];
+            double[] values = new double[6];
+            features[0] = 0;
+            features[1] = 1;
+            values[0] = random.nextDouble() - 0.5;
+            values[1] = random.nextDouble() - 0.5;
+            for (int j = 2; j < features.length; ++j) {
+                features[j] = 2 + random.nextInt(1000);
+                values[j] = random.nextDouble() - 0.5;
+            }
+            double label = 2 * values[0] - values[1];
+            result.learn(features, values, new int[]{ 0 }, new double[]{ label });
+        }
+
+        result.doneLearning();
+        return result;
+    }
+
+    static byte[] model(StochasticGradientDescent learner) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        learner.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Test that an L1 penalty makes the written model smaller without
+     * losing the predictive features
+     */
+    @Test
+    public void testL1GivesSmallerModel() {
+        StochasticGradientDescent plain = train(0);
+        StochasticGradientDescent sparse = train(0.001);
+
+        assertTrue(model(sparse).length * 2 < model(plain).length);
+
+        int[] features = {0, 1};
+        double[] values = {0.25, -0.25};
+        assertEquals(0.75, sparse.realValue(features, values), 0.1);
+    }
+
+    static byte[] vector(SparseWeightVector w) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        w.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Test that a weight vector leaves out its zeros only when asked to, and
+     * that a mostly zero weight vector is read back as it was written
+     */
+    @Test
+    public void testSparseWriteAndRead() {
+        double[] weights = new double[100];
+        weights[3] = 1.5;
+        weights[40] = -2;
+        weights[99] = 0.25;
+        SparseWeightVector w = new SparseWeightVector(weights);
+
+        int dense = vector(w).length;
+        w.setSparseOutput(true);
+        byte[] bytes = vector(w);
+        assertTrue(bytes.length * 4 < dense);
+
+        ExceptionlessInputStream in =
+                new ExceptionlessInputStream(new ByteArrayInputStream(bytes));
+        SparseWeightVector copy = SparseWeightVector.readWeightVector(in);
+        in.close();
+
+        assertEquals(weights.length, copy.size());
+        for (int f = 0; f < weights.length; ++f)
+            assertEquals(weights[f], copy.getWeight(f), 0);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.MappedExampleFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>MappedExampleFile</code>
+ */
+public class MappedExampleFileTest {
+
+    File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("mapped", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    /**
+     * Test that examples of any length, including none, read back in any
+     * order exactly as they were added, past the initial size of the offset
+     * table
+     */
+    @Test
+    public void testReadsBackWhatWasAdded() {
+        Random random = new Random(71);
+        int examples = 3000;
+        int[][] features = new int[examples][];
+        double[][] values = new double[examples][];
+        int maxLength = 0;
+
+        MappedExampleFile file = new MappedExampleFile(directory);
+        for (int i = 0; i < examples; ++i) {
+            int length = random.nextInt(20);
+            // extra room that add() must not write
+            features[i] = new int[length + 3];
+            values[i] = new double[length + 3];
+            for (int j = 0; j < length + 3; ++j) {
+                features[i][j] = random.nextInt(1000000);
+                values[i][j] = random.nextGaussian();
+            }
+            maxLength = Math.max(maxLength, length);
+            file.add(features[i], values[i], length);
+        }
+        file.finishWriting();
+
+        assertEquals(examples, file.size());
+        assertEquals(maxLength, file.maxLength());
+
+        int[] f = new int[maxLength];
+        double[] v = new double[maxLength];
+        for (int t = 0; t < 2 * examples; ++t) {
+            int i = random.nextInt(examples);
+            int length = file.read(i, f, v);
+            assertEquals(features[i].length - 3, length);
+            for (int j = 0; j < length; ++j) {
+                assertEquals(features[i][j], f[j]);
+                assertEquals(values[i][j], v[j], 0);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * Test that swapping two examples changes only the order in which they
+     * are read
+     */
+    @Test
+    public void testSwap() {
+        MappedExampleFile file = new MappedExampleFile(directory);
+        file.add(new int[]{ 1, 2 }, new double[]{ 0.5, 1.5 }, 2);
+        file.add(new int[]{ 3 }, new double[]{ -1 }, 1);
+        file.add(new int[0], new double[0], 0);
+        file.swap(0, 1);
+        file.finishWriting();
+
+        int[] f = new int[2];
+        double[] v = new double[2];
+        assertEquals(1, file.read(0, f, v));
+        assertEquals(3, f[0]);
+        assertEquals(-1, v[0], 0);
+        assertEquals(2, file.read(1, f, v));
+        assertEquals(2, f[1]);
+        assertEquals(1.5, v[1], 0);
+        assertEquals(0, file.read(2, f, v));
+
+        file.delete();
+    }
+
+    /**
+     * Test that the temporary file is created in the given directory and
+     * removed by <code>delete()</code>, whether or not it was ever mapped
+     */
+    @Test
+    public void testDeleteRemovesFile() {
+        MappedExampleFile mapped = new MappedExampleFile(directory);
+        mapped.add(new int[]{ 7 }, new double[]{ 2 }, 1);
+        mapped.finishWriting();
+        MappedExampleFile unmapped = new MappedExampleFile(directory);
+        unmapped.add(new int[]{ 7 }, new double[]{ 2 }, 1);
+        assertEquals(2, directory.list().length);
+
+        mapped.delete();
+        unmapped.delete();
+        assertEquals(0, directory.list().length);
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscreteConjunctiveFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscreteFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.features.PredefinedFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.ModelCompactor;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>ModelCompactor</code> and <code>Lexicon.compact</code>
+ */
+public class ModelCompactorTest {
+
+    static final int numExamples = 300;
+    static final String[] labels = {"true", "false"};
+
+    /*
+     * examples whose label follows their first element, with some of their
+     * features missing and the rest mostly noise
+     */
+    Vector[] examples;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(71);
+        examples = new Vector[numExamples];
+        for (int i = 0; i < numExamples; ++i) {
+            Vector example = new Vector();
+            double x = random.nextDouble();
+            example.add(x);
+            for (int j = 0; j < 100; ++j) {
+                int r = random.nextInt(10);
+                example.add(r < 3 ? null : r < 5 ? x : random.nextDouble());
+            }
+            examples[i] = example;
+        }
+    }
+
+    /** <code>PredefinedLabel</code> with the two values an LTU requires. */
+    public static class BinaryLabel extends PredefinedLabel {
+        public BinaryLabel() {
+            containingPackage = "";
+            name = "label";
+        }
+
+        public String[] allowableValues() { return new String[]{"false", "true"}; }
+    }
+
+    /*
+     * An averaged perceptron whose initial weight isn't 0, so that the
+     * current and averaged weights fill their gaps differently.
+     */
+    static SparseAveragedPerceptron newLTU() {
+        SparseAveragedPerceptron.Parameters p = new SparseAveragedPerceptron.Parameters();
+        p.initialWeight = 0.25;
+        p.thickness = 1;
+        return new SparseAveragedPerceptron(p);
+    }
+
+    static <T extends Learner> T train(T learner, Vector[] examples) {
+        learner.setExtractor(new PredefinedFeature(0.5));
+        learner.setLabeler(new BinaryLabel());
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < examples.length; ++i) learner.learn(examples[i]);
+            learner.doneWithRound();
+        }
+        learner.doneLearning();
+        return learner;
+    }
+
+    /* every label's score on every example */
+    double[][] scores(Learner learner) {
+        double[][] result = new double[numExamples][labels.length];
+        for (int i = 0; i < numExamples; ++i) {
+            ScoreSet s = learner.scores(examples[i]);
+            for (int j = 0; j < labels.length; ++j) result[i][j] = s.get(labels[j]);
+        }
+        return result;
+    }
+
+    static void assertScores(double[][] expected, double[][] actual) {
+        for (int i = 0; i < expected.length; ++i)
+            assertArrayEquals("example " + i, expected[i], actual[i], 1e-12);
+    }
+
+    /*
+     * Writes the learner and its lexicon to temporary files and reads them
+     * back, as a compacted model would be shipped.
+     */
+    static Learner roundTrip(Learner learner) throws Exception {
+        File model = File.createTempFile("compacted", ".lc");
+        File lexicon = File.createTempFile("compacted", ".lex");
+        model.deleteOnExit();
+        lexicon.deleteOnExit();
+        learner.write(model.getPath(), lexicon.getPath());
+
+        Learner result = Learner.readLearner(model.getPath());
+        result.setExtractor(new PredefinedFeature(0.5));
+        result.readLexiconOnDemand(lexicon.getPath());
+        return result;
+    }
+
+    /*
+     * Prunes half the learner's weights, then checks that compacting its lexicon
+     * shrinks the model without changing the pruned learner's scores, both
+     * in memory and after the model is written and read back.
+     */
+    void assertCompactionKeepsScores(Learner learner) throws Exception {
+        ModelCompactor compactor = new ModelCompactor(learner);
+        int weights = compactor.countWeights();
+        assertEquals(weights - weights / 2, compactor.keepLargest(weights / 2));
+        double[][] expected = scores(learner);
+        int features = learner.getLexicon().size();
+        long bytes = compactor.modelBytes();
+        weights = compactor.countWeights();
+
+        int removed = compactor.compactLexicon();
+        assertTrue(removed > 0);
+        assertEquals(features - removed, learner.getLexicon().size());
+        assertTrue(compactor.modelBytes() < bytes);
+        assertEquals(weights, compactor.countWeights());
+        assertScores(expected, scores(learner));
+        assertScores(expected, scores(roundTrip(learner)));
+    }
+
+    /** Test that compacting a single LTU leaves its scores as they were. */
+    @Test
+    public void testCompactLTU() throws Exception {
+        assertCompactionKeepsScores(train(newLTU(), examples));
+    }
+
+    /**
+     * Test that compacting a network leaves its scores as they were, even
+     * though each LTU's weight vector has a different length
+     */
+    @Test
+    public void testCompactNetwork() throws Exception {
+        assertCompactionKeepsScores(train(new SparseNetworkLearner(newLTU()), examples));
+    }
+
+    /**
+     * Test that weights reset in the middle of an averaged vector score as
+     * features missing from it, so that removing them from the lexicon
+     * changes nothing
+     */
+    @Test
+    public void testResetWeightGap() throws Exception {
+        SparseAveragedPerceptron ltu = train(newLTU(), examples);
+        ModelCompactor compactor = new ModelCompactor(ltu);
+        int N = ltu.getWeightVector().size();
+        // keeps the first and last features, so the ones between become gaps
+        for (int i = 1; i < N - 1; ++i) ltu.getWeightVector().resetWeight(i, ltu.getInitialWeight());
+        double[][] expected = scores(ltu);
+
+        assertEquals(N - 2, compactor.compactLexicon());
+        assertEquals(2, ltu.getLexicon().size());
+        assertScores(expected, scores(ltu));
+        assertScores(expected, scores(roundTrip(ltu)));
+    }
+
+    /**
+     * Test that <code>keepLargest</code> keeps exactly the requested number
+     * of weights, and that <code>fitToBudget</code> makes the model fit
+     */
+    @Test
+    public void testKeepLargestAndFitToBudget() {
+        SparseNetworkLearner network = train(new SparseNetworkLearner(newLTU()), examples);
+        ModelCompactor compactor = new ModelCompactor((Learner) network.clone());
+        int weights = compactor.countWeights();
+        assertEquals(weights - 20, compactor.keepLargest(20));
+        assertEquals(20, compactor.countWeights());
+
+        compactor = new ModelCompactor(network);
+        long budget = compactor.modelBytes() / 2;
+        int kept = compactor.fitToBudget(budget);
+        assertTrue(kept > 0 && kept < weights);
+        assertEquals(kept, compactor.countWeights());
+        assertTrue(compactor.modelBytes() <= budget);
+    }
+
+    /**
+     * Test that <code>Lexicon.compact</code> keeps the children of the
+     * conjunctions it keeps and renumbers the survivors in order
+     */
+    @Test
+    public void testLexiconCompactKeepsChildren() {
+        DiscreteFeature[] primitives = new DiscreteFeature[4];
+        Lexicon lexicon = new Lexicon();
+        for (int i = 0; i < primitives.length; ++i) {
+            primitives[i] = new DiscretePrimitiveStringFeature("", "f" + i, "", "true", (short) 0, (short) 0);
+            lexicon.lookup(primitives[i], true);
+        }
+        DiscreteConjunctiveFeature conjunction =
+                new DiscreteConjunctiveFeature("", "c", primitives[1], primitives[3]);
+        lexicon.lookup(conjunction, true);
+
+        // keeps f0 and the conjunction only
+        int[] map = lexicon.compact(new boolean[]{true, false, false, false, true});
+        assertArrayEquals(new int[]{0, 1, -1, 2, 3}, map);
+        assertEquals(4, lexicon.size());
+        assertEquals(0, lexicon.lookup(primitives[0]));
+        assertEquals(1, lexicon.lookup(primitives[1]));
+        assertEquals(2, lexicon.lookup(primitives[3]));
+        assertEquals(3, lexicon.lookup(conjunction));
+        assertFalse(lexicon.contains(primitives[2]));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.LinearThresholdUnit;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.StochasticGradientDescent;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that models written before weight vectors could be written sparsely
+ * still read, and that learners without an L1 penalty still write them the
+ * same way. The models in <code>/models</code> were written by that older
+ * code after training on 100 random examples over 2000 features, so most of
+ * their weights are 0.
+ */
+public class ModelFormatTest {
+
+    /* the scores the older code gave the first training examples */
+    static final double[] sgdScores = {
+        0.38766624520072235, 0.5681868860404818, 0.21463413545337104,
+        0.5084472873581936, 0.41143266859916466
+    };
+    static final double[] perceptronScores = {
+        -0.025999999999999978, -0.02535973745059923, -0.15843390918420333,
+        0.17694950734374643, -0.01311232613416432
+    };
+
+    static byte[] resource(String name) throws Exception {
+        InputStream in = ModelFormatTest.class.getResourceAsStream("/models/" + name);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) bytes.write(buffer, 0, n);
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    static Learner read(String name) throws Exception {
+        ExceptionlessInputStream in = new ExceptionlessInputStream(
+                ModelFormatTest.class.getResourceAsStream("/models/" + name));
+        Learner result = Learner.readLearner(in);
+        in.close();
+        return result;
+    }
+
+    static byte[] write(Learner learner) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        learner.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static void assertScores(Learner learner, double[] expected) {
+        Random random = new Random(73);
+        for (int i = 0; i < expected.length; ++i) {
+            int[] features = new int[5];
+            double[] values = new double[5];
+            for (int j = 0; j < 5; ++j) {
+                features[j] = random.nextInt(2000);
+                values[j] = random.nextDouble();
+            }
+            double score = learner instanceof LinearThresholdUnit
+                    ? ((LinearThresholdUnit) learner).score(features, values)
+                    : learner.realValue(features, values);
+            assertEquals("example " + i, expected[i], score, 1e-12);
+        }
+    }
+
+    /** Test that the older models read and score as they did. */
+    @Test
+    public void testOldModelsRead() throws Exception {
+        Learner sgd = read("StochasticGradientDescent.lc");
+        assertTrue(sgd instanceof StochasticGradientDescent);
+        assertScores(sgd, sgdScores);
+
+        Learner perceptron = read("SparseAveragedPerceptron.lc");
+        assertTrue(perceptron instanceof SparseAveragedPerceptron);
+        assertScores(perceptron, perceptronScores);
+    }
+
+    /**
+     * Test that learners without an L1 penalty write exactly the bytes the
+     * older code wrote, so that older runtimes can still read them
+     */
+    @Test
+    public void testOldFormatIsWritten() throws Exception {
+        String[] names = { "StochasticGradientDescent.lc", "SparseAveragedPerceptron.lc" };
+        for (String name : names)
+            assertArrayEquals(name, resource(name), write(read(name)));
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.ValueCache;
+import edu.illinois.cs.cogcomp.lbjava.classify.ValueCaches;
+import edu.illinois.cs.cogcomp.lbjava.features.PredefinedFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.ModelSwapper;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>ModelSwapper</code>
+ */
+public class ModelSwapperTest {
+
+    static final int numExamples = 100;
+
+    /** A learner class shaped like the ones LBJava generates. */
+    public static class GeneratedLearner extends SparseNetworkLearner {
+        public static volatile GeneratedLearner instance;
+        public static int cacheClears;
+
+        public GeneratedLearner() { super("generated"); }
+
+        public static GeneratedLearner getInstance() { return instance; }
+
+        public static void clearCache() { ++cacheClears; }
+    }
+
+    /* examples whose label and features all follow their first element */
+    Vector[] examples;
+    ModelSwapper swapper;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(89);
+        examples = new Vector[numExamples];
+        for (int i = 0; i < numExamples; ++i) {
+            Vector example = new Vector();
+            double x = random.nextDouble();
+            example.add(x);
+            for (int j = 0; j < 100; ++j)
+                example.add(random.nextInt(4) == 0 ? random.nextDouble() : x);
+            examples[i] = example;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (swapper != null) swapper.shutdown();
+        GeneratedLearner.instance = null;
+    }
+
+    <T extends SparseNetworkLearner> T train(T learner) {
+        learner.setExtractor(new PredefinedFeature(0.5));
+        learner.setLabeler(new PredefinedLabel());
+        for (int i = 0; i < numExamples; ++i) learner.learn(examples[i]);
+        learner.doneLearning();
+        return learner;
+    }
+
+    /* writes the learner to temporary files, returning their names */
+    static String[] write(Learner learner) throws Exception {
+        File model = File.createTempFile("swapped", ".lc");
+        File lexicon = File.createTempFile("swapped", ".lex");
+        model.deleteOnExit();
+        lexicon.deleteOnExit();
+        learner.write(model.getPath(), lexicon.getPath());
+        return new String[]{ model.getPath(), lexicon.getPath() };
+    }
+
+    /* writes the given bytes as the single entry of a model file */
+    static String writeEntry(byte[] bytes) throws Exception {
+        File file = File.createTempFile("corrupt", ".lc");
+        file.deleteOnExit();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        zip.putNextEntry(new ZipEntry(ExceptionlessInputStream.zipEntryName));
+        zip.write(bytes);
+        zip.close();
+        return file.getPath();
+    }
+
+    /* the bytes of a model file that names the given class */
+    static byte[] naming(String name) {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        out.writeString(name);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Test that each published model gets the next version number and is
+     * frozen before anyone sees it
+     */
+    @Test
+    public void testVersionsIncrement() throws Exception {
+        SparseNetworkLearner first = train(new SparseNetworkLearner("swapped"));
+        swapper = new ModelSwapper(first);
+        assertEquals(1, swapper.getVersion().number);
+        assertSame(first, swapper.getLearner());
+        assertTrue(first.isFrozen());
+
+        String[] files = write(train(new SparseNetworkLearner("swapped")));
+        swapper.setWarmUpExamples(examples);
+        ModelSwapper.Version second = swapper.swap(files[0], files[1]);
+        assertEquals(2, second.number);
+        assertSame(second, swapper.getVersion());
+        assertNotSame(first, swapper.getLearner());
+        assertTrue(second.learner.isFrozen());
+        assertTrue(second.learner.getLexicon().size() > 0);
+        assertEquals(new File(files[0]).toURI().toURL(), second.modelLocation);
+        assertEquals(new File(files[1]).toURI().toURL(), second.lexiconLocation);
+
+        SparseNetworkLearner third = train(new SparseNetworkLearner("swapped"));
+        assertEquals(3, swapper.publish(third).number);
+        assertSame(third, swapper.getLearner());
+    }
+
+    /**
+     * Test that models that can't be read or fail to warm up throw
+     * exceptions, rather than ending the program, and leave the published
+     * version in place
+     */
+    @Test
+    public void testFailuresKeepVersion() throws Exception {
+        SparseNetworkLearner first = train(new SparseNetworkLearner("swapped"));
+        swapper = new ModelSwapper(first);
+        String[] files = write(train(new SparseNetworkLearner("swapped")));
+        byte[] model = ModelFormatTest.resource("StochasticGradientDescent.lc");
+
+        String[] unreadable = {
+            files[0] + ".missing",
+            writeEntry(new byte[]{ 0, 7, 'n', 'o' }),
+            writeEntry(naming("no.such.Learner")),
+            writeEntry(java.util.Arrays.copyOf(model, model.length / 2)),
+        };
+        for (String path : unreadable) {
+            try {
+                swapper.swap(path, files[1]);
+                fail(path);
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("LBJava ERROR"));
+            }
+        }
+
+        try {
+            swapper.swap(writeEntry(naming(null)), files[1]);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no learner found"));
+        }
+
+        swapper.setWarmUpExamples(new Object[]{ examples[0], "not an example" });
+        try {
+            swapper.swap(files[0], files[1]);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("warm-up example 1"));
+        }
+
+        assertEquals(1, swapper.getVersion().number);
+        assertSame(first, swapper.getLearner());
+    }
+
+    /**
+     * Test that a swap in the background publishes the version its future
+     * returns, and that its failures come back through the future
+     */
+    @Test
+    public void testSwapInBackground() throws Exception {
+        swapper = new ModelSwapper(train(new SparseNetworkLearner("swapped")));
+        String[] files = write(train(new SparseNetworkLearner("swapped")));
+
+        Future future = swapper.swapInBackground(files[0], files[1]);
+        ModelSwapper.Version version = (ModelSwapper.Version) future.get();
+        assertSame(version, swapper.getVersion());
+        assertEquals(2, version.number);
+
+        future = swapper.swapInBackground(files[0] + ".missing", files[1]);
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertSame(version, swapper.getVersion());
+    }
+
+    /**
+     * Test that swapping the model of a generated learner class replaces its
+     * shared instance and empties the caches of the classifiers that may
+     * have used it
+     */
+    @Test
+    public void testGeneratedClassSwap() throws Exception {
+        GeneratedLearner.instance = train(new GeneratedLearner());
+        GeneratedLearner first = GeneratedLearner.instance;
+        swapper = new ModelSwapper(GeneratedLearner.class);
+        assertSame(first, swapper.getLearner());
+        assertTrue(first.isFrozen());
+
+        ValueCache cache = ValueCaches.create(ModelSwapperTest.class.getName() + ".dependent", 10);
+        cache.put(examples[0], "cached");
+        int clears = GeneratedLearner.cacheClears;
+
+        String[] files = write(train(new GeneratedLearner()));
+        ModelSwapper.Version version = swapper.swap(files[0], files[1]);
+        assertEquals(2, version.number);
+        assertTrue(version.learner instanceof GeneratedLearner);
+        assertSame(version.learner, GeneratedLearner.instance);
+        assertNotSame(first, GeneratedLearner.instance);
+        assertEquals(clears + 1, GeneratedLearner.cacheClears);
+        assertNull(cache.get(examples[0]));
+
+        files = write(train(new SparseNetworkLearner("swapped")));
+        try {
+            swapper.swap(files[0], files[1]);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertSame(version.learner, GeneratedLearner.instance);
+        assertSame(version, swapper.getVersion());
+    }
+}
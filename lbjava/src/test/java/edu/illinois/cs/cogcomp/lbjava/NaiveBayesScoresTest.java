@@ -0,0 +1,182 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.NaiveBayes;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the scores computed by <code>NaiveBayes</code>
+ */
+public class NaiveBayesScoresTest {
+
+    /* labels of the examples, as indexes into the label lexicon */
+    static final int A = 0, B = 1;
+
+    /* training examples: features of each example and its label */
+    static final int[][] features = { {0, 1}, {0, 2}, {1, 2}, {2, 3}, {3}, {0, 1, 3} };
+    static final int[] labels = { A, A, A, B, B, A };
+
+    NaiveBayes learner;
+
+    /**
+     * Instantiate a <code>NaiveBayes</code> learner that knows labels "A" and "B"
+     */
+    @Before
+    public void setUp() {
+        learner = newLearner();
+    }
+
+    static NaiveBayes newLearner() {
+        NaiveBayes result = new NaiveBayes();
+        Lexicon labelLexicon = new Lexicon();
+        labelLexicon.lookup(new DiscretePrimitiveStringFeature("", "l", "", "A", (short) 0, (short) 2), true);
+        labelLexicon.lookup(new DiscretePrimitiveStringFeature("", "l", "", "B", (short) 1, (short) 2), true);
+        result.setLabelLexicon(labelLexicon);
+        return result;
+    }
+
+    static double[] ones(int n) {
+        double[] result = new double[n];
+        Arrays.fill(result, 1);
+        return result;
+    }
+
+    static void learn(NaiveBayes l, int i) {
+        l.learn(features[i], ones(features[i].length), new int[]{ labels[i] }, new double[]{ 1 });
+    }
+
+    static void train(NaiveBayes l) {
+        for (int i = 0; i < features.length; ++i)
+            learn(l, i);
+        l.doneLearning();
+    }
+
+    /**
+     * The posteriors computed directly from the counts: the prior times the
+     * conditional probability of each feature, with exp(smoothing) standing in
+     * for features a label has never seen.
+     */
+    static double[] expectedPosteriors(int[] example) {
+        double[] logJoint = new double[2];
+        for (int l = 0; l < 2; ++l) {
+            double prior = 0;
+            double[] counts = new double[4];
+            for (int i = 0; i < features.length; ++i) {
+                if (labels[i] != l) continue;
+                ++prior;
+                for (int f : features[i]) ++counts[f];
+            }
+
+            logJoint[l] = Math.log(prior);
+            for (int f : example)
+                logJoint[l] += counts[f] > 0 ? Math.log(counts[f] / prior) : NaiveBayes.defaultSmoothing;
+        }
+
+        double[] result = new double[2];
+        for (int l = 0; l < 2; ++l)
+            result[l] = 1 / (1 + Math.exp(logJoint[1 - l] - logJoint[l]));
+        return result;
+    }
+
+    /**
+     * Test that the scores are the posteriors implied by the counts
+     */
+    @Test
+    public void testScoresArePosteriors() {
+        train(learner);
+
+        int[][] examples = { {0}, {3}, {0, 3}, {1, 2, 3}, {0, 1, 2, 3} };
+        for (int[] example : examples) {
+            ScoreSet s = learner.scores(example, ones(example.length));
+            double[] expected = expectedPosteriors(example);
+            assertEquals(expected[A], s.get("A"), 1e-12);
+            assertEquals(expected[B], s.get("B"), 1e-12);
+            assertEquals(1, s.get("A") + s.get("B"), 1e-12);
+        }
+    }
+
+    /**
+     * Test that many features never seen by one label don't make the scores
+     * underflow
+     */
+    @Test
+    public void testScoresDoNotUnderflow() {
+        train(learner);
+
+        int[] example = new int[2000];
+        for (int i = 0; i < example.length; ++i)
+            example[i] = i % 2 == 0 ? 3 : 0;
+
+        ScoreSet s = learner.scores(example, ones(example.length));
+        assertFalse(Double.isNaN(s.get("A")));
+        assertFalse(Double.isNaN(s.get("B")));
+        assertEquals(1, s.get("A") + s.get("B"), 1e-12);
+        assertEquals("A", s.highScoreValue());
+    }
+
+    /**
+     * Test that learning after <code>doneLearning()</code> isn't hidden by the
+     * cached logarithms
+     */
+    @Test
+    public void testLearnAfterDoneLearning() {
+        for (int i = 0; i < 3; ++i)
+            learn(learner, i);
+        learner.doneLearning();
+        for (int i = 3; i < features.length; ++i)
+            learn(learner, i);
+
+        int[] example = {0, 3};
+        double[] expected = expectedPosteriors(example);
+        ScoreSet s = learner.scores(example, ones(example.length));
+        assertEquals(expected[A], s.get("A"), 1e-12);
+        assertEquals(expected[B], s.get("B"), 1e-12);
+    }
+
+    /**
+     * Test that a model written and read back gives the same scores
+     */
+    @Test
+    public void testWriteAndRead() {
+        train(learner);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        learner.write(out);
+        out.close();
+
+        NaiveBayes copy = new NaiveBayes();
+        ExceptionlessInputStream in =
+                new ExceptionlessInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.readString();
+        copy.read(in);
+        in.close();
+
+        int[] example = {1, 3};
+        ScoreSet expected = learner.scores(example, ones(example.length));
+        ScoreSet actual = copy.scores(example, ones(example.length));
+        assertEquals(expected.get("A"), actual.get("A"), 0);
+        assertEquals(expected.get("B"), actual.get("B"), 0);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.IR.AST;
+import edu.illinois.cs.cogcomp.lbjava.frontend.Yylex;
+import edu.illinois.cs.cogcomp.lbjava.frontend.parser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that generating the code for the declarations of a .lbj file
+ * concurrently gives exactly the files generating it one declaration at a
+ * time gives
+ */
+public class ParallelGenerationTest {
+
+    static final String script = "import java.util.Vector;\n" +
+            "import edu.illinois.cs.cogcomp.lbjava.VectorParser;\n" +
+            "import edu.illinois.cs.cogcomp.lbjava.features.PredefinedFeature;\n" +
+            "import edu.illinois.cs.cogcomp.lbjava.PredefinedLabel;\n" +
+            "\n" +
+            "discrete% GeneratedBoth(Vector v) <- testFeature1, testFeature2\n" +
+            "\n" +
+            "discrete GeneratedCoded(Vector v) <- { return \"\" + (v.size() > 3); }\n" +
+            "\n" +
+            "discrete GeneratedLearner1(Vector v) <-\n" +
+            "learn PredefinedLabel\n" +
+            "\tusing testFeature1\n" +
+            "\tfrom new VectorParser(\"target/test-classes/test1.train\")\n" +
+            "\twith new NaiveBayes()\n" +
+            "end\n" +
+            "\n" +
+            "discrete GeneratedLearner2(Vector v) <-\n" +
+            "learn PredefinedLabel\n" +
+            "\tusing GeneratedBoth, testFeature2\n" +
+            "\tfrom new VectorParser(\"target/test-classes/test1.train\")\n" +
+            "\twith new SparseNetworkLearner()\n" +
+            "end\n" +
+            "\n" +
+            "discrete GeneratedLearner3(Vector v) <-\n" +
+            "learn PredefinedLabel\n" +
+            "\tusing GeneratedCoded, GeneratedLearner1\n" +
+            "\tfrom new VectorParser(\"target/test-classes/test1.train\")\n" +
+            "\twith new NaiveBayes()\n" +
+            "end\n";
+
+    int codeGenerationThreads = Main.codeGenerationThreads;
+    File root;
+
+    @After
+    public void tearDown() {
+        Main.codeGenerationThreads = codeGenerationThreads;
+        if (root != null) ExampleCacheTest.delete(root);
+    }
+
+    static byte[] read(File file) throws Exception {
+        byte[] result = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        for (int n = 0; n < result.length; ) n += in.read(result, n, result.length - n);
+        in.close();
+        return result;
+    }
+
+    /* generates the code into a new directory under root */
+    File generate(AST ast, String name, int threads) {
+        File result = new File(root, name);
+        result.mkdirs();
+        Main.generatedSourceDirectory = result.getPath();
+        Main.codeGenerationThreads = threads;
+        new TranslateToJava(ast).run(ast);
+        return result;
+    }
+
+    /** Test that sequential and concurrent generation write the same bytes. */
+    @Test
+    public void testSameFiles() throws Exception {
+        root = File.createTempFile("generated", "");
+        root.delete();
+
+        Main.fileNames = new HashSet<>();
+        Main.classDirectory = "target/test-classes";
+        Main.classPackageDirectory = "target/test-classes/lbj";
+        Main.sourceDirectory = "target/test-classes/lbj";
+        Main.generatedSourceDirectory = new File(root, "sequential").getPath();
+
+        AST ast = (AST) new parser(new Yylex(new ByteArrayInputStream(script.getBytes()))).parse().value;
+        Main.runSemanticAnalysis(ast);
+        new RevisionAnalysis(ast).run(ast);
+        new ClassifierCSE(ast).run(ast);
+        assertTrue(ast.declarations.size() >= 5);
+
+        File sequential = generate(ast, "sequential", 1);
+        File concurrent = generate(ast, "concurrent", 4);
+
+        String[] names = sequential.list();
+        Arrays.sort(names);
+        String[] concurrentNames = concurrent.list();
+        Arrays.sort(concurrentNames);
+        assertTrue(names.length >= 5);
+        assertArrayEquals(names, concurrentNames);
+        for (String name : names)
+            assertArrayEquals(name, read(new File(sequential, name)), read(new File(concurrent, name)));
+    }
+}
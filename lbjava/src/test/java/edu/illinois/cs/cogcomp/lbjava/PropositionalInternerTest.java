@@ -0,0 +1,305 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.Constraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.EqualityArgumentReplacer;
+import edu.illinois.cs.cogcomp.lbjava.infer.ExistentialQuantifier;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDoubleImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderEqualityWithValue;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.OJalgoHook;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalInterner;
+import edu.illinois.cs.cogcomp.lbjava.infer.PropositionalVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.UniversalQuantifier;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>PropositionalInterner</code>, which must not change the
+ * meaning of the constraints it shares subformulas between
+ */
+public class PropositionalInternerTest {
+
+    static final String[] values = ILPTemplateTest.values;
+    static final ScriptedLearner learner = ILPTemplateTest.learner;
+    static final int A = 0, B = 1, C = 2;
+
+    /**
+     * The equality <code>label(word) == value</code>, where the word is the
+     * setting of the quantification variable at the given depth
+     */
+    static FirstOrderConstraint labeled(final int depth, String value, Object someWord) {
+        return new FirstOrderEqualityWithValue(true, new FirstOrderVariable(learner, someWord),
+                value, new EqualityArgumentReplacer(new Object[0], true) {
+                    public Object getLeftObject() {
+                        return quantificationVariables.get(depth);
+                    }
+                });
+    }
+
+    /**
+     * The constraints, quantified over the words, that each test
+     * propositionalizes with and without an interner:
+     * <ul>
+     *   <li> if a word is "A", some word is "B",
+     *   <li> some word is "B" iff some word is "A", and
+     *   <li> no word is "C" if some word is "B".
+     * </ul>
+     * Every quantifier's body is the same for each word, so their
+     * propositionalizations share subformulas.
+     */
+    static FirstOrderConstraint constraint(List words) {
+        Object w = words.get(0);
+        FirstOrderConstraint aThenB =
+                new UniversalQuantifier("i", words, new FirstOrderImplication(labeled(0, "A", w),
+                        new ExistentialQuantifier("j", words, labeled(1, "B", w))));
+
+        FirstOrderConstraint bIffA =
+                new FirstOrderDoubleImplication(
+                        new ExistentialQuantifier("i", words, labeled(0, "B", w)),
+                        new ExistentialQuantifier("i", words, labeled(0, "A", w)));
+
+        FirstOrderConstraint pairs =
+                new UniversalQuantifier("i", words,
+                        new UniversalQuantifier("j", words,
+                                new FirstOrderImplication(labeled(0, "C", w),
+                                        new FirstOrderNegation(new FirstOrderConjunction(
+                                                labeled(1, "B", w),
+                                                new FirstOrderNegation(labeled(0, "A", w)))))));
+
+        return new FirstOrderConjunction(new FirstOrderConjunction(aThenB, bIffA), pairs);
+    }
+
+    /** Evaluates the constraints of {@link #constraint(List)} directly. */
+    static boolean satisfies(int[] labels) {
+        boolean someA = false, someB = false;
+        for (int label : labels) {
+            if (label == A) someA = true;
+            if (label == B) someB = true;
+        }
+        if (someA != someB) return false;
+
+        for (int i = 0; i < labels.length; ++i) {
+            for (int j = 0; j < labels.length; ++j)
+                if (labels[i] == C && labels[j] == B) return false;
+        }
+        return true;
+    }
+
+    static PropositionalConstraint propositionalize(FirstOrderConstraint c) {
+        PropositionalConstraint result = c.propositionalize();
+        if (result instanceof PropositionalConjunction)
+            return ((PropositionalConjunction) result).simplify(true);
+        return result.simplify();
+    }
+
+    static void collectVariables(Constraint c, List result, IdentityHashMap seen) {
+        if (seen.put(c, c) != null) return;
+        if (c instanceof PropositionalVariable) result.add(c);
+        Constraint[] children = c.getChildren();
+        for (int i = 0; i < children.length; ++i)
+            collectVariables(children[i], result, seen);
+    }
+
+    /**
+     * Evaluates a propositional constraint with each word given a label.
+     */
+    static boolean evaluate(PropositionalConstraint c, List words, int[] labels) {
+        List variables = new ArrayList();
+        collectVariables(c, variables, new IdentityHashMap());
+        for (Object o : variables) {
+            PropositionalVariable v = (PropositionalVariable) o;
+            int word = words.indexOf(v.getExample());
+            v.value = values[labels[word]].equals(v.getPrediction());
+        }
+        return c.evaluate();
+    }
+
+    /**
+     * Test that the interned, simplified constraints and those simplified
+     * without an interner are satisfied by exactly the same labels as the
+     * first order constraints, and that the interner shared subformulas
+     */
+    @Test
+    public void testInterningPreservesMeaning() {
+        Random random = new Random(47);
+        Object[] head = new Object[4];
+        for (int i = 0; i < head.length; ++i) {
+            head[i] = new Object();
+            learner.setScores(head[i],
+                    new double[]{ random.nextDouble(), random.nextDouble(), random.nextDouble() });
+        }
+        List words = Arrays.asList(head);
+
+        FirstOrderConstraint first = constraint(words);
+        first.consolidateVariables(new LinkedHashMap());
+        PropositionalConstraint plain = propositionalize(first);
+
+        FirstOrderConstraint second = constraint(words);
+        second.consolidateVariables(new LinkedHashMap());
+        PropositionalConstraint interned;
+        PropositionalInterner interner = PropositionalInterner.open();
+        try {
+            interned = propositionalize(second);
+            assertTrue(interner.getShared() > 0);
+        } finally {
+            interner.close();
+        }
+
+        int n = head.length;
+        int[] labels = new int[n];
+        int satisfied = 0;
+        for (int k = 0, total = (int) Math.pow(values.length, n); k < total; ++k) {
+            for (int i = 0, r = k; i < n; ++i, r /= values.length)
+                labels[i] = r % values.length;
+            boolean expected = satisfies(labels);
+            if (expected) ++satisfied;
+
+            assertEquals(Arrays.toString(labels), expected, evaluate(plain, words, labels));
+            assertEquals(Arrays.toString(labels), expected, evaluate(interned, words, labels));
+        }
+
+        assertTrue(satisfied > 1);
+    }
+
+    /**
+     * Test that ILP inference, which propositionalizes with an interner,
+     * finds the best labels satisfying the constraints
+     */
+    @Test
+    public void testInferenceMatchesExhaustiveSearch() throws Exception {
+        Random random = new Random(53);
+        for (int t = 0; t < 10; ++t) {
+            Object[] head = new Object[4];
+            double[][] scores = new double[head.length][values.length];
+            for (int i = 0; i < head.length; ++i) {
+                head[i] = new Object();
+                for (int a = 0; a < values.length; ++a) scores[i][a] = random.nextDouble();
+                learner.setScores(head[i], scores[i]);
+            }
+
+            ILPInference inference = new ILPInference(head, new OJalgoHook()) {
+                public String getHeadType() {
+                    return "java.lang.Object[]";
+                }
+            };
+            inference.addConstraint(constraint(Arrays.asList(head)));
+
+            int n = head.length;
+            int[] labels = new int[n];
+            int[] best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int k = 0, total = (int) Math.pow(values.length, n); k < total; ++k) {
+                double score = 0;
+                for (int i = 0, r = k; i < n; ++i, r /= values.length) {
+                    labels[i] = r % values.length;
+                    score += scores[i][labels[i]];
+                }
+                if (satisfies(labels) && score > bestScore) {
+                    best = labels.clone();
+                    bestScore = score;
+                }
+            }
+
+            for (int i = 0; i < n; ++i)
+                assertEquals("problem " + t, values[best[i]], inference.valueOf(learner, head[i]));
+        }
+    }
+
+    /* the implication among the children of a propositional disjunction */
+    static PropositionalConstraint implication(Constraint disjunction) {
+        Constraint[] children = disjunction.getChildren();
+        for (int i = 0; i < children.length; ++i)
+            if (children[i] instanceof PropositionalImplication)
+                return (PropositionalConstraint) children[i];
+        return null;
+    }
+
+    /**
+     * Test that equal subformulas outside of any quantifier are shared as
+     * soon as they are built, and that equal conjunctions whose children were
+     * added in different orders are shared
+     */
+    @Test
+    public void testInternedWhileBuilding() {
+        Object[] head = ILPTemplateTest.newHead(new Random(59), 4);
+        FirstOrderConstraint[] implications = new FirstOrderConstraint[2];
+        for (int i = 0; i < implications.length; ++i)
+            implications[i] = new FirstOrderImplication(ILPTemplateTest.TokenInference.equals(head[0], "A"),
+                    ILPTemplateTest.TokenInference.equals(head[1], "B"));
+        FirstOrderConstraint first =
+                new FirstOrderConjunction(
+                        new FirstOrderDisjunction(implications[0],
+                                ILPTemplateTest.TokenInference.equals(head[2], "C")),
+                        new FirstOrderDisjunction(implications[1],
+                                ILPTemplateTest.TokenInference.equals(head[3], "C")));
+        FirstOrderConstraint a = ILPTemplateTest.TokenInference.equals(head[2], "A");
+        FirstOrderConstraint b = ILPTemplateTest.TokenInference.equals(head[3], "B");
+
+        PropositionalInterner interner = PropositionalInterner.open();
+        try {
+            Constraint[] disjunctions = first.propositionalize().getChildren();
+            assertEquals(2, disjunctions.length);
+            assertTrue(disjunctions[0] instanceof PropositionalDisjunction);
+            assertNotNull(implication(disjunctions[0]));
+            assertSame(implication(disjunctions[0]), implication(disjunctions[1]));
+
+            assertSame(new FirstOrderConjunction(a, b).propositionalize(),
+                    new FirstOrderConjunction(b, a).propositionalize());
+        } finally {
+            interner.close();
+        }
+    }
+
+    /**
+     * Test that interning the same constraints twice shares exactly the same
+     * subformulas, however the objects happen to hash
+     */
+    @Test
+    public void testInterningIsDeterministic() {
+        List words = Arrays.asList(ILPTemplateTest.newHead(new Random(61), 5));
+        int[][] counts = new int[3][];
+        for (int t = 0; t < counts.length; ++t) {
+            FirstOrderConstraint c = constraint(words);
+            c.consolidateVariables(new LinkedHashMap());
+            PropositionalInterner interner = PropositionalInterner.open();
+            try {
+                propositionalize(c);
+                counts[t] = new int[]{ interner.size(), interner.getShared(), interner.getReused() };
+            } finally {
+                interner.close();
+            }
+        }
+
+        assertTrue(counts[0][1] > 0);
+        for (int t = 1; t < counts.length; ++t)
+            assertArrayEquals(counts[0], counts[t]);
+    }
+}
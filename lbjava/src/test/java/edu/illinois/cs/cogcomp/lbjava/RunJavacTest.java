@@ -0,0 +1,102 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>Train.runJavac</code>, which compiles in this JVM
+ * and falls back on an external <code>javac</code>
+ */
+public class RunJavacTest {
+
+    File directory;
+    String javacArguments;
+    String classPackageDirectory;
+    String generatedSourceDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        javacArguments = Main.javacArguments;
+        classPackageDirectory = Main.classPackageDirectory;
+        generatedSourceDirectory = Main.generatedSourceDirectory;
+
+        directory = File.createTempFile("javac", "");
+        directory.delete();
+        directory.mkdir();
+        Main.javacArguments = "";
+        Main.classPackageDirectory = directory.getPath();
+        Main.generatedSourceDirectory = null;
+    }
+
+    @After
+    public void tearDown() {
+        Main.javacArguments = javacArguments;
+        Main.classPackageDirectory = classPackageDirectory;
+        Main.generatedSourceDirectory = generatedSourceDirectory;
+        ExampleCacheTest.delete(directory);
+    }
+
+    /* writes a class with the given body to the temporary directory */
+    String source(String name, String body) throws Exception {
+        File file = new File(directory, name + ".java");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("public class " + name + " { " + body + " }\n").getBytes("UTF-8"));
+        out.close();
+        return file.getPath();
+    }
+
+    /**
+     * Test that the in-process compiler writes classes where they belong,
+     * skips files it has already compiled, and reports errors
+     */
+    @Test
+    public void testInProcess() throws Exception {
+        String name = "InProcess" + directory.getName().replaceAll("\\W", "");
+        String file = source(name, "int f() { return 1; }");
+        File compiled = new File(directory, name + ".class");
+
+        assertFalse(Train.runJavac(" " + file));
+        assertTrue(compiled.exists());
+
+        assertTrue(compiled.delete());
+        assertFalse(Train.runJavac(" " + file));
+        assertFalse(compiled.exists());
+
+        String broken = "Broken" + directory.getName().replaceAll("\\W", "");
+        assertTrue(Train.runJavac(" " + source(broken, "int f() { return; }")));
+        assertFalse(new File(directory, broken + ".class").exists());
+    }
+
+    /**
+     * Test that options for the <code>javac</code> launcher make it run as
+     * an external process, which compiles just the same
+     */
+    @Test
+    public void testLauncherOptions() throws Exception {
+        Main.javacArguments = "-J-Xmx128m";
+        String name = "External" + directory.getName().replaceAll("\\W", "");
+        String file = source(name, "int f() { return 1; }");
+
+        assertFalse(Train.runJavac(" " + file));
+        assertTrue(new File(directory, name + ".class").exists());
+
+        String broken = "Broken" + directory.getName().replaceAll("\\W", "");
+        assertTrue(Train.runJavac(" " + source(broken, "int f() { return; }")));
+    }
+}
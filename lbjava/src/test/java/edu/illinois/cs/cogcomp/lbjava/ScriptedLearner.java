@@ -0,0 +1,98 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A learner whose scores for each example are given in advance, used for
+ * testing inference
+ */
+public class ScriptedLearner extends Learner {
+
+    /* the values the learner chooses between */
+    final String[] values;
+    /* the scores of the values for each example object */
+    final Map scores = new IdentityHashMap();
+
+    public ScriptedLearner(String name, String[] values) {
+        super(name);
+        this.values = values;
+    }
+
+    /**
+     * Sets the scores of the values for an example
+     */
+    public void setScores(Object example, double[] s) {
+        synchronized (scores) {
+            scores.put(example, s);
+        }
+    }
+
+    @Override
+    public String[] allowableValues() {
+        return values;
+    }
+
+    @Override
+    public ScoreSet scores(Object example) {
+        double[] s;
+        synchronized (scores) {
+            s = (double[]) scores.get(example);
+        }
+        return new ScoreSet(values, s);
+    }
+
+    @Override
+    public String discreteValue(Object example) {
+        return scores(example).highScoreValue();
+    }
+
+    @Override
+    public Feature featureValue(Object example) {
+        String value = discreteValue(example);
+        return new DiscretePrimitiveStringFeature(containingPackage, name, "", value,
+                valueIndexOf(value), (short) values.length);
+    }
+
+    @Override
+    public FeatureVector classify(Object example) {
+        return new FeatureVector(featureValue(example));
+    }
+
+    @Override
+    public void learn(int[] exampleFeatures, double[] exampleValues, int[] exampleLabels,
+                      double[] labelValues) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FeatureVector classify(int[] exampleFeatures, double[] exampleValues) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScoreSet scores(int[] exampleFeatures, double[] exampleValues) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void write(PrintStream out) {
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderEqualityWithValue;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.OJalgoHook;
+import edu.illinois.cs.cogcomp.lbjava.infer.SequenceInference;
+import edu.illinois.cs.cogcomp.lbjava.parse.LinkedChild;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>SequenceInference</code>, checked against exhaustive
+ * search
+ */
+public class SequenceInferenceTest {
+
+    static final String[] values = { "B", "I", "O" };
+    static final int B = 0, I = 1, O = 2;
+    static final ScriptedLearner learner = new ScriptedLearner("bio", values);
+
+    /* kinds of constraints on the labels */
+    static final int BIO = 1, SKIP = 2, B_THEN_I = 4;
+
+    static FirstOrderConstraint labeled(Object token, int label) {
+        return new FirstOrderEqualityWithValue(true, new FirstOrderVariable(learner, token),
+                values[label]);
+    }
+
+    /**
+     * The tokens of a sentence, the scores of their labels, and some of the
+     * following constraints on the labels:
+     * <ul>
+     *   <li> <code>BIO</code>: the first token isn't "I", and an "I" follows a
+     *        "B" or an "I"
+     *   <li> <code>SKIP</code>: the token two positions after a "B" is "O",
+     *        which isn't chain structured
+     *   <li> <code>B_THEN_I</code>: a "B" is followed by an "I", and the second
+     *        token isn't "I"
+     * </ul>
+     */
+    static class Sentence {
+        final LinkedChild[] tokens;
+        final double[][] scores;
+        final int constraints;
+
+        Sentence(double[][] scores, int constraints) {
+            this.scores = scores;
+            this.constraints = constraints;
+            tokens = new LinkedChild[scores.length];
+            for (int i = 0; i < scores.length; ++i) {
+                tokens[i] = new LinkedChild(i == 0 ? null : tokens[i - 1], i, i) { };
+                learner.setScores(tokens[i], scores[i]);
+            }
+        }
+
+        Sentence(Random random, int length, int constraints) {
+            this(randomScores(random, length), constraints);
+        }
+
+        static double[][] randomScores(Random random, int length) {
+            double[][] result = new double[length][values.length];
+            for (int i = 0; i < length; ++i)
+                for (int a = 0; a < values.length; ++a)
+                    result[i][a] = random.nextDouble();
+            return result;
+        }
+
+        /**
+         * Returns the constraints, conjoined from the last token to the first
+         * so that only the tokens' links give the order of the sequence
+         */
+        FirstOrderConstraint constraint() {
+            FirstOrderConstraint result = null;
+            for (int i = tokens.length - 1; i >= 0; --i) {
+                if ((constraints & BIO) != 0) {
+                    if (i == 0) result = and(result, new FirstOrderNegation(labeled(tokens[0], I)));
+                    else
+                        result = and(result, new FirstOrderImplication(labeled(tokens[i], I),
+                                new FirstOrderDisjunction(labeled(tokens[i - 1], B),
+                                        labeled(tokens[i - 1], I))));
+                }
+                if ((constraints & SKIP) != 0 && i > 1)
+                    result = and(result, new FirstOrderImplication(labeled(tokens[i - 2], B),
+                            labeled(tokens[i], O)));
+                if ((constraints & B_THEN_I) != 0) {
+                    if (i > 0)
+                        result = and(result, new FirstOrderImplication(labeled(tokens[i - 1], B),
+                                labeled(tokens[i], I)));
+                    if (i == 1) result = and(result, new FirstOrderNegation(labeled(tokens[1], I)));
+                }
+            }
+            return result;
+        }
+
+        static FirstOrderConstraint and(FirstOrderConstraint c1, FirstOrderConstraint c2) {
+            return c1 == null ? c2 : new FirstOrderConjunction(c1, c2);
+        }
+
+        boolean satisfies(int[] labels) {
+            for (int i = 0; i < labels.length; ++i) {
+                if ((constraints & BIO) != 0 && labels[i] == I && (i == 0 || labels[i - 1] == O))
+                    return false;
+                if ((constraints & SKIP) != 0 && i > 1 && labels[i - 2] == B && labels[i] != O)
+                    return false;
+                if ((constraints & B_THEN_I) != 0
+                        && (i > 0 && labels[i - 1] == B && labels[i] != I || i == 1 && labels[i] == I))
+                    return false;
+            }
+            return true;
+        }
+
+        double score(int[] labels) {
+            double result = 0;
+            for (int i = 0; i < labels.length; ++i) result += scores[i][labels[i]];
+            return result;
+        }
+
+        /** Returns the best labels satisfying the constraints. */
+        int[] bruteForce() {
+            int n = tokens.length;
+            int[] labels = new int[n];
+            int[] best = null;
+            for (int k = 0, total = (int) Math.pow(values.length, n); k < total; ++k) {
+                for (int i = 0, r = k; i < n; ++i, r /= values.length)
+                    labels[i] = r % values.length;
+                if (satisfies(labels) && (best == null || score(labels) > score(best)))
+                    best = labels.clone();
+            }
+            return best;
+        }
+
+        /** Adds the constraints to the inference and returns its labels. */
+        int[] infer(SequenceInference inference) throws Exception {
+            inference.addConstraint(constraint());
+            int[] result = new int[tokens.length];
+            for (int i = 0; i < tokens.length; ++i)
+                result[i] = learner.valueIndexOf(inference.valueOf(learner, tokens[i]));
+            return result;
+        }
+
+        SequenceInference newInference(int beamWidth) {
+            return new SequenceInference(tokens, new OJalgoHook(), beamWidth) {
+                public String getHeadType() {
+                    return "edu.illinois.cs.cogcomp.lbjava.parse.LinkedChild[]";
+                }
+            };
+        }
+    }
+
+    /**
+     * Test that the Viterbi algorithm finds the best labels satisfying chain
+     * structured constraints without falling back to ILP
+     */
+    @Test
+    public void testViterbiMatchesExhaustiveSearch() throws Exception {
+        Random random = new Random(31);
+        for (int t = 0; t < 50; ++t) {
+            Sentence s = new Sentence(random, 1 + random.nextInt(7), t % 2 == 0 ? BIO : BIO | B_THEN_I);
+            SequenceInference inference = s.newInference(0);
+
+            assertArrayEquals("sentence " + t, s.bruteForce(), s.infer(inference));
+            assertFalse("sentence " + t, inference.usedFallback());
+        }
+    }
+
+    /**
+     * Test that a beam of one label per position still gives labels that
+     * satisfy the constraints, and that pruning sometimes costs optimality
+     */
+    @Test
+    public void testBeamPruning() throws Exception {
+        Random random = new Random(37);
+        int worse = 0;
+
+        for (int t = 0; t < 100; ++t) {
+            Sentence s = new Sentence(random, 2 + random.nextInt(6), BIO);
+            SequenceInference inference = s.newInference(1);
+            int[] labels = s.infer(inference);
+            double optimum = s.score(s.bruteForce());
+
+            assertFalse("sentence " + t, inference.usedFallback());
+            assertTrue("sentence " + t, s.satisfies(labels));
+            assertTrue("sentence " + t, s.score(labels) <= optimum + 1e-12);
+            if (s.score(labels) < optimum - 1e-12) ++worse;
+        }
+
+        assertTrue(worse > 0);
+    }
+
+    /**
+     * Test that inference falls back to ILP and finds the optimum when the
+     * beam prunes every assignment that satisfies the constraints
+     */
+    @Test
+    public void testBeamFallsBackWhenNothingSurvives() throws Exception {
+        // "B" is the best first label, but it must be followed by an "I",
+        // which the second token can't be
+        double[][] scores = { { 0.9, 0.1, 0.2 }, { 0.3, 0.8, 0.1 } };
+
+        Sentence s = new Sentence(scores, BIO | B_THEN_I);
+        SequenceInference exact = s.newInference(0);
+        assertArrayEquals(new int[]{ O, B }, s.infer(exact));
+        assertFalse(exact.usedFallback());
+
+        s = new Sentence(scores, BIO | B_THEN_I);
+        SequenceInference beam = s.newInference(1);
+        assertArrayEquals(new int[]{ O, B }, s.infer(beam));
+        assertTrue(beam.usedFallback());
+    }
+
+    /**
+     * Test that constraints relating tokens two positions apart fall back to
+     * ILP, which finds the optimum
+     */
+    @Test
+    public void testNonChainConstraintsFallBack() throws Exception {
+        Random random = new Random(41);
+        for (int t = 0; t < 20; ++t) {
+            Sentence s = new Sentence(random, 3 + random.nextInt(4), BIO | SKIP);
+            SequenceInference inference = s.newInference(0);
+
+            assertArrayEquals("sentence " + t, s.bruteForce(), s.infer(inference));
+            assertTrue("sentence " + t, inference.usedFallback());
+        }
+    }
+}
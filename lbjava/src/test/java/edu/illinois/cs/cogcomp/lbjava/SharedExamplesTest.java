@@ -0,0 +1,166 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.features.PredefinedFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.NaiveBayes;
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.LabelRecordingParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+import edu.illinois.cs.cogcomp.lbjava.parse.RelabelingParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a learner reusing the examples pre-extracted for another
+ * learner, as <code>Train</code> arranges for learners with the same
+ * extractor and parser, ends up with exactly the examples it would have
+ * pre-extracted itself
+ */
+public class SharedExamplesTest {
+
+    static final int numExamples = 200;
+
+    /** Labels an example by whether its first element exceeds 0.25. */
+    public static class QuarterLabel extends ModelCompactorTest.BinaryLabel {
+        public String discreteValue(Object o) {
+            return "" + ((Double) ((Vector) o).get(0) > 0.25);
+        }
+    }
+
+    /** A learner like the generated ones, which have an isTraining flag. */
+    public static class SharedLearner extends NaiveBayes {
+        public static boolean isTraining;
+    }
+
+    /** Returns the examples, counting how many times it was asked to. */
+    static class CountingParser implements Parser {
+        Vector[] examples;
+        int index;
+        int calls;
+
+        CountingParser(Vector[] examples) { this.examples = examples; }
+
+        public Object next() {
+            ++calls;
+            return index < examples.length ? examples[index++] : null;
+        }
+
+        public void reset() { index = 0; }
+
+        public void close() { }
+    }
+
+    Vector[] examples;
+    List<File> files = new ArrayList<File>();
+
+    @Before
+    public void setUp() {
+        Random random = new Random(89);
+        examples = new Vector[numExamples];
+        for (int i = 0; i < numExamples; ++i) {
+            Vector example = new Vector();
+            example.add(random.nextDouble());
+            for (int j = 0; j < 100; ++j)
+                example.add(random.nextInt(4) == 0 ? null : random.nextDouble());
+            examples[i] = example;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : files) file.delete();
+    }
+
+    String newFile() throws Exception {
+        File result = File.createTempFile("shared", ".ex");
+        files.add(result);
+        return result.getPath();
+    }
+
+    Learner newLearner(boolean quarter) throws Exception {
+        Learner result = new SharedLearner();
+        result.setLexiconLocation(newFile());
+        result.setExtractor(new PredefinedFeature(0.5));
+        result.setLabeler(quarter ? new QuarterLabel() : new ModelCompactorTest.BinaryLabel());
+        return result;
+    }
+
+    static void assertSameExamples(String expected, String actual) {
+        ArrayFileParser e = new ArrayFileParser(expected, false);
+        ArrayFileParser a = new ArrayFileParser(actual, false);
+        int n = 0;
+        for (Object x = e.next(); x != null; x = e.next(), ++n) {
+            Object[] ex = (Object[]) x;
+            Object[] ac = (Object[]) a.next();
+            assertNotNull("example " + n, ac);
+            assertArrayEquals("example " + n, (int[]) ex[0], (int[]) ac[0]);
+            assertArrayEquals("example " + n, (double[]) ex[1], (double[]) ac[1], 0);
+            assertArrayEquals("example " + n, (int[]) ex[2], (int[]) ac[2]);
+            assertArrayEquals("example " + n, (double[]) ex[3], (double[]) ac[3], 0);
+        }
+        assertNull(a.next());
+        assertEquals(numExamples, n);
+        e.close();
+        a.close();
+    }
+
+    /**
+     * Test that the labels recorded while the first learner pre-extracts
+     * give the second learner the examples it would have pre-extracted
+     * itself, without parsing them again, and that labeling them by parsing
+     * them again does too
+     */
+    @Test
+    public void testFollowersSeeTheSameExamples() throws Exception {
+        String expected = newFile();
+        new BatchTrainer(newLearner(true), new CountingParser(examples), 0).preExtract(expected, false);
+
+        Learner leader = newLearner(false);
+        Learner[] followers = { newLearner(true), newLearner(true) };
+        List[] labels = { new ArrayList(), new ArrayList() };
+        CountingParser parser = new CountingParser(examples);
+        String shared = newFile();
+        Lexicon lexicon =
+                new BatchTrainer(leader, new LabelRecordingParser(parser, followers, labels), 0)
+                        .preExtract(shared, false);
+        assertEquals(numExamples + 1, parser.calls);
+        assertEquals(numExamples, labels[0].size());
+
+        // recorded labels
+        followers[0].setLexicon((Lexicon) lexicon.clone());
+        String relabeled = newFile();
+        new BatchTrainer(followers[0], new RelabelingParser(labels[0], new ArrayFileParser(shared, false)), 0)
+                .preExtract(relabeled, false);
+        assertSameExamples(expected, relabeled);
+
+        // the examples parsed again
+        Learner reparsing = newLearner(true);
+        reparsing.setLexicon((Lexicon) lexicon.clone());
+        String reparsed = newFile();
+        new BatchTrainer(reparsing,
+                new RelabelingParser(new CountingParser(examples), new ArrayFileParser(shared, false), reparsing), 0)
+                .preExtract(reparsed, false);
+        assertSameExamples(expected, reparsed);
+    }
+}
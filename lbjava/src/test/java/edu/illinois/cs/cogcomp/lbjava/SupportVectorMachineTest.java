@@ -0,0 +1,274 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Problem;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.SupportVectorMachine;
+import edu.illinois.cs.cogcomp.lbjava.util.ExceptionlessOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for multi-class training in <code>SupportVectorMachine</code>
+ */
+public class SupportVectorMachineTest {
+
+    static final int numLabels = 4, numFeatures = 30, numExamples = 200;
+
+    /* training examples: features of each example, their values, and its label */
+    static final int[][] features = new int[numExamples][];
+    static final double[][] values = new double[numExamples][];
+    static final int[] labels = new int[numExamples];
+
+    static {
+        Random random = new Random(17);
+        for (int i = 0; i < numExamples; ++i) {
+            labels[i] = random.nextInt(numLabels);
+            int F = 3 + random.nextInt(5);
+            features[i] = new int[F];
+            values[i] = new double[F];
+            for (int j = 0; j < F; ++j) {
+                // most features lean towards one label, but not reliably
+                features[i][j] = random.nextInt(3) == 0
+                        ? random.nextInt(numFeatures)
+                        : (labels[i] * 7 + random.nextInt(8)) % numFeatures;
+                values[i][j] = random.nextDouble();
+            }
+        }
+    }
+
+    static SupportVectorMachine train(String solverType, int threads) {
+        SupportVectorMachine.Parameters p = new SupportVectorMachine.Parameters();
+        p.solverType = solverType;
+        p.trainingThreads = threads;
+        return train(p, numLabels);
+    }
+
+    /** Trains on the examples, with their labels taken modulo the given number. */
+    static SupportVectorMachine train(SupportVectorMachine.Parameters p, int labelCount) {
+        SupportVectorMachine result = new SupportVectorMachine(p);
+
+        Lexicon labelLexicon = new Lexicon();
+        for (int l = 0; l < labelCount; ++l)
+            labelLexicon.lookup(new DiscretePrimitiveStringFeature("", "l", "", "" + l,
+                    (short) l, (short) labelCount), true);
+        result.setLabelLexicon(labelLexicon);
+
+        for (int i = 0; i < numExamples; ++i)
+            result.learn(features[i], values[i], new int[]{ labels[i] % labelCount },
+                    new double[]{ 1 });
+        result.doneLearning();
+        return result;
+    }
+
+    static byte[] model(SupportVectorMachine svm) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        svm.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The problem liblinear would be given for the training examples: the
+     * learner sums duplicate features and relabels the labels in the order
+     * they are first observed
+     */
+    static Problem liblinearProblem() {
+        int n = numFeatures + 1;
+        Problem prob = new Problem();
+        prob.l = numExamples;
+        prob.n = n;
+        prob.bias = SupportVectorMachine.defaultBias;
+        prob.x = new FeatureNode[numExamples][];
+        prob.y = new double[numExamples];
+
+        int[] newLabel = new int[numLabels];
+        Arrays.fill(newLabel, -1);
+        int nextLabel = 0;
+
+        for (int i = 0; i < numExamples; ++i) {
+            double[] dense = new double[numFeatures];
+            for (int j = 0; j < features[i].length; ++j)
+                dense[features[i][j]] += values[i][j];
+
+            int F = 0;
+            FeatureNode[] example = new FeatureNode[features[i].length + 1];
+            for (int f = 0; f < numFeatures; ++f)
+                for (int j = 0; j < features[i].length; ++j)
+                    if (features[i][j] == f) {
+                        example[F++] = new FeatureNode(f + 1, dense[f]);
+                        break;
+                    }
+            example[F++] = new FeatureNode(n, prob.bias);
+            prob.x[i] = Arrays.copyOf(example, F);
+
+            if (newLabel[labels[i]] < 0) newLabel[labels[i]] = nextLabel++;
+            prob.y[i] = newLabel[labels[i]];
+        }
+
+        return prob;
+    }
+
+    static double[] liblinearWeights(String solverType) {
+        return Linear.train(liblinearProblem(), new de.bwaldvogel.liblinear.Parameter(
+                SupportVectorMachine.Parameters.getSolverType(solverType),
+                SupportVectorMachine.defaultC, SupportVectorMachine.defaultEpsilon))
+                .getFeatureWeights();
+    }
+
+    /* the fraction of the training examples on which two learners agree */
+    static double agreement(SupportVectorMachine svm1, SupportVectorMachine svm2) {
+        int same = 0;
+        for (int i = 0; i < numExamples; ++i) {
+            if (svm1.discreteValue(features[i], values[i])
+                    .equals(svm2.discreteValue(features[i], values[i])))
+                ++same;
+        }
+        return same / (double) numExamples;
+    }
+
+    static void assertGeneratorUntouched() throws Exception {
+        Field random = Linear.class.getDeclaredField("random");
+        random.setAccessible(true);
+        assertSame(Random.class, random.get(null).getClass());
+    }
+
+    /**
+     * Test that a single thread trains multi-class problems with a single
+     * call to liblinear, exactly as it did before training could be
+     * concurrent
+     */
+    @Test
+    public void testSingleThreadMatchesLiblinear() {
+        String[] solvers = { "L2LOSS_SVM", "L2_LR", "L1LOSS_SVM_DUAL", "L2LOSS_SVM_DUAL" };
+        for (String solverType : solvers) {
+            Linear.resetRandom();
+            double[] expected = liblinearWeights(solverType);
+            Linear.resetRandom();
+            assertArrayEquals(solverType, expected, train(solverType, 1).getWeights(), 0);
+        }
+    }
+
+    /**
+     * Test that the primal solvers, which draw no random numbers, learn the
+     * same model on any number of threads greater than 1, close to the one
+     * learned by a single thread
+     */
+    @Test
+    public void testPrimalSolversIgnoreThreadCount() throws Exception {
+        for (String solverType : new String[]{ "L2LOSS_SVM", "L2_LR" }) {
+            SupportVectorMachine sequential = train(solverType, 1);
+            SupportVectorMachine first = train(solverType, 2);
+            byte[] expected = model(first);
+
+            for (int threads = 3; threads <= numLabels + 1; ++threads) {
+                SupportVectorMachine parallel = train(solverType, threads);
+                assertArrayEquals(solverType + " with " + threads + " threads",
+                        first.getWeights(), parallel.getWeights(), 0);
+                assertArrayEquals(solverType + " with " + threads + " threads",
+                        expected, model(parallel));
+            }
+
+            assertArrayEquals(solverType, sequential.getWeights(), first.getWeights(), 1e-6);
+        }
+        assertGeneratorUntouched();
+    }
+
+    /**
+     * Test that the dual solvers, whose shuffles depend on how concurrent
+     * problems draw from liblinear's generator, learn a model that predicts
+     * like the one learned by a single thread, and leave the generator in
+     * place
+     */
+    @Test
+    public void testDualSolversOnSeveralThreads() throws Exception {
+        for (String solverType : new String[]{ "L1LOSS_SVM_DUAL", "L2LOSS_SVM_DUAL" }) {
+            SupportVectorMachine sequential = train(solverType, 1);
+            for (int threads = 2; threads <= numLabels + 1; ++threads) {
+                SupportVectorMachine parallel = train(solverType, threads);
+                assertTrue(solverType + " with " + threads + " threads",
+                        agreement(sequential, parallel) >= 0.95);
+            }
+        }
+        assertGeneratorUntouched();
+    }
+
+    static SupportVectorMachine.Parameters streaming(String solverType, File directory) {
+        SupportVectorMachine.Parameters p = new SupportVectorMachine.Parameters();
+        p.solverType = solverType;
+        p.streaming = true;
+        p.spillDirectory = directory.getPath();
+        return p;
+    }
+
+    static File newDirectory() throws Exception {
+        File result = File.createTempFile("svm", "");
+        assertTrue(result.delete() && result.mkdir());
+        result.deleteOnExit();
+        return result;
+    }
+
+    /**
+     * Test that the dual solvers trained from a spill file predict like
+     * liblinear trained in memory, for binary and multi-class problems alike,
+     * and that the spill file is gone once training is done
+     */
+    @Test
+    public void testStreamingMatchesInMemory() throws Exception {
+        File directory = newDirectory();
+        for (String solverType : new String[]{ "L1LOSS_SVM_DUAL", "L2LOSS_SVM_DUAL" }) {
+            for (int labelCount = 2; labelCount <= numLabels; labelCount += numLabels - 2) {
+                SupportVectorMachine.Parameters p = new SupportVectorMachine.Parameters();
+                p.solverType = solverType;
+                SupportVectorMachine inMemory = train(p, labelCount);
+                SupportVectorMachine streamed = train(streaming(solverType, directory), labelCount);
+
+                String message = solverType + " with " + labelCount + " labels";
+                assertEquals(message, inMemory.getWeights().length, streamed.getWeights().length);
+                assertTrue(message, agreement(inMemory, streamed) >= 0.95);
+                assertEquals(message, 0, directory.list().length);
+            }
+        }
+        assertTrue(directory.delete());
+    }
+
+    /**
+     * Test that streaming with a solver type that can't be trained from the
+     * spill file fails on the first example instead of quietly switching
+     * solvers or building every example in memory
+     */
+    @Test
+    public void testStreamingRejectsOtherSolvers() throws Exception {
+        File directory = newDirectory();
+        for (String solverType : new String[]{ "", "L2LOSS_SVM", "L2_LR", "MCSVM_CS" }) {
+            try {
+                train(streaming(solverType, directory), numLabels);
+                fail(solverType);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("streaming"));
+            }
+            assertEquals(solverType, 0, directory.list().length);
+        }
+        assertTrue(directory.delete());
+    }
+}
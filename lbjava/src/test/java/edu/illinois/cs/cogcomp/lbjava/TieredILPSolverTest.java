@@ -0,0 +1,204 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.BalasHook;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.TieredILPSolver;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for <code>TieredILPSolver</code>
+ */
+public class TieredILPSolverTest {
+
+    static final double tolerance = 1e-9;
+
+    static TieredILPSolver newSolver(BalasHookTest.Problem problem) {
+        TieredILPSolver result = new TieredILPSolver(new BalasHook());
+        int[] indexes = new int[problem.objective.length];
+        for (int j = 0; j < indexes.length; ++j)
+            indexes[j] = result.addBooleanVariable(problem.objective[j]);
+        for (int i = 0; i < problem.a.length; ++i) {
+            if (problem.greaterThan[i])
+                result.addGreaterThanConstraint(indexes, problem.a[i].clone(), problem.b[i]);
+            else result.addLessThanConstraint(indexes, problem.a[i].clone(), problem.b[i]);
+        }
+        result.setMaximize(problem.maximize);
+        return result;
+    }
+
+    static int[] solution(TieredILPSolver solver) {
+        int[] result = new int[solver.columns()];
+        for (int j = 0; j < result.length; ++j)
+            result[j] = solver.getBooleanValue(j) ? 1 : 0;
+        return result;
+    }
+
+    /**
+     * The translation of <code>y &lt;=&gt; x0 &and; x1</code> and
+     * <code>y</code>, where <code>x0</code> and <code>x1</code> have positive
+     * scores and the auxiliary variable <code>y</code> has none
+     */
+    static TieredILPSolver conjunction() {
+        TieredILPSolver result = new TieredILPSolver(new BalasHook());
+        result.setMaximize(true);
+        int x0 = result.addBooleanVariable(1);
+        int x1 = result.addBooleanVariable(2);
+        int y = result.addBooleanVariable(0);
+        result.addLessThanConstraint(new int[]{ y, x0 }, new double[]{ 1, -1 }, 0);
+        result.addLessThanConstraint(new int[]{ y, x1 }, new double[]{ 1, -1 }, 0);
+        result.addLessThanConstraint(new int[]{ x0, x1, y }, new double[]{ 1, 1, -1 }, 1);
+        result.addGreaterThanConstraint(new int[]{ y }, new double[]{ 1 }, 1);
+        return result;
+    }
+
+    /**
+     * Test that the argmax tier gives an auxiliary variable the value its
+     * constraints force, instead of leaving it at 0
+     */
+    @Test
+    public void testArgmaxDerivesAuxiliaryValues() throws Exception {
+        TieredILPSolver solver = conjunction();
+        assertTrue(solver.solve());
+        assertEquals(TieredILPSolver.TIER_ARGMAX, solver.getTier());
+        assertArrayEquals(new int[]{ 1, 1, 1 }, solution(solver));
+        assertEquals(3, solver.objectiveValue(), tolerance);
+    }
+
+    /**
+     * Test that an argmax that violates the constraints is passed on to the
+     * other tiers, whatever values the auxiliary variables could take
+     */
+    @Test
+    public void testArgmaxViolationFallsThrough() throws Exception {
+        TieredILPSolver solver = conjunction();
+        solver.addLessThanConstraint(new int[]{ 0, 1 }, new double[]{ 1, 1 }, 1);
+        assertFalse(solver.solve());
+
+        solver = new TieredILPSolver(new BalasHook());
+        solver.setMaximize(true);
+        int x0 = solver.addBooleanVariable(1);
+        int x1 = solver.addBooleanVariable(2);
+        int y = solver.addBooleanVariable(0);
+        // y <=> x0 | x1, and not both
+        solver.addGreaterThanConstraint(new int[]{ y, x0 }, new double[]{ 1, -1 }, 0);
+        solver.addGreaterThanConstraint(new int[]{ y, x1 }, new double[]{ 1, -1 }, 0);
+        solver.addLessThanConstraint(new int[]{ y, x0, x1 }, new double[]{ 1, -1, -1 }, 0);
+        solver.addLessThanConstraint(new int[]{ x0, x1 }, new double[]{ 1, 1 }, 1);
+        assertTrue(solver.solve());
+        assertTrue(solver.getTier() != TieredILPSolver.TIER_ARGMAX);
+        assertArrayEquals(new int[]{ 0, 1, 1 }, solution(solver));
+    }
+
+    /**
+     * Test that every tier finds the optimum of random problems, many of
+     * whose variables have zero objective coefficients
+     */
+    @Test
+    public void testMatchesExhaustiveSearch() throws Exception {
+        Random random = new Random(31);
+        int argmax = 0;
+
+        for (int t = 0; t < 300; ++t) {
+            BalasHookTest.Problem problem = new BalasHookTest.Problem(random, 8, 1 + random.nextInt(3));
+            for (int j = 0; j < problem.objective.length; ++j)
+                if (random.nextInt(3) == 0) problem.objective[j] = 0;
+            Double expected = problem.bruteForce();
+            TieredILPSolver solver = newSolver(problem);
+            boolean result = solver.solve();
+
+            assertEquals("problem " + t, expected != null, result);
+            if (!result) continue;
+            if (solver.getTier() == TieredILPSolver.TIER_ARGMAX) ++argmax;
+            int[] x = solution(solver);
+            assertTrue("problem " + t, problem.feasible(x));
+            assertEquals("problem " + t, expected, problem.value(x), tolerance);
+            assertEquals("problem " + t, expected, solver.objectiveValue(), tolerance);
+        }
+
+        assertTrue(argmax > 10);
+    }
+
+    static FirstOrderConstraint is(Object token, String value) {
+        return ILPTemplateTest.TokenInference.equals(token, value);
+    }
+
+    /**
+     * Labels the four tokens of a head so that exactly one is labeled "A",
+     * and either the first two are "B" or the third is "A" and the fourth
+     * "B".  One of the conjunctions becomes an auxiliary variable, which is
+     * 1 whenever both conjunctions hold.
+     */
+    static class TieredInference extends ILPInference {
+        TieredInference(Object[] head, TieredILPSolver solver) {
+            super(head, solver);
+            FirstOrderConstraint some = is(head[0], "A");
+            for (int i = 1; i < head.length; ++i)
+                some = new FirstOrderDisjunction(some, is(head[i], "A"));
+            FirstOrderConstraint c = some;
+            for (int i = 0; i < head.length; ++i)
+                for (int j = i + 1; j < head.length; ++j)
+                    c = new FirstOrderConjunction(c, new FirstOrderNegation(
+                            new FirstOrderConjunction(is(head[i], "A"), is(head[j], "A"))));
+            c = new FirstOrderConjunction(c, new FirstOrderDisjunction(
+                    new FirstOrderConjunction(is(head[0], "B"), is(head[1], "B")),
+                    new FirstOrderConjunction(is(head[2], "A"), is(head[3], "B"))));
+            addConstraint(c);
+        }
+
+        public String getHeadType() {
+            return "java.lang.Object[]";
+        }
+    }
+
+    /**
+     * Test that inference whose predictions satisfy its constraints is
+     * solved by the argmax tier even though its translation has auxiliary
+     * variables, and that each solver counts its own tiers
+     */
+    @Test
+    public void testInferenceUsesArgmaxTier() throws Exception {
+        Random random = new Random(37);
+        Object[] head = ILPTemplateTest.newHead(random, 4);
+        // the third token prefers "A" and the rest prefer "B", so both
+        // conjunctions hold
+        for (int i = 0; i < head.length; ++i)
+            ILPTemplateTest.learner.setScores(head[i],
+                    new double[]{ i == 2 ? 2 : 0, 1, random.nextDouble() });
+
+        TieredILPSolver solver = new TieredILPSolver(new BalasHook());
+        TieredILPSolver other = new TieredILPSolver(new BalasHook());
+        TieredInference inference = new TieredInference(head, solver);
+        String[] expected = { "B", "B", "A", "B" };
+        for (int i = 0; i < head.length; ++i)
+            assertEquals(expected[i], inference.valueOf(ILPTemplateTest.learner, head[i]));
+
+        assertTrue(solver.columns() > 3 * head.length);
+        assertEquals(TieredILPSolver.TIER_ARGMAX, solver.getTier());
+        assertEquals(1, solver.getSolves());
+        assertEquals(1, solver.getHits(TieredILPSolver.TIER_ARGMAX));
+        assertEquals(1, solver.getHitRate(TieredILPSolver.TIER_ARGMAX), 0);
+        assertEquals(0, other.getSolves());
+
+        solver.resetStatistics();
+        assertEquals(0, solver.getSolves());
+        assertEquals(0, solver.getHits(TieredILPSolver.TIER_ARGMAX));
+    }
+}
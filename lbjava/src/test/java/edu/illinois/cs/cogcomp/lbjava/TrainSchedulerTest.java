@@ -0,0 +1,140 @@
+/**
+ * This software is released under the University of Illinois/Research and
+ *  Academic Use License. See the LICENSE file in the root folder for details.
+ * Copyright (c) 2016
+ *
+ * Developed by:
+ * The Cognitive Computations Group
+ * University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import edu.illinois.cs.cogcomp.lbjava.IR.LearningClassifierExpression;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the order in which <code>Train.trainAll</code> starts
+ * training learners
+ */
+public class TrainSchedulerTest {
+
+    HashMap<String, HashSet<String>> dependorGraph;
+    boolean concurrentTraining;
+    int trainingThreads;
+    long trainingMemory;
+
+    Train train;
+    /* the learners in the order they started and finished training */
+    final List<String> started = new ArrayList<String>();
+    final List<String> finished = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        dependorGraph = SemanticAnalysis.dependorGraph;
+        concurrentTraining = Main.concurrentTraining;
+        trainingThreads = Main.trainingThreads;
+        trainingMemory = Main.trainingMemory;
+
+        SemanticAnalysis.dependorGraph = new HashMap<String, HashSet<String>>();
+        train = new Train(null, 0);
+        train.threadMap = new HashMap();
+        train.learnerDependencies = new HashMap();
+    }
+
+    @After
+    public void tearDown() {
+        SemanticAnalysis.dependorGraph = dependorGraph;
+        Main.concurrentTraining = concurrentTraining;
+        Main.trainingThreads = trainingThreads;
+        Main.trainingMemory = trainingMemory;
+    }
+
+    /*
+     * Adds a learner that takes the given time to train, with the given
+     * memory estimate, which depends on the given learners.
+     */
+    void learner(String name, int byteOffset, final long memory, final long millis,
+                 String... dependencies) {
+        if (!SemanticAnalysis.dependorGraph.containsKey(name))
+            SemanticAnalysis.dependorGraph.put(name, new HashSet<String>());
+        for (String dependency : dependencies)
+            SemanticAnalysis.dependorGraph.get(dependency).add(name);
+
+        LearningClassifierExpression lce =
+                new LearningClassifierExpression(
+                        new LinkedList<LearningClassifierExpression.Clause>(), 0, byteOffset);
+        lce.onlyCodeGeneration = true;
+        Train.TrainingThread thread = train.new TrainingThread(name, byteOffset, lce) {
+            protected long estimateMemory() { return memory; }
+
+            public void run() {
+                synchronized (started) { started.add(getName()); }
+                try { Thread.sleep(millis); }
+                catch (InterruptedException e) { }
+                synchronized (finished) { finished.add(getName()); }
+                train.executeReadyThreads(getName());
+            }
+        };
+        train.threadMap.put(name, thread);
+        train.learnerDependencies.put(name, new HashSet());
+    }
+
+    /**
+     * Test that a single worker trains the learner with the longest chain
+     * of dependors first, then the one with the largest memory estimate,
+     * then the one appearing earliest in the source
+     */
+    @Test
+    public void testCriticalPathOrder() {
+        Main.concurrentTraining = false;
+        learner("a", 0, 0, 0);
+        learner("b", 10, 0, 0, "a");
+        learner("c", 20, 0, 0, "b");
+        learner("d", 30, 100, 0);
+        learner("e", 40, 0, 0);
+        learner("f", 5, 0, 0);
+
+        train.fillLearnerDependorsDAG();
+        assertEquals(3, ((Train.TrainingThread) train.threadMap.get("a")).criticalPath);
+        assertEquals(1, ((Train.TrainingThread) train.threadMap.get("e")).criticalPath);
+        train.trainAll();
+
+        assertEquals(Arrays.asList("a", "b", "d", "f", "c", "e"), started);
+    }
+
+    /**
+     * Test that concurrent training never lets the memory estimates of the
+     * learners training at once exceed the budget, starting a smaller
+     * learner instead
+     */
+    @Test
+    public void testMemoryBudget() {
+        Main.concurrentTraining = true;
+        Main.trainingThreads = 2;
+        Main.trainingMemory = 100;
+        learner("x", 0, 80, 300);
+        learner("y", 10, 80, 0);
+        learner("z", 20, 10, 0);
+
+        train.fillLearnerDependorsDAG();
+        train.trainAll();
+
+        // x and z start together on the two workers
+        assertEquals(new HashSet<String>(Arrays.asList("x", "z")),
+                new HashSet<String>(started.subList(0, 2)));
+        // y waits for x, even though a worker is free
+        assertEquals(Arrays.asList("z", "x", "y"), finished);
+    }
+}